@@ -55,6 +55,8 @@ public class AmqpOutboundChannelAdapterParser extends AbstractOutboundChannelAda
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "confirm-ack-channel");
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "confirm-nack-channel");
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "return-channel");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "publish-batch-size");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "max-unconfirmed");
 
 		return builder.getBeanDefinition();
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -23,12 +23,14 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate.ReturnCallback;
 import org.springframework.amqp.rabbit.support.CorrelationData;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.amqp.AmqpHeaders;
 import org.springframework.integration.amqp.support.AmqpHeaderMapper;
 import org.springframework.integration.amqp.support.DefaultAmqpHeaderMapper;
@@ -46,7 +48,7 @@ import org.springframework.util.Assert;
  * @since 2.1
  */
 public class AmqpOutboundEndpoint extends AbstractReplyProducingMessageHandler
-	implements RabbitTemplate.ConfirmCallback, ReturnCallback {
+	implements RabbitTemplate.ConfirmCallback, ReturnCallback, DisposableBean {
 
 	private static final ExpressionParser expressionParser = new SpelExpressionParser(new SpelParserConfiguration(true, true));
 
@@ -79,6 +81,12 @@ public class AmqpOutboundEndpoint extends AbstractReplyProducingMessageHandler
 
 	private volatile MessageChannel returnChannel;
 
+	private volatile int publishBatchSize;
+
+	private volatile int maxUnconfirmed = 1000;
+
+	private volatile BatchingConfirmPublisher batchingPublisher;
+
 	@Override
 	protected void onInit() {
 		super.onInit();
@@ -96,11 +104,20 @@ public class AmqpOutboundEndpoint extends AbstractReplyProducingMessageHandler
 			Expression expression = expressionParser.parseExpression(this.routingKeyExpression);
 			this.routingKeyGenerator = new ExpressionEvaluatingMessageProcessor<String>(expression, String.class);
 		}
+		if (this.publishBatchSize > 0) {
+			Assert.state(!this.expectReply, "Batched publishing does not apply to a gateway");
+			Assert.state(this.returnChannel == null, "Batched publishing does not support publisher returns");
+			Assert.isTrue(amqpTemplate instanceof RabbitTemplate, "RabbitTemplate implementation is required for batched publishing");
+			this.batchingPublisher = new BatchingConfirmPublisher(((RabbitTemplate) this.amqpTemplate).getConnectionFactory(),
+					this.publishBatchSize, this.maxUnconfirmed, this);
+		}
 		if (this.confirmCorrelationExpression != null) {
 			Expression expression = expressionParser.parseExpression(this.confirmCorrelationExpression);
 			this.correlationDataGenerator = new ExpressionEvaluatingMessageProcessor<Object>(expression, Object.class);
 			Assert.isTrue(amqpTemplate instanceof RabbitTemplate, "RabbitTemplate implementation is required for publisher confirms");
-			((RabbitTemplate) this.amqpTemplate).setConfirmCallback(this);
+			if (this.batchingPublisher == null) {
+				((RabbitTemplate) this.amqpTemplate).setConfirmCallback(this);
+			}
 		}
 		if (this.returnChannel != null) {
 			Assert.isTrue(amqpTemplate instanceof RabbitTemplate, "RabbitTemplate implementation is required for publisher returns");
@@ -153,6 +170,31 @@ public class AmqpOutboundEndpoint extends AbstractReplyProducingMessageHandler
 		this.returnChannel = returnChannel;
 	}
 
+	/**
+	 * Set the maximum number of messages to publish in one burst. When greater than 0, messages
+	 * are converted on the calling thread and queued; a dedicated thread publishes them on a
+	 * single channel in publisher confirms mode, and confirms are routed to the
+	 * confirmAckChannel/confirmNackChannel (for messages with confirm correlation data)
+	 * as they arrive; nacks of messages without correlation data are logged at error level.
+	 * Messages are rejected once the endpoint has been destroyed.
+	 * Default 0: each message is sent by the AmqpTemplate on the calling thread.
+	 * Only applies to an outbound channel adapter with a RabbitTemplate, without a returnChannel.
+	 */
+	public void setPublishBatchSize(int publishBatchSize) {
+		this.publishBatchSize = publishBatchSize;
+	}
+
+	/**
+	 * When batched publishing is enabled, the maximum number of messages that may be queued or
+	 * awaiting a publisher confirm; callers block until confirms arrive when the limit is
+	 * reached. Default 1000.
+	 * @see #setPublishBatchSize(int)
+	 */
+	public void setMaxUnconfirmed(int maxUnconfirmed) {
+		Assert.isTrue(maxUnconfirmed > 0, "'maxUnconfirmed' must be greater than 0");
+		this.maxUnconfirmed = maxUnconfirmed;
+	}
+
 	@Override
 	public String getComponentType() {
 		return expectReply ? "amqp:outbound-gateway" : "amqp:outbound-channel-adapter";
@@ -184,6 +226,16 @@ public class AmqpOutboundEndpoint extends AbstractReplyProducingMessageHandler
 		if (this.expectReply) {
 			return this.sendAndReceive(exchangeName, routingKey, requestMessage);
 		}
+		else if (this.batchingPublisher != null) {
+			try {
+				this.batchingPublisher.publish(exchangeName, routingKey, this.toAmqpMessage(requestMessage), correlationData);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessageHandlingException(requestMessage, "interrupted while waiting to publish", e);
+			}
+			return null;
+		}
 		else {
 			this.send(exchangeName, routingKey, requestMessage, correlationData);
 			return null;
@@ -219,9 +271,7 @@ public class AmqpOutboundEndpoint extends AbstractReplyProducingMessageHandler
 		// TODO: add a convertSendAndReceive method that accepts a MessagePostProcessor so we can map headers?
 		Assert.isTrue(amqpTemplate instanceof RabbitTemplate, "RabbitTemplate implementation is required for send and receive");
 		MessageConverter converter = ((RabbitTemplate) this.amqpTemplate).getMessageConverter();
-		MessageProperties amqpMessageProperties = new MessageProperties();
-		this.headerMapper.fromHeadersToRequest(requestMessage.getHeaders(), amqpMessageProperties);
-		org.springframework.amqp.core.Message amqpMessage = converter.toMessage(requestMessage.getPayload(), amqpMessageProperties);
+		org.springframework.amqp.core.Message amqpMessage = this.toAmqpMessage(requestMessage);
 		org.springframework.amqp.core.Message amqpReplyMessage = this.amqpTemplate.sendAndReceive(exchangeName, routingKey, amqpMessage);
 		if (amqpReplyMessage == null) {
 			return null;
@@ -235,6 +285,23 @@ public class AmqpOutboundEndpoint extends AbstractReplyProducingMessageHandler
 		return builder.build();
 	}
 
+	private org.springframework.amqp.core.Message toAmqpMessage(Message<?> requestMessage) {
+		MessageConverter converter = ((RabbitTemplate) this.amqpTemplate).getMessageConverter();
+		MessageProperties amqpMessageProperties = new MessageProperties();
+		this.headerMapper.fromHeadersToRequest(requestMessage.getHeaders(), amqpMessageProperties);
+		return converter.toMessage(requestMessage.getPayload(), amqpMessageProperties);
+	}
+
+	/**
+	 * Publishes any queued messages and waits (up to 5 seconds) for their confirms,
+	 * when batched publishing is enabled.
+	 */
+	public void destroy() {
+		if (this.batchingPublisher != null) {
+			this.batchingPublisher.stop(5000);
+		}
+	}
+
 	public void confirm(CorrelationData correlationData, boolean ack) {
 		Object userCorrelationData = correlationData;
 		if (correlationData instanceof CorrelationDataWrapper) {
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.amqp.outbound;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate.ConfirmCallback;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+
+/**
+ * Publishes messages from a single thread on a dedicated channel in publisher
+ * confirms mode. Messages queued by callers are published in bursts of up to
+ * 'batchSize', without acquiring a channel for each message, and the broker's
+ * confirms are matched to them by publish sequence number.
+ * <p/>
+ * The number of messages that are queued or awaiting confirmation is bounded
+ * by 'maxUnconfirmed'; {@link #publish} blocks when the limit is reached. If
+ * the channel fails, all unconfirmed messages are reported as nacks; nacks of
+ * messages without correlation data, which cannot be routed, are logged.
+ * <p/>
+ * Once stopped, the publisher cannot be restarted and rejects further messages.
+ *
+ * @since 2.2
+ */
+class BatchingConfirmPublisher implements ConfirmListener {
+
+	private static final String ENCODING = "UTF-8";
+
+	private final Log logger = LogFactory.getLog(this.getClass());
+
+	private final ConnectionFactory connectionFactory;
+
+	private final ConfirmCallback confirmCallback;
+
+	private final int batchSize;
+
+	private final Semaphore permits;
+
+	private final BlockingQueue<PendingPublish> queue = new LinkedBlockingQueue<PendingPublish>();
+
+	private final SortedMap<Long, PendingPublish> unconfirmed = new TreeMap<Long, PendingPublish>();
+
+	private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+	private final Object lifecycleMonitor = new Object();
+
+	private volatile ExecutorService executor;
+
+	private volatile boolean running;
+
+	private volatile boolean stopped;
+
+	private volatile Channel channel;
+
+	/**
+	 * @param connectionFactory the factory from which the publishing channel is obtained.
+	 * @param batchSize the maximum number of messages published in one burst.
+	 * @param maxUnconfirmed the maximum number of messages queued or awaiting confirmation.
+	 * @param confirmCallback invoked with each message's correlation data (if any) when it is
+	 * acked or nacked.
+	 */
+	BatchingConfirmPublisher(ConnectionFactory connectionFactory, int batchSize, int maxUnconfirmed,
+			ConfirmCallback confirmCallback) {
+		this.connectionFactory = connectionFactory;
+		this.batchSize = batchSize;
+		this.permits = new Semaphore(maxUnconfirmed);
+		this.confirmCallback = confirmCallback;
+	}
+
+	/**
+	 * Queues a message for publishing, blocking while the maximum number of
+	 * messages are queued or awaiting confirmation. The publishing thread is
+	 * started on the first call.
+	 * @throws IllegalStateException if the publisher has been stopped.
+	 */
+	void publish(String exchange, String routingKey, Message message, CorrelationData correlationData)
+			throws InterruptedException {
+		if (!this.running) {
+			this.start();
+		}
+		this.permits.acquire();
+		PendingPublish pending = new PendingPublish(exchange, routingKey, message, correlationData);
+		this.queue.add(pending);
+		// the queue may have been drained by stop() before the message was added
+		if (this.stopped && this.queue.remove(pending)) {
+			this.permits.release();
+			throw new IllegalStateException("The publisher has been stopped");
+		}
+	}
+
+	/**
+	 * @return the number of messages queued or awaiting confirmation.
+	 */
+	int getOutstandingCount() {
+		synchronized (this.unconfirmed) {
+			return this.queue.size() + this.unconfirmed.size();
+		}
+	}
+
+	private void start() {
+		synchronized (this.lifecycleMonitor) {
+			Assert.state(!this.stopped, "The publisher has been stopped");
+			if (this.running) {
+				return;
+			}
+			this.running = true;
+			this.executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("amqp-publisher-"));
+			this.executor.execute(new Runnable() {
+				public void run() {
+					publishLoop();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops the publishing thread, then publishes any messages still queued and waits
+	 * up to 'timeout' milliseconds for outstanding confirms. Messages that are still
+	 * unconfirmed are reported as nacks.
+	 */
+	void stop(long timeout) {
+		synchronized (this.lifecycleMonitor) {
+			this.stopped = true;
+			if (!this.running) {
+				return;
+			}
+			this.running = false;
+			this.executor.shutdown();
+			try {
+				this.executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+				List<PendingPublish> remaining = new ArrayList<PendingPublish>();
+				this.queue.drainTo(remaining);
+				if (remaining.size() > 0) {
+					this.publishBatch(remaining);
+				}
+				Channel channel = this.channel;
+				if (channel != null && channel.isOpen()) {
+					channel.waitForConfirms(timeout);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (Exception e) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Timed out waiting for publisher confirms", e);
+				}
+			}
+			if (this.channel != null) {
+				this.closeChannel(this.channel);
+			}
+		}
+	}
+
+	private void publishLoop() {
+		List<PendingPublish> batch = new ArrayList<PendingPublish>(this.batchSize);
+		while (this.running) {
+			try {
+				PendingPublish first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				this.queue.drainTo(batch, this.batchSize - 1);
+				this.publishBatch(batch);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void publishBatch(List<PendingPublish> batch) {
+		Channel channel;
+		try {
+			channel = this.getChannel();
+		}
+		catch (Exception e) {
+			logger.error("Failed to obtain a channel for publishing", e);
+			for (PendingPublish pending : batch) {
+				this.complete(pending, false);
+			}
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			PendingPublish pending = batch.get(i);
+			try {
+				synchronized (this.unconfirmed) {
+					this.unconfirmed.put(channel.getNextPublishSeqNo(), pending);
+				}
+				channel.basicPublish(pending.exchange, pending.routingKey, false, false,
+						this.messagePropertiesConverter.fromMessageProperties(
+								pending.message.getMessageProperties(), ENCODING),
+						pending.message.getBody());
+			}
+			catch (Exception e) {
+				logger.error("Failed to publish message; reporting unconfirmed messages as nacks", e);
+				this.closeChannel(channel);
+				for (int j = i + 1; j < batch.size(); j++) {
+					this.complete(batch.get(j), false);
+				}
+				return;
+			}
+		}
+	}
+
+	private Channel getChannel() throws IOException {
+		Channel channel = this.channel;
+		if (channel != null && !channel.isOpen()) {
+			this.closeChannel(channel);
+			channel = null;
+		}
+		if (channel == null) {
+			channel = this.connectionFactory.createConnection().createChannel(false);
+			channel.confirmSelect();
+			channel.addConfirmListener(this);
+			this.channel = channel;
+		}
+		return channel;
+	}
+
+	/**
+	 * Detaches from the channel and reports its unconfirmed messages as nacks, since
+	 * their confirms will never arrive.
+	 */
+	private void closeChannel(Channel channel) {
+		this.channel = null;
+		channel.removeConfirmListener(this);
+		try {
+			if (channel.isOpen()) {
+				channel.close();
+			}
+		}
+		catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Failed to close channel", e);
+			}
+		}
+		List<PendingPublish> failed;
+		synchronized (this.unconfirmed) {
+			failed = new ArrayList<PendingPublish>(this.unconfirmed.values());
+			this.unconfirmed.clear();
+		}
+		for (PendingPublish pending : failed) {
+			this.complete(pending, false);
+		}
+	}
+
+	public void handleAck(long deliveryTag, boolean multiple) {
+		this.confirmed(deliveryTag, multiple, true);
+	}
+
+	public void handleNack(long deliveryTag, boolean multiple) {
+		this.confirmed(deliveryTag, multiple, false);
+	}
+
+	private void confirmed(long deliveryTag, boolean multiple, boolean ack) {
+		List<PendingPublish> confirmed = new ArrayList<PendingPublish>();
+		synchronized (this.unconfirmed) {
+			if (multiple) {
+				SortedMap<Long, PendingPublish> head = this.unconfirmed.headMap(deliveryTag + 1);
+				confirmed.addAll(head.values());
+				head.clear();
+			}
+			else {
+				PendingPublish pending = this.unconfirmed.remove(deliveryTag);
+				if (pending != null) {
+					confirmed.add(pending);
+				}
+			}
+		}
+		for (PendingPublish pending : confirmed) {
+			this.complete(pending, ack);
+		}
+	}
+
+	private void complete(PendingPublish pending, boolean ack) {
+		this.permits.release();
+		if (pending.correlationData != null) {
+			try {
+				this.confirmCallback.confirm(pending.correlationData, ack);
+			}
+			catch (Exception e) {
+				logger.error("Failed to process publisher confirm for " + pending.correlationData, e);
+			}
+		}
+		else if (!ack) {
+			logger.error("Message published to exchange '" + pending.exchange + "' with routing key '"
+					+ pending.routingKey + "' was not confirmed by the broker, and has no correlation data: "
+					+ pending.message);
+		}
+	}
+
+
+	private static class PendingPublish {
+
+		private final String exchange;
+
+		private final String routingKey;
+
+		private final Message message;
+
+		private final CorrelationData correlationData;
+
+		private PendingPublish(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+			this.exchange = exchange;
+			this.routingKey = routingKey;
+			this.message = message;
+			this.correlationData = correlationData;
+		}
+	}
+
+}
@@ -214,4 +214,14 @@ public class AmqpOutboundChannelAdapterParserTests {
 		assertEquals("bar", returned.getHeaders().get(AmqpHeaders.RETURN_ROUTING_KEY));
 		assertEquals("hello", returned.getPayload());
 	}
+
+	@Test
+	public void withBatchedPublisher() {
+		Object adapter = context.getBean("withBatchedPublisher.adapter");
+		AmqpOutboundEndpoint endpoint = TestUtils.getPropertyValue(adapter, "handler", AmqpOutboundEndpoint.class);
+		assertEquals(50, TestUtils.getPropertyValue(endpoint, "publishBatchSize"));
+		assertEquals(500, TestUtils.getPropertyValue(endpoint, "maxUnconfirmed"));
+		assertNotNull(TestUtils.getPropertyValue(endpoint, "batchingPublisher"));
+	}
+
 }
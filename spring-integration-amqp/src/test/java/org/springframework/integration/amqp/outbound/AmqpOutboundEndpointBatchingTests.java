@@ -0,0 +1,345 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.amqp.outbound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessageHandlingException;
+import org.springframework.integration.amqp.AmqpHeaders;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.message.GenericMessage;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+
+/**
+ * @since 2.2
+ */
+public class AmqpOutboundEndpointBatchingTests {
+
+	private static final Log logger = LogFactory.getLog(AmqpOutboundEndpointBatchingTests.class);
+
+	@Test
+	public void testAcksAndNacksRouted() throws Exception {
+		StandInChannel standIn = new StandInChannel(0);
+		QueueChannel ackChannel = new QueueChannel();
+		QueueChannel nackChannel = new QueueChannel();
+		AmqpOutboundEndpoint endpoint = this.createEndpoint(this.connectionFactory(standIn.channel), 10, 100,
+				ackChannel, nackChannel);
+		for (int i = 0; i < 5; i++) {
+			endpoint.handleMessage(new GenericMessage<String>("foo" + i));
+		}
+		standIn.awaitPublished(5);
+		standIn.ack(3, true);
+		for (int i = 0; i < 3; i++) {
+			Message<?> ack = ackChannel.receive(1000);
+			assertNotNull(ack);
+			assertEquals("foo" + i, ack.getPayload());
+			assertEquals(Boolean.TRUE, ack.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM));
+		}
+		standIn.nack(5, false);
+		Message<?> nack = nackChannel.receive(1000);
+		assertNotNull(nack);
+		assertEquals("foo4", nack.getPayload());
+		assertEquals(Boolean.FALSE, nack.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM));
+		standIn.ack(4, false);
+		assertEquals("foo3", ackChannel.receive(1000).getPayload());
+		assertNull(ackChannel.receive(0));
+		assertNull(nackChannel.receive(0));
+		assertEquals(0, this.outstanding(endpoint));
+		endpoint.destroy();
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		StandInChannel standIn = new StandInChannel(0);
+		final AmqpOutboundEndpoint endpoint = this.createEndpoint(this.connectionFactory(standIn.channel), 10, 2,
+				new QueueChannel(), new QueueChannel());
+		endpoint.handleMessage(new GenericMessage<String>("foo"));
+		endpoint.handleMessage(new GenericMessage<String>("bar"));
+		final CountDownLatch latch = new CountDownLatch(1);
+		Executors.newSingleThreadExecutor().execute(new Runnable() {
+			public void run() {
+				endpoint.handleMessage(new GenericMessage<String>("baz"));
+				latch.countDown();
+			}
+		});
+		assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+		standIn.awaitPublished(2);
+		standIn.ack(1, false);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		standIn.awaitPublished(3);
+		endpoint.destroy();
+	}
+
+	@Test
+	public void testPublishFailureNacksUnconfirmed() throws Exception {
+		StandInChannel standIn = new StandInChannel(0);
+		standIn.failPublish = true;
+		QueueChannel nackChannel = new QueueChannel();
+		AmqpOutboundEndpoint endpoint = this.createEndpoint(this.connectionFactory(standIn.channel), 10, 100,
+				new QueueChannel(), nackChannel);
+		endpoint.handleMessage(new GenericMessage<String>("foo"));
+		Message<?> nack = nackChannel.receive(10000);
+		assertNotNull(nack);
+		assertEquals("foo", nack.getPayload());
+		assertEquals(0, this.outstanding(endpoint));
+		endpoint.destroy();
+	}
+
+	@Test
+	public void testPublishRejectedAfterDestroy() throws Exception {
+		StandInChannel standIn = new StandInChannel(0);
+		AmqpOutboundEndpoint endpoint = this.createEndpoint(this.connectionFactory(standIn.channel), 10, 1,
+				new QueueChannel(), new QueueChannel());
+		endpoint.handleMessage(new GenericMessage<String>("foo"));
+		standIn.awaitPublished(1);
+		standIn.ack(1, false);
+		endpoint.destroy();
+		try {
+			endpoint.handleMessage(new GenericMessage<String>("bar"));
+			fail("expected MessageHandlingException");
+		}
+		catch (MessageHandlingException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(0, this.outstanding(endpoint));
+		assertEquals(1, standIn.published.get());
+	}
+
+	/**
+	 * Compares per-message sends through the RabbitTemplate (with publisher confirms on a
+	 * CachingConnectionFactory) with batched publishing, against a stand-in channel that
+	 * acks every 100 messages asynchronously.
+	 */
+	@Test
+	@Ignore
+	public void benchmarkBatchedPublishing() throws Exception {
+		int count = 200000;
+		CountingChannel ackChannel = new CountingChannel();
+		AmqpOutboundEndpoint endpoint = this.createEndpoint(this.benchmarkConnectionFactory(), 0, 0, ackChannel,
+				new QueueChannel());
+		this.runBenchmark("template", endpoint, ackChannel, count);
+		for (int batchSize : new int[] { 10, 100 }) {
+			ackChannel = new CountingChannel();
+			endpoint = this.createEndpoint(this.benchmarkConnectionFactory(), batchSize, 10000, ackChannel,
+					new QueueChannel());
+			this.runBenchmark("batched (" + batchSize + ")", endpoint, ackChannel, count);
+			endpoint.destroy();
+		}
+	}
+
+	private ConnectionFactory benchmarkConnectionFactory() throws Exception {
+		StandInChannel standIn = new StandInChannel(100);
+		com.rabbitmq.client.ConnectionFactory rabbitConnectionFactory = mock(com.rabbitmq.client.ConnectionFactory.class);
+		com.rabbitmq.client.Connection rabbitConnection = mock(com.rabbitmq.client.Connection.class);
+		when(rabbitConnectionFactory.newConnection()).thenReturn(rabbitConnection);
+		when(rabbitConnectionFactory.newConnection((ExecutorService) null)).thenReturn(rabbitConnection);
+		when(rabbitConnection.isOpen()).thenReturn(true);
+		when(rabbitConnection.createChannel()).thenReturn(standIn.channel);
+		CachingConnectionFactory connectionFactory = new CachingConnectionFactory(rabbitConnectionFactory);
+		connectionFactory.setPublisherConfirms(true);
+		return connectionFactory;
+	}
+
+	private void runBenchmark(String name, AmqpOutboundEndpoint endpoint, CountingChannel ackChannel, int count)
+			throws Exception {
+		Message<String> message = new GenericMessage<String>("foo");
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			endpoint.handleMessage(message);
+		}
+		while (ackChannel.count.get() < count - 100) {
+			Thread.sleep(1);
+		}
+		long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+		logger.warn(name + ": " + count + " messages confirmed in " + elapsed + "ms ("
+				+ (count * 1000L / elapsed) + "/s)");
+	}
+
+	private AmqpOutboundEndpoint createEndpoint(ConnectionFactory connectionFactory, int batchSize,
+			int maxUnconfirmed, MessageChannel ackChannel, MessageChannel nackChannel) {
+		AmqpOutboundEndpoint endpoint = new AmqpOutboundEndpoint(new RabbitTemplate(connectionFactory));
+		endpoint.setExchangeName("foo");
+		endpoint.setRoutingKey("bar");
+		endpoint.setConfirmCorrelationExpression("payload");
+		endpoint.setConfirmAckChannel(ackChannel);
+		endpoint.setConfirmNackChannel(nackChannel);
+		endpoint.setPublishBatchSize(batchSize);
+		if (maxUnconfirmed > 0) {
+			endpoint.setMaxUnconfirmed(maxUnconfirmed);
+		}
+		endpoint.afterPropertiesSet();
+		return endpoint;
+	}
+
+	private ConnectionFactory connectionFactory(Channel channel) {
+		ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		when(connectionFactory.createConnection()).thenReturn(connection);
+		when(connection.createChannel(false)).thenReturn(channel);
+		return connectionFactory;
+	}
+
+	private int outstanding(AmqpOutboundEndpoint endpoint) throws Exception {
+		int n = 0;
+		BatchingConfirmPublisher publisher = (BatchingConfirmPublisher) new DirectFieldAccessor(endpoint)
+				.getPropertyValue("batchingPublisher");
+		while (publisher.getOutstandingCount() > 0 && n++ < 100) {
+			Thread.sleep(10);
+		}
+		return publisher.getOutstandingCount();
+	}
+
+
+	/**
+	 * A Channel that assigns publish sequence numbers and, optionally, acks every
+	 * 'ackEvery' publishes asynchronously. A proxy rather than a mock, so that it
+	 * does not record every invocation during the benchmark.
+	 */
+	private static class StandInChannel implements InvocationHandler {
+
+		private final Channel channel = (Channel) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+				new Class<?>[] { Channel.class }, this);
+
+		private final List<ConfirmListener> listeners = new CopyOnWriteArrayList<ConfirmListener>();
+
+		private final AtomicLong published = new AtomicLong();
+
+		private final ExecutorService acker = Executors.newSingleThreadExecutor();
+
+		private final int ackEvery;
+
+		private volatile boolean failPublish;
+
+		private StandInChannel(int ackEvery) {
+			this.ackEvery = ackEvery;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("basicPublish".equals(name)) {
+				if (this.failPublish) {
+					throw new IOException("channel failed");
+				}
+				final long seq = this.published.incrementAndGet();
+				if (this.ackEvery > 0 && seq % this.ackEvery == 0) {
+					this.acker.execute(new Runnable() {
+						public void run() {
+							ack(seq, true);
+						}
+					});
+				}
+			}
+			else if ("getNextPublishSeqNo".equals(name)) {
+				return this.published.get() + 1;
+			}
+			else if ("addConfirmListener".equals(name)) {
+				this.listeners.add((ConfirmListener) args[0]);
+			}
+			else if ("isOpen".equals(name)) {
+				return true;
+			}
+			else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			}
+			else if ("equals".equals(name)) {
+				return proxy == args[0];
+			}
+			else if ("toString".equals(name)) {
+				return "StandInChannel";
+			}
+			else if (boolean.class.equals(method.getReturnType())) {
+				return false;
+			}
+			return null;
+		}
+
+		private void awaitPublished(long count) throws InterruptedException {
+			int n = 0;
+			while (this.published.get() < count && n++ < 1000) {
+				Thread.sleep(10);
+			}
+			assertEquals(count, this.published.get());
+		}
+
+		private void ack(long seq, boolean multiple) {
+			try {
+				for (ConfirmListener listener : this.listeners) {
+					listener.handleAck(seq, multiple);
+				}
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private void nack(long seq, boolean multiple) throws IOException {
+			for (ConfirmListener listener : this.listeners) {
+				listener.handleNack(seq, multiple);
+			}
+		}
+	}
+
+
+	private static class CountingChannel implements MessageChannel {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public boolean send(Message<?> message) {
+			this.count.incrementAndGet();
+			return true;
+		}
+
+		public boolean send(Message<?> message, long timeout) {
+			return this.send(message);
+		}
+	}
+
+}
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -68,6 +69,13 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 	 */
 	public static final String ID = "id";
 
+	/**
+	 * A UUID that can be passed to {@link #MessageHeaders(Map, UUID, Long)} to indicate that
+	 * no {@link #ID} header should be generated, for example for transient messages that are
+	 * never stored or correlated.
+	 */
+	public static final UUID ID_VALUE_NONE = new UUID(0, 0);
+
 	public static final String TIMESTAMP = "timestamp";
 
 	public static final String CORRELATION_ID = "correlationId";
@@ -89,19 +97,69 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 	public static final String CONTENT_TYPE = "content-type";
 
 
+	/**
+	 * Headers with fewer entries than this are always copied rather than shared.
+	 */
+	private static final int MIN_SHARED_SIZE = 8;
+
+	/**
+	 * The header values; when this instance shares the values of a parent, only the values
+	 * that were added or changed relative to the parent.
+	 */
 	private final Map<String, Object> headers;
 
+	/**
+	 * The headers whose values are shared, or null. A parent never has a parent itself,
+	 * so a lookup never needs more than two map reads.
+	 */
+	private final transient MessageHeaders parent;
+
+	/**
+	 * The keys of the parent that are not part of this instance.
+	 */
+	private final transient Set<String> removedFromParent;
+
+	private transient volatile Map<String, Object> mergedHeaders;
+
 
 	public MessageHeaders(Map<String, Object> headers) {
-		this.headers = (headers != null) ? new HashMap<String, Object>(headers) : new HashMap<String, Object>();
-		if (MessageHeaders.idGenerator == null){
-			this.headers.put(ID, UUID.randomUUID());
-		}
-		else {
-			this.headers.put(ID, MessageHeaders.idGenerator.generateId());
-		}
-		
-		this.headers.put(TIMESTAMP, new Long(System.currentTimeMillis()));
+		this(headers, null, null);
+	}
+
+	/**
+	 * Create headers with an explicit {@link #ID} and {@link #TIMESTAMP}.
+	 * <p>
+	 * If the provided headers are themselves a MessageHeaders instance, their values are
+	 * shared rather than copied.
+	 * @param headers the header values; may be null
+	 * @param id the id; null to generate one using the configured {@link IdGenerator},
+	 * or {@link #ID_VALUE_NONE} to omit the header
+	 * @param timestamp the timestamp; null to use the current time, or a negative value
+	 * to omit the header
+	 */
+	public MessageHeaders(Map<String, Object> headers, UUID id, Long timestamp) {
+		this(new HeaderChanges(headers).setIdAndTimestamp(id, timestamp));
+	}
+
+	/**
+	 * Create headers that share the values of the provided headers, including their
+	 * {@link #ID} and {@link #TIMESTAMP}, with the given changes applied. Only the changes
+	 * are copied, so deriving headers this way costs O(changes) rather than O(size).
+	 * Typically the result is used to create a new Message, which receives a new id and
+	 * timestamp in turn.
+	 * @param base the headers to derive from
+	 * @param changes header values to add or replace; null values remove the header
+	 * @param removals the names of headers to remove; may be null
+	 */
+	public MessageHeaders(MessageHeaders base, Map<String, ?> changes, Collection<String> removals) {
+		this(new HeaderChanges(base).apply(changes, removals));
+	}
+
+	private MessageHeaders(HeaderChanges changes) {
+		changes.flattenIfNecessary();
+		this.parent = changes.parent;
+		this.headers = changes.values;
+		this.removedFromParent = changes.removed;
 	}
 
 	public UUID getId() {
@@ -144,7 +202,7 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 
 	@SuppressWarnings("unchecked")
 	public <T> T get(Object key, Class<T> type) {
-		Object value = this.headers.get(key);
+		Object value = this.get(key);
 		if (value == null) {
 			return null;
 		}
@@ -156,7 +214,7 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 	}
 
 	public int hashCode() {
-		return this.headers.hashCode();
+		return this.getMergedHeaders().hashCode();
 	}
 
 	public boolean equals(Object obj) {
@@ -165,13 +223,13 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 		}
 		if (obj != null && obj instanceof MessageHeaders) {
 			MessageHeaders other = (MessageHeaders) obj;
-			return this.headers.equals(other.headers);
+			return this.getMergedHeaders().equals(other.getMergedHeaders());
 		}
 		return false;
 	}
 
 	public String toString() {
-		return this.headers.toString();
+		return this.getMergedHeaders().toString();
 	}
 
 	/*
@@ -179,35 +237,70 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 	 */
 
 	public boolean containsKey(Object key) {
+		if (this.parent != null) {
+			if (this.headers.containsKey(key)) {
+				return true;
+			}
+			return !this.removedFromParent.contains(key) && this.parent.containsKey(key);
+		}
 		return this.headers.containsKey(key);
 	}
 
 	public boolean containsValue(Object value) {
-		return this.headers.containsValue(value);
+		return this.getMergedHeaders().containsValue(value);
 	}
 
 	public Set<Map.Entry<String, Object>> entrySet() {
-		return Collections.unmodifiableSet(this.headers.entrySet());
+		return Collections.unmodifiableSet(this.getMergedHeaders().entrySet());
 	}
 
 	public Object get(Object key) {
-		return this.headers.get(key);
+		Object value = this.headers.get(key);
+		if (value == null && this.parent != null && !this.removedFromParent.contains(key)) {
+			value = this.parent.get(key);
+		}
+		return value;
 	}
 
 	public boolean isEmpty() {
-		return this.headers.isEmpty();
+		return this.getMergedHeaders().isEmpty();
 	}
 
 	public Set<String> keySet() {
-		return Collections.unmodifiableSet(this.headers.keySet());
+		return Collections.unmodifiableSet(this.getMergedHeaders().keySet());
 	}
 
 	public int size() {
-		return this.headers.size();
+		return this.getMergedHeaders().size();
 	}
 
 	public Collection<Object> values() {
-		return Collections.unmodifiableCollection(this.headers.values());
+		return Collections.unmodifiableCollection(this.getMergedHeaders().values());
+	}
+
+	/**
+	 * Return all header values in a single map. When the values are shared with a parent
+	 * the map is created on first use and cached; the returned map must not be modified.
+	 */
+	private Map<String, Object> getMergedHeaders() {
+		if (this.parent == null) {
+			return this.headers;
+		}
+		Map<String, Object> merged = this.mergedHeaders;
+		if (merged == null) {
+			merged = merge(this.parent, this.headers, this.removedFromParent);
+			this.mergedHeaders = merged;
+		}
+		return merged;
+	}
+
+	private static Map<String, Object> merge(MessageHeaders parent, Map<String, Object> values, Set<String> removed) {
+		Map<String, Object> merged = new HashMap<String, Object>(parent.headers);
+		for (String key : removed) {
+			merged.remove(key);
+		}
+		merged.putAll(values);
+		return merged;
 	}
 
 	/*
@@ -243,8 +336,9 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 	 */
 
 	private void writeObject(ObjectOutputStream out) throws IOException {
+		Map<String, Object> serializableHeaders = new HashMap<String, Object>(this.getMergedHeaders());
 		List<String> keysToRemove = new ArrayList<String>();
-		for (Map.Entry<String, Object> entry : this.headers.entrySet()) {
+		for (Map.Entry<String, Object> entry : serializableHeaders.entrySet()) {
 			if (!(entry.getValue() instanceof Serializable)) {
 				keysToRemove.add(entry.getKey());
 			}
@@ -253,15 +347,129 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 			if (logger.isInfoEnabled()) {
 				logger.info("removing non-serializable header: " + key);
 			}
-			this.headers.remove(key);
+			serializableHeaders.remove(key);
 		}
-		out.defaultWriteObject();
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("headers", serializableHeaders);
+		out.writeFields();
 	}
 
 	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
 	}
 
+	/**
+	 * Accumulates the values of new headers, sharing the values of existing headers where
+	 * that is cheaper than copying them.
+	 */
+	private static class HeaderChanges {
+
+		private MessageHeaders parent;
+
+		private Map<String, Object> values;
+
+		private Set<String> removed = Collections.emptySet();
+
+		HeaderChanges(Map<String, Object> headers) {
+			if (headers instanceof MessageHeaders) {
+				MessageHeaders base = (MessageHeaders) headers;
+				if (base.parent != null) {
+					this.parent = base.parent;
+					this.values = new HashMap<String, Object>(base.headers);
+					this.removed = base.removedFromParent;
+				}
+				else {
+					this.parent = base;
+					this.values = new HashMap<String, Object>();
+				}
+			}
+			else {
+				this.values = (headers != null) ? new HashMap<String, Object>(headers) : new HashMap<String, Object>();
+			}
+		}
+
+		HeaderChanges apply(Map<String, ?> changes, Collection<String> removals) {
+			if (removals != null) {
+				for (String key : removals) {
+					this.remove(key);
+				}
+			}
+			if (changes != null) {
+				for (Map.Entry<String, ?> entry : changes.entrySet()) {
+					if (entry.getValue() == null) {
+						this.remove(entry.getKey());
+					}
+					else {
+						this.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+			return this;
+		}
+
+		HeaderChanges setIdAndTimestamp(UUID id, Long timestamp) {
+			if (id == null) {
+				IdGenerator idGenerator = MessageHeaders.idGenerator;
+				this.put(ID, (idGenerator == null) ? UUID.randomUUID() : idGenerator.generateId());
+			}
+			else if (ID_VALUE_NONE.equals(id)) {
+				this.remove(ID);
+			}
+			else {
+				this.put(ID, id);
+			}
+			if (timestamp == null) {
+				this.put(TIMESTAMP, System.currentTimeMillis());
+			}
+			else if (timestamp < 0) {
+				this.remove(TIMESTAMP);
+			}
+			else {
+				this.put(TIMESTAMP, timestamp);
+			}
+			return this;
+		}
+
+		/**
+		 * Copy the parent's values if it is too small for sharing to pay off, or if
+		 * the changes have grown to a large part of it.
+		 */
+		void flattenIfNecessary() {
+			if (this.parent != null) {
+				int parentSize = this.parent.headers.size();
+				if (parentSize < MIN_SHARED_SIZE || this.values.size() + this.removed.size() > parentSize / 2) {
+					this.values = merge(this.parent, this.values, this.removed);
+					this.parent = null;
+					this.removed = Collections.emptySet();
+				}
+			}
+		}
+
+		private void put(String key, Object value) {
+			this.values.put(key, value);
+			if (this.removed.contains(key)) {
+				this.removed = new HashSet<String>(this.removed);
+				this.removed.remove(key);
+			}
+		}
+
+		private void remove(String key) {
+			this.values.remove(key);
+			if (this.parent != null && !this.removed.contains(key) && this.parent.headers.containsKey(key)) {
+				this.removed = new HashSet<String>(this.removed);
+				this.removed.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Strategy for generating the {@link MessageHeaders#ID} of new messages. A single
+	 * bean implementing this interface may be declared in an application context (or
+	 * configured with the &lt;message-id-generator/&gt; namespace element), in which case
+	 * it replaces the default {@link UUID#randomUUID()} strategy for all messages.
+	 * @see org.springframework.integration.util.AlternativeJdkIdGenerator
+	 * @see org.springframework.integration.util.SimpleIncrementingIdGenerator
+	 */
 	public static interface IdGenerator {
 		UUID generateId();
 	}
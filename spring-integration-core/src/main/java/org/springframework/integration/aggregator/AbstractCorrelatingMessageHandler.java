@@ -34,7 +34,6 @@ import org.springframework.integration.store.MessageGroup;
 import org.springframework.integration.store.MessageGroupCallback;
 import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.MessageStore;
-import org.springframework.integration.store.SimpleMessageGroup;
 import org.springframework.integration.store.SimpleMessageStore;
 import org.springframework.integration.util.DefaultLockRegistry;
 import org.springframework.integration.util.LockRegistry;
@@ -87,7 +86,7 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageH
 
 	private volatile boolean sequenceAware = false;
 
-	private volatile LockRegistry lockRegistry = new DefaultLockRegistry();
+	private volatile LockRegistry lockRegistry = DefaultLockRegistry.forAvailableProcessors();
 
 	private boolean lockRegistrySet = false;
 
@@ -387,44 +386,4 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageH
 		}
 		return false;
 	}
-
-	private static class SequenceAwareMessageGroup extends SimpleMessageGroup {
-
-		public SequenceAwareMessageGroup(MessageGroup messageGroup) {
-			super(messageGroup);
-		}
-
-		/**
-		 * This method determines whether messages have been added to this group that supersede the given message based on
-		 * its sequence id. This can be helpful to avoid ending up with sequences larger than their required sequence size
-		 * or sequences that are missing certain sequence numbers.
-		 */
-		@Override
-		public boolean canAdd(Message<?> message) {
-			if (this.size() == 0) {
-				return true;
-			}
-			Integer messageSequenceNumber = message.getHeaders().getSequenceNumber();
-			if (messageSequenceNumber != null && messageSequenceNumber > 0) {
-				Integer messageSequenceSize = message.getHeaders().getSequenceSize();
-				if (!messageSequenceSize.equals(this.getSequenceSize())) {
-					return false;
-				}
-				else {
-					return !this.containsSequenceNumber(this.getMessages(), messageSequenceNumber);
-				}
-			}
-			return true;
-		}
-
-		private boolean containsSequenceNumber(Collection<Message<?>> messages, Integer messageSequenceNumber) {
-			for (Message<?> member : messages) {
-				Integer memberSequenceNumber = member.getHeaders().getSequenceNumber();
-				if (messageSequenceNumber.equals(memberSequenceNumber)) {
-					return true;
-				}
-			}
-			return false;
-		}
-	}
 }
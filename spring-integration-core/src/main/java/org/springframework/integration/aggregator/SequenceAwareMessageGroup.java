@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.integration.aggregator;
+
+import java.util.Collection;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.SimpleMessageGroup;
+
+/**
+ * A {@link MessageGroup} view that rejects messages superseded by those already in the group, based on
+ * their sequence details. All other operations are delegated to the target group, which is not copied.
+ *
+ * @author Iwein Fuld
+ * @author Dave Syer
+ * @since 2.2
+ */
+class SequenceAwareMessageGroup implements MessageGroup {
+
+	private final MessageGroup target;
+
+	public SequenceAwareMessageGroup(MessageGroup target) {
+		this.target = target;
+	}
+
+	/**
+	 * This method determines whether messages have been added to this group that supersede the given message based on
+	 * its sequence id. This can be helpful to avoid ending up with sequences larger than their required sequence size
+	 * or sequences that are missing certain sequence numbers.
+	 */
+	public boolean canAdd(Message<?> message) {
+		if (this.size() == 0) {
+			return true;
+		}
+		Integer messageSequenceNumber = message.getHeaders().getSequenceNumber();
+		if (messageSequenceNumber != null && messageSequenceNumber > 0) {
+			int messageSequenceSize = message.getHeaders().getSequenceSize();
+			int sequenceSize = this.getSequenceSize();
+			// a size of 0 is that of a lazily split sequence before its last message
+			if (messageSequenceSize != 0 && sequenceSize != 0 && messageSequenceSize != sequenceSize) {
+				return false;
+			}
+			else {
+				return !this.containsSequenceNumber(messageSequenceNumber);
+			}
+		}
+		return true;
+	}
+
+	private boolean containsSequenceNumber(Integer messageSequenceNumber) {
+		if (this.target instanceof SimpleMessageGroup) {
+			return ((SimpleMessageGroup) this.target).containsSequence(messageSequenceNumber);
+		}
+		for (Message<?> member : this.target.getMessages()) {
+			Integer memberSequenceNumber = member.getHeaders().getSequenceNumber();
+			if (messageSequenceNumber.equals(memberSequenceNumber)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public Collection<Message<?>> getMessages() {
+		return this.target.getMessages();
+	}
+
+	public Object getGroupId() {
+		return this.target.getGroupId();
+	}
+
+	public int getLastReleasedMessageSequenceNumber() {
+		return this.target.getLastReleasedMessageSequenceNumber();
+	}
+
+	public boolean isComplete() {
+		return this.target.isComplete();
+	}
+
+	public void complete() {
+		this.target.complete();
+	}
+
+	public int getSequenceSize() {
+		return this.target.getSequenceSize();
+	}
+
+	public int size() {
+		return this.target.size();
+	}
+
+	public Message<?> getOne() {
+		return this.target.getOne();
+	}
+
+	public long getTimestamp() {
+		return this.target.getTimestamp();
+	}
+
+	public long getLastModified() {
+		return this.target.getLastModified();
+	}
+
+	@Override
+	public String toString() {
+		return this.target.toString();
+	}
+
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.aggregator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessageDeliveryException;
+import org.springframework.integration.MessageHeaders;
+import org.springframework.integration.channel.MessagePublishingErrorHandler;
+import org.springframework.integration.core.MessageProducer;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.integration.store.SimpleMessageStore;
+import org.springframework.integration.util.DefaultLockRegistry;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * An aggregator that partitions correlation keys across a number of independent shards. Each shard is an
+ * {@link AggregatingMessageHandler} with its own {@link MessageGroupStore} and lock registry, fed by its own
+ * queue and worker thread. A Message is routed to a shard by the hash of its correlation key, so all Messages
+ * of a group are aggregated by the same thread, in the order in which they were received, while unrelated
+ * groups are aggregated in parallel without sharing a lock or a store.
+ * <p>
+ * Since the caller's thread only enqueues the Message, exceptions thrown while aggregating are passed to the
+ * {@link ErrorHandler}; by default they are sent to the 'errorChannel' if a BeanFactory is available, and
+ * logged otherwise.
+ * <p>
+ * Each shard's store can be expired independently, for example by a
+ * {@link org.springframework.integration.store.MessageGroupStoreReaper} per store, as returned by
+ * {@link #getMessageStores()}; {@link #expireMessageGroups(long)} expires the groups of all shards.
+ * Expired groups are completed or discarded by their shard's aggregator, as with a single aggregator.
+ * <p>
+ * The worker threads are created when the handler is started and end when it is stopped; while stopped,
+ * Messages are rejected with a {@link MessageDeliveryException}. The handler is started in an early phase,
+ * and so stopped in a late one, by default, so that the endpoints which feed it stop first.
+ *
+ * @since 2.2
+ */
+public class ShardedAggregatingMessageHandler extends AbstractMessageHandler implements MessageProducer,
+		SmartLifecycle, DisposableBean {
+
+	private static final long WORKER_POLL_TIMEOUT = 100;
+
+	private final MessageGroupProcessor processor;
+
+	private final int shardCount;
+
+	private volatile List<MessageGroupStore> messageStores;
+
+	private volatile CorrelationStrategy correlationStrategy =
+			new HeaderAttributeCorrelationStrategy(MessageHeaders.CORRELATION_ID);
+
+	private volatile ReleaseStrategy releaseStrategy;
+
+	private volatile MessageChannel outputChannel;
+
+	private volatile MessageChannel discardChannel;
+
+	private volatile Long sendTimeout;
+
+	private volatile boolean sendPartialResultOnExpiry;
+
+	private volatile boolean expireGroupsUponCompletion;
+
+	private volatile int queueCapacity = Integer.MAX_VALUE;
+
+	private volatile ThreadFactory threadFactory;
+
+	private volatile ErrorHandler errorHandler;
+
+	private volatile long shutdownTimeout = 10000;
+
+	private volatile Shard[] shards;
+
+	private volatile boolean running;
+
+	private volatile boolean autoStartup = true;
+
+	private volatile int phase = Integer.MIN_VALUE;
+
+	private final ReentrantLock lifecycleLock = new ReentrantLock();
+
+
+	/**
+	 * Create a sharded aggregator with the given number of shards, each of which stores its groups in a
+	 * {@link SimpleMessageStore}. A shard count equal to the number of available processors is a good start.
+	 */
+	public ShardedAggregatingMessageHandler(MessageGroupProcessor processor, int shardCount) {
+		Assert.notNull(processor, "'processor' must not be null");
+		Assert.isTrue(shardCount > 0, "'shardCount' must be positive");
+		this.processor = processor;
+		this.shardCount = shardCount;
+	}
+
+
+	/**
+	 * Provide one distinct {@link MessageGroupStore} per shard, e.g. to configure group timeouts or persistence.
+	 */
+	public void setMessageStores(List<MessageGroupStore> messageStores) {
+		Assert.notNull(messageStores, "'messageStores' must not be null");
+		Assert.isTrue(messageStores.size() == this.shardCount, "exactly one MessageGroupStore per shard is required");
+		Map<MessageGroupStore, Boolean> distinctStores = new IdentityHashMap<MessageGroupStore, Boolean>();
+		for (MessageGroupStore messageStore : messageStores) {
+			Assert.notNull(messageStore, "'messageStores' must not contain null elements");
+			distinctStores.put(messageStore, Boolean.TRUE);
+		}
+		Assert.isTrue(distinctStores.size() == this.shardCount, "shards must not share a MessageGroupStore");
+		this.messageStores = new ArrayList<MessageGroupStore>(messageStores);
+	}
+
+	public void setCorrelationStrategy(CorrelationStrategy correlationStrategy) {
+		Assert.notNull(correlationStrategy, "'correlationStrategy' must not be null");
+		this.correlationStrategy = correlationStrategy;
+	}
+
+	/**
+	 * Set the {@link ReleaseStrategy} shared by all shards; it must be thread safe.
+	 */
+	public void setReleaseStrategy(ReleaseStrategy releaseStrategy) {
+		this.releaseStrategy = releaseStrategy;
+	}
+
+	public void setOutputChannel(MessageChannel outputChannel) {
+		this.outputChannel = outputChannel;
+	}
+
+	public void setDiscardChannel(MessageChannel discardChannel) {
+		this.discardChannel = discardChannel;
+	}
+
+	public void setSendTimeout(long sendTimeout) {
+		this.sendTimeout = sendTimeout;
+	}
+
+	public void setSendPartialResultOnExpiry(boolean sendPartialResultOnExpiry) {
+		this.sendPartialResultOnExpiry = sendPartialResultOnExpiry;
+	}
+
+	public void setExpireGroupsUponCompletion(boolean expireGroupsUponCompletion) {
+		this.expireGroupsUponCompletion = expireGroupsUponCompletion;
+	}
+
+	/**
+	 * Set the capacity of each shard's queue. When a shard's queue is full, senders block until its
+	 * worker catches up. Unbounded by default.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		Assert.isTrue(queueCapacity > 0, "'queueCapacity' must be positive");
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Set the {@link ThreadFactory} that creates the shards' worker threads. By default, daemon threads
+	 * named after the component are created.
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Set how long in milliseconds {@link #stop()} waits for each worker thread to end, both before and after
+	 * interrupting it. Default 10000.
+	 */
+	public void setShutdownTimeout(long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	public void setAutoStartup(boolean autoStartup) {
+		this.autoStartup = autoStartup;
+	}
+
+	public void setPhase(int phase) {
+		this.phase = phase;
+	}
+
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	@Override
+	public String getComponentType() {
+		return "aggregator";
+	}
+
+	/**
+	 * Returns the {@link MessageGroupStore} of each shard, in shard order.
+	 */
+	public List<MessageGroupStore> getMessageStores() {
+		List<MessageGroupStore> messageStores = new ArrayList<MessageGroupStore>();
+		for (Shard shard : this.getShards()) {
+			messageStores.add(shard.messageStore);
+		}
+		return Collections.unmodifiableList(messageStores);
+	}
+
+	/**
+	 * Returns the number of Messages waiting in the queues of all shards.
+	 */
+	public int getQueueSize() {
+		int size = 0;
+		for (Shard shard : this.getShards()) {
+			size += shard.queue.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Expire the groups of all shards that are older than the given timeout in milliseconds.
+	 * @return the number of groups expired
+	 */
+	public int expireMessageGroups(long timeout) {
+		int count = 0;
+		for (Shard shard : this.getShards()) {
+			count += shard.messageStore.expireMessageGroups(timeout);
+		}
+		return count;
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		if (this.errorHandler == null) {
+			MessagePublishingErrorHandler errorHandler = new MessagePublishingErrorHandler();
+			if (this.getBeanFactory() != null) {
+				errorHandler.setBeanFactory(this.getBeanFactory());
+			}
+			this.errorHandler = errorHandler;
+		}
+		if (this.threadFactory == null) {
+			String prefix = (this.getComponentName() != null) ? this.getComponentName() : "aggregator";
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix + "-shard-");
+			threadFactory.setDaemon(true);
+			this.threadFactory = threadFactory;
+		}
+		Shard[] shards = new Shard[this.shardCount];
+		for (int i = 0; i < shards.length; i++) {
+			MessageGroupStore messageStore = (this.messageStores != null) ? this.messageStores.get(i)
+					: new SimpleMessageStore();
+			shards[i] = new Shard(this.createAggregator(messageStore), messageStore);
+		}
+		this.shards = shards;
+	}
+
+	private AggregatingMessageHandler createAggregator(MessageGroupStore messageStore) {
+		AggregatingMessageHandler aggregator = new AggregatingMessageHandler(this.processor, messageStore,
+				this.correlationStrategy, this.releaseStrategy);
+		aggregator.setLockRegistry(new DefaultLockRegistry());
+		if (this.outputChannel != null) {
+			aggregator.setOutputChannel(this.outputChannel);
+		}
+		if (this.discardChannel != null) {
+			aggregator.setDiscardChannel(this.discardChannel);
+		}
+		if (this.sendTimeout != null) {
+			aggregator.setSendTimeout(this.sendTimeout);
+		}
+		aggregator.setSendPartialResultOnExpiry(this.sendPartialResultOnExpiry);
+		aggregator.setExpireGroupsUponCompletion(this.expireGroupsUponCompletion);
+		aggregator.setShouldTrack(false);
+		if (this.getBeanFactory() != null) {
+			aggregator.setBeanFactory(this.getBeanFactory());
+		}
+		aggregator.afterPropertiesSet();
+		return aggregator;
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) throws Exception {
+		Shard[] shards = this.getShards();
+		if (!this.running) {
+			throw new MessageDeliveryException(message, "aggregator '" + this.getComponentName() + "' is not running");
+		}
+		Object correlationKey = this.correlationStrategy.getCorrelationKey(message);
+		Assert.state(correlationKey != null, "Null correlation not allowed.  Maybe the CorrelationStrategy is failing?");
+		int hash = correlationKey.hashCode();
+		hash ^= (hash >>> 16);
+		Shard shard = shards[(hash & Integer.MAX_VALUE) % shards.length];
+		try {
+			shard.queue.put(message);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessageDeliveryException(message, "interrupted while waiting for the aggregator's shard", e);
+		}
+		// the queue may have been drained by stop() before the Message was added
+		if (!this.running && shard.queue.remove(message)) {
+			throw new MessageDeliveryException(message, "aggregator '" + this.getComponentName() + "' is not running");
+		}
+	}
+
+	/**
+	 * Creates and starts a worker thread for each shard.
+	 */
+	public void start() {
+		Shard[] shards = this.getShards();
+		this.lifecycleLock.lock();
+		try {
+			if (!this.running) {
+				this.running = true;
+				for (Shard shard : shards) {
+					shard.worker = this.threadFactory.newThread(shard);
+					shard.worker.start();
+				}
+				if (logger.isInfoEnabled()) {
+					logger.info("started " + this);
+				}
+			}
+		}
+		finally {
+			this.lifecycleLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits up to the shutdown timeout for each worker thread to finish its current Message and end, then
+	 * interrupts it and waits once more if it has not. The Messages still queued for a shard are then
+	 * aggregated on the calling thread or, if the shard's worker did not end, rejected: each is passed to the
+	 * {@link ErrorHandler} in a {@link MessageDeliveryException}.
+	 */
+	public void stop() {
+		Shard[] shards = this.shards;
+		this.lifecycleLock.lock();
+		try {
+			if (!this.running) {
+				return;
+			}
+			this.running = false;
+			for (Shard shard : shards) {
+				shard.awaitWorker();
+			}
+			for (Shard shard : shards) {
+				shard.drain();
+			}
+			if (logger.isInfoEnabled()) {
+				logger.info("stopped " + this);
+			}
+		}
+		finally {
+			this.lifecycleLock.unlock();
+		}
+	}
+
+	public void stop(Runnable callback) {
+		this.stop();
+		callback.run();
+	}
+
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	public boolean isAutoStartup() {
+		return this.autoStartup;
+	}
+
+	public int getPhase() {
+		return this.phase;
+	}
+
+	public void destroy() throws Exception {
+		this.stop();
+	}
+
+	private Shard[] getShards() {
+		Shard[] shards = this.shards;
+		Assert.state(shards != null, "ShardedAggregatingMessageHandler has not been initialized");
+		return shards;
+	}
+
+
+	private class Shard implements Runnable {
+
+		private final AggregatingMessageHandler aggregator;
+
+		private final MessageGroupStore messageStore;
+
+		private final BlockingQueue<Message<?>> queue = new LinkedBlockingQueue<Message<?>>(queueCapacity);
+
+		private volatile Thread worker;
+
+		private volatile boolean workerEnded;
+
+		Shard(AggregatingMessageHandler aggregator, MessageGroupStore messageStore) {
+			this.aggregator = aggregator;
+			this.messageStore = messageStore;
+		}
+
+		public void run() {
+			while (running) {
+				Message<?> message = null;
+				try {
+					message = this.queue.poll(WORKER_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (message != null) {
+					this.aggregate(message);
+				}
+			}
+		}
+
+		private void aggregate(Message<?> message) {
+			try {
+				this.aggregator.handleMessage(message);
+			}
+			catch (Throwable t) {
+				errorHandler.handleError(t);
+			}
+		}
+
+		private void awaitWorker() {
+			try {
+				this.worker.join(shutdownTimeout);
+				if (this.worker.isAlive()) {
+					this.worker.interrupt();
+					this.worker.join(shutdownTimeout);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.workerEnded = !this.worker.isAlive();
+		}
+
+		private void drain() {
+			Message<?> message = null;
+			while ((message = this.queue.poll()) != null) {
+				if (this.workerEnded) {
+					this.aggregate(message);
+				}
+				else {
+					errorHandler.handleError(new MessageDeliveryException(message, "aggregator '"
+							+ getComponentName() + "' stopped before the Message could be aggregated"));
+				}
+			}
+		}
+	}
+
+}
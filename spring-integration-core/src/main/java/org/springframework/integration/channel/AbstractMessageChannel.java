@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -223,6 +223,10 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			if (logger.isDebugEnabled()) {
 				logger.debug("preSend on channel '" + channel + "', message: " + message);
 			}
+			// avoid creating an Iterator for each Message when there are no interceptors
+			if (this.interceptors.isEmpty()) {
+				return message;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				message = interceptor.preSend(message, channel);
 				if (message == null) {
@@ -236,6 +240,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			if (logger.isDebugEnabled()) {
 				logger.debug("postSend (sent=" + sent + ") on channel '" + channel + "', message: " + message);
 			}
+			if (this.interceptors.isEmpty()) {
+				return;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				interceptor.postSend(message, channel, sent);
 			}
@@ -245,6 +252,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			if (logger.isTraceEnabled()) {
 				logger.trace("preReceive on channel '" + channel + "'");
 			}
+			if (this.interceptors.isEmpty()) {
+				return true;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				if (!interceptor.preReceive(channel)) {
 					return false;
@@ -260,6 +270,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			else if (logger.isTraceEnabled()) {
 				logger.trace("postReceive on channel '" + channel + "', message is null");
 			}
+			if (this.interceptors.isEmpty()) {
+				return message;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				message = interceptor.postReceive(message, channel);
 				if (message == null) {
@@ -17,6 +17,7 @@
 package org.springframework.integration.channel;
 
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -93,6 +94,17 @@ public class PriorityChannel extends QueueChannel {
 		}
 		return message;
 	}
+
+	@Override
+	protected int doReceive(List<Message<?>> messages, int maxMessages) {
+		int start = messages.size();
+		int count = super.doReceive(messages, maxMessages);
+		for (int i = start; i < messages.size(); i++) {
+			messages.set(i, ((MessageWrapper) messages.get(i)).getRootMessage());
+			upperBound.release();
+		}
+		return count;
+	}
 	
 	private static class SequenceFallbackComparator implements Comparator<Message<?>> {
 		
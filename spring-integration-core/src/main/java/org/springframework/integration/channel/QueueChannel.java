@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -101,6 +101,56 @@ public class QueueChannel extends AbstractPollableChannel {
 		}
 	}
 
+	/**
+	 * Receive up to <code>maxMessages</code> Messages at once. Waits for the first Message as
+	 * {@link #receive(long)} does; any further Messages are only taken if they are available
+	 * immediately. The interceptors' preReceive method is invoked once for the whole batch and
+	 * postReceive for each Message.
+	 * 
+	 * @param maxMessages the maximum number of Messages to receive
+	 * @param timeout the timeout in milliseconds to wait for the first Message
+	 * 
+	 * @return the Messages received, in order; an empty list if no Message is available within
+	 * the allotted time or the receiving thread is interrupted.
+	 */
+	public List<Message<?>> receive(int maxMessages, long timeout) {
+		Assert.isTrue(maxMessages > 0, "'maxMessages' must be positive");
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		if (!this.getInterceptors().preReceive(this)) {
+			return messages;
+		}
+		Message<?> message = this.doReceive(timeout);
+		if (message == null) {
+			this.getInterceptors().postReceive(null, this);
+			return messages;
+		}
+		messages.add(message);
+		if (maxMessages > 1) {
+			this.doReceive(messages, maxMessages - 1);
+		}
+		for (int i = 0; i < messages.size(); ) {
+			message = this.getInterceptors().postReceive(messages.get(i), this);
+			if (message == null) {
+				messages.remove(i);
+			}
+			else {
+				messages.set(i++, message);
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * Add the Messages that are available immediately, up to the given number, to the list.
+	 * Subclasses that wrap Messages in their queue must override this method along with
+	 * {@link #doReceive(long)}.
+	 * 
+	 * @return the number of Messages added
+	 */
+	protected int doReceive(List<Message<?>> messages, int maxMessages) {
+		return this.queue.drainTo(messages, maxMessages);
+	}
+
 	/**
 	 * Remove all {@link Message Messages} from this channel.
 	 */
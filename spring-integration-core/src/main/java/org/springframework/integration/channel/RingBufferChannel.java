@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.util.RingBufferBlockingQueue;
+import org.springframework.integration.util.RingBufferBlockingQueue.WaitStrategy;
+
+/**
+ * A {@link QueueChannel} backed by a preallocated, lock-free {@link RingBufferBlockingQueue}.
+ * Senders and receivers never contend on a lock and no node is allocated per Message, which
+ * makes this channel a better fit than a default QueueChannel when many threads send to the
+ * same channel. The capacity is always bounded.
+ *
+ * @since 2.2
+ */
+public class RingBufferChannel extends QueueChannel {
+
+	private final WaitStrategy waitStrategy;
+
+
+	/**
+	 * Create a channel with the specified capacity whose senders and receivers yield while waiting.
+	 */
+	public RingBufferChannel(int capacity) {
+		this(capacity, WaitStrategy.YIELD);
+	}
+
+	/**
+	 * Create a channel with the specified capacity whose senders and receivers wait according
+	 * to the provided {@link WaitStrategy}.
+	 */
+	public RingBufferChannel(int capacity, WaitStrategy waitStrategy) {
+		super(new RingBufferBlockingQueue<Message<?>>(capacity, waitStrategy));
+		this.waitStrategy = waitStrategy;
+	}
+
+
+	public WaitStrategy getWaitStrategy() {
+		return this.waitStrategy;
+	}
+
+	/**
+	 * Remove any {@link Message Messages} that are not accepted by the provided selector.
+	 * Since the ring buffer cannot remove arbitrary elements, all Messages are drained and the
+	 * accepted ones are sent to the channel again, so Messages sent concurrently may be received
+	 * before them. Accepted Messages that no longer fit because the channel was filled
+	 * concurrently are returned along with the purged ones.
+	 */
+	@Override
+	public List<Message<?>> purge(MessageSelector selector) {
+		List<Message<?>> messages = this.clear();
+		if (selector == null) {
+			return messages;
+		}
+		List<Message<?>> purgedMessages = new ArrayList<Message<?>>();
+		for (Message<?> message : messages) {
+			if (!selector.accept(message) || !this.doSend(message, 0)) {
+				purgedMessages.add(message);
+			}
+		}
+		return purgedMessages;
+	}
+
+}
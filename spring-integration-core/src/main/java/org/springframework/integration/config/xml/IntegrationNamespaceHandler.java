@@ -69,6 +69,7 @@ public class IntegrationNamespaceHandler extends AbstractIntegrationNamespaceHan
 		registerBeanDefinitionParser("channel-interceptor", new GlobalChannelInterceptorParser());
 		registerBeanDefinitionParser("converter", new ConverterParser());
 		registerBeanDefinitionParser("message-history", new MessageHistoryParser());
+		registerBeanDefinitionParser("message-id-generator", new MessageIdGeneratorParser());
 		registerBeanDefinitionParser("control-bus", new ControlBusParser());
 		registerBeanDefinitionParser("wire-tap", new GlobalWireTapParser());
 	}
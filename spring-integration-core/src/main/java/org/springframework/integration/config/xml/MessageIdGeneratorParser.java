@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.config.xml;
+
+import org.w3c.dom.Element;
+
+import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
+
+/**
+ * Parser for the &lt;message-id-generator&gt; element of the integration namespace.
+ * Registers one of the built-in {@link org.springframework.integration.MessageHeaders.IdGenerator}
+ * implementations, which is then picked up by the
+ * {@link org.springframework.integration.config.IdGeneratorConfigurer}.
+ *
+ * @since 2.2
+ */
+public class MessageIdGeneratorParser extends AbstractSingleBeanDefinitionParser {
+
+	private static final String RANDOM_GENERATOR_CLASSNAME =
+			"org.springframework.integration.util.AlternativeJdkIdGenerator";
+
+	private static final String INCREMENTING_GENERATOR_CLASSNAME =
+			"org.springframework.integration.util.SimpleIncrementingIdGenerator";
+
+	@Override
+	protected String getBeanClassName(Element element) {
+		String type = element.getAttribute("type");
+		if ("incrementing".equals(type)) {
+			return INCREMENTING_GENERATOR_CLASSNAME;
+		}
+		return RANDOM_GENERATOR_CLASSNAME;
+	}
+
+	@Override
+	protected boolean shouldGenerateIdAsFallback() {
+		return true;
+	}
+
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.integration.config.xml;
 
+import java.util.Locale;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Element;
@@ -28,6 +30,7 @@ import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.channel.PriorityChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.channel.RendezvousChannel;
+import org.springframework.integration.channel.RingBufferChannel;
 import org.springframework.integration.store.MessageGroupQueue;
 import org.springframework.util.StringUtils;
 import org.springframework.util.xml.DomUtils;
@@ -49,7 +52,21 @@ public class PointToPointChannelParser extends AbstractChannelParser {
 		Element queueElement = null;
 
 		// configure a queue-based channel if any queue sub-element is defined
-		if ((queueElement = DomUtils.getChildElementByTagName(element, "queue")) != null) {
+		if ((queueElement = DomUtils.getChildElementByTagName(element, "queue")) != null
+				&& StringUtils.hasText(queueElement.getAttribute("wait-strategy"))) {
+			builder = BeanDefinitionBuilder.genericBeanDefinition(RingBufferChannel.class);
+			if (StringUtils.hasText(queueElement.getAttribute("message-store"))
+					|| StringUtils.hasText(queueElement.getAttribute("ref"))) {
+				parserContext.getReaderContext().error("The 'wait-strategy' attribute is not allowed"
+						+ " when providing a 'message-store' or a 'ref' to a custom queue.", element);
+			}
+			if (!this.parseQueueCapacity(builder, queueElement)) {
+				parserContext.getReaderContext().error("The 'capacity' attribute is required"
+						+ " when providing a 'wait-strategy'.", element);
+			}
+			builder.addConstructorArgValue(queueElement.getAttribute("wait-strategy").toUpperCase(Locale.ENGLISH));
+		}
+		else if (queueElement != null) {
 			builder = BeanDefinitionBuilder.genericBeanDefinition(QueueChannel.class);
 			boolean hasStoreRef = this.parseStoreRef(builder, queueElement, element.getAttribute(ID_ATTRIBUTE));
 			boolean hasQueueRef = this.parseQueueRef(builder, queueElement);
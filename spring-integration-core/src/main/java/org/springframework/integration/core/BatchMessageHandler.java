@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.core;
+
+import java.util.List;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessagingException;
+
+/**
+ * A {@link MessageHandler} that can also handle several Messages at once, for example
+ * within a single transaction or a single round trip to an external system. A
+ * {@link org.springframework.integration.endpoint.PollingConsumer} with a batch size greater
+ * than 1 passes all Messages it receives in one poll to {@link #handleMessages(List)}.
+ * 
+ * @since 2.2
+ */
+public interface BatchMessageHandler extends MessageHandler {
+
+	/**
+	 * Handles the messages, in order. If handling fails, the exception applies to the whole
+	 * batch; the handler decides how many of the messages, if any, have been handled.
+	 * 
+	 * @param messages the messages to be handled; never empty
+	 * @throws org.springframework.integration.MessageHandlingException when something fails during the handling
+	 * @see MessageHandler#handleMessage(Message)
+	 */
+	void handleMessages(List<Message<?>> messages) throws MessagingException;
+
+}
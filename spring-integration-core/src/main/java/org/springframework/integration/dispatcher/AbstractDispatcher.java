@@ -47,14 +47,29 @@ public abstract class AbstractDispatcher implements MessageDispatcher {
 
 	private final Set<MessageHandler> handlers = new OrderedAwareLinkedHashSet<MessageHandler>();
 
+	/**
+	 * A snapshot of the handlers, replaced whenever a handler is added or
+	 * removed, so that dispatching does not need to copy the Set.
+	 */
+	private volatile MessageHandler[] handlerArray = new MessageHandler[0];
+
 
 	/**
 	 * Returns a copied, unmodifiable List of this dispatcher's handlers. This
 	 * is provided for access by subclasses.
 	 */
 	protected List<MessageHandler> getHandlers() {
-		return Collections.<MessageHandler>unmodifiableList(Arrays.<MessageHandler>asList(
-				this.handlers.toArray(new MessageHandler[this.handlers.size()])));
+		return Collections.<MessageHandler>unmodifiableList(Arrays.<MessageHandler>asList(this.handlerArray));
+	}
+
+	/**
+	 * Returns the handler if exactly one is registered, otherwise
+	 * <code>null</code>. This allows subclasses to dispatch to a single
+	 * subscriber without creating a List or an Iterator.
+	 */
+	protected MessageHandler getSingleHandler() {
+		MessageHandler[] handlers = this.handlerArray;
+		return (handlers.length == 1) ? handlers[0] : null;
 	}
 
 	/**
@@ -64,7 +79,11 @@ public abstract class AbstractDispatcher implements MessageDispatcher {
 	 */
 	public boolean addHandler(MessageHandler handler) {
 		Assert.notNull(handler, "handler must not be null");
-		return this.handlers.add(handler);
+		synchronized (this.handlers) {
+			boolean added = this.handlers.add(handler);
+			this.handlerArray = this.handlers.toArray(new MessageHandler[this.handlers.size()]);
+			return added;
+		}
 	}
 
 	/**
@@ -74,7 +93,11 @@ public abstract class AbstractDispatcher implements MessageDispatcher {
 	 */
 	public boolean removeHandler(MessageHandler handler) {
 		Assert.notNull(handler, "handler must not be null");
-		return this.handlers.remove(handler);
+		synchronized (this.handlers) {
+			boolean removed = this.handlers.remove(handler);
+			this.handlerArray = this.handlers.toArray(new MessageHandler[this.handlers.size()]);
+			return removed;
+		}
 	}
 
 	public String toString() {
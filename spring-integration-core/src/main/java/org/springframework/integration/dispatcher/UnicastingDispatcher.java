@@ -103,6 +103,17 @@ public class UnicastingDispatcher extends AbstractDispatcher {
 	}
 
 	private boolean doDispatch(Message<?> message) {
+		MessageHandler singleHandler = this.getSingleHandler();
+		if (singleHandler != null && this.isOrderIrrelevantForSingleHandler()) {
+			// fast path: no List, Iterator or exception List is created
+			try {
+				singleHandler.handleMessage(message);
+				return true;
+			}
+			catch (Exception e) {
+				throw this.asRuntimeException(e, message);
+			}
+		}
 		boolean success = false;
 		Iterator<MessageHandler> handlerIterator = this.getHandlerIterator(message);
 		if (!handlerIterator.hasNext()) {
@@ -116,21 +127,34 @@ public class UnicastingDispatcher extends AbstractDispatcher {
 				success = true; // we have a winner.
 			}
 			catch (Exception e) {
-				RuntimeException runtimeException = (e instanceof RuntimeException)
-						? (RuntimeException) e
-						: new MessageDeliveryException(message,
-								"Dispatcher failed to deliver Message.", e);
-				if (e instanceof MessagingException &&
-						((MessagingException) e).getFailedMessage() == null) {
-					((MessagingException) e).setFailedMessage(message);
-				}
-				exceptions.add(runtimeException);
+				exceptions.add(this.asRuntimeException(e, message));
 				this.handleExceptions(exceptions, message, !handlerIterator.hasNext());
 			}
 		}
 		return success;
 	}
 
+	/**
+	 * A single handler is always the only one to try, unless a custom
+	 * {@link LoadBalancingStrategy} decides otherwise.
+	 */
+	private boolean isOrderIrrelevantForSingleHandler() {
+		LoadBalancingStrategy loadBalancingStrategy = this.loadBalancingStrategy;
+		return loadBalancingStrategy == null || loadBalancingStrategy instanceof RoundRobinLoadBalancingStrategy;
+	}
+
+	private RuntimeException asRuntimeException(Exception e, Message<?> message) {
+		RuntimeException runtimeException = (e instanceof RuntimeException)
+				? (RuntimeException) e
+				: new MessageDeliveryException(message,
+						"Dispatcher failed to deliver Message.", e);
+		if (e instanceof MessagingException &&
+				((MessagingException) e).getFailedMessage() == null) {
+			((MessagingException) e).setFailedMessage(message);
+		}
+		return runtimeException;
+	}
+
 	/**
 	 * Returns the iterator that will be used to loop over the handlers.
 	 * Delegates to a {@link LoadBalancingStrategy} if available. Otherwise,
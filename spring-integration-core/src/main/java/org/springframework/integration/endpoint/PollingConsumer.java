@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,7 +19,12 @@ package org.springframework.integration.endpoint;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.BatchMessageHandler;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.core.PollableChannel;
 import org.springframework.util.Assert;
@@ -27,6 +32,11 @@ import org.springframework.util.Assert;
 /**
  * Message Endpoint that connects any {@link MessageHandler} implementation
  * to a {@link PollableChannel}.
+ * <p>
+ * If the handler is a {@link BatchMessageHandler} and the batch size is greater
+ * than 1, each poll receives up to that many Messages and passes them to the
+ * handler at once. A {@link QueueChannel} then drains them from its queue in a
+ * single operation.
  * 
  * @author Mark Fisher
  * @author Oleg Zhurakousky
@@ -40,6 +50,8 @@ public class PollingConsumer extends AbstractPollingEndpoint {
 	private final MessageHandler handler;
 
 	private volatile long receiveTimeout = 1000;
+
+	private volatile int batchSize = 1;
 	
 	public PollingConsumer(PollableChannel inputChannel, MessageHandler handler) {
 		Assert.notNull(inputChannel, "inputChannel must not be null");
@@ -53,8 +65,20 @@ public class PollingConsumer extends AbstractPollingEndpoint {
 		this.receiveTimeout = receiveTimeout;
 	}
 
+	/**
+	 * Set the maximum number of Messages to receive in one poll and pass to a
+	 * {@link BatchMessageHandler}. The default is 1; the value is ignored for
+	 * handlers that do not implement {@link BatchMessageHandler}.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
 	@Override
 	protected boolean doPoll() {
+		if (this.batchSize > 1 && this.handler instanceof BatchMessageHandler) {
+			return this.doPollBatch();
+		}
 		Message<?> message = (this.receiveTimeout >= 0)
 				? this.inputChannel.receive(this.receiveTimeout)
 				: this.inputChannel.receive();
@@ -70,4 +94,29 @@ public class PollingConsumer extends AbstractPollingEndpoint {
 		this.handler.handleMessage(message);
 		return true;
 	}
+
+	private boolean doPollBatch() {
+		List<Message<?>> messages = null;
+		if (this.inputChannel instanceof QueueChannel) {
+			messages = ((QueueChannel) this.inputChannel).receive(this.batchSize, this.receiveTimeout);
+		}
+		else {
+			messages = new ArrayList<Message<?>>();
+			Message<?> message = (this.receiveTimeout >= 0)
+					? this.inputChannel.receive(this.receiveTimeout)
+					: this.inputChannel.receive();
+			while (message != null) {
+				messages.add(message);
+				message = (messages.size() < this.batchSize) ? this.inputChannel.receive(0) : null;
+			}
+		}
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("Poll resulted in " + messages.size() + " Messages");
+		}
+		if (messages.isEmpty()) {
+			return false;
+		}
+		((BatchMessageHandler) this.handler).handleMessages(messages);
+		return true;
+	}
 }
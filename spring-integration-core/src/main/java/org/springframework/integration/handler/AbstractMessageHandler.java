@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -61,15 +61,8 @@ public abstract class AbstractMessageHandler extends IntegrationObjectSupport im
 	}
 
 	public final void handleMessage(Message<?> message) {
-		Assert.notNull(message, "Message must not be null");
-		Assert.notNull(message.getPayload(), "Message payload must not be null");
-		if (this.logger.isDebugEnabled()) {
-			this.logger.debug(this + " received message: " + message);
-		}
+		message = this.prepareMessage(message);
 		try {
-			if (message != null && this.shouldTrack) {
-				message = MessageHistory.write(message, this);
-			}
 			this.handleMessageInternal(message);
 		}
 		catch (Exception e) {
@@ -80,6 +73,25 @@ public abstract class AbstractMessageHandler extends IntegrationObjectSupport im
 		}
 	}
 
+	/**
+	 * Validates and logs a Message, and adds this handler to its history if tracking is enabled.
+	 * Invoked by {@link #handleMessage(Message)}; subclasses that handle several Messages at once
+	 * (such as a {@link org.springframework.integration.core.BatchMessageHandler}) should invoke it
+	 * for each of them.
+	 * @return the Message to handle
+	 */
+	protected final Message<?> prepareMessage(Message<?> message) {
+		Assert.notNull(message, "Message must not be null");
+		Assert.notNull(message.getPayload(), "Message payload must not be null");
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug(this + " received message: " + message);
+		}
+		if (this.shouldTrack) {
+			message = MessageHistory.write(message, this);
+		}
+		return message;
+	}
+
 	protected abstract void handleMessageInternal(Message<?> message) throws Exception;
 
 }
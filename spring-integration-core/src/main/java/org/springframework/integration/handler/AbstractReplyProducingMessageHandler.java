@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,9 @@
 
 package org.springframework.integration.handler;
 
+import java.io.Closeable;
+import java.io.IOException;
+
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.MessageDeliveryException;
@@ -75,6 +78,10 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 		this.requiresReply = requiresReply;
 	}
 
+	protected boolean isRequiresReply() {
+		return this.requiresReply;
+	}
+
 	/**
 	 * Provides access to the {@link MessagingTemplate} for subclasses.
 	 */
@@ -108,10 +115,28 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 		}
 	}
 
+	/**
+	 * Handle a result that was produced after {@link #handleRequestMessage(Message)} returned null
+	 * for the request, e.g. on completion of an asynchronous operation. The result is sent exactly
+	 * as if it had been returned by that method.
+	 * @param result the result; may be a Message, a MessageBuilder, or any plain Object
+	 * @param requestHeaders the headers of the request Message
+	 */
+	protected final void handleAsyncResult(Object result, MessageHeaders requestHeaders) {
+		this.handleResult(result, requestHeaders);
+	}
+
 	private void handleResult(Object result, MessageHeaders requestHeaders) {
-		if (result instanceof Iterable<?> && this.shouldSplitReply((Iterable<?>) result)) {
-			for (Object o : (Iterable<?>) result) {
-				this.produceReply(o, requestHeaders);
+		if (result instanceof Iterable<?> && this.shouldSplitOutput((Iterable<?>) result)) {
+			try {
+				for (Object o : (Iterable<?>) result) {
+					this.produceReply(o, requestHeaders);
+				}
+			}
+			finally {
+				if (result instanceof Closeable) {
+					this.close((Closeable) result);
+				}
 			}
 		}
 		else if (result != null) {
@@ -119,6 +144,17 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 		}
 	}
 
+	private void close(Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("failed to close the result of handler '" + this + "'", e);
+			}
+		}
+	}
+
 	private void produceReply(Object reply, MessageHeaders requestHeaders) {
 		Message<?> replyMessage = this.createReplyMessage(reply, requestHeaders);
 		this.sendReplyMessage(replyMessage, requestHeaders.getReplyChannel());
@@ -183,7 +219,11 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 		}
 	}
 
-	private boolean shouldSplitReply(Iterable<?> reply) {
+	/**
+	 * Whether an Iterable result should be emitted as one message per element. By default,
+	 * this is the case if any element is a Message or MessageBuilder. Subclasses may override this.
+	 */
+	protected boolean shouldSplitOutput(Iterable<?> reply) {
 		for (Object next : reply) {
 			if (next instanceof Message<?> || next instanceof MessageBuilder<?>) {
 				return true;
@@ -204,6 +244,10 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 	 * value may be a Message, a MessageBuilder, or any plain Object. The base class
 	 * will handle the final creation of a reply Message from any of those starting
 	 * points. If the return value is null, the Message flow will end here.
+	 * <p/>
+	 * If the return value is an Iterable that is emitted as one message per element
+	 * (see {@link #shouldSplitOutput(Iterable)}) and it is also {@link Closeable}, it
+	 * is closed once its elements have been sent, or sending one of them has failed.
 	 */
 	protected abstract Object handleRequestMessage(Message<?> requestMessage);
 
@@ -17,8 +17,8 @@
 package org.springframework.integration.message;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageHeaders;
@@ -58,14 +58,23 @@ public class GenericMessage<T> implements Message<T>, Serializable {
 	 * @see MessageHeaders
 	 */
 	public GenericMessage(T payload, Map<String, Object> headers) {
+		this(payload, headers, null, null);
+	}
+
+	/**
+	 * Create a new message with the given payload, headers, id and timestamp. This
+	 * allows, for example, the creation of transient messages without an
+	 * {@link MessageHeaders#ID} or {@link MessageHeaders#TIMESTAMP}.
+	 * 
+	 * @param payload the message payload
+	 * @param headers message headers
+	 * @param id the message id; null to generate one
+	 * @param timestamp the message timestamp; null to use the current time
+	 * @see MessageHeaders#MessageHeaders(Map, UUID, Long)
+	 */
+	public GenericMessage(T payload, Map<String, Object> headers, UUID id, Long timestamp) {
 		Assert.notNull(payload, "payload must not be null");
-		if (headers == null) {
-			headers = new HashMap<String, Object>();
-		}
-		else {
-			headers = new HashMap<String, Object>(headers);
-		}
-		this.headers = new MessageHeaders(headers);
+		this.headers = new MessageHeaders(headers, id, timestamp);
 		this.payload = payload;
 	}
 
@@ -92,7 +101,7 @@ public class GenericMessage<T> implements Message<T>, Serializable {
 		}
 		if (obj != null && obj instanceof GenericMessage<?>) {
 			GenericMessage<?> other = (GenericMessage<?>) obj;
-			if (!this.headers.getId().equals(other.headers.getId())) {
+			if (!ObjectUtils.nullSafeEquals(this.headers.getId(), other.headers.getId())) {
 				return false;
 			}
 			return this.headers.equals(other.headers)
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -37,6 +37,8 @@ public class PollerMetadata {
 	private volatile long maxMessagesPerPoll = MAX_MESSAGES_UNBOUNDED;
 
 	private volatile long receiveTimeout = 1000;
+
+	private volatile int batchSize = 1;
 	
 	private volatile ErrorHandler errorHandler;
 
@@ -77,6 +79,22 @@ public class PollerMetadata {
 		return this.maxMessagesPerPoll;
 	}
 
+	/**
+	 * Set the maximum number of messages a polling consumer receives at once and passes
+	 * to a {@link org.springframework.integration.core.BatchMessageHandler}. Each batch
+	 * counts as one message towards the {@link #setMaxMessagesPerPoll(long) maximum number
+	 * of messages per poll}. Ignored for handlers that do not support batches.
+	 * 
+	 * <p>The default is 1 (no batching).
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
 	public void setReceiveTimeout(long receiveTimeout) {
 		this.receiveTimeout = receiveTimeout;
 	}
@@ -0,0 +1,604 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.scheduling;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+import org.springframework.scheduling.support.TaskUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * A {@link TaskScheduler} backed by a hashed timing wheel. Scheduling and cancelling a task take constant
+ * time regardless of the number of scheduled tasks, whereas a
+ * {@link org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler} keeps its tasks in a heap with
+ * logarithmic insertion and linear cancellation. This makes it a good fit for a large number of short-lived
+ * timers, such as the Messages held by a {@link org.springframework.integration.handler.DelayHandler} or the
+ * group timeouts of a {@link org.springframework.integration.store.SimpleMessageStore}.
+ * <p>
+ * The wheel is divided into a number of ticks of a fixed duration. A single thread advances the wheel once
+ * per tick and runs the tasks that are due; tasks that are due more than one revolution later stay in their
+ * bucket with a count of remaining revolutions. Tasks therefore run up to one tick later than requested, but
+ * never earlier. By default they run on the wheel's thread, so they should be short; provide a
+ * {@link #setTaskExecutor(Executor) task executor} otherwise.
+ * <p>
+ * As with a {@link org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler}, exceptions thrown by
+ * repeating tasks are logged and suppressed by default, while exceptions thrown by one-time tasks are logged
+ * and available from the returned {@link ScheduledFuture}.
+ *
+ * @since 2.2
+ */
+public class TimingWheelTaskScheduler implements TaskScheduler, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(TimingWheelTaskScheduler.class);
+
+	/**
+	 * The maximum number of newly scheduled tasks that are moved to the wheel in a single tick, so that a
+	 * burst of scheduling cannot delay the tasks that are due.
+	 */
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	private static final AtomicIntegerFieldUpdater<ScheduledTask> STATE_UPDATER =
+			AtomicIntegerFieldUpdater.newUpdater(ScheduledTask.class, "state");
+
+	private final long tickNanos;
+
+	private final Bucket[] wheel;
+
+	private final int mask;
+
+	private final Queue<ScheduledTask> pendingTasks = new ConcurrentLinkedQueue<ScheduledTask>();
+
+	private final Queue<ScheduledTask> cancelledTasks = new ConcurrentLinkedQueue<ScheduledTask>();
+
+	private final AtomicInteger scheduledTaskCount = new AtomicInteger();
+
+	private final Object lifecycleMonitor = new Object();
+
+	private volatile ThreadFactory threadFactory;
+
+	private volatile Executor taskExecutor;
+
+	private volatile ErrorHandler errorHandler;
+
+	private volatile Thread workerThread;
+
+	private volatile long startTime;
+
+	private volatile boolean shutdown;
+
+	// only accessed by the worker thread
+	private long tick;
+
+
+	/**
+	 * Create a scheduler with a tick duration of 10 milliseconds and 512 ticks per revolution.
+	 */
+	public TimingWheelTaskScheduler() {
+		this(10, 512);
+	}
+
+	/**
+	 * Create a scheduler with the given tick duration in milliseconds and number of ticks per revolution,
+	 * which is rounded up to a power of 2. Tasks that are due within one revolution are found without
+	 * examining any other task.
+	 */
+	public TimingWheelTaskScheduler(long tickDuration, int ticksPerWheel) {
+		Assert.isTrue(tickDuration > 0, "'tickDuration' must be positive");
+		Assert.isTrue(ticksPerWheel > 0 && ticksPerWheel <= 1 << 30, "'ticksPerWheel' must be between 1 and 2^30");
+		int size = 1;
+		while (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("timing-wheel-");
+		threadFactory.setDaemon(true);
+		this.threadFactory = threadFactory;
+	}
+
+
+	/**
+	 * Set the {@link ThreadFactory} that creates the thread that advances the wheel. By default it is a
+	 * daemon thread, so a scheduler that is never destroyed does not prevent the JVM from exiting.
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		Assert.notNull(threadFactory, "'threadFactory' must not be null");
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * Set an {@link Executor} to run the tasks that are due. By default they run on the thread that
+	 * advances the wheel, which delays all later tasks while a task is running.
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Set a custom {@link ErrorHandler} for the exceptions thrown by scheduled tasks.
+	 */
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Returns the number of tasks that are scheduled and have not completed or been cancelled.
+	 */
+	public int getScheduledTaskCount() {
+		return this.scheduledTaskCount.get();
+	}
+
+	public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+		ScheduledTask scheduledTask = new ScheduledTask(this.decorate(task, true), trigger);
+		return scheduledTask.scheduleNext() ? scheduledTask : null;
+	}
+
+	public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+		ScheduledTask scheduledTask = new ScheduledTask(this.decorate(task, false), null);
+		scheduledTask.schedule(startTime);
+		return scheduledTask;
+	}
+
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+		return this.schedule(task, this.createPeriodicTrigger(startTime.getTime() - System.currentTimeMillis(),
+				period, true));
+	}
+
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+		return this.schedule(task, this.createPeriodicTrigger(0, period, true));
+	}
+
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+		return this.schedule(task, this.createPeriodicTrigger(startTime.getTime() - System.currentTimeMillis(),
+				delay, false));
+	}
+
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+		return this.schedule(task, this.createPeriodicTrigger(0, delay, false));
+	}
+
+	/**
+	 * Stops the thread that advances the wheel and cancels all tasks that have not run yet.
+	 */
+	public void destroy() throws Exception {
+		Thread workerThread = null;
+		synchronized (this.lifecycleMonitor) {
+			this.shutdown = true;
+			workerThread = this.workerThread;
+		}
+		if (workerThread != null && workerThread != Thread.currentThread()) {
+			workerThread.interrupt();
+			workerThread.join();
+		}
+		for (Bucket bucket : this.wheel) {
+			bucket.cancelAll();
+		}
+		ScheduledTask task = null;
+		while ((task = this.pendingTasks.poll()) != null) {
+			task.cancel(false);
+		}
+		this.cancelledTasks.clear();
+	}
+
+	private Runnable decorate(Runnable task, boolean repeating) {
+		Assert.notNull(task, "'task' must not be null");
+		return TaskUtils.decorateTaskWithErrorHandler(task, this.errorHandler, repeating);
+	}
+
+	private Trigger createPeriodicTrigger(long initialDelay, long period, boolean fixedRate) {
+		PeriodicTrigger trigger = new PeriodicTrigger(period);
+		trigger.setInitialDelay(Math.max(initialDelay, 0));
+		trigger.setFixedRate(fixedRate);
+		return trigger;
+	}
+
+	private void enqueue(ScheduledTask task) {
+		this.pendingTasks.add(task);
+		if (this.shutdown) {
+			// destroy() may have drained the queue before the task was added
+			task.cancel(false);
+		}
+	}
+
+	private void ensureStarted() {
+		if (this.workerThread == null) {
+			synchronized (this.lifecycleMonitor) {
+				if (this.shutdown) {
+					throw new TaskRejectedException("TimingWheelTaskScheduler has been destroyed");
+				}
+				if (this.workerThread == null) {
+					this.startTime = System.nanoTime();
+					Thread thread = this.threadFactory.newThread(new Worker());
+					thread.start();
+					this.workerThread = thread;
+				}
+			}
+		}
+		else if (this.shutdown) {
+			throw new TaskRejectedException("TimingWheelTaskScheduler has been destroyed");
+		}
+	}
+
+	private void run(ScheduledTask task) {
+		Executor taskExecutor = this.taskExecutor;
+		if (taskExecutor == null) {
+			task.run();
+			return;
+		}
+		try {
+			taskExecutor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			task.fail(e);
+		}
+	}
+
+
+	/**
+	 * Advances the wheel one tick at a time.
+	 */
+	private class Worker implements Runnable {
+
+		public void run() {
+			while (!shutdown) {
+				long now = this.waitForNextTick();
+				if (now < 0) {
+					return;
+				}
+				try {
+					this.removeCancelledTasks();
+					this.transferPendingTasks();
+					wheel[(int) (tick & mask)].expire(now);
+				}
+				catch (Throwable t) {
+					logger.error("Failed to advance the timing wheel", t);
+				}
+				tick++;
+			}
+		}
+
+		/**
+		 * @return the current time relative to the start time, or -1 if interrupted during shutdown
+		 */
+		private long waitForNextTick() {
+			long deadline = tickNanos * (tick + 1);
+			while (true) {
+				long now = System.nanoTime() - startTime;
+				long sleepNanos = deadline - now;
+				if (sleepNanos <= 0) {
+					return now;
+				}
+				try {
+					Thread.sleep((sleepNanos + 999999) / 1000000);
+				}
+				catch (InterruptedException e) {
+					if (shutdown) {
+						return -1;
+					}
+				}
+			}
+		}
+
+		private void removeCancelledTasks() {
+			ScheduledTask task = null;
+			while ((task = cancelledTasks.poll()) != null) {
+				if (task.bucket != null) {
+					task.bucket.remove(task);
+				}
+			}
+		}
+
+		private void transferPendingTasks() {
+			for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+				ScheduledTask task = pendingTasks.poll();
+				if (task == null) {
+					return;
+				}
+				if (task.isCancelled()) {
+					continue;
+				}
+				long ticks = task.deadline / tickNanos;
+				task.remainingRounds = (ticks - tick) / wheel.length;
+				wheel[(int) (Math.max(ticks, tick) & mask)].add(task);
+			}
+		}
+	}
+
+
+	/**
+	 * A doubly linked list of the tasks that fall into one tick of the wheel; only accessed by the worker
+	 * thread.
+	 */
+	private class Bucket {
+
+		private ScheduledTask head;
+
+		private ScheduledTask tail;
+
+		void add(ScheduledTask task) {
+			task.bucket = this;
+			if (this.head == null) {
+				this.head = task;
+				this.tail = task;
+			}
+			else {
+				this.tail.next = task;
+				task.prev = this.tail;
+				this.tail = task;
+			}
+		}
+
+		void remove(ScheduledTask task) {
+			ScheduledTask next = task.next;
+			if (task.prev != null) {
+				task.prev.next = next;
+			}
+			if (next != null) {
+				next.prev = task.prev;
+			}
+			if (task == this.head) {
+				this.head = next;
+			}
+			if (task == this.tail) {
+				this.tail = task.prev;
+			}
+			task.prev = null;
+			task.next = null;
+			task.bucket = null;
+		}
+
+		void expire(long now) {
+			ScheduledTask task = this.head;
+			while (task != null) {
+				ScheduledTask next = task.next;
+				if (task.remainingRounds <= 0) {
+					this.remove(task);
+					if (!task.isCancelled()) {
+						TimingWheelTaskScheduler.this.run(task);
+					}
+				}
+				else if (task.isCancelled()) {
+					this.remove(task);
+				}
+				else {
+					task.remainingRounds--;
+				}
+				task = next;
+			}
+		}
+
+		void cancelAll() {
+			ScheduledTask task = this.head;
+			while (task != null) {
+				ScheduledTask next = task.next;
+				this.remove(task);
+				task.cancel(false);
+				task = next;
+			}
+		}
+	}
+
+
+	/**
+	 * A scheduled task and its position in the wheel. A repeating task is added to the wheel again each time
+	 * it has run, until its trigger returns null or it is cancelled.
+	 */
+	private class ScheduledTask implements ScheduledFuture<Object>, Runnable {
+
+		private static final int WAITING = 0;
+
+		private static final int DONE = 1;
+
+		private static final int CANCELLED = 2;
+
+		private final Runnable task;
+
+		private final Trigger trigger;
+
+		private final SimpleTriggerContext triggerContext;
+
+		// package-private for the field updater
+		volatile int state;
+
+		private volatile Throwable failure;
+
+		private volatile Date scheduledExecutionTime;
+
+		// the following are only accessed by the worker thread, or before the task is enqueued
+		private long deadline;
+
+		private long remainingRounds;
+
+		private Bucket bucket;
+
+		private ScheduledTask prev;
+
+		private ScheduledTask next;
+
+		ScheduledTask(Runnable task, Trigger trigger) {
+			this.task = task;
+			this.trigger = trigger;
+			this.triggerContext = (trigger != null) ? new SimpleTriggerContext() : null;
+			scheduledTaskCount.incrementAndGet();
+		}
+
+		void schedule(Date executionTime) {
+			try {
+				ensureStarted();
+			}
+			catch (TaskRejectedException e) {
+				this.complete(CANCELLED);
+				throw e;
+			}
+			this.scheduledExecutionTime = executionTime;
+			long delayNanos = TimeUnit.MILLISECONDS.toNanos(executionTime.getTime() - System.currentTimeMillis());
+			this.deadline = System.nanoTime() - startTime + delayNanos;
+			enqueue(this);
+		}
+
+		/**
+		 * @return false if the trigger has no further execution time
+		 */
+		boolean scheduleNext() {
+			Date executionTime = this.trigger.nextExecutionTime(this.triggerContext);
+			if (executionTime == null) {
+				this.complete(DONE);
+				return false;
+			}
+			this.schedule(executionTime);
+			return true;
+		}
+
+		public void run() {
+			if (this.state != WAITING) {
+				return;
+			}
+			Date actualExecutionTime = new Date();
+			try {
+				this.task.run();
+			}
+			catch (Throwable t) {
+				this.fail(t);
+				return;
+			}
+			if (this.trigger == null) {
+				this.complete(DONE);
+				return;
+			}
+			this.triggerContext.update(this.scheduledExecutionTime, actualExecutionTime, new Date());
+			if (this.state == WAITING) {
+				try {
+					this.scheduleNext();
+				}
+				catch (TaskRejectedException e) {
+					this.cancel(false);
+				}
+			}
+		}
+
+		void fail(Throwable failure) {
+			this.failure = failure;
+			this.complete(DONE);
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!this.complete(CANCELLED)) {
+				return false;
+			}
+			cancelledTasks.add(this);
+			return true;
+		}
+
+		private boolean complete(int newState) {
+			if (!STATE_UPDATER.compareAndSet(this, WAITING, newState)) {
+				return false;
+			}
+			scheduledTaskCount.decrementAndGet();
+			synchronized (this) {
+				this.notifyAll();
+			}
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return this.state == CANCELLED;
+		}
+
+		public boolean isDone() {
+			return this.state != WAITING;
+		}
+
+		public Object get() throws InterruptedException, ExecutionException {
+			synchronized (this) {
+				while (this.state == WAITING) {
+					this.wait();
+				}
+			}
+			return this.getResult();
+		}
+
+		public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+				TimeoutException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			synchronized (this) {
+				while (this.state == WAITING) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						throw new TimeoutException();
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			}
+			return this.getResult();
+		}
+
+		private Object getResult() throws ExecutionException {
+			if (this.state == CANCELLED) {
+				throw new CancellationException();
+			}
+			if (this.failure != null) {
+				throw new ExecutionException(this.failure);
+			}
+			return null;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			Date scheduledExecutionTime = this.scheduledExecutionTime;
+			if (scheduledExecutionTime == null) {
+				return 0;
+			}
+			return unit.convert(scheduledExecutionTime.getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			if (this == other) {
+				return 0;
+			}
+			long diff = this.getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+			return (diff == 0) ? 0 : ((diff < 0) ? -1 : 1);
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,11 @@
 
 package org.springframework.integration.splitter;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import org.springframework.integration.Message;
@@ -55,6 +58,21 @@ public abstract class AbstractMessageSplitter extends AbstractReplyProducingMess
 		}
 		MessageHeaders headers = message.getHeaders();
 		Object correlationId = headers.getId();
+		if (result instanceof Iterator || (result instanceof Iterable && !(result instanceof Collection))) {
+			Iterator<?> iterator = (result instanceof Iterator) ? (Iterator<?>) result : ((Iterable<?>) result).iterator();
+			if (!iterator.hasNext()) {
+				if (iterator instanceof Closeable) {
+					try {
+						((Closeable) iterator).close();
+					}
+					catch (IOException e) {
+						// ignore
+					}
+				}
+				return null;
+			}
+			return new MessageBuilderIterable(iterator, headers, correlationId);
+		}
 		List<MessageBuilder<?>> messageBuilders = new ArrayList<MessageBuilder<?>>();
 		if (result instanceof Collection) {
 			Collection<?> items = (Collection<?>) result;
@@ -95,6 +113,16 @@ public abstract class AbstractMessageSplitter extends AbstractReplyProducingMess
 		return builder;
 	}
 
+	/**
+	 * The result of a split is always emitted as separate messages, so there is
+	 * no need to inspect it; this also ensures a lazily evaluated result is
+	 * iterated only once.
+	 */
+	@Override
+	protected boolean shouldSplitOutput(Iterable<?> reply) {
+		return true;
+	}
+
 	@Override
 	public String getComponentType() {
 		return "splitter";
@@ -105,7 +133,62 @@ public abstract class AbstractMessageSplitter extends AbstractReplyProducingMess
 	 * Array. The individual elements may be Messages, but it is not necessary. If the elements are not Messages, each
 	 * will be provided as the payload of a Message. It is also acceptable to return a single Object or Message. In that
 	 * case, a single reply Message will be produced.
+	 * <p/>
+	 * The return value may also be an Iterator, or an Iterable that is not a Collection (such as a cursor over a
+	 * large result). In that case, each element is only retrieved when the previous message has been sent, so the
+	 * whole result is never held in memory. Since the number of elements is not known in advance, the messages
+	 * carry a sequence size of 0, except for the last one, whose sequence size is its sequence number; the
+	 * iterator is asked for one element ahead to find it. An Iterator that is also {@link Closeable} is closed
+	 * once the messages have been sent, even if sending one of them fails.
 	 */
 	protected abstract Object splitMessage(Message<?> message);
 
+
+	/**
+	 * Lazily creates a message builder for each element of the split result.
+	 * Closing it closes the split result's iterator, if that is Closeable.
+	 */
+	private class MessageBuilderIterable implements Iterable<MessageBuilder<?>>, Closeable {
+
+		private final Iterator<?> iterator;
+
+		private final MessageHeaders headers;
+
+		private final Object correlationId;
+
+		private MessageBuilderIterable(Iterator<?> iterator, MessageHeaders headers, Object correlationId) {
+			this.iterator = iterator;
+			this.headers = headers;
+			this.correlationId = correlationId;
+		}
+
+		public Iterator<MessageBuilder<?>> iterator() {
+			return new Iterator<MessageBuilder<?>>() {
+
+				private int sequenceNumber;
+
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				public MessageBuilder<?> next() {
+					Object item = iterator.next();
+					int sequenceNumber = ++this.sequenceNumber;
+					int sequenceSize = iterator.hasNext() ? 0 : sequenceNumber;
+					return createBuilder(item, headers, correlationId, sequenceNumber, sequenceSize);
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		public void close() throws IOException {
+			if (this.iterator instanceof Closeable) {
+				((Closeable) this.iterator).close();
+			}
+		}
+	}
+
 }
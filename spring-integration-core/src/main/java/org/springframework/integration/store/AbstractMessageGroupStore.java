@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -108,7 +108,10 @@ public abstract class AbstractMessageGroupStore implements MessageGroupStore, It
 		return count;
 	}
 
-	private void expire(MessageGroup group) {
+	/**
+	 * Apply the registered expiry callbacks to the given group.
+	 */
+	protected void expire(MessageGroup group) {
 	
 		RuntimeException exception = null;
 	
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -100,10 +100,7 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 		try {
 			storeLock.lockInterruptibly();
 			try {
-				Collection<Message<?>> messages = getMessages();
-				if (!messages.isEmpty()) {
-					message = messages.iterator().next();
-				}
+				message = this.messageGroupStore.getMessageGroup(groupId).getOne();
 			} 
 			finally {
 				storeLock.unlock();
@@ -164,10 +161,12 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 		try {
 			storeLock.lockInterruptibly();
 			try {		
-				Message<?> message = this.messageGroupStore.pollMessageFromGroup(groupId);
-				for (int i = 0; i < maxElements && message != null; i++) {
-					list.add(message);	
-					message = this.messageGroupStore.pollMessageFromGroup(groupId);
+				for (int i = 0; i < maxElements; i++) {
+					Message<?> message = this.messageGroupStore.pollMessageFromGroup(groupId);
+					if (message == null) {
+						break;
+					}
+					list.add(message);
 				}
 				this.messageStoreNotFull.signal();
 			} 
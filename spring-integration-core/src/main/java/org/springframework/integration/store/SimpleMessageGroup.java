@@ -15,6 +15,8 @@ package org.springframework.integration.store;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -23,6 +25,9 @@ import org.springframework.integration.Message;
 /**
  * Represents a mutable group of correlated messages that is bound to a certain {@link MessageStore} and group id. The
  * group will grow during its lifetime, when messages are <code>add</code>ed to it. This MessageGroup is thread safe.
+ * <p/>
+ * Adding a message is a constant time operation. The group also keeps an index of the sequence numbers of its
+ * members so that {@link #containsSequence(Integer)} does not need to scan the messages.
  * 
  * @author Iwein Fuld
  * @author Oleg Zhurakousky
@@ -33,8 +38,18 @@ public class SimpleMessageGroup implements MessageGroup {
 
 	private final Object groupId;
 	
-	public final BlockingQueue<Message<?>> messages = new LinkedBlockingQueue<Message<?>>();
+	private final BlockingQueue<Message<?>> messages = new LinkedBlockingQueue<Message<?>>();
+
+	/**
+	 * Number of members per sequence number; guarded by 'this'.
+	 */
+	private final Map<Integer, Integer> sequences = new HashMap<Integer, Integer>();
 	
+	/**
+	 * The first non-zero sequence size of the members; guarded by 'this'.
+	 */
+	private int sequenceSize;
+
 	private volatile int lastReleasedMessageSequence;
 
 	private final long timestamp;
@@ -85,7 +100,36 @@ public class SimpleMessageGroup implements MessageGroup {
 	}
 
 	public void remove(Message<?> message) {
-		messages.remove(message);
+		synchronized (this) {
+			if (this.messages.remove(message)) {
+				this.unindex(message);
+			}
+		}
+	}
+
+	/**
+	 * Remove and return the oldest message in the group, if any.
+	 * @return the removed message, or null if the group is empty
+	 */
+	public Message<?> poll() {
+		synchronized (this) {
+			Message<?> message = this.messages.poll();
+			if (message != null) {
+				this.unindex(message);
+			}
+			return message;
+		}
+	}
+
+	/**
+	 * Query whether a message with the given sequence number is a member of this group.
+	 * @param sequence the sequence number
+	 * @return true if a message with that sequence number has been added and not yet removed
+	 */
+	public boolean containsSequence(Integer sequence) {
+		synchronized (this) {
+			return this.sequences.containsKey(sequence);
+		}
 	}
 	
 	public int getLastReleasedMessageSequenceNumber() {
@@ -93,7 +137,42 @@ public class SimpleMessageGroup implements MessageGroup {
 	}
 
 	private boolean addMessage(Message<?> message) {
-		return this.messages.offer(message);
+		synchronized (this) {
+			if (this.messages.offer(message)) {
+				Integer sequence = message.getHeaders().getSequenceNumber();
+				if (sequence > 0) {
+					Integer count = this.sequences.get(sequence);
+					this.sequences.put(sequence, count == null ? 1 : count + 1);
+				}
+				if (this.sequenceSize == 0) {
+					this.sequenceSize = message.getHeaders().getSequenceSize();
+				}
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private void unindex(Message<?> message) {
+		if (this.sequenceSize != 0 && this.sequenceSize == message.getHeaders().getSequenceSize()) {
+			this.sequenceSize = 0;
+			for (Message<?> member : this.messages) {
+				this.sequenceSize = member.getHeaders().getSequenceSize();
+				if (this.sequenceSize != 0) {
+					break;
+				}
+			}
+		}
+		Integer sequence = message.getHeaders().getSequenceNumber();
+		if (sequence > 0) {
+			Integer count = this.sequences.get(sequence);
+			if (count == null || count <= 1) {
+				this.sequences.remove(sequence);
+			}
+			else {
+				this.sequences.put(sequence, count - 1);
+			}
+		}
 	}
 
 	public Collection<Message<?>> getMessages() {
@@ -116,11 +195,14 @@ public class SimpleMessageGroup implements MessageGroup {
 		this.complete = true;
 	}
 	
+	/**
+	 * Returns the sequence size of the members. A sequence produced lazily declares its size only on its last
+	 * message, with a size of 0 on the others, so this is the first non-zero size of any member.
+	 */
 	public int getSequenceSize() {
-		if (size() == 0) {
-			return 0;
+		synchronized (this) {
+			return this.sequenceSize;
 		}
-		return getOne().getHeaders().getSequenceSize();
 	}
 
 	public int size() {
@@ -133,7 +215,10 @@ public class SimpleMessageGroup implements MessageGroup {
 	}
 	
 	public void clear(){
-		this.messages.clear();
+		synchronized (this) {
+			this.messages.clear();
+			this.sequences.clear();
+		}
 	}
 
 	@Override
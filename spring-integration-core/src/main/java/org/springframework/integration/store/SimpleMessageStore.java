@@ -13,14 +13,16 @@
 
 package org.springframework.integration.store;
 
-import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.Lock;
 
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessagingException;
 import org.springframework.integration.util.DefaultLockRegistry;
@@ -28,8 +30,8 @@ import org.springframework.integration.util.LockRegistry;
 import org.springframework.integration.util.UpperBound;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.Assert;
-import org.springframework.util.CollectionUtils;
 
 /**
  * Map-based in-memory implementation of {@link MessageStore} and {@link MessageGroupStore}. Enforces a maximum capacity for the
@@ -44,7 +46,8 @@ import org.springframework.util.CollectionUtils;
  * @since 2.0
  */
 @ManagedResource
-public class SimpleMessageStore extends AbstractMessageGroupStore implements MessageStore, MessageGroupStore {
+public class SimpleMessageStore extends AbstractMessageGroupStore
+		implements MessageStore, MessageGroupStore, InitializingBean {
 
 	private volatile LockRegistry lockRegistry;
 
@@ -52,12 +55,21 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 
 	private final ConcurrentMap<Object, SimpleMessageGroup> groupIdToMessageGroup;
 
+	private final ConcurrentMap<Object, ScheduledFuture<?>> groupIdToExpiry =
+			new ConcurrentHashMap<Object, ScheduledFuture<?>>();
+
 	private final UpperBound individualUpperBound;
 
 	private final UpperBound groupUpperBound;
 
 	private volatile boolean isUsed;
 
+	private volatile boolean copyOnGet;
+
+	private volatile TaskScheduler taskScheduler;
+
+	private volatile long groupTimeout = -1;
+
 	/**
 	 * Creates a SimpleMessageStore with a maximum size limited by the given capacity, or unlimited size if the given
 	 * capacity is less than 1. The capacities are applied independently to messages stored via
@@ -66,7 +78,7 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 	 * store another will result in an exception.
 	 */
 	public SimpleMessageStore(int individualCapacity, int groupCapacity) {
-		this(individualCapacity, groupCapacity, new DefaultLockRegistry());
+		this(individualCapacity, groupCapacity, DefaultLockRegistry.forAvailableProcessors());
 	}
 
 	/**
@@ -103,6 +115,46 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 		this.lockRegistry = lockRegistry;
 	}
 
+	/**
+	 * Set to true to make {@link #getMessageGroup(Object)} return a snapshot copy of the group,
+	 * rather than the group held by the store. The group held by the store is thread safe and
+	 * exposes its messages through an unmodifiable view, so the copy is only needed by callers
+	 * that require the contents to be stable while other threads modify the group without
+	 * holding its lock. Copying costs O(n) per call, which makes aggregating large groups O(n^2).
+	 * Default false.
+	 * @param copyOnGet true to copy the group on each get.
+	 */
+	public void setCopyOnGet(boolean copyOnGet) {
+		this.copyOnGet = copyOnGet;
+	}
+
+	/**
+	 * Set the {@link TaskScheduler} that expires each group once it is older than the
+	 * {@link #setGroupTimeout(long) group timeout}.
+	 */
+	public void setTaskScheduler(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	/**
+	 * Set the timeout in milliseconds after which each group is expired, counted from its creation or,
+	 * with {@link #setTimeoutOnIdle(boolean) timeoutOnIdle}, from its last modification. Requires a
+	 * {@link #setTaskScheduler(TaskScheduler) task scheduler}, which schedules one expiry per group when the
+	 * group is created and cancels it when the group is removed. Unlike a {@link MessageGroupStoreReaper},
+	 * this never scans the whole store, and groups expire on time rather than on the reaper's next run; a
+	 * {@link org.springframework.integration.scheduling.TimingWheelTaskScheduler} keeps the cost of scheduling
+	 * and cancelling constant for large numbers of groups. Default -1, i.e. groups are only expired by
+	 * {@link #expireMessageGroups(long)}.
+	 */
+	public void setGroupTimeout(long groupTimeout) {
+		this.groupTimeout = groupTimeout;
+	}
+
+	public void afterPropertiesSet() {
+		Assert.state(this.groupTimeout < 0 || this.taskScheduler != null,
+				"A TaskScheduler is required when a 'groupTimeout' is set");
+	}
+
 	@ManagedAttribute
 	public long getMessageCount() {
 		return idToMessage.size();
@@ -138,7 +190,10 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 		if (group == null) {
 			return new SimpleMessageGroup(groupId);
 		}
-		return new SimpleMessageGroup(group);
+		if (this.copyOnGet) {
+			return new SimpleMessageGroup(group);
+		}
+		return group;
 	}
 
 	public MessageGroup addMessageToGroup(Object groupId, Message<?> message) {
@@ -154,8 +209,12 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 				if (group == null) {
 					group = new SimpleMessageGroup(groupId);
 					this.groupIdToMessageGroup.putIfAbsent(groupId, group);
+					if (this.groupTimeout >= 0) {
+						this.scheduleExpiry(group, group.getTimestamp() + this.groupTimeout);
+					}
 				}
 				group.add(message);
+				group.setLastModified(System.currentTimeMillis());
 				return group;
 			}
 			finally {
@@ -179,6 +238,10 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 
 				groupUpperBound.release(groupIdToMessageGroup.get(groupId).size());
 				groupIdToMessageGroup.remove(groupId);
+				ScheduledFuture<?> expiry = this.groupIdToExpiry.remove(groupId);
+				if (expiry != null) {
+					expiry.cancel(false);
+				}
 			}
 			finally {
 				lock.unlock();
@@ -199,6 +262,7 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 				Assert.notNull(group, "MessageGroup for groupId '" + groupId + "' " +
 						"can not be located while attempting to remove Message from the MessageGroup");
 				group.remove(messageToRemove);
+				group.setLastModified(System.currentTimeMillis());
 				return group;
 			}
 			finally {
@@ -224,6 +288,7 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 				Assert.notNull(group, "MessageGroup for groupId '" + groupId + "' " +
 						"can not be located while attempting to set 'lastReleasedSequenceNumber'");
 				group.setLastReleasedMessageSequenceNumber(sequenceNumber);
+				group.setLastModified(System.currentTimeMillis());
 			}
 			finally {
 				lock.unlock();
@@ -244,6 +309,7 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 				Assert.notNull(group, "MessageGroup for groupId '" + groupId + "' " +
 						"can not be located while attempting to complete the MessageGroup");
 				group.complete();
+				group.setLastModified(System.currentTimeMillis());
 			}
 			finally {
 				lock.unlock();
@@ -256,18 +322,83 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 	}
 
 	public Message<?> pollMessageFromGroup(Object groupId) {
-		Collection<Message<?>> messageList = this.getMessageGroup(groupId).getMessages();
-		Message<?> message = null;
-		if (!CollectionUtils.isEmpty(messageList)){
-			message = messageList.iterator().next();
-			if (message != null){
-				this.removeMessageFromGroup(groupId, message);
+		Lock lock = this.lockRegistry.obtain(groupId);
+		try {
+			lock.lockInterruptibly();
+			try {
+				SimpleMessageGroup group = this.groupIdToMessageGroup.get(groupId);
+				if (group == null) {
+					return null;
+				}
+				Message<?> message = group.poll();
+				if (message != null) {
+					group.setLastModified(System.currentTimeMillis());
+				}
+				return message;
+			}
+			finally {
+				lock.unlock();
 			}
 		}
-		return message;
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted while obtaining lock", e);
+		}
 	}
 
 	public int messageGroupSize(Object groupId) {
-		return this.getMessageGroup(groupId).size();
+		SimpleMessageGroup group = this.groupIdToMessageGroup.get(groupId);
+		return group == null ? 0 : group.size();
+	}
+
+	private void scheduleExpiry(final SimpleMessageGroup group, long expiryTime) {
+		ScheduledFuture<?> expiry = this.taskScheduler.schedule(new Runnable() {
+			public void run() {
+				expireIfNecessary(group);
+			}
+		}, new Date(expiryTime));
+		this.groupIdToExpiry.put(group.getGroupId(), expiry);
+	}
+
+	/**
+	 * Decides under the group's lock whether the group is due, so that it cannot be modified or
+	 * replaced in the meantime. The expiry callbacks are invoked after the lock is released,
+	 * since they may take their own locks (an aggregator locks the group before it calls
+	 * {@link #addMessageToGroup(Object, Message)}, so holding both here could deadlock).
+	 */
+	private void expireIfNecessary(SimpleMessageGroup group) {
+		Object groupId = group.getGroupId();
+		Lock lock = this.lockRegistry.obtain(groupId);
+		try {
+			lock.lockInterruptibly();
+			try {
+				SimpleMessageGroup current = this.groupIdToMessageGroup.get(groupId);
+				if (current != group) {
+					if (current == null) {
+						this.groupIdToExpiry.remove(groupId);
+					}
+					// otherwise the group was replaced, and the new group has its own expiry
+					return;
+				}
+				long timestamp = group.getTimestamp();
+				if (this.isTimeoutOnIdle() && group.getLastModified() > 0) {
+					timestamp = group.getLastModified();
+				}
+				long expiryTime = timestamp + this.groupTimeout;
+				if (expiryTime > System.currentTimeMillis()) {
+					this.scheduleExpiry(group, expiryTime);
+					return;
+				}
+				this.groupIdToExpiry.remove(groupId);
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		this.expire(group);
 	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,10 +46,20 @@ public final class MessageBuilder<T> {
 
 	private final T payload;
 
+	/**
+	 * The headers added or changed relative to the original message, if any.
+	 */
 	private final Map<String, Object> headers = new HashMap<String, Object>();
 
+	/**
+	 * The headers of the original message that have been removed.
+	 */
+	private final Set<String> removedHeaders = new HashSet<String>();
+
 	private final Message<T> originalMessage;
 
+	private final MessageHeaders originalHeaders;
+
 	private volatile boolean modified;
 
 	/**
@@ -58,8 +69,8 @@ public final class MessageBuilder<T> {
 		Assert.notNull(payload, "payload must not be null");
 		this.payload = payload;
 		this.originalMessage = originalMessage;
+		this.originalHeaders = (originalMessage != null) ? originalMessage.getHeaders() : null;
 		if (originalMessage != null) {
-			this.copyHeaders(originalMessage.getHeaders());
 			this.modified = (!this.payload.equals(originalMessage.getPayload()));
 		}
 	}
@@ -95,16 +106,12 @@ public final class MessageBuilder<T> {
 				&& !headerName.equals(MessageHeaders.TIMESTAMP)) {
 			this.verifyType(headerName, headerValue);
 			if (headerValue == null) {
-				Object removedValue = this.headers.remove(headerName);
-				if (removedValue != null) {
-					this.modified = true;
-				}
+				this.doRemoveHeader(headerName);
 			}
-			else {
-				Object replacedValue = this.headers.put(headerName, headerValue);
-				if (!headerValue.equals(replacedValue)) {
-					this.modified = true;
-				}
+			else if (!headerValue.equals(this.getHeader(headerName))) {
+				this.headers.put(headerName, headerValue);
+				this.removedHeaders.remove(headerName);
+				this.modified = true;
 			}
 		}
 		return this;
@@ -114,7 +121,7 @@ public final class MessageBuilder<T> {
 	 * Set the value for the given header name only if the header name is not already associated with a value.
 	 */
 	public MessageBuilder<T> setHeaderIfAbsent(String headerName, Object headerValue) {
-		if (this.headers.get(headerName) == null) {
+		if (this.getHeader(headerName) == null) {
 			this.setHeader(headerName, headerValue);
 		}
 		return this;
@@ -132,7 +139,7 @@ public final class MessageBuilder<T> {
 		for (String pattern : headerPatterns) {		
 			if (StringUtils.hasLength(pattern)){
 				if (pattern.contains("*")){
-					for (String headerName : this.headers.keySet()) {
+					for (String headerName : this.getHeaderNames()) {
 						if (PatternMatchUtils.simpleMatch(pattern, headerName)){
 							headersToRemove.add(headerName);
 						}
@@ -154,10 +161,7 @@ public final class MessageBuilder<T> {
 	public MessageBuilder<T> removeHeader(String headerName) {
 		if (StringUtils.hasLength(headerName) && !headerName.equals(MessageHeaders.ID)
 				&& !headerName.equals(MessageHeaders.TIMESTAMP)) {
-			Object removedValue = this.headers.remove(headerName);
-			if (removedValue != null) {
-				this.modified = true;
-			}
+			this.doRemoveHeader(headerName);
 		}
 		return this;
 	}
@@ -211,9 +215,9 @@ public final class MessageBuilder<T> {
 	}
 
 	public MessageBuilder<T> pushSequenceDetails(Object correlationId, int sequenceNumber, int sequenceSize) {
-		Object incomingCorrelationId = headers.get(MessageHeaders.CORRELATION_ID);
+		Object incomingCorrelationId = this.getHeader(MessageHeaders.CORRELATION_ID);
 		@SuppressWarnings("unchecked")
-		List<List<Object>> incomingSequenceDetails = (List<List<Object>>) headers.get(MessageHeaders.SEQUENCE_DETAILS);
+		List<List<Object>> incomingSequenceDetails = (List<List<Object>>) this.getHeader(MessageHeaders.SEQUENCE_DETAILS);
 		if (incomingCorrelationId != null) {
 			if (incomingSequenceDetails == null) {
 				incomingSequenceDetails = new ArrayList<List<Object>>();
@@ -222,7 +226,7 @@ public final class MessageBuilder<T> {
 				incomingSequenceDetails = new ArrayList<List<Object>>(incomingSequenceDetails);
 			}
 			incomingSequenceDetails.add(Arrays.asList(incomingCorrelationId,
-					headers.get(MessageHeaders.SEQUENCE_NUMBER), headers.get(MessageHeaders.SEQUENCE_SIZE)));
+					this.getHeader(MessageHeaders.SEQUENCE_NUMBER), this.getHeader(MessageHeaders.SEQUENCE_SIZE)));
 			incomingSequenceDetails = Collections.unmodifiableList(incomingSequenceDetails);
 		}
 		if (incomingSequenceDetails != null) {
@@ -232,12 +236,12 @@ public final class MessageBuilder<T> {
 	}
 
 	public MessageBuilder<T> popSequenceDetails() {
-		String key = MessageHeaders.SEQUENCE_DETAILS;
-		if (!headers.containsKey(key)) {
+		@SuppressWarnings("unchecked")
+		List<List<Object>> sequenceDetailsHeader = (List<List<Object>>) this.getHeader(MessageHeaders.SEQUENCE_DETAILS);
+		if (sequenceDetailsHeader == null) {
 			return this;
 		}
-		@SuppressWarnings("unchecked")
-		List<List<Object>> incomingSequenceDetails = new ArrayList<List<Object>>((List<List<Object>>) headers.get(key));
+		List<List<Object>> incomingSequenceDetails = new ArrayList<List<Object>>(sequenceDetailsHeader);
 		List<Object> sequenceDetails = incomingSequenceDetails.remove(incomingSequenceDetails.size() - 1);
 		Assert.state(sequenceDetails.size() == 3, "Wrong sequence details (not created by MessageBuilder?): "
 				+ sequenceDetails);
@@ -251,10 +255,10 @@ public final class MessageBuilder<T> {
 			setSequenceSize(sequenceSize);
 		}
 		if (!incomingSequenceDetails.isEmpty()) {
-			headers.put(MessageHeaders.SEQUENCE_DETAILS, incomingSequenceDetails);
+			this.setHeader(MessageHeaders.SEQUENCE_DETAILS, incomingSequenceDetails);
 		}
 		else {
-			headers.remove(MessageHeaders.SEQUENCE_DETAILS);
+			this.removeHeader(MessageHeaders.SEQUENCE_DETAILS);
 		}
 		return this;
 	}
@@ -292,10 +296,45 @@ public final class MessageBuilder<T> {
 		if (!this.modified && this.originalMessage != null) {
 			return this.originalMessage;
 		}
+		// share the original headers rather than copying them; only the changes are copied
+		Map<String, Object> headersToUse = (this.originalHeaders != null)
+				? new MessageHeaders(this.originalHeaders, this.headers, this.removedHeaders)
+				: this.headers;
 		if (this.payload instanceof Throwable) {
-			return (Message<T>) new ErrorMessage((Throwable) this.payload, this.headers);
+			return (Message<T>) new ErrorMessage((Throwable) this.payload, headersToUse);
+		}
+		return new GenericMessage<T>(this.payload, headersToUse);
+	}
+
+	private Object getHeader(String headerName) {
+		Object value = this.headers.get(headerName);
+		if (value == null && this.originalHeaders != null && !this.removedHeaders.contains(headerName)) {
+			value = this.originalHeaders.get(headerName);
+		}
+		return value;
+	}
+
+	private Set<String> getHeaderNames() {
+		Set<String> headerNames = new HashSet<String>(this.headers.keySet());
+		if (this.originalHeaders != null) {
+			for (String headerName : this.originalHeaders.keySet()) {
+				if (!this.removedHeaders.contains(headerName)) {
+					headerNames.add(headerName);
+				}
+			}
+		}
+		return headerNames;
+	}
+
+	private void doRemoveHeader(String headerName) {
+		Object removedValue = this.headers.remove(headerName);
+		if (this.originalHeaders != null && this.originalHeaders.containsKey(headerName)
+				&& this.removedHeaders.add(headerName)) {
+			removedValue = (removedValue != null) ? removedValue : this.originalHeaders.get(headerName);
+		}
+		if (removedValue != null) {
+			this.modified = true;
 		}
-		return new GenericMessage<T>(this.payload, this.headers);
 	}
 
 	private boolean isReadOnly(String headerName) {
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.support.serializer;
+
+/**
+ * A {@link PayloadCodec} that stores byte[] payloads as they are.
+ *
+ * @since 2.2
+ */
+public class ByteArrayPayloadCodec implements PayloadCodec {
+
+	public static final byte ID = 1;
+
+	public byte getId() {
+		return ID;
+	}
+
+	public boolean canEncode(Object payload) {
+		return payload instanceof byte[];
+	}
+
+	public byte[] encode(Object payload) {
+		return (byte[]) payload;
+	}
+
+	public Object decode(byte[] bytes) {
+		return bytes;
+	}
+
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.support.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageHeaders;
+import org.springframework.integration.message.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Serializer} and {@link Deserializer} for Messages that is more compact and faster than Java serialization,
+ * for use with persistent message stores, e.g. through <code>JdbcMessageStore.setSerializer()</code> and
+ * <code>setDeserializer()</code>.
+ * <p>
+ * A serialized Message starts with a format version byte, followed by the id and timestamp, the other headers and the
+ * payload. Header names and values are written without class descriptors: the standard header names take one byte,
+ * and Strings, numbers, booleans, UUIDs and byte arrays are written in binary with a one byte type tag. Other
+ * {@link Serializable} header values fall back to Java serialization, and other header values are dropped, as they
+ * are by the Java serialization of {@link MessageHeaders}. The payload is written by the first {@link PayloadCodec}
+ * that can encode it, with the id of the codec; byte[] and String payloads are written as they are, and other
+ * {@link Serializable} payloads fall back to Java serialization.
+ * <p>
+ * Messages other than a {@link GenericMessage}, e.g. an
+ * {@link org.springframework.integration.message.ErrorMessage}, are written with Java serialization. Because a Java
+ * serialization stream never starts with the version byte, Messages stored with Java serialization, e.g. before the
+ * store was switched to this serializer, are still read.
+ *
+ * @since 2.2
+ */
+public class CompactMessageSerializer implements Serializer<Message<?>>, Deserializer<Message<?>>, BeanClassLoaderAware {
+
+	private static final Log logger = LogFactory.getLog(CompactMessageSerializer.class);
+
+	/**
+	 * The version of the format written by this serializer, which is the first byte of each serialized Message.
+	 */
+	public static final byte FORMAT_VERSION = 1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int HAS_ID = 1;
+
+	private static final int HAS_TIMESTAMP = 2;
+
+	/**
+	 * Header names written as their index + 1; 0 precedes a name written in full. Only ever append to this list.
+	 */
+	private static final String[] STANDARD_HEADER_NAMES = new String[] {
+			MessageHeaders.CORRELATION_ID, MessageHeaders.REPLY_CHANNEL, MessageHeaders.ERROR_CHANNEL,
+			MessageHeaders.EXPIRATION_DATE, MessageHeaders.PRIORITY, MessageHeaders.SEQUENCE_NUMBER,
+			MessageHeaders.SEQUENCE_SIZE, MessageHeaders.SEQUENCE_DETAILS, MessageHeaders.CONTENT_TYPE };
+
+	private static final Map<String, Integer> STANDARD_HEADER_INDEXES = new HashMap<String, Integer>();
+
+	static {
+		for (int i = 0; i < STANDARD_HEADER_NAMES.length; i++) {
+			STANDARD_HEADER_INDEXES.put(STANDARD_HEADER_NAMES[i], i + 1);
+		}
+	}
+
+	private static final int NULL = 0, STRING = 1, INTEGER = 2, LONG = 3, TRUE = 4, FALSE = 5, UUID_VALUE = 6,
+			DOUBLE = 7, FLOAT = 8, SHORT = 9, BYTE = 10, CHARACTER = 11, BYTES = 12, SERIALIZED = 13;
+
+	private final List<PayloadCodec> payloadCodecs = new ArrayList<PayloadCodec>();
+
+	private final PayloadCodec[] payloadCodecsById = new PayloadCodec[256];
+
+	private final SerializingPayloadCodec serializingCodec = new SerializingPayloadCodec();
+
+	private volatile ClassLoader classLoader;
+
+	public CompactMessageSerializer() {
+		this.addPayloadCodec(new ByteArrayPayloadCodec());
+		this.addPayloadCodec(new StringPayloadCodec());
+		this.payloadCodecsById[SerializingPayloadCodec.ID] = this.serializingCodec;
+	}
+
+	/**
+	 * Add codecs for payloads that are not byte[] or String, e.g. a {@link JsonPayloadCodec}. They are tried in order,
+	 * after the codecs for byte[] and String and before the fallback to Java serialization, and must not use the id
+	 * of another codec.
+	 *
+	 * @param payloadCodecs the codecs to add
+	 */
+	public void setPayloadCodecs(List<PayloadCodec> payloadCodecs) {
+		Assert.notNull(payloadCodecs, "'payloadCodecs' must not be null");
+		for (PayloadCodec payloadCodec : payloadCodecs) {
+			this.addPayloadCodec(payloadCodec);
+		}
+	}
+
+	/**
+	 * The ClassLoader used to read header values, payloads and Messages written with Java serialization. It is
+	 * also passed to the payload codecs that are {@link BeanClassLoaderAware}.
+	 */
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+		for (PayloadCodec payloadCodec : this.payloadCodecsById) {
+			if (payloadCodec instanceof BeanClassLoaderAware) {
+				((BeanClassLoaderAware) payloadCodec).setBeanClassLoader(classLoader);
+			}
+		}
+	}
+
+	public void serialize(Message<?> message, OutputStream outputStream) throws IOException {
+		if (!GenericMessage.class.equals(message.getClass())) {
+			ObjectOutputStream out = new ObjectOutputStream(outputStream);
+			out.writeObject(message);
+			out.flush();
+			return;
+		}
+		DataOutputStream out = new DataOutputStream(outputStream);
+		out.writeByte(FORMAT_VERSION);
+		MessageHeaders headers = message.getHeaders();
+		UUID id = headers.getId();
+		Long timestamp = headers.getTimestamp();
+		out.writeByte((id != null ? HAS_ID : 0) | (timestamp != null ? HAS_TIMESTAMP : 0));
+		if (id != null) {
+			out.writeLong(id.getMostSignificantBits());
+			out.writeLong(id.getLeastSignificantBits());
+		}
+		if (timestamp != null) {
+			writeVarLong(out, timestamp);
+		}
+		List<Map.Entry<String, Object>> entries = new ArrayList<Map.Entry<String, Object>>(headers.size());
+		for (Map.Entry<String, Object> entry : headers.entrySet()) {
+			String name = entry.getKey();
+			if (MessageHeaders.ID.equals(name) || MessageHeaders.TIMESTAMP.equals(name)) {
+				continue;
+			}
+			if (entry.getValue() == null || entry.getValue() instanceof Serializable) {
+				entries.add(entry);
+			}
+			else if (logger.isInfoEnabled()) {
+				logger.info("removing non-serializable header: " + name);
+			}
+		}
+		writeVarLong(out, entries.size());
+		for (Map.Entry<String, Object> entry : entries) {
+			Integer index = STANDARD_HEADER_INDEXES.get(entry.getKey());
+			if (index != null) {
+				out.writeByte(index);
+			}
+			else {
+				out.writeByte(0);
+				writeString(out, entry.getKey());
+			}
+			this.writeValue(out, entry.getValue());
+		}
+		Object payload = message.getPayload();
+		PayloadCodec payloadCodec = this.getPayloadCodec(payload);
+		byte[] bytes = payloadCodec.encode(payload);
+		out.writeByte(payloadCodec.getId());
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+		out.flush();
+	}
+
+	public Message<?> deserialize(InputStream inputStream) throws IOException {
+		PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, 2);
+		DataInputStream in = new DataInputStream(pushbackStream);
+		byte version = in.readByte();
+		if (version == (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8)) {
+			pushbackStream.unread(version);
+			return (Message<?>) this.readJavaObject(pushbackStream);
+		}
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unknown Message format version: " + version);
+		}
+		int flags = in.readByte();
+		UUID id = MessageHeaders.ID_VALUE_NONE;
+		if ((flags & HAS_ID) != 0) {
+			id = new UUID(in.readLong(), in.readLong());
+		}
+		Long timestamp = -1L;
+		if ((flags & HAS_TIMESTAMP) != 0) {
+			timestamp = readVarLong(in);
+		}
+		int headerCount = (int) readVarLong(in);
+		Map<String, Object> headers = new HashMap<String, Object>(headerCount * 4 / 3 + 1);
+		for (int i = 0; i < headerCount; i++) {
+			int index = in.readUnsignedByte();
+			String name;
+			if (index == 0) {
+				name = readString(in);
+			}
+			else if (index <= STANDARD_HEADER_NAMES.length) {
+				name = STANDARD_HEADER_NAMES[index - 1];
+			}
+			else {
+				throw new IOException("Unknown header index: " + index);
+			}
+			headers.put(name, this.readValue(in));
+		}
+		int codecId = in.readUnsignedByte();
+		PayloadCodec payloadCodec = this.payloadCodecsById[codecId];
+		if (payloadCodec == null) {
+			throw new IOException("No PayloadCodec with id " + codecId);
+		}
+		byte[] bytes = new byte[(int) readVarLong(in)];
+		in.readFully(bytes);
+		return new GenericMessage<Object>(payloadCodec.decode(bytes), headers, id, timestamp);
+	}
+
+	/**
+	 * Convenience method for callers that store Messages as byte arrays.
+	 */
+	public byte[] toBytes(Message<?> message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		this.serialize(message, bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Convenience method for callers that store Messages as byte arrays.
+	 */
+	public Message<?> fromBytes(byte[] bytes) throws IOException {
+		return this.deserialize(new ByteArrayInputStream(bytes));
+	}
+
+	private void addPayloadCodec(PayloadCodec payloadCodec) {
+		int id = payloadCodec.getId() & 0xFF;
+		Assert.isTrue(this.payloadCodecsById[id] == null,
+				"PayloadCodec id " + id + " is already used by " + this.payloadCodecsById[id]);
+		if (this.classLoader != null && payloadCodec instanceof BeanClassLoaderAware) {
+			((BeanClassLoaderAware) payloadCodec).setBeanClassLoader(this.classLoader);
+		}
+		this.payloadCodecsById[id] = payloadCodec;
+		this.payloadCodecs.add(payloadCodec);
+	}
+
+	private PayloadCodec getPayloadCodec(Object payload) throws IOException {
+		for (PayloadCodec payloadCodec : this.payloadCodecs) {
+			if (payloadCodec.canEncode(payload)) {
+				return payloadCodec;
+			}
+		}
+		if (this.serializingCodec.canEncode(payload)) {
+			return this.serializingCodec;
+		}
+		throw new IOException("No PayloadCodec can encode a payload of type " + payload.getClass().getName());
+	}
+
+	private void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			writeVarLong(out, (Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			writeVarLong(out, (Long) value);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte((Boolean) value ? TRUE : FALSE);
+		}
+		else if (value instanceof UUID) {
+			out.writeByte(UUID_VALUE);
+			out.writeLong(((UUID) value).getMostSignificantBits());
+			out.writeLong(((UUID) value).getLeastSignificantBits());
+		}
+		else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (value instanceof Character) {
+			out.writeByte(CHARACTER);
+			out.writeChar((Character) value);
+		}
+		else if (value instanceof byte[]) {
+			out.writeByte(BYTES);
+			writeVarLong(out, ((byte[]) value).length);
+			out.write((byte[]) value);
+		}
+		else {
+			out.writeByte(SERIALIZED);
+			byte[] bytes = this.serializingCodec.encode(value);
+			writeVarLong(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private Object readValue(DataInputStream in) throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case INTEGER:
+				return (int) readVarLong(in);
+			case LONG:
+				return readVarLong(in);
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case UUID_VALUE:
+				return new UUID(in.readLong(), in.readLong());
+			case DOUBLE:
+				return in.readDouble();
+			case FLOAT:
+				return in.readFloat();
+			case SHORT:
+				return in.readShort();
+			case BYTE:
+				return in.readByte();
+			case CHARACTER:
+				return in.readChar();
+			case BYTES:
+				byte[] bytes = new byte[(int) readVarLong(in)];
+				in.readFully(bytes);
+				return bytes;
+			case SERIALIZED:
+				byte[] serialized = new byte[(int) readVarLong(in)];
+				in.readFully(serialized);
+				return this.readJavaObject(new ByteArrayInputStream(serialized));
+			default:
+				throw new IOException("Unknown header value type: " + type);
+		}
+	}
+
+	private Object readJavaObject(InputStream inputStream) throws IOException {
+		ObjectInputStream in = new ConfigurableObjectInputStream(inputStream, this.classLoader);
+		try {
+			return in.readObject();
+		}
+		catch (ClassNotFoundException e) {
+			IOException exception = new IOException("Failed to deserialize object type");
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[(int) readVarLong(in)];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Writes a zig-zag encoded variable length long: 7 bits per byte, low bits first, small magnitudes in few bytes.
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+			zigZag >>>= 7;
+		}
+		out.writeByte((int) zigZag);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long zigZag = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			zigZag |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigZag >>> 1) ^ -(zigZag & 1);
+			}
+		}
+		throw new EOFException("Malformed variable length long");
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.support.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * A {@link PayloadCodec} that stores payloads as JSON with the Jackson {@link ObjectMapper},
+ * preceded by the name of the payload's class. The payload class must be one that the
+ * ObjectMapper can write and read back, e.g. a JavaBean, so the codec only encodes the
+ * types given to {@link #setPayloadTypes(Class...)}, which must be set; other payloads are
+ * left to the next codec, or to Java serialization.
+ *
+ * @since 2.2
+ */
+public class JsonPayloadCodec implements PayloadCodec, BeanClassLoaderAware, InitializingBean {
+
+	public static final byte ID = 4;
+
+	private final ObjectMapper objectMapper;
+
+	private volatile Class<?>[] payloadTypes = new Class<?>[0];
+
+	private volatile ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+	public JsonPayloadCodec() {
+		this(null);
+	}
+
+	public JsonPayloadCodec(ObjectMapper objectMapper) {
+		this.objectMapper = (objectMapper != null) ? objectMapper : new ObjectMapper();
+	}
+
+	/**
+	 * The types of payload to encode (including their subtypes). Required; without them, the
+	 * codec encodes no payloads.
+	 */
+	public void setPayloadTypes(Class<?>... payloadTypes) {
+		Assert.notEmpty(payloadTypes, "'payloadTypes' must not be empty");
+		this.payloadTypes = payloadTypes;
+	}
+
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	public void afterPropertiesSet() {
+		Assert.state(this.payloadTypes.length > 0, "'payloadTypes' must be set");
+	}
+
+	public byte getId() {
+		return ID;
+	}
+
+	public boolean canEncode(Object payload) {
+		for (Class<?> payloadType : this.payloadTypes) {
+			if (payloadType.isInstance(payload)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public byte[] encode(Object payload) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(payload.getClass().getName());
+		this.objectMapper.writeValue(out, payload);
+		return bytes.toByteArray();
+	}
+
+	public Object decode(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		String className = in.readUTF();
+		Class<?> payloadType;
+		try {
+			payloadType = ClassUtils.forName(className, this.classLoader);
+		}
+		catch (ClassNotFoundException e) {
+			IOException exception = new IOException("Cannot load payload class " + className);
+			exception.initCause(e);
+			throw exception;
+		}
+		return this.objectMapper.readValue(in, payloadType);
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.support.serializer;
+
+import java.io.IOException;
+
+/**
+ * Strategy for encoding the payload of a Message for the {@link CompactMessageSerializer}.
+ * Each codec has an id that is stored with the encoded payload, so that the payload can be
+ * decoded by the same codec later; the id of a codec must therefore never change once
+ * Messages have been stored with it. Ids 0 to 31 are reserved for the codecs of the framework.
+ *
+ * @since 2.2
+ */
+public interface PayloadCodec {
+
+	/**
+	 * @return the id stored with the payloads that this codec encodes
+	 */
+	byte getId();
+
+	/**
+	 * @param payload the payload of a Message
+	 * @return true if this codec can encode the payload
+	 */
+	boolean canEncode(Object payload);
+
+	byte[] encode(Object payload) throws IOException;
+
+	Object decode(byte[] bytes) throws IOException;
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.support.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.core.serializer.support.SerializingConverter;
+
+/**
+ * A {@link PayloadCodec} that stores {@link Serializable} payloads with Java serialization.
+ * The {@link CompactMessageSerializer} falls back to this codec for payloads that no other
+ * codec can encode, and passes it its bean ClassLoader, with which the payload classes are
+ * loaded.
+ *
+ * @since 2.2
+ */
+public class SerializingPayloadCodec implements PayloadCodec, BeanClassLoaderAware {
+
+	public static final byte ID = 3;
+
+	private final SerializingConverter serializer = new SerializingConverter();
+
+	private volatile ClassLoader classLoader;
+
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	public byte getId() {
+		return ID;
+	}
+
+	public boolean canEncode(Object payload) {
+		return payload instanceof Serializable;
+	}
+
+	public byte[] encode(Object payload) {
+		return this.serializer.convert(payload);
+	}
+
+	public Object decode(byte[] bytes) throws IOException {
+		ObjectInputStream in = new ConfigurableObjectInputStream(new ByteArrayInputStream(bytes), this.classLoader);
+		try {
+			return in.readObject();
+		}
+		catch (ClassNotFoundException e) {
+			IOException exception = new IOException("Failed to deserialize payload type");
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+}
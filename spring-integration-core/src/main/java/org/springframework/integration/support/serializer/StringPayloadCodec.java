@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.support.serializer;
+
+import java.nio.charset.Charset;
+
+/**
+ * A {@link PayloadCodec} that stores String payloads as UTF-8.
+ *
+ * @since 2.2
+ */
+public class StringPayloadCodec implements PayloadCodec {
+
+	public static final byte ID = 2;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public byte getId() {
+		return ID;
+	}
+
+	public boolean canEncode(Object payload) {
+		return payload instanceof String;
+	}
+
+	public byte[] encode(Object payload) {
+		return ((String) payload).getBytes(UTF_8);
+	}
+
+	public Object decode(byte[] bytes) {
+		return new String(bytes, UTF_8);
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides classes for the compact serialization of Messages.
+ */
+package org.springframework.integration.support.serializer;
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.util;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.UUID;
+
+import org.springframework.integration.MessageHeaders.IdGenerator;
+
+/**
+ * An {@link IdGenerator} that produces random (version 4) UUIDs using a {@link Random}
+ * seeded once from a {@link SecureRandom}. This avoids the cost of calling into the
+ * {@link SecureRandom} for every message, as {@link UUID#randomUUID()} does, at the expense
+ * of the IDs not being suitable for security purposes. The IDs remain unique across JVMs
+ * with a very high probability.
+ *
+ * @since 2.2
+ */
+public class AlternativeJdkIdGenerator implements IdGenerator {
+
+	private final Random random;
+
+	public AlternativeJdkIdGenerator() {
+		this.random = new Random(new SecureRandom().nextLong());
+	}
+
+	public UUID generateId() {
+		long mostSigBits = this.random.nextLong();
+		long leastSigBits = this.random.nextLong();
+		mostSigBits = (mostSigBits & 0xffffffffffff0fffL) | 0x0000000000004000L;
+		leastSigBits = (leastSigBits & 0x3fffffffffffffffL) | 0x8000000000000000L;
+		return new UUID(mostSigBits, leastSigBits);
+	}
+
+}
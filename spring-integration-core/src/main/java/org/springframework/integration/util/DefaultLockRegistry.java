@@ -12,6 +12,7 @@
  */
 package org.springframework.integration.util;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -23,6 +24,11 @@ import org.springframework.util.Assert;
  * and array consisting of 256 {@link ReentrantLock} instances.
  * When the {@link #obtain(Object)} method is called with the lockKey (e.g., Object) the index of the {@link Lock}
  * is determined by masking the object's hashCode (e.g., object.hashCode & mask) and the {@link Lock} is returned.
+ * <p>
+ * Each lock (stripe) counts how often it was acquired and how often a thread had to wait for it, so that
+ * collisions between unrelated keys can be detected; see {@link #getContendedAcquisitionCount(int)}.
+ * Use {@link #forConcurrencyLevel(int)} to size the table for the number of threads that are expected to
+ * hold locks concurrently, or {@link PerKeyLockRegistry} to avoid collisions altogether.
  *
  * @author Oleg Zhurakousky
  * @author Gary Russell
@@ -31,7 +37,13 @@ import org.springframework.util.Assert;
  */
 public final class DefaultLockRegistry implements LockRegistry {
 
-	private final Lock[] lockTable;
+	private static final int MIN_STRIPES = 256;
+
+	private static final int MAX_STRIPES = 1 << 16;
+
+	private static final int STRIPES_PER_THREAD = 64;
+
+	private final StripedLock[] lockTable;
 
 	private final int mask;
 
@@ -58,9 +70,9 @@ public final class DefaultLockRegistry implements LockRegistry {
 		Assert.isTrue(bits.length() < 32 && (mask == 0 || bits.lastIndexOf('0') < bits.indexOf('1') ), "Mask must be a power of 2 - 1");
 		this.mask = mask;
 		int arraySize = this.mask+1;
-		lockTable = new ReentrantLock[arraySize];
+		lockTable = new StripedLock[arraySize];
 		for (int i = 0; i < arraySize; i++) {
-			lockTable[i] = new ReentrantLock();
+			lockTable[i] = new StripedLock();
 		}
 	}
 
@@ -74,4 +86,126 @@ public final class DefaultLockRegistry implements LockRegistry {
 		Integer lockIndex = lockKey.hashCode() & this.mask;
 		return this.lockTable[lockIndex];
 	}
+
+	/**
+	 * Returns the number of locks (stripes) that keys are hashed onto.
+	 */
+	public int getStripeCount() {
+		return this.lockTable.length;
+	}
+
+	/**
+	 * Returns how often the lock with the given index was acquired.
+	 */
+	public long getAcquisitionCount(int stripe) {
+		return this.lockTable[stripe].acquisitions;
+	}
+
+	/**
+	 * Returns how often a thread had to wait to acquire the lock with the given index, either because
+	 * the same key was in use or because another key was hashed onto the same lock.
+	 */
+	public long getContendedAcquisitionCount(int stripe) {
+		return this.lockTable[stripe].contendedAcquisitions;
+	}
+
+	/**
+	 * Returns how often any of the locks was acquired.
+	 */
+	public long getAcquisitionCount() {
+		long count = 0;
+		for (StripedLock lock : this.lockTable) {
+			count += lock.acquisitions;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns how often a thread had to wait to acquire any of the locks.
+	 */
+	public long getContendedAcquisitionCount() {
+		long count = 0;
+		for (StripedLock lock : this.lockTable) {
+			count += lock.contendedAcquisitions;
+		}
+		return count;
+	}
+
+	/**
+	 * Creates a DefaultLockRegistry with enough locks that a collision between the keys of the given number
+	 * of concurrent threads is unlikely: 64 locks per thread, rounded up to a power of 2, with a minimum of
+	 * 256 and a maximum of 65536 locks.
+	 * @param concurrencyLevel the number of threads expected to hold locks at the same time, typically
+	 * the number of available processors.
+	 */
+	public static DefaultLockRegistry forConcurrencyLevel(int concurrencyLevel) {
+		Assert.isTrue(concurrencyLevel > 0, "'concurrencyLevel' must be positive");
+		int stripes = MIN_STRIPES;
+		while (stripes < MAX_STRIPES && stripes < (long) concurrencyLevel * STRIPES_PER_THREAD) {
+			stripes <<= 1;
+		}
+		return new DefaultLockRegistry(stripes - 1);
+	}
+
+	/**
+	 * Creates a DefaultLockRegistry sized for the number of processors available to the JVM.
+	 * @see #forConcurrencyLevel(int)
+	 */
+	public static DefaultLockRegistry forAvailableProcessors() {
+		return forConcurrencyLevel(Runtime.getRuntime().availableProcessors());
+	}
+
+
+	/**
+	 * A {@link ReentrantLock} that counts its acquisitions. A thread only tries to acquire the lock
+	 * without waiting first, so the uncontended case costs no more than a plain ReentrantLock; the
+	 * counters are only written by the thread that holds the lock.
+	 */
+	@SuppressWarnings("serial")
+	private static final class StripedLock extends ReentrantLock {
+
+		private volatile long acquisitions;
+
+		private volatile long contendedAcquisitions;
+
+		@Override
+		public void lock() {
+			if (!super.tryLock()) {
+				super.lock();
+				this.contendedAcquisitions++;
+			}
+			this.acquisitions++;
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			if (!super.tryLock()) {
+				super.lockInterruptibly();
+				this.contendedAcquisitions++;
+			}
+			this.acquisitions++;
+		}
+
+		@Override
+		public boolean tryLock() {
+			if (super.tryLock()) {
+				this.acquisitions++;
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+			if (!super.tryLock()) {
+				if (!super.tryLock(timeout, unit)) {
+					return false;
+				}
+				this.contendedAcquisitions++;
+			}
+			this.acquisitions++;
+			return true;
+		}
+	}
+
 }
\ No newline at end of file
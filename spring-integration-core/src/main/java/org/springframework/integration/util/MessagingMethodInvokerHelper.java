@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.integration.util;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
@@ -68,6 +69,10 @@ import org.springframework.util.StringUtils;
  * is provided, and more than one declared method has that name, the method-selection will be dynamic, based on the
  * underlying SpEL method resolution. Alternatively, an annotation type may be provided so that the candidates for
  * SpEL's method resolution are determined by the presence of that annotation rather than the method name.
+ * <p>
+ * Methods whose parameters are all bound to the payload, the Message itself, the headers Map or a single
+ * unqualified header are invoked directly, without evaluating the SpEL expression, as long as the arguments need
+ * no conversion. In all other cases the SpEL expression is used.
  * 
  * @author Mark Fisher
  * @author Oleg Zhurakousky
@@ -90,6 +95,8 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 
 	private final boolean canProcessMessageList;
 
+	private volatile boolean useSpelInvoker;
+
 
 	public MessagingMethodInvokerHelper(Object targetObject, Method method, Class<?> expectedType,
 			boolean canProcessMessageList) {
@@ -120,6 +127,14 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 	}
 
 
+	/**
+	 * Set to true to always invoke the target method by evaluating the SpEL expression, even when
+	 * the arguments could be passed to the method directly. Default false.
+	 */
+	public void setUseSpelInvoker(boolean useSpelInvoker) {
+		this.useSpelInvoker = useSpelInvoker;
+	}
+
 	public T process(Message<?> message) throws Exception {
 		ParametersWrapper parameters = new ParametersWrapper(message);
 		return processInternal(parameters);
@@ -219,10 +234,12 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		Assert.state(!candidates.isEmpty(), "No candidate methods found for messages.");
 		for (HandlerMethod candidate : candidates) {
 			try {
-				Expression expression = candidate.getExpression();
 				Class<?> expectedType = this.expectedType != null ? this.expectedType : candidate.method.getReturnType();
+				Object[] arguments = (this.useSpelInvoker) ? null : candidate.resolveArguments(this.targetObject, parameters);
 				@SuppressWarnings("unchecked")
-				T result = (T) this.evaluateExpression(expression, parameters, expectedType);
+				T result = (T) ((arguments != null)
+						? this.invokeMethod(candidate.method, arguments, expectedType)
+						: this.evaluateExpression(candidate.getExpression(), parameters, expectedType));
 				if (this.requiresReply) {
 					Assert.notNull(result,
 							"Expression evaluation result was null, but this processor requires a reply.");
@@ -263,6 +280,33 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		}
 	}
 
+	/**
+	 * Invoke the method without SpEL, converting the result in the same way as the expression evaluation would.
+	 * An exception thrown by the method is rethrown as is.
+	 */
+	private Object invokeMethod(Method method, Object[] arguments, Class<?> expectedType) throws Exception {
+		Object result;
+		try {
+			result = method.invoke(this.targetObject, arguments);
+		}
+		catch (InvocationTargetException e) {
+			Throwable cause = e.getTargetException();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+		if (result != null && expectedType != null && !void.class.equals(expectedType)
+				&& !org.springframework.util.ClassUtils.isAssignableValue(expectedType, result)) {
+			result = this.getEvaluationContext().getTypeConverter().convertValue(result,
+					TypeDescriptor.forObject(result), TypeDescriptor.valueOf(expectedType));
+		}
+		return result;
+	}
+
 	private Map<Class<?>, HandlerMethod> findHandlerMethodsForTarget(final Object targetObject,
 			final Class<? extends Annotation> annotationType, final String methodName, final boolean requiresReply) {
 
@@ -430,6 +474,11 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 
 		private final boolean canProcessMessageList;
 
+		/**
+		 * The sources of the arguments when the method can be invoked directly, or null.
+		 */
+		private volatile MethodArgument[] methodArguments;
+
 
 		HandlerMethod(Method method, boolean canProcessMessageList) {
 			this.method = method;
@@ -446,6 +495,31 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 			return this.targetParameterType;
 		}
 
+		/**
+		 * Resolve the arguments for invoking the method directly on the target object.
+		 * @return the arguments, or null if the method must be invoked by evaluating the expression
+		 */
+		Object[] resolveArguments(Object targetObject, ParametersWrapper parameters) {
+			MethodArgument[] methodArguments = this.methodArguments;
+			if (methodArguments == null || !this.method.getDeclaringClass().isInstance(targetObject)) {
+				return null;
+			}
+			Object[] arguments = new Object[methodArguments.length];
+			for (int i = 0; i < methodArguments.length; i++) {
+				Object argument = methodArguments[i].resolve(parameters);
+				if (argument == null) {
+					if (methodArguments[i].requiresValue()) {
+						return null;
+					}
+				}
+				else if (!methodArguments[i].accepts(argument)) {
+					return null;
+				}
+				arguments[i] = argument;
+			}
+			return arguments;
+		}
+
 		public String toString() {
 			return this.method.toString();
 		}
@@ -456,6 +530,8 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 			Annotation[][] parameterAnnotations = method.getParameterAnnotations();
 			boolean hasUnqualifiedMapParameter = false;
 			TypeDescriptor defaultParameterTypeDescriptor = TypeDescriptor.valueOf(List.class);
+			MethodArgument[] methodArguments = new MethodArgument[parameterTypes.length];
+			boolean directInvocation = !method.isVarArgs();
 			for (int i = 0; i < parameterTypes.length; i++) {
 				if (i != 0) {
 					sb.append(", ");
@@ -471,9 +547,11 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 						String qualifierExpression = ((Payload) mappingAnnotation).value();
 						if (StringUtils.hasText(qualifierExpression)) {
 							sb.append("." + qualifierExpression);
+							directInvocation = false;
 						}
 						if (!StringUtils.hasText(qualifierExpression)) {
 							this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+							methodArguments[i] = new MethodArgument(MethodArgument.Source.PAYLOAD, parameterTypes[i]);
 						}
 					}
 					if (annotationType.equals(Payloads.class)) {
@@ -486,27 +564,42 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 						if (!StringUtils.hasText(qualifierExpression)) {
 							this.setExclusiveTargetParameterType(parameterTypeDescriptor);
 						}
+						directInvocation = false;
 					}
 					else if (annotationType.equals(Headers.class)) {
 						Assert.isTrue(Map.class.isAssignableFrom(parameterType),
 								"The @Headers annotation can only be applied to a Map-typed parameter.");
 						sb.append("headers");
+						methodArguments[i] = new MethodArgument(MethodArgument.Source.HEADERS, parameterTypes[i]);
 					}
 					else if (annotationType.equals(Header.class)) {
 						Header headerAnnotation = (Header) mappingAnnotation;
-						sb.append(this.determineHeaderExpression(headerAnnotation, new MethodParameter(method, i)));
+						MethodParameter methodParameter = new MethodParameter(method, i);
+						sb.append(this.determineHeaderExpression(headerAnnotation, methodParameter));
+						if (headerAnnotation.value().indexOf('.') != -1) {
+							directInvocation = false;
+						}
+						else {
+							String headerName = StringUtils.hasText(headerAnnotation.value())
+									? headerAnnotation.value() : methodParameter.getParameterName();
+							methodArguments[i] = new MethodArgument(headerName, headerAnnotation.required(),
+									parameterTypes[i]);
+						}
 					}
 				}
 				else if (parameterTypeDescriptor.isAssignableTo(messageTypeDescriptor)) {
 					sb.append("message");
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+					methodArguments[i] = new MethodArgument(MethodArgument.Source.MESSAGE, parameterTypes[i]);
 				}
 				else if ((parameterTypeDescriptor.isAssignableTo(messageListTypeDescriptor) || parameterTypeDescriptor
 								.isAssignableTo(messageArrayTypeDescriptor))) {
 					sb.append("messages");
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+					directInvocation = false;
 				}
 				else if (Collection.class.isAssignableFrom(parameterType) || parameterType.isArray()) {
+					directInvocation = false;
 					if (canProcessMessageList) {
 						sb.append("messages.![payload]");
 					}
@@ -516,6 +609,7 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
 				}
 				else if (Iterator.class.isAssignableFrom(parameterType)) {
+					directInvocation = false;
 					if (canProcessMessageList) {
 						Type type =  method.getGenericParameterTypes()[0];
 						Type parameterizedType = null;
@@ -538,6 +632,7 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
 				}
 				else if (Map.class.isAssignableFrom(parameterType)) {
+					directInvocation = false;
 					if (Properties.class.isAssignableFrom(parameterType)) {
 						sb.append("payload instanceof T(java.util.Map) or "
 								+ "(payload instanceof T(String) and payload.contains('=')) ? payload : headers");
@@ -553,6 +648,7 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 				else {
 					sb.append("payload");
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+					methodArguments[i] = new MethodArgument(MethodArgument.Source.PAYLOAD, parameterTypes[i]);
 				}
 			}
 			if (hasUnqualifiedMapParameter) {
@@ -566,6 +662,15 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 			if (this.targetParameterType == null) {
 				this.targetParameterType = defaultParameterTypeDescriptor;
 			}
+			if (directInvocation) {
+				try {
+					ReflectionUtils.makeAccessible(method);
+					this.methodArguments = methodArguments;
+				}
+				catch (SecurityException e) {
+					// fall back to the expression
+				}
+			}
 			return EXPRESSION_PARSER.parseExpression(sb.toString());
 		}
 
@@ -624,6 +729,65 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		}
 	}
 
+	/**
+	 * The source of an argument for a method that is invoked directly.
+	 */
+	private static class MethodArgument {
+
+		enum Source { PAYLOAD, MESSAGE, HEADERS, HEADER }
+
+		private final Source source;
+
+		private final String headerName;
+
+		private final boolean required;
+
+		private final Class<?> parameterType;
+
+		MethodArgument(Source source, Class<?> parameterType) {
+			this(source, null, false, parameterType);
+		}
+
+		MethodArgument(String headerName, boolean required, Class<?> parameterType) {
+			this(Source.HEADER, headerName, required, parameterType);
+		}
+
+		private MethodArgument(Source source, String headerName, boolean required, Class<?> parameterType) {
+			this.source = source;
+			this.headerName = headerName;
+			this.required = required;
+			this.parameterType = parameterType;
+		}
+
+		Object resolve(ParametersWrapper parameters) {
+			switch (this.source) {
+				case PAYLOAD:
+					return parameters.payload;
+				case MESSAGE:
+					return parameters.message;
+				case HEADERS:
+					return parameters.headers;
+				default:
+					return (parameters.headers != null) ? parameters.headers.get(this.headerName) : null;
+			}
+		}
+
+		/**
+		 * Whether a null value can not be passed directly, either because the parameter is primitive or
+		 * because only the expression reports the missing value properly.
+		 */
+		boolean requiresValue() {
+			return this.parameterType.isPrimitive() || this.required || this.source != Source.HEADER;
+		}
+
+		/**
+		 * Whether the value can be passed without conversion.
+		 */
+		boolean accepts(Object value) {
+			return org.springframework.util.ClassUtils.isAssignableValue(this.parameterType, value);
+		}
+	}
+
 	@SuppressWarnings("unused")
 	private static class ParametersWrapper {
 
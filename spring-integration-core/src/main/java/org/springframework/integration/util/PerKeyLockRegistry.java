@@ -0,0 +1,206 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.integration.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link LockRegistry} that gives each key its own {@link ReentrantLock}, so that threads working on
+ * different keys never wait for each other, unlike with the hashed locks of {@link DefaultLockRegistry}.
+ * <p>
+ * A lock only exists while at least one thread holds it or waits for it; it is discarded when it is
+ * unlocked for the last time. For example, the lock of an aggregator's group is released once the
+ * thread that completed the group leaves the critical section, so the registry does not grow with the
+ * number of groups. Creating and discarding the locks costs more than indexing a fixed table, so this
+ * registry pays off when many threads hold locks at the same time and collisions in a
+ * {@link DefaultLockRegistry} become noticeable.
+ * <p>
+ * The locks returned by {@link #obtain(Object)} do not support {@link Lock#newCondition()}.
+ *
+ * @since 2.2
+ */
+public class PerKeyLockRegistry implements LockRegistry {
+
+	private final ConcurrentMap<Object, KeyLock> locks = new ConcurrentHashMap<Object, KeyLock>();
+
+	private final AtomicLong contendedAcquisitions = new AtomicLong();
+
+
+	public Lock obtain(Object lockKey) {
+		Assert.notNull(lockKey, "'lockKey' must not be null");
+		return new KeyLockHandle(lockKey);
+	}
+
+	/**
+	 * Returns the number of keys whose lock is currently held or waited for.
+	 */
+	public int getLockCount() {
+		return this.locks.size();
+	}
+
+	/**
+	 * Returns how often a thread had to wait for a lock that was held by another thread.
+	 */
+	public long getContendedAcquisitionCount() {
+		return this.contendedAcquisitions.get();
+	}
+
+	/**
+	 * Registers the calling thread as a user of the key's lock, creating the lock if necessary.
+	 */
+	private KeyLock retain(Object lockKey) {
+		while (true) {
+			KeyLock lock = this.locks.get(lockKey);
+			if (lock == null) {
+				KeyLock newLock = new KeyLock();
+				lock = this.locks.putIfAbsent(lockKey, newLock);
+				if (lock == null) {
+					return newLock;
+				}
+			}
+			if (lock.retain()) {
+				return lock;
+			}
+			// the lock was discarded concurrently
+			this.locks.remove(lockKey, lock);
+		}
+	}
+
+	private void release(Object lockKey, KeyLock lock) {
+		if (lock.release()) {
+			this.locks.remove(lockKey, lock);
+		}
+	}
+
+
+	/**
+	 * The lock of a single key, along with the number of threads that hold it or wait for it.
+	 * Once that number drops to zero the lock can no longer be retained and is removed.
+	 */
+	@SuppressWarnings("serial")
+	private static final class KeyLock extends ReentrantLock {
+
+		private final AtomicInteger users = new AtomicInteger(1);
+
+		boolean retain() {
+			while (true) {
+				int count = this.users.get();
+				if (count == 0) {
+					return false;
+				}
+				if (this.users.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * @return true if this was the last user
+		 */
+		boolean release() {
+			return this.users.decrementAndGet() == 0;
+		}
+	}
+
+
+	/**
+	 * The {@link Lock} returned to callers. It only holds the key and resolves the current lock of
+	 * that key on each call; while a thread holds the lock it cannot be discarded, so unlocking
+	 * always finds the lock that was acquired.
+	 */
+	private final class KeyLockHandle implements Lock {
+
+		private final Object lockKey;
+
+		KeyLockHandle(Object lockKey) {
+			this.lockKey = lockKey;
+		}
+
+		public void lock() {
+			KeyLock lock = retain(this.lockKey);
+			if (!lock.tryLock()) {
+				contendedAcquisitions.incrementAndGet();
+				lock.lock();
+			}
+		}
+
+		public void lockInterruptibly() throws InterruptedException {
+			KeyLock lock = retain(this.lockKey);
+			if (!lock.tryLock()) {
+				contendedAcquisitions.incrementAndGet();
+				try {
+					lock.lockInterruptibly();
+				}
+				catch (InterruptedException e) {
+					release(this.lockKey, lock);
+					throw e;
+				}
+			}
+		}
+
+		public boolean tryLock() {
+			KeyLock lock = retain(this.lockKey);
+			if (lock.tryLock()) {
+				return true;
+			}
+			release(this.lockKey, lock);
+			return false;
+		}
+
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			KeyLock lock = retain(this.lockKey);
+			boolean locked = lock.tryLock();
+			if (!locked) {
+				contendedAcquisitions.incrementAndGet();
+				try {
+					locked = lock.tryLock(time, unit);
+				}
+				finally {
+					if (!locked) {
+						release(this.lockKey, lock);
+					}
+				}
+			}
+			return locked;
+		}
+
+		public void unlock() {
+			KeyLock lock = locks.get(this.lockKey);
+			if (lock == null || !lock.isHeldByCurrentThread()) {
+				throw new IllegalMonitorStateException("The lock for key [" + this.lockKey
+						+ "] is not held by the current thread");
+			}
+			lock.unlock();
+			release(this.lockKey, lock);
+		}
+
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("PerKeyLockRegistry locks do not support conditions");
+		}
+
+		@Override
+		public String toString() {
+			return "PerKeyLock [" + this.lockKey + "]";
+		}
+	}
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.util.Assert;
+
+/**
+ * A bounded, lock-free, multi-producer/multi-consumer {@link BlockingQueue} backed by a
+ * preallocated ring buffer. Each slot carries a sequence number that tells producers and
+ * consumers whether it may be written or read, so neither side takes a lock and no node is
+ * allocated per element.
+ * <p>
+ * Blocking operations do not use conditions; a thread that has to wait for space or for an
+ * element spins, yields or parks briefly, according to the {@link WaitStrategy}, and then
+ * tries again. With every strategy, a thread that is still waiting after a bounded number of
+ * retries falls back to parking, for up to {@value #MAX_PARK_NANOS}ns at a time, so an idle
+ * consumer does not keep a CPU busy.
+ * <p>
+ * Removing arbitrary elements ({@link #remove(Object)} and the iterator's
+ * {@link Iterator#remove()}) is not supported; the iterator returns a weakly consistent view.
+ *
+ * @since 2.2
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	/**
+	 * How threads wait for space or for an element.
+	 */
+	public static enum WaitStrategy {
+
+		/**
+		 * Retry in a busy loop. Lowest latency, but keeps a CPU busy until the thread falls
+		 * back to parking; only suitable when there are more cores than threads using the queue.
+		 */
+		SPIN,
+
+		/**
+		 * Yield the processor between retries.
+		 */
+		YIELD,
+
+		/**
+		 * Park the thread for a short period between retries. Uses the least CPU, at the cost
+		 * of latency.
+		 */
+		PARK
+	}
+
+	private static final long PARK_NANOS = 10000;
+
+	static final long MAX_PARK_NANOS = 1000000;
+
+	private static final int SPIN_TRIES = 10000;
+
+	private static final int YIELD_TRIES = 100;
+
+	private final int capacity;
+
+	private final AtomicReferenceArray<E> buffer;
+
+	/**
+	 * The state of each slot: 2 * position when it is free for the producer of that position,
+	 * 2 * position + 1 when it holds the element for the consumer of that position.
+	 */
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong head = new AtomicLong();
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private final WaitStrategy waitStrategy;
+
+
+	/**
+	 * Create a queue with the given capacity that yields while waiting.
+	 */
+	public RingBufferBlockingQueue(int capacity) {
+		this(capacity, WaitStrategy.YIELD);
+	}
+
+	public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+		Assert.isTrue(capacity > 0, "'capacity' must be positive");
+		Assert.notNull(waitStrategy, "'waitStrategy' must not be null");
+		this.capacity = capacity;
+		this.waitStrategy = waitStrategy;
+		this.buffer = new AtomicReferenceArray<E>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			this.sequences.set(i, 2L * i);
+		}
+	}
+
+
+	public WaitStrategy getWaitStrategy() {
+		return this.waitStrategy;
+	}
+
+	public boolean offer(E e) {
+		Assert.notNull(e, "element must not be null");
+		while (true) {
+			long position = this.tail.get();
+			int index = (int) (position % this.capacity);
+			long difference = this.sequences.get(index) - 2 * position;
+			if (difference == 0) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					this.buffer.set(index, e);
+					this.sequences.set(index, 2 * position + 1);
+					return true;
+				}
+			}
+			else if (difference < 0) {
+				// the slot still holds an element from the previous lap
+				return false;
+			}
+		}
+	}
+
+	public E poll() {
+		while (true) {
+			long position = this.head.get();
+			int index = (int) (position % this.capacity);
+			long difference = this.sequences.get(index) - (2 * position + 1);
+			if (difference == 0) {
+				if (this.head.compareAndSet(position, position + 1)) {
+					E e = this.buffer.get(index);
+					this.buffer.set(index, null);
+					this.sequences.set(index, 2 * (position + this.capacity));
+					return e;
+				}
+			}
+			else if (difference < 0) {
+				// the producer for this position has not published yet
+				return null;
+			}
+		}
+	}
+
+	public E peek() {
+		while (true) {
+			long position = this.head.get();
+			int index = (int) (position % this.capacity);
+			if (this.sequences.get(index) != 2 * position + 1) {
+				return null;
+			}
+			E e = this.buffer.get(index);
+			if (e != null && this.head.get() == position) {
+				return e;
+			}
+		}
+	}
+
+	public void put(E e) throws InterruptedException {
+		int attempt = 0;
+		while (!this.offer(e)) {
+			this.await(System.nanoTime() + Long.MAX_VALUE / 2, attempt++);
+		}
+	}
+
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int attempt = 0;
+		while (!this.offer(e)) {
+			if (!this.await(deadline, attempt++)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public E take() throws InterruptedException {
+		E e = null;
+		int attempt = 0;
+		while ((e = this.poll()) == null) {
+			this.await(System.nanoTime() + Long.MAX_VALUE / 2, attempt++);
+		}
+		return e;
+	}
+
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E e = null;
+		int attempt = 0;
+		while ((e = this.poll()) == null) {
+			if (!this.await(deadline, attempt++)) {
+				return null;
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Wait once according to the {@link WaitStrategy}. Once the strategy's retries are
+	 * exhausted, the thread parks instead, doubling the period up to {@link #MAX_PARK_NANOS}.
+	 * @param attempt the number of times the caller has already waited
+	 * @return false if the deadline has passed
+	 */
+	private boolean await(long deadline, int attempt) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) {
+			return false;
+		}
+		switch (this.waitStrategy) {
+			case SPIN:
+				if (attempt < SPIN_TRIES) {
+					return true;
+				}
+				attempt -= SPIN_TRIES;
+				break;
+			case YIELD:
+				if (attempt < YIELD_TRIES) {
+					Thread.yield();
+					return true;
+				}
+				attempt -= YIELD_TRIES;
+				break;
+			default:
+				break;
+		}
+		long parkNanos = (attempt < 7) ? PARK_NANOS << attempt : MAX_PARK_NANOS;
+		LockSupport.parkNanos(Math.min(remaining, Math.min(parkNanos, MAX_PARK_NANOS)));
+		return true;
+	}
+
+	public int size() {
+		// head and tail are read separately, so the difference is only an estimate
+		long head = this.head.get();
+		long size = this.tail.get() - head;
+		return (int) Math.max(0, Math.min(size, this.capacity));
+	}
+
+	public int remainingCapacity() {
+		return this.capacity - this.size();
+	}
+
+	public int drainTo(Collection<? super E> c) {
+		return this.drainTo(c, Integer.MAX_VALUE);
+	}
+
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		Assert.notNull(c, "collection must not be null");
+		Assert.isTrue(c != this, "cannot drain a queue to itself");
+		int count = 0;
+		E e = null;
+		while (count < maxElements && (e = this.poll()) != null) {
+			c.add(e);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a weakly consistent iterator over the elements that were present when it was
+	 * created and have not been consumed since.
+	 */
+	public Iterator<E> iterator() {
+		List<E> snapshot = new ArrayList<E>();
+		long position = this.head.get();
+		long tail = this.tail.get();
+		for (; position < tail; position++) {
+			int index = (int) (position % this.capacity);
+			if (this.sequences.get(index) == 2 * position + 1) {
+				E e = this.buffer.get(index);
+				if (e != null) {
+					snapshot.add(e);
+				}
+			}
+		}
+		final Iterator<E> iterator = snapshot.iterator();
+		return new Iterator<E>() {
+
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			public E next() {
+				return iterator.next();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException("RingBufferBlockingQueue does not support removal");
+			}
+		};
+	}
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.util;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.integration.MessageHeaders.IdGenerator;
+
+/**
+ * An {@link IdGenerator} that uses a simple counter to produce IDs. This is the cheapest
+ * strategy available, but IDs are only unique within the current JVM and are repeated after
+ * a restart; it should not be used when messages are persisted in a shared or durable
+ * message store, or when IDs are otherwise compared across processes.
+ * <p/>
+ * The least significant bits are incremented for each ID; the most significant bits are
+ * incremented each time the least significant bits wrap around.
+ *
+ * @since 2.2
+ */
+public class SimpleIncrementingIdGenerator implements IdGenerator {
+
+	private final AtomicLong topBits = new AtomicLong();
+
+	private final AtomicLong bottomBits = new AtomicLong();
+
+	public UUID generateId() {
+		long bottomBits = this.bottomBits.incrementAndGet();
+		if (bottomBits == 0) {
+			this.topBits.incrementAndGet();
+		}
+		return new UUID(this.topBits.get(), bottomBits);
+	}
+
+}
@@ -19,6 +19,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -34,6 +36,7 @@ import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.store.MessageGroup;
 import org.springframework.integration.store.SimpleMessageStore;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.StopWatch;
 
 /**
  * @author Mark Fisher
@@ -53,6 +56,31 @@ public class AggregatorTests {
 	}
 
 
+	@Test
+	@Ignore
+	public void testAggPerf() throws InterruptedException {
+		for (int size : new int[] { 1000, 10000, 100000 }) {
+			AggregatingMessageHandler handler = new AggregatingMessageHandler(new MultiplyingProcessor(),
+					new SimpleMessageStore());
+			handler.setExpireGroupsUponCompletion(true);
+			QueueChannel outputChannel = new QueueChannel();
+			handler.setOutputChannel(outputChannel);
+			List<Message<?>> messages = new ArrayList<Message<?>>(size);
+			for (int i = 1; i <= size; i++) {
+				messages.add(createMessage(1, "ABC", size, i, null, null));
+			}
+			StopWatch watch = new StopWatch();
+			watch.start();
+			for (Message<?> message : messages) {
+				handler.handleMessage(message);
+			}
+			watch.stop();
+			assertNotNull(outputChannel.receive(0));
+			System.out.println("Aggregated " + size + " messages in " + watch.getTotalTimeMillis() + "ms ("
+					+ (watch.getTotalTimeMillis() * 1000000 / size) + "ns per message)");
+		}
+	}
+
 	@Test
 	public void testCompleteGroupWithinTimeout() throws InterruptedException {
 		QueueChannel replyChannel = new QueueChannel();
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.aggregator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageDeliveryException;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageHandler;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupStore;
+import org.springframework.integration.store.SimpleMessageStore;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.ErrorHandler;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 2.2
+ */
+public class ShardedAggregatingMessageHandlerTests {
+
+	private ShardedAggregatingMessageHandler handler;
+
+
+	@After
+	public void destroy() throws Exception {
+		if (this.handler != null) {
+			this.handler.destroy();
+		}
+	}
+
+
+	@Test
+	public void testGroupsAreAggregatedInOrder() {
+		QueueChannel output = new QueueChannel();
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 4);
+		this.handler.setReleaseStrategy(new MessageCountReleaseStrategy(5));
+		this.handler.setOutputChannel(output);
+		this.handler.afterPropertiesSet();
+		this.handler.start();
+		for (int i = 0; i < 5; i++) {
+			for (int group = 0; group < 100; group++) {
+				this.handler.handleMessage(MessageBuilder.withPayload(i).setCorrelationId(group).build());
+			}
+		}
+		Set<Object> correlationIds = new HashSet<Object>();
+		for (int group = 0; group < 100; group++) {
+			Message<?> result = output.receive(10000);
+			assertNotNull(result);
+			assertEquals(Arrays.asList(0, 1, 2, 3, 4), result.getPayload());
+			correlationIds.add(result.getHeaders().getCorrelationId());
+		}
+		assertEquals(100, correlationIds.size());
+		assertNull(output.receive(0));
+	}
+
+	@Test
+	public void testShardsHaveTheirOwnStores() {
+		List<MessageGroupStore> stores = new ArrayList<MessageGroupStore>();
+		stores.add(new SimpleMessageStore());
+		stores.add(new SimpleMessageStore());
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 2);
+		this.handler.setMessageStores(stores);
+		this.handler.setReleaseStrategy(new MessageCountReleaseStrategy(100));
+		this.handler.setOutputChannel(new QueueChannel());
+		this.handler.afterPropertiesSet();
+		this.handler.start();
+		assertEquals(stores, this.handler.getMessageStores());
+		for (int group = 0; group < 10; group++) {
+			this.handler.handleMessage(MessageBuilder.withPayload("foo").setCorrelationId(group).build());
+		}
+		this.awaitGroupCount(10);
+		int groups = 0;
+		for (MessageGroupStore store : stores) {
+			for (MessageGroup group : (SimpleMessageStore) store) {
+				groups++;
+				assertEquals(1, group.size());
+			}
+		}
+		assertEquals(10, groups);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSharedStoreIsRejected() {
+		MessageGroupStore store = new SimpleMessageStore();
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 2);
+		this.handler.setMessageStores(Arrays.asList(store, store));
+	}
+
+	@Test
+	public void testExpiry() {
+		QueueChannel output = new QueueChannel();
+		QueueChannel discard = new QueueChannel();
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 3);
+		this.handler.setReleaseStrategy(new MessageCountReleaseStrategy(2));
+		this.handler.setOutputChannel(output);
+		this.handler.setDiscardChannel(discard);
+		this.handler.setSendPartialResultOnExpiry(true);
+		this.handler.afterPropertiesSet();
+		this.handler.start();
+		for (int group = 0; group < 6; group++) {
+			this.handler.handleMessage(MessageBuilder.withPayload(group).setCorrelationId(group).build());
+		}
+		this.awaitGroupCount(6);
+		assertNull(output.receive(0));
+		assertEquals(6, this.handler.expireMessageGroups(0));
+		for (int group = 0; group < 6; group++) {
+			Message<?> result = output.receive(0);
+			assertNotNull(result);
+			assertEquals(1, ((List<?>) result.getPayload()).size());
+		}
+		for (MessageGroupStore store : this.handler.getMessageStores()) {
+			assertEquals(0, store.getMessageGroupCount());
+		}
+		assertNull(discard.receive(0));
+	}
+
+	@Test
+	public void testErrorsAreHandled() throws Exception {
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 2);
+		this.handler.setReleaseStrategy(new ReleaseStrategy() {
+			public boolean canRelease(MessageGroup group) {
+				throw new IllegalStateException("intentional test failure");
+			}
+		});
+		this.handler.setErrorHandler(new ErrorHandler() {
+			public void handleError(Throwable t) {
+				error.set(t);
+				latch.countDown();
+			}
+		});
+		this.handler.afterPropertiesSet();
+		this.handler.start();
+		this.handler.handleMessage(MessageBuilder.withPayload("foo").setCorrelationId(1).build());
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(error.get().getCause() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testDestroyDrainsQueues() throws Exception {
+		QueueChannel output = new QueueChannel();
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 2);
+		this.handler.setReleaseStrategy(new MessageCountReleaseStrategy(1));
+		this.handler.setOutputChannel(output);
+		this.handler.afterPropertiesSet();
+		this.handler.start();
+		for (int group = 0; group < 1000; group++) {
+			this.handler.handleMessage(MessageBuilder.withPayload(group).setCorrelationId(group).build());
+		}
+		this.handler.destroy();
+		assertEquals(1000, output.getQueueSize());
+	}
+
+	@Test
+	public void testStoppedHandlerRejectsMessages() {
+		QueueChannel output = new QueueChannel();
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 2);
+		this.handler.setReleaseStrategy(new MessageCountReleaseStrategy(1));
+		this.handler.setOutputChannel(output);
+		this.handler.afterPropertiesSet();
+		assertFalse(this.handler.isRunning());
+		try {
+			this.handler.handleMessage(MessageBuilder.withPayload("foo").setCorrelationId(1).build());
+			fail("expected MessageDeliveryException");
+		}
+		catch (MessageDeliveryException e) {
+		}
+		this.handler.start();
+		this.handler.handleMessage(MessageBuilder.withPayload("foo").setCorrelationId(1).build());
+		assertNotNull(output.receive(10000));
+		this.handler.stop();
+		assertFalse(this.handler.isRunning());
+		try {
+			this.handler.handleMessage(MessageBuilder.withPayload("bar").setCorrelationId(2).build());
+			fail("expected MessageDeliveryException");
+		}
+		catch (MessageDeliveryException e) {
+		}
+		this.handler.start();
+		this.handler.handleMessage(MessageBuilder.withPayload("baz").setCorrelationId(3).build());
+		assertNotNull(output.receive(10000));
+	}
+
+	@Test
+	public void testStopRejectsMessagesOfAWorkerThatDoesNotEnd() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 1);
+		this.handler.setReleaseStrategy(new ReleaseStrategy() {
+			public boolean canRelease(MessageGroup group) {
+				blocked.countDown();
+				// ignores interrupts, as a stuck downstream call might
+				while (true) {
+					try {
+						release.await();
+						return false;
+					}
+					catch (InterruptedException e) {
+					}
+				}
+			}
+		});
+		this.handler.setErrorHandler(new ErrorHandler() {
+			public void handleError(Throwable t) {
+				errors.add(t);
+			}
+		});
+		this.handler.setShutdownTimeout(100);
+		this.handler.afterPropertiesSet();
+		this.handler.start();
+		this.handler.handleMessage(MessageBuilder.withPayload("foo").setCorrelationId(1).build());
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+		this.handler.handleMessage(MessageBuilder.withPayload("bar").setCorrelationId(1).build());
+		this.handler.handleMessage(MessageBuilder.withPayload("baz").setCorrelationId(1).build());
+		this.handler.stop();
+		release.countDown();
+		assertEquals(0, this.handler.getQueueSize());
+		assertEquals(2, errors.size());
+		for (Throwable error : errors) {
+			assertTrue(error instanceof MessageDeliveryException);
+		}
+		assertEquals("bar", ((MessageDeliveryException) errors.get(0)).getFailedMessage().getPayload());
+	}
+
+	@Test
+	public void testDefaultWorkersAreDaemons() throws Exception {
+		final AtomicReference<Thread> worker = new AtomicReference<Thread>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		this.handler = new ShardedAggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(), 1);
+		this.handler.setReleaseStrategy(new ReleaseStrategy() {
+			public boolean canRelease(MessageGroup group) {
+				worker.set(Thread.currentThread());
+				latch.countDown();
+				return false;
+			}
+		});
+		this.handler.afterPropertiesSet();
+		this.handler.start();
+		this.handler.handleMessage(MessageBuilder.withPayload("foo").setCorrelationId(1).build());
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(worker.get().isDaemon());
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestAgainstAggregatingMessageHandler() throws Exception {
+		int producers = Runtime.getRuntime().availableProcessors() * 2;
+		int groupsPerProducer = 20000;
+		for (int run = 0; run < 2; run++) {
+			QueueChannel output = new QueueChannel();
+			AggregatingMessageHandler aggregator = new AggregatingMessageHandler(
+					new DefaultAggregatingMessageGroupProcessor());
+			aggregator.setReleaseStrategy(new MessageCountReleaseStrategy(10));
+			aggregator.setOutputChannel(output);
+			aggregator.setExpireGroupsUponCompletion(true);
+			this.runPerformanceTest("AggregatingMessageHandler", aggregator, output, producers, groupsPerProducer);
+
+			output = new QueueChannel();
+			ShardedAggregatingMessageHandler sharded = new ShardedAggregatingMessageHandler(
+					new DefaultAggregatingMessageGroupProcessor(), Runtime.getRuntime().availableProcessors());
+			sharded.setReleaseStrategy(new MessageCountReleaseStrategy(10));
+			sharded.setOutputChannel(output);
+			sharded.setExpireGroupsUponCompletion(true);
+			sharded.afterPropertiesSet();
+			sharded.start();
+			this.runPerformanceTest("ShardedAggregatingMessageHandler", sharded, output, producers, groupsPerProducer);
+			sharded.destroy();
+		}
+	}
+
+	private void runPerformanceTest(String name, final MessageHandler handler, QueueChannel output, int producers,
+			final int groupsPerProducer) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					for (int group = 0; group < groupsPerProducer; group++) {
+						String correlationId = producer + "-" + group;
+						for (int i = 0; i < 10; i++) {
+							handler.handleMessage(MessageBuilder.withPayload(i).setCorrelationId(correlationId)
+									.build());
+						}
+					}
+				}
+			});
+		}
+		int total = producers * groupsPerProducer;
+		StopWatch watch = new StopWatch();
+		watch.start();
+		start.countDown();
+		for (int i = 0; i < total; i++) {
+			assertNotNull(output.receive(10000));
+		}
+		watch.stop();
+		executor.shutdown();
+		System.out.println(name + " (" + producers + " producers): " + (long) (total * 10 / watch.getTotalTimeSeconds())
+				+ " messages/s");
+	}
+
+	private void awaitGroupCount(int expected) {
+		long deadline = System.currentTimeMillis() + 10000;
+		int count = 0;
+		do {
+			count = 0;
+			for (MessageGroupStore store : this.handler.getMessageStores()) {
+				count += store.getMessageGroupCount();
+			}
+		}
+		while (count < expected && System.currentTimeMillis() < deadline && this.yield());
+		assertEquals(expected, count);
+		assertEquals(0, this.handler.getQueueSize());
+	}
+
+	private boolean yield() {
+		Thread.yield();
+		return true;
+	}
+
+}
@@ -16,16 +16,19 @@
 
 package org.springframework.integration.channel;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import org.springframework.beans.DirectFieldAccessor;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessagingException;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.dispatcher.RoundRobinLoadBalancingStrategy;
 import org.springframework.integration.dispatcher.UnicastingDispatcher;
@@ -36,7 +39,9 @@ import org.springframework.util.ReflectionUtils;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Mark Fisher
@@ -75,6 +80,57 @@ public class DirectChannelTests {
 		assertEquals("test-thread", target.threadName);
 	}
 
+	@Test
+	public void testSendToSingleSubscriberDoesNotAllocate() throws Exception {
+		Object threadMXBean = ManagementFactory.getThreadMXBean();
+		Method getThreadAllocatedBytes = null;
+		try {
+			getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+					.getMethod("getThreadAllocatedBytes", long.class);
+		}
+		catch (Exception e) {
+			// not available on this JVM
+		}
+		Assume.assumeTrue(getThreadAllocatedBytes != null
+				&& getThreadAllocatedBytes.getDeclaringClass().isInstance(threadMXBean));
+		DirectChannel channel = new DirectChannel();
+		CountingHandler handler = new CountingHandler();
+		channel.subscribe(handler);
+		GenericMessage<String> message = new GenericMessage<String>("test");
+		for (int i = 0; i < 100000; i++) {
+			channel.send(message);
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = (Long) getThreadAllocatedBytes.invoke(threadMXBean, threadId);
+		for (int i = 0; i < 100000; i++) {
+			channel.send(message);
+		}
+		long allocated = (Long) getThreadAllocatedBytes.invoke(threadMXBean, threadId) - before;
+		assertEquals(200000, handler.count);
+		// allow for the boxed values of the measurement itself
+		assertTrue("allocated " + allocated + " bytes for 100000 Messages", allocated < 1024);
+	}
+
+	@Test
+	public void testSingleSubscriberFailure() {
+		DirectChannel channel = new DirectChannel();
+		final MessagingException exception = new MessagingException("intentional test failure");
+		channel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> message) {
+				throw exception;
+			}
+		});
+		GenericMessage<String> message = new GenericMessage<String>("test");
+		try {
+			channel.send(message);
+			fail("expected MessagingException");
+		}
+		catch (MessagingException e) {
+			assertSame(exception, e);
+			assertSame(message, e.getFailedMessage());
+		}
+	}
+
 	@Test //  See INT-2434
 	public void testChannelCreationWithBeanDefinitionOverrideTrue() throws Exception {
 		ClassPathXmlApplicationContext parentContext = new ClassPathXmlApplicationContext("parent-config.xml", this.getClass());
@@ -125,6 +181,16 @@ public class DirectChannelTests {
 	}
 
 
+	private static class CountingHandler implements MessageHandler {
+
+		private int count;
+
+		public void handleMessage(Message<?> message) {
+			this.count++;
+		}
+	}
+
+
 	private static class ThreadNameExtractingTestTarget implements MessageHandler {
 
 		private String threadName;
@@ -17,6 +17,7 @@
 package org.springframework.integration.channel;
 
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -230,6 +231,22 @@ public class PriorityChannelTests {
 		assertEquals("test:-5", channel.receive(0).getPayload());
 	}
 
+	@Test
+	public void testBatchReceive() {
+		PriorityChannel channel = new PriorityChannel(3);
+		channel.send(createPriorityMessage(1));
+		channel.send(createPriorityMessage(5));
+		channel.send(createPriorityMessage(3));
+		assertFalse(channel.send(createPriorityMessage(7), 0));
+		List<Message<?>> messages = channel.receive(2, 0);
+		assertEquals(2, messages.size());
+		assertEquals("test:5", messages.get(0).getPayload());
+		assertEquals("test:3", messages.get(1).getPayload());
+		assertTrue(channel.send(createPriorityMessage(7), 0));
+		assertTrue(channel.send(createPriorityMessage(9), 0));
+		assertFalse(channel.send(createPriorityMessage(11), 0));
+	}
+
 	@Test
 	public void testTimeoutElapses() throws InterruptedException {
 		final PriorityChannel channel = new PriorityChannel(1);
@@ -217,6 +217,34 @@ public class QueueChannelTests {
 		assertEquals(0, clearedMessages.size());
 	}
 
+	@Test
+	public void testBatchReceive() {
+		QueueChannel channel = new QueueChannel();
+		for (int i = 0; i < 5; i++) {
+			channel.send(new GenericMessage<Integer>(i));
+		}
+		List<Message<?>> messages = channel.receive(3, 0);
+		assertEquals(3, messages.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, messages.get(i).getPayload());
+		}
+		messages = channel.receive(3, 0);
+		assertEquals(2, messages.size());
+		assertEquals(3, messages.get(0).getPayload());
+		assertEquals(4, messages.get(1).getPayload());
+		assertEquals(0, channel.getQueueSize());
+	}
+
+	@Test
+	public void testBatchReceiveTimeout() {
+		QueueChannel channel = new QueueChannel();
+		long start = System.currentTimeMillis();
+		List<Message<?>> messages = channel.receive(10, 50);
+		assertNotNull(messages);
+		assertEquals(0, messages.size());
+		assertTrue(System.currentTimeMillis() - start >= 40);
+	}
+
 	@Test
 	public void testPurge() {
 		QueueChannel channel = new QueueChannel(2);
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.util.RingBufferBlockingQueue.WaitStrategy;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 2.2
+ */
+public class RingBufferChannelTests {
+
+	@Test
+	public void testSendAndReceiveInOrder() {
+		RingBufferChannel channel = new RingBufferChannel(3);
+		for (int lap = 0; lap < 3; lap++) {
+			assertTrue(channel.send(new GenericMessage<Integer>(1), 0));
+			assertTrue(channel.send(new GenericMessage<Integer>(2), 0));
+			assertTrue(channel.send(new GenericMessage<Integer>(3), 0));
+			assertFalse(channel.send(new GenericMessage<Integer>(4), 0));
+			assertEquals(3, channel.getQueueSize());
+			assertEquals(0, channel.getRemainingCapacity());
+			assertEquals(1, channel.receive(0).getPayload());
+			assertEquals(2, channel.receive(0).getPayload());
+			assertEquals(3, channel.receive(0).getPayload());
+			assertNull(channel.receive(0));
+			assertEquals(3, channel.getRemainingCapacity());
+		}
+	}
+
+	@Test
+	public void testTimeouts() {
+		RingBufferChannel channel = new RingBufferChannel(1, WaitStrategy.PARK);
+		long start = System.currentTimeMillis();
+		assertNull(channel.receive(50));
+		assertTrue(System.currentTimeMillis() - start >= 40);
+		assertTrue(channel.send(new GenericMessage<String>("foo"), 50));
+		start = System.currentTimeMillis();
+		assertFalse(channel.send(new GenericMessage<String>("bar"), 50));
+		assertTrue(System.currentTimeMillis() - start >= 40);
+	}
+
+	@Test
+	public void testBlockingReceiveAndSend() throws Exception {
+		final RingBufferChannel channel = new RingBufferChannel(1, WaitStrategy.YIELD);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicLong received = new AtomicLong();
+		executor.execute(new Runnable() {
+			public void run() {
+				for (int i = 0; i < 100; i++) {
+					received.addAndGet((Integer) channel.receive().getPayload());
+				}
+				latch.countDown();
+			}
+		});
+		for (int i = 0; i < 100; i++) {
+			channel.send(new GenericMessage<Integer>(i));
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(4950, received.get());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testInterruptedReceive() throws Exception {
+		Thread.currentThread().interrupt();
+		assertNull(new RingBufferChannel(1).receive(1000));
+		assertTrue(Thread.interrupted());
+	}
+
+	@Test
+	public void testPurge() {
+		RingBufferChannel channel = new RingBufferChannel(5);
+		for (int i = 0; i < 5; i++) {
+			channel.send(new GenericMessage<Integer>(i));
+		}
+		List<Message<?>> purged = channel.purge(new MessageSelector() {
+			public boolean accept(Message<?> message) {
+				return ((Integer) message.getPayload()) % 2 == 0;
+			}
+		});
+		assertEquals(2, purged.size());
+		assertEquals(0, channel.receive(0).getPayload());
+		assertEquals(2, channel.receive(0).getPayload());
+		assertEquals(4, channel.receive(0).getPayload());
+		assertNull(channel.receive(0));
+	}
+
+	@Test
+	public void testMultipleProducersAndConsumers() throws Exception {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			final RingBufferChannel channel = new RingBufferChannel(16, waitStrategy);
+			final int producers = 4;
+			final int messagesPerProducer = 2000;
+			final AtomicLongArray counts = new AtomicLongArray(producers * messagesPerProducer);
+			final AtomicInteger remaining = new AtomicInteger(producers * messagesPerProducer);
+			ExecutorService executor = Executors.newCachedThreadPool();
+			for (int p = 0; p < producers; p++) {
+				final int offset = p * messagesPerProducer;
+				executor.execute(new Runnable() {
+					public void run() {
+						for (int i = 0; i < messagesPerProducer; i++) {
+							channel.send(new GenericMessage<Integer>(offset + i));
+						}
+					}
+				});
+			}
+			final CountDownLatch latch = new CountDownLatch(2);
+			for (int c = 0; c < 2; c++) {
+				executor.execute(new Runnable() {
+					public void run() {
+						while (remaining.get() > 0) {
+							Message<?> message = channel.receive(10);
+							if (message != null) {
+								counts.incrementAndGet((Integer) message.getPayload());
+								remaining.decrementAndGet();
+							}
+						}
+						latch.countDown();
+					}
+				});
+			}
+			assertTrue(latch.await(30, TimeUnit.SECONDS));
+			executor.shutdownNow();
+			for (int i = 0; i < counts.length(); i++) {
+				assertEquals("message " + i + " with " + waitStrategy, 1, counts.get(i));
+			}
+			assertNull(channel.receive(0));
+		}
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestAgainstQueueChannel() throws Exception {
+		int producers = 32;
+		int messagesPerProducer = 20000;
+		QueueChannel[] channels = new QueueChannel[] { new QueueChannel(1024),
+				new RingBufferChannel(1024, WaitStrategy.SPIN), new RingBufferChannel(1024, WaitStrategy.YIELD),
+				new RingBufferChannel(1024, WaitStrategy.PARK) };
+		for (int run = 0; run < 2; run++) {
+			for (QueueChannel channel : channels) {
+				this.runPerformanceTest(channel, producers, messagesPerProducer);
+			}
+		}
+	}
+
+	private void runPerformanceTest(final QueueChannel channel, int producers, final int messagesPerProducer)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int p = 0; p < producers; p++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					for (int i = 0; i < messagesPerProducer; i++) {
+						channel.send(new GenericMessage<Long>(System.nanoTime()));
+					}
+				}
+			});
+		}
+		int total = producers * messagesPerProducer;
+		long totalLatency = 0;
+		long maxLatency = 0;
+		StopWatch watch = new StopWatch();
+		watch.start();
+		start.countDown();
+		for (int i = 0; i < total; i++) {
+			Message<?> message = channel.receive();
+			assertNotNull(message);
+			long latency = System.nanoTime() - (Long) message.getPayload();
+			totalLatency += latency;
+			maxLatency = Math.max(maxLatency, latency);
+		}
+		watch.stop();
+		executor.shutdown();
+		String name = (channel instanceof RingBufferChannel) ? "RingBufferChannel (" + ((RingBufferChannel) channel)
+				.getWaitStrategy() + ")" : "QueueChannel";
+		System.out.println(name + ": " + (long) (total / watch.getTotalTimeSeconds()) + " messages/s, mean latency "
+				+ (totalLatency / total / 1000) + "us, max latency " + (maxLatency / 1000) + "us");
+	}
+
+}
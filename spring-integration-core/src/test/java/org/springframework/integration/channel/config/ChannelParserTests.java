@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Locale;
 import java.util.concurrent.Executor;
 
 import org.junit.Test;
@@ -39,6 +40,7 @@ import org.springframework.integration.MessageDeliveryException;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.PublishSubscribeChannel;
 import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.channel.RingBufferChannel;
 import org.springframework.integration.config.TestChannelInterceptor;
 import org.springframework.integration.core.PollableChannel;
 import org.springframework.integration.dispatcher.RoundRobinLoadBalancingStrategy;
@@ -46,6 +48,7 @@ import org.springframework.integration.dispatcher.UnicastingDispatcher;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.util.ErrorHandlingTaskExecutor;
+import org.springframework.integration.util.RingBufferBlockingQueue;
 
 /**
  * @author Mark Fisher
@@ -72,6 +75,40 @@ public class ChannelParserTests {
 		assertFalse(channel.send(new GenericMessage<String>("test"), 3));
 	}
 
+	@Test
+	public void testRingBufferChannel() {
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("channelParserTests.xml", this
+				.getClass());
+		QueueChannel channel = context.getBean("ringBufferChannel", QueueChannel.class);
+		assertEquals(RingBufferChannel.class, channel.getClass());
+		RingBufferBlockingQueue<?> queue = (RingBufferBlockingQueue<?>) new DirectFieldAccessor(channel)
+				.getPropertyValue("queue");
+		assertEquals(RingBufferBlockingQueue.WaitStrategy.PARK, queue.getWaitStrategy());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(channel.send(new GenericMessage<String>("test"), 10));
+		}
+		assertFalse(channel.send(new GenericMessage<String>("test"), 3));
+		assertEquals(0, channel.getRemainingCapacity());
+		assertEquals("test", channel.receive(0).getPayload());
+		assertEquals(9, channel.getQueueSize());
+	}
+
+	@Test
+	public void testRingBufferWaitStrategyParsedInTurkishLocale() {
+		Locale defaultLocale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("channelParserTests.xml", this
+					.getClass());
+			RingBufferChannel channel = context.getBean("yieldingRingBufferChannel", RingBufferChannel.class);
+			assertEquals(RingBufferBlockingQueue.WaitStrategy.YIELD, channel.getWaitStrategy());
+			context.close();
+		}
+		finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
 	@Test
 	public void testDirectChannelByDefault() throws InterruptedException {
 		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("channelParserTests.xml", this
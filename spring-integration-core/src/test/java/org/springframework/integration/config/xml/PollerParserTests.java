@@ -113,6 +113,15 @@ public class PollerParserTests {
 		assertEquals(TimeUnit.SECONDS.toString(), TestUtils.getPropertyValue(trigger, "timeUnit").toString());
 	}
 
+	@Test
+	public void pollerWithBatchSize() {
+		ApplicationContext context = new ClassPathXmlApplicationContext(
+				"pollerWithBatchSize.xml", PollerParserTests.class);
+		PollerMetadata metadata = context.getBean("poller", PollerMetadata.class);
+		assertEquals(50, metadata.getBatchSize());
+		assertEquals(5, metadata.getMaxMessagesPerPoll());
+	}
+
     @Test
 	public void pollerWithTriggerReference() {
 		ApplicationContext context = new ClassPathXmlApplicationContext(
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,11 +16,15 @@
 
 package org.springframework.integration.core;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.verify;
 
 import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.Ignore;
@@ -30,10 +34,14 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.BeanDefinitionStoreException;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.MessageHeaders;
 import org.springframework.integration.MessageHeaders.IdGenerator;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.util.AlternativeJdkIdGenerator;
+import org.springframework.integration.util.SimpleIncrementingIdGenerator;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StopWatch;
 
@@ -183,6 +191,80 @@ public class MessageIdGenerationTests {
 		}
 	}
 	
+	@Test
+	public void testNamespaceIdGenerator() throws Exception {
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("MessageIdGenerationTests-context-namespace.xml", this.getClass());
+		assertTrue(context.getBean("idGenerator") instanceof SimpleIncrementingIdGenerator);
+		QueueChannel inputChannel = context.getBean("input", QueueChannel.class);
+		inputChannel.send(new GenericMessage<Integer>(0));
+		inputChannel.send(new GenericMessage<Integer>(1));
+		UUID id1 = inputChannel.receive(0).getHeaders().getId();
+		UUID id2 = inputChannel.receive(0).getHeaders().getId();
+		assertEquals(id1.getLeastSignificantBits() + 1, id2.getLeastSignificantBits());
+		context.close();
+		this.assertDestroy();
+	}
+
+	@Test
+	public void testAlternativeJdkIdGenerator() {
+		AlternativeJdkIdGenerator generator = new AlternativeJdkIdGenerator();
+		Set<UUID> ids = new HashSet<UUID>();
+		for (int i = 0; i < 1000; i++) {
+			UUID id = generator.generateId();
+			assertEquals(4, id.version());
+			assertEquals(2, id.variant());
+			ids.add(id);
+		}
+		assertEquals(1000, ids.size());
+	}
+
+	@Test
+	public void testNoIdOrTimestamp() {
+		Message<Integer> message = new GenericMessage<Integer>(0, null, MessageHeaders.ID_VALUE_NONE, -1L);
+		assertNull(message.getHeaders().getId());
+		assertNull(message.getHeaders().getTimestamp());
+		assertEquals(0, message.getHeaders().size());
+		UUID id = UUID.randomUUID();
+		message = new GenericMessage<Integer>(0, null, id, 123L);
+		assertEquals(id, message.getHeaders().getId());
+		assertEquals(Long.valueOf(123L), message.getHeaders().getTimestamp());
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestBuiltInGenerators() throws Exception {
+		int times = 1000000;
+		Field idGeneratorField = ReflectionUtils.findField(MessageHeaders.class, "idGenerator");
+		ReflectionUtils.makeAccessible(idGeneratorField);
+		IdGenerator[] generators = new IdGenerator[] { null, new AlternativeJdkIdGenerator(),
+				new SimpleIncrementingIdGenerator() };
+		try {
+			for (IdGenerator generator : generators) {
+				ReflectionUtils.setField(idGeneratorField, null, generator);
+				StopWatch watch = new StopWatch();
+				watch.start();
+				for (int i = 0; i < times; i++) {
+					new GenericMessage<Integer>(0);
+				}
+				watch.stop();
+				System.out.println("Generated " + times + " messages using "
+						+ (generator == null ? "default UUID generator" : generator.getClass().getSimpleName())
+						+ " in " + watch.getTotalTimeSeconds() + " seconds");
+			}
+			StopWatch watch = new StopWatch();
+			watch.start();
+			for (int i = 0; i < times; i++) {
+				new GenericMessage<Integer>(0, null, MessageHeaders.ID_VALUE_NONE, -1L);
+			}
+			watch.stop();
+			System.out.println("Generated " + times + " messages without id and timestamp in "
+					+ watch.getTotalTimeSeconds() + " seconds");
+		}
+		finally {
+			ReflectionUtils.setField(idGeneratorField, null, null);
+		}
+	}
+
 	@Test
 	@Ignore
 	public void performanceTest(){
@@ -25,7 +25,9 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -38,6 +40,8 @@ import org.junit.Test;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.BatchMessageHandler;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.core.PollableChannel;
 import org.springframework.integration.message.GenericMessage;
@@ -217,6 +221,54 @@ public class PollingConsumerEndpointTests {
 		verify(channelMock);
 	}
 
+	@Test
+	public void batchFromPollableChannel() throws Exception {
+		expect(channelMock.receive()).andReturn(message);
+		expect(channelMock.receive(0)).andReturn(message).times(2);
+		expect(channelMock.receive(0)).andReturn(null);
+		replay(channelMock);
+		TestBatchConsumer batchConsumer = new TestBatchConsumer();
+		endpoint = new PollingConsumer(channelMock, batchConsumer);
+		endpoint.setBatchSize(5);
+		endpoint.setReceiveTimeout(-1);
+		endpoint.setMaxMessagesPerPoll(1);
+		this.startAndAwait();
+		assertEquals(1, batchConsumer.batches.size());
+		assertEquals(3, batchConsumer.batches.get(0).size());
+		verify(channelMock);
+	}
+
+	@Test
+	public void batchesFromQueueChannel() throws Exception {
+		QueueChannel channel = new QueueChannel();
+		for (int i = 0; i < 7; i++) {
+			channel.send(new GenericMessage<Integer>(i));
+		}
+		TestBatchConsumer batchConsumer = new TestBatchConsumer();
+		endpoint = new PollingConsumer(channel, batchConsumer);
+		endpoint.setBatchSize(3);
+		endpoint.setReceiveTimeout(0);
+		endpoint.setMaxMessagesPerPoll(5);
+		this.startAndAwait();
+		assertEquals(3, batchConsumer.batches.size());
+		assertEquals(3, batchConsumer.batches.get(0).size());
+		assertEquals(3, batchConsumer.batches.get(1).size());
+		assertEquals(1, batchConsumer.batches.get(2).size());
+		assertEquals(6, batchConsumer.batches.get(2).get(0).getPayload());
+		assertEquals(0, consumer.counter.get());
+	}
+
+	private void startAndAwait() throws Exception {
+		endpoint.setErrorHandler(errorHandler);
+		endpoint.setTaskScheduler(taskScheduler);
+		endpoint.setTrigger(trigger);
+		endpoint.setBeanFactory(mock(BeanFactory.class));
+		endpoint.afterPropertiesSet();
+		endpoint.start();
+		trigger.await();
+		endpoint.stop();
+	}
+
 
 	private static class TestConsumer implements MessageHandler {
 
@@ -231,6 +283,20 @@ public class PollingConsumerEndpointTests {
 	}
 
 
+	private static class TestBatchConsumer implements BatchMessageHandler {
+
+		private final List<List<Message<?>>> batches = new ArrayList<List<Message<?>>>();
+
+		public void handleMessages(List<Message<?>> messages) {
+			this.batches.add(messages);
+		}
+
+		public void handleMessage(Message<?> message) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+
 	private static class TestTrigger implements Trigger {
 
 		private final AtomicBoolean hasRun = new AtomicBoolean();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.integration.handler;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Date;
 import java.util.concurrent.CountDownLatch;
@@ -36,6 +37,7 @@ import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.scheduling.TimingWheelTaskScheduler;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
@@ -88,6 +90,25 @@ public class DelayHandlerTests {
 		assertNotSame(Thread.currentThread(), resultHandler.lastThread);
 	}
 
+	@Test
+	public void noDelayHeaderAndDefaultDelayIsPositiveWithTimingWheel() throws Exception {
+		TimingWheelTaskScheduler taskScheduler = new TimingWheelTaskScheduler();
+		DelayHandler delayHandler = new DelayHandler(50, taskScheduler);
+		ResultHandler resultHandler = new ResultHandler();
+		delayHandler.setOutputChannel(output);
+		delayHandler.afterPropertiesSet();
+		input.subscribe(delayHandler);
+		output.subscribe(resultHandler);
+		Message<?> message = MessageBuilder.withPayload("test").build();
+		long start = System.currentTimeMillis();
+		input.send(message);
+		this.waitForLatch(1000);
+		assertTrue(System.currentTimeMillis() - start >= 50);
+		assertSame(message, resultHandler.lastMessage);
+		assertNotSame(Thread.currentThread(), resultHandler.lastThread);
+		delayHandler.destroy();
+	}
+
 	@Test
 	public void delayHeaderAndDefaultDelayWouldTimeout() throws Exception {
 		DelayHandler delayHandler = new DelayHandler(5000);
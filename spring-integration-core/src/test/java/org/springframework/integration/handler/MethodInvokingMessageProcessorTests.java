@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,6 +23,7 @@ import java.util.Properties;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hamcrest.Description;
+import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.internal.matchers.TypeSafeMatcher;
@@ -33,7 +34,13 @@ import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.annotation.Header;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.channel.NullChannel;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.integration.transformer.MessageTransformingHandler;
+import org.springframework.integration.transformer.MethodInvokingTransformer;
+import org.springframework.integration.util.MessagingMethodInvokerHelper;
+import org.springframework.util.StopWatch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -322,6 +329,70 @@ public class MethodInvokingMessageProcessorTests {
 		assertEquals("true", bean.lastArg);
 	}
 
+	@Test
+	public void directInvocationAndExpressionEvaluationProduceSameResults() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("prop", "bar").setHeader("number", 42)
+				.build();
+		String[] methodNames = { "messageOnly", "messageAndHeader", "twoHeaders", "optionalHeader" };
+		for (String methodName : methodNames) {
+			MethodInvokingMessageProcessor processor = new MethodInvokingMessageProcessor(service, methodName);
+			Object directResult = processor.processMessage(message);
+			TestUtils.getPropertyValue(processor, "delegate", MessagingMethodInvokerHelper.class).setUseSpelInvoker(true);
+			assertEquals(processor.processMessage(message), directResult);
+		}
+	}
+
+	@Test
+	public void headerConvertedWhenTypeDoesNotMatch() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Method method = service.getClass().getMethod("messageAndHeader", Message.class, Integer.class);
+		MethodInvokingMessageProcessor processor = new MethodInvokingMessageProcessor(service, method);
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("number", "42").build();
+		assertEquals("foo-42", processor.processMessage(message));
+	}
+
+	@Test
+	public void resultConvertedToExpectedType() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Method method = service.getClass().getMethod("integerMethod", Integer.class);
+		MessagingMethodInvokerHelper<String> helper = new MessagingMethodInvokerHelper<String>(service, method,
+				String.class, false);
+		assertEquals("123", helper.process(new GenericMessage<Integer>(123)));
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestDirectInvocationAndExpressionEvaluation() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("number", 42).build();
+		ServiceActivatingHandler serviceActivator = new ServiceActivatingHandler(service, "messageAndHeader");
+		serviceActivator.setOutputChannel(new NullChannel());
+		MessageTransformingHandler transformer = new MessageTransformingHandler(
+				new MethodInvokingTransformer(new TestBean(), "acceptPayloadAndHeaderAndReturnObject"));
+		transformer.setOutputChannel(new NullChannel());
+		MessagingMethodInvokerHelper<?> serviceActivatorHelper = TestUtils.getPropertyValue(serviceActivator,
+				"processor.delegate", MessagingMethodInvokerHelper.class);
+		MessagingMethodInvokerHelper<?> transformerHelper = TestUtils.getPropertyValue(transformer,
+				"transformer.messageProcessor.delegate", MessagingMethodInvokerHelper.class);
+		for (boolean useSpel : new boolean[] { true, false, true, false }) {
+			serviceActivatorHelper.setUseSpelInvoker(useSpel);
+			transformerHelper.setUseSpelInvoker(useSpel);
+			StopWatch watch = new StopWatch();
+			watch.start("service-activator");
+			for (int i = 0; i < 1000000; i++) {
+				serviceActivator.handleMessage(message);
+			}
+			watch.stop();
+			watch.start("transformer");
+			for (int i = 0; i < 1000000; i++) {
+				transformer.handleMessage(message);
+			}
+			watch.stop();
+			System.out.println((useSpel ? "SpEL: " : "Direct: ") + watch.prettyPrint());
+		}
+	}
+
 	private static class ExceptionCauseMatcher extends TypeSafeMatcher<Exception> {
 		private Throwable cause;
 
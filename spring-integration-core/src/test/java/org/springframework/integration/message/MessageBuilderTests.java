@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.integration.message;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Date;
@@ -26,10 +27,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
+import org.junit.Ignore;
 import org.junit.Test;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageHeaders;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.StopWatch;
 
 /**
  * @author Mark Fisher
@@ -245,4 +248,58 @@ public class MessageBuilderTests {
 		assertEquals(original, result);
 	}
 
+	@Test
+	public void testHeadersPreservedAcrossDerivedMessages() {
+		Message<String> message = MessageBuilder.withPayload("foo").copyHeaders(largeHeaderMap()).build();
+		for (int i = 0; i < 10; i++) {
+			message = MessageBuilder.fromMessage(message).setHeader("counter", i).build();
+		}
+		assertEquals(9, message.getHeaders().get("counter"));
+		assertEquals("value7", message.getHeaders().get("key7"));
+		assertEquals(23, message.getHeaders().size());
+		message = MessageBuilder.fromMessage(message).removeHeaders("key1*", "counter").build();
+		assertNull(message.getHeaders().get("key1"));
+		assertNull(message.getHeaders().get("key15"));
+		assertNull(message.getHeaders().get("counter"));
+		assertEquals("value2", message.getHeaders().get("key2"));
+		assertEquals(11, message.getHeaders().size());
+	}
+
+	@Test
+	public void testRemoveAndRestoreSameValueNotModified() {
+		Message<String> original = MessageBuilder.withPayload("foo").copyHeaders(largeHeaderMap()).build();
+		Message<String> result = MessageBuilder.fromMessage(original).removeHeader("key3")
+				.setHeader("key3", "value3").build();
+		assertTrue(result.getHeaders().containsKey("key3"));
+		assertEquals(original.getHeaders().size(), result.getHeaders().size());
+		result = MessageBuilder.fromMessage(original).setHeader("key3", null).setHeaderIfAbsent("key3", "other").build();
+		assertEquals("other", result.getHeaders().get("key3"));
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestDerivedMessages() {
+		Map<String, Object> headers = new HashMap<String, Object>();
+		for (int i = 0; i < 50; i++) {
+			headers.put("key" + i, "value" + i);
+		}
+		Message<String> message = MessageBuilder.withPayload("foo").copyHeaders(headers).build();
+		StopWatch watch = new StopWatch();
+		watch.start();
+		for (int i = 0; i < 1000000; i++) {
+			message = MessageBuilder.fromMessage(message).setHeader("counter", i).build();
+		}
+		watch.stop();
+		System.out.println("Derived 1,000,000 messages with 50 headers in " + watch.getTotalTimeSeconds() + "s");
+	}
+
+
+	private static Map<String, Object> largeHeaderMap() {
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (int i = 0; i < 20; i++) {
+			map.put("key" + i, "value" + i);
+		}
+		return map;
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.integration.message;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
@@ -26,6 +27,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -141,6 +143,89 @@ public class MessageHeadersTests {
 		assertNull(output.get("address"));
 	}
 
+	@Test
+	public void derivedHeadersShareValues() {
+		MessageHeaders base = new MessageHeaders(largeHeaderMap());
+		Map<String, Object> changes = new HashMap<String, Object>();
+		changes.put("key0", "changed");
+		changes.put("added", "new");
+		MessageHeaders derived = new MessageHeaders(base, changes, Collections.singleton("key1"));
+		assertEquals(base.getId(), derived.getId());
+		assertEquals(base.getTimestamp(), derived.getTimestamp());
+		assertEquals("changed", derived.get("key0"));
+		assertFalse(derived.containsKey("key1"));
+		assertNull(derived.get("key1"));
+		assertEquals("value2", derived.get("key2"));
+		assertEquals("new", derived.get("added"));
+		assertEquals(base.size(), derived.size());
+		assertEquals("value0", base.get("key0"));
+		assertTrue(base.containsKey("key1"));
+		assertFalse(base.containsKey("added"));
+	}
+
+	@Test
+	public void derivedHeadersMapContract() {
+		MessageHeaders base = new MessageHeaders(largeHeaderMap());
+		MessageHeaders derived = new MessageHeaders(base, Collections.singletonMap("key0", null),
+				Collections.<String>emptySet());
+		Map<String, Object> expected = new HashMap<String, Object>(base);
+		expected.remove("key0");
+		assertEquals(expected, derived);
+		assertEquals(expected.hashCode(), derived.hashCode());
+		assertEquals(expected.keySet(), derived.keySet());
+		assertFalse(derived.containsValue("value0"));
+		assertTrue(derived.containsValue("value1"));
+		assertEquals(new MessageHeaders(expected, base.getId(), base.getTimestamp()), derived);
+	}
+
+	@Test
+	public void newIdAndTimestampForDerivedHeaders() {
+		MessageHeaders base = new MessageHeaders(largeHeaderMap());
+		MessageHeaders derived = new MessageHeaders(base, Collections.singletonMap("added", "new"), null);
+		MessageHeaders copy = new MessageHeaders(derived);
+		assertFalse(derived.getId().equals(copy.getId()));
+		assertEquals("new", copy.get("added"));
+		assertEquals("value3", copy.get("key3"));
+		MessageHeaders noId = new MessageHeaders(derived, MessageHeaders.ID_VALUE_NONE, -1L);
+		assertFalse(noId.containsKey(MessageHeaders.ID));
+		assertFalse(noId.containsKey(MessageHeaders.TIMESTAMP));
+		assertEquals(base.size() - 1, noId.size());
+	}
+
+	@Test
+	public void headerRemovedAndRestored() {
+		MessageHeaders base = new MessageHeaders(largeHeaderMap());
+		MessageHeaders removed = new MessageHeaders(base, null, Collections.singleton("key5"));
+		MessageHeaders restored = new MessageHeaders(removed, Collections.singletonMap("key5", "again"), null);
+		assertFalse(removed.containsKey("key5"));
+		assertEquals("again", restored.get("key5"));
+		assertEquals(base.size(), restored.size());
+	}
+
+	@Test
+	public void serializeDerivedHeaders() throws Exception {
+		Map<String, Object> map = largeHeaderMap();
+		map.put("address", new Object());
+		MessageHeaders base = new MessageHeaders(map);
+		MessageHeaders input = new MessageHeaders(base, Collections.singletonMap("added", "new"),
+				Collections.singleton("key0"));
+		MessageHeaders output = (MessageHeaders) serializeAndDeserialize(input);
+		assertEquals("new", output.get("added"));
+		assertEquals("value1", output.get("key1"));
+		assertFalse(output.containsKey("key0"));
+		assertFalse(output.containsKey("address"));
+		assertEquals(input.size() - 1, output.size());
+		assertTrue(input.containsKey("address"));
+	}
+
+
+	private static Map<String, Object> largeHeaderMap() {
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (int i = 0; i < 20; i++) {
+			map.put("key" + i, "value" + i);
+		}
+		return map;
+	}
 
 	private static Object serializeAndDeserialize(Object object) throws Exception {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 2.2
+ */
+public class TimingWheelTaskSchedulerTests {
+
+	private final TimingWheelTaskScheduler scheduler = new TimingWheelTaskScheduler(5, 8);
+
+
+	@After
+	public void destroy() throws Exception {
+		this.scheduler.destroy();
+	}
+
+
+	@Test
+	public void testTaskRunsNoEarlierThanScheduled() throws Exception {
+		final List<Long> delays = new ArrayList<Long>();
+		final long start = System.currentTimeMillis();
+		List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>();
+		// 100ms is more than one revolution of the wheel
+		for (final long delay : new long[] { 100, 10, 0 }) {
+			futures.add(this.scheduler.schedule(new Runnable() {
+				public void run() {
+					if (System.currentTimeMillis() - start < delay) {
+						delays.add(-1L);
+					}
+					delays.add(delay);
+				}
+			}, new Date(start + delay)));
+		}
+		for (ScheduledFuture<?> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		// tasks that fall into the same tick run in the order in which they were scheduled
+		Collections.sort(delays);
+		assertEquals("[0, 10, 100]", delays.toString());
+		assertEquals(0, this.scheduler.getScheduledTaskCount());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		};
+		ScheduledFuture<?> cancelled = this.scheduler.schedule(task, new Date(System.currentTimeMillis() + 50));
+		ScheduledFuture<?> done = this.scheduler.schedule(task, new Date(System.currentTimeMillis() + 100));
+		assertEquals(2, this.scheduler.getScheduledTaskCount());
+		assertTrue(cancelled.cancel(false));
+		assertFalse(cancelled.cancel(false));
+		assertTrue(cancelled.isCancelled());
+		assertTrue(cancelled.isDone());
+		assertEquals(1, this.scheduler.getScheduledTaskCount());
+		assertNull(done.get(10, TimeUnit.SECONDS));
+		assertEquals(1, runs.get());
+		assertFalse(done.cancel(false));
+		try {
+			cancelled.get();
+			fail("expected CancellationException");
+		}
+		catch (CancellationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFailureIsAvailableFromFuture() throws Exception {
+		ScheduledFuture<?> future = this.scheduler.schedule(new Runnable() {
+			public void run() {
+				throw new IllegalStateException("intentional test failure");
+			}
+		}, new Date());
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("expected ExecutionException");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testFixedRate() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(5);
+		ScheduledFuture<?> future = this.scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				latch.countDown();
+				// failures of repeating tasks are suppressed
+				throw new IllegalStateException("intentional test failure");
+			}
+		}, 10);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertFalse(future.isDone());
+		future.cancel(false);
+		assertEquals(0, this.scheduler.getScheduledTaskCount());
+	}
+
+	@Test
+	public void testTriggerStopsWhenExhausted() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final PeriodicTrigger periodicTrigger = new PeriodicTrigger(10);
+		ScheduledFuture<?> future = this.scheduler.schedule(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, new Trigger() {
+			public Date nextExecutionTime(TriggerContext triggerContext) {
+				return (runs.get() < 3) ? periodicTrigger.nextExecutionTime(triggerContext) : null;
+			}
+		});
+		assertNull(future.get(10, TimeUnit.SECONDS));
+		assertEquals(3, runs.get());
+		assertEquals(0, this.scheduler.getScheduledTaskCount());
+	}
+
+	@Test
+	public void testTaskExecutor() throws Exception {
+		ThreadPoolTaskScheduler executor = new ThreadPoolTaskScheduler();
+		executor.afterPropertiesSet();
+		this.scheduler.setTaskExecutor(executor);
+		final AtomicReference<String> threadName = new AtomicReference<String>();
+		this.scheduler.schedule(new Runnable() {
+			public void run() {
+				threadName.set(Thread.currentThread().getName());
+			}
+		}, new Date()).get(10, TimeUnit.SECONDS);
+		assertTrue(threadName.get().startsWith("ThreadPoolTaskScheduler"));
+		executor.destroy();
+	}
+
+	@Test
+	public void testWheelThreadIsDaemonByDefault() throws Exception {
+		final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		this.scheduler.schedule(new Runnable() {
+			public void run() {
+				thread.set(Thread.currentThread());
+			}
+		}, new Date()).get(10, TimeUnit.SECONDS);
+		assertTrue(thread.get().getName().startsWith("timing-wheel-"));
+		assertTrue(thread.get().isDaemon());
+	}
+
+	@Test
+	public void testDestroyCancelsTasks() throws Exception {
+		ScheduledFuture<?> future = this.scheduler.schedule(new Runnable() {
+			public void run() {
+			}
+		}, new Date(System.currentTimeMillis() + 10000));
+		this.scheduler.destroy();
+		assertTrue(future.isCancelled());
+		assertEquals(0, this.scheduler.getScheduledTaskCount());
+		try {
+			this.scheduler.schedule(new Runnable() {
+				public void run() {
+				}
+			}, new Date());
+			fail("expected TaskRejectedException");
+		}
+		catch (TaskRejectedException e) {
+			// expected
+		}
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestAgainstThreadPoolTaskScheduler() throws Exception {
+		int tasks = 1000000;
+		for (int run = 0; run < 2; run++) {
+			ThreadPoolTaskScheduler threadPoolTaskScheduler = new ThreadPoolTaskScheduler();
+			threadPoolTaskScheduler.afterPropertiesSet();
+			this.runPerformanceTest(threadPoolTaskScheduler, tasks);
+			threadPoolTaskScheduler.destroy();
+			TimingWheelTaskScheduler timingWheelTaskScheduler = new TimingWheelTaskScheduler();
+			this.runPerformanceTest(timingWheelTaskScheduler, tasks);
+			timingWheelTaskScheduler.destroy();
+		}
+	}
+
+	/**
+	 * Schedules delayed Messages as a DelayHandler would, with delays of up to a minute, cancels every other
+	 * one and then measures how long it takes to run 10000 short-term tasks alongside.
+	 */
+	private void runPerformanceTest(TaskScheduler taskScheduler, int tasks) throws Exception {
+		Runnable task = new Runnable() {
+			public void run() {
+			}
+		};
+		Random random = new Random(42);
+		ScheduledFuture<?>[] futures = new ScheduledFuture<?>[tasks];
+		StopWatch watch = new StopWatch();
+		watch.start("schedule");
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < tasks; i++) {
+			futures[i] = taskScheduler.schedule(task, new Date(now + 10000 + random.nextInt(50000)));
+		}
+		watch.stop();
+		watch.start("cancel");
+		for (int i = 0; i < tasks; i += 2) {
+			futures[i].cancel(false);
+		}
+		watch.stop();
+		final CountDownLatch latch = new CountDownLatch(10000);
+		Runnable countDown = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		watch.start("run");
+		for (int i = 0; i < 10000; i++) {
+			taskScheduler.schedule(countDown, new Date());
+		}
+		assertTrue(latch.await(60, TimeUnit.SECONDS));
+		watch.stop();
+		System.out.println(taskScheduler.getClass().getSimpleName() + " with " + tasks + " tasks: "
+				+ watch.prettyPrint());
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,18 +18,31 @@ package org.springframework.integration.splitter;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.Closeable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import org.springframework.integration.Message;
+import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.DefaultAggregatingMessageGroupProcessor;
 import org.springframework.integration.annotation.Header;
 import org.springframework.integration.annotation.Splitter;
+import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
 
@@ -319,6 +332,129 @@ public class MethodInvokingSplitterTests {
 		assertEquals("bar", reply2.getPayload());
 	}
 
+	@Test
+	public void splitToIteratorLazily() throws Exception {
+		class IteratorSplitter {
+			private final AtomicInteger fetched = new AtomicInteger();
+			@SuppressWarnings("unused")
+			public Iterator<String> split(final String payload) {
+				return new Iterator<String>() {
+					public boolean hasNext() {
+						return fetched.get() < 3;
+					}
+					public String next() {
+						return payload + fetched.incrementAndGet();
+					}
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		}
+		final IteratorSplitter target = new IteratorSplitter();
+		GenericMessage<String> message = new GenericMessage<String>("foo");
+		MethodInvokingSplitter splitter = new MethodInvokingSplitter(target, "split");
+		DirectChannel replyChannel = new DirectChannel();
+		final List<Message<?>> replies = new ArrayList<Message<?>>();
+		replyChannel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> reply) {
+				// each element is only fetched when its message is sent
+				assertEquals(reply.getHeaders().getSequenceNumber().intValue(), target.fetched.get());
+				replies.add(reply);
+			}
+		});
+		splitter.setOutputChannel(replyChannel);
+		splitter.handleMessage(message);
+		assertEquals(3, replies.size());
+		for (int i = 0; i < 3; i++) {
+			Message<?> reply = replies.get(i);
+			assertEquals("foo" + (i + 1), reply.getPayload());
+			assertEquals(message.getHeaders().getId(), reply.getHeaders().getCorrelationId());
+			assertEquals(i + 1, reply.getHeaders().getSequenceNumber().intValue());
+			// only the last message knows the size of the sequence
+			assertEquals(i < 2 ? 0 : 3, reply.getHeaders().getSequenceSize().intValue());
+		}
+	}
+
+	@Test
+	public void splitToIteratorAndAggregate() throws Exception {
+		class IteratorSplitter {
+			@SuppressWarnings("unused")
+			public Iterator<String> split(String payload) {
+				return Arrays.asList(payload.split(",")).iterator();
+			}
+		}
+		MethodInvokingSplitter splitter = new MethodInvokingSplitter(new IteratorSplitter(), "split");
+		DirectChannel splitChannel = new DirectChannel();
+		splitter.setOutputChannel(splitChannel);
+		AggregatingMessageHandler aggregator = new AggregatingMessageHandler(
+				new DefaultAggregatingMessageGroupProcessor());
+		QueueChannel output = new QueueChannel();
+		aggregator.setOutputChannel(output);
+		splitChannel.subscribe(aggregator);
+		splitter.handleMessage(new GenericMessage<String>("foo,bar,baz"));
+		Message<?> result = output.receive(0);
+		assertNotNull(result);
+		assertEquals(Arrays.asList("foo", "bar", "baz"), result.getPayload());
+		assertNull(output.receive(0));
+	}
+
+	@Test
+	public void splitToCloseableIteratorClosedWhenSendFails() throws Exception {
+		final AtomicBoolean closed = new AtomicBoolean();
+		class CloseableIterator implements Iterator<String>, Closeable {
+			private final Iterator<String> target = Arrays.asList("foo", "bar").iterator();
+			public boolean hasNext() {
+				return this.target.hasNext();
+			}
+			public String next() {
+				return this.target.next();
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+			public void close() {
+				closed.set(true);
+			}
+		}
+		class IteratorSplitter {
+			@SuppressWarnings("unused")
+			public Iterator<String> split(String payload) {
+				return new CloseableIterator();
+			}
+		}
+		MethodInvokingSplitter splitter = new MethodInvokingSplitter(new IteratorSplitter(), "split");
+		DirectChannel replyChannel = new DirectChannel();
+		replyChannel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> reply) {
+				throw new MessageRejectedException(reply, "intentional test failure");
+			}
+		});
+		splitter.setOutputChannel(replyChannel);
+		try {
+			splitter.handleMessage(new GenericMessage<String>("foo"));
+			fail("expected MessageRejectedException");
+		}
+		catch (MessageRejectedException e) {
+		}
+		assertTrue(closed.get());
+	}
+
+	@Test
+	public void splitToEmptyIterator() throws Exception {
+		class IteratorSplitter {
+			@SuppressWarnings("unused")
+			public Iterator<String> split(String payload) {
+				return Collections.<String>emptyList().iterator();
+			}
+		}
+		MethodInvokingSplitter splitter = new MethodInvokingSplitter(new IteratorSplitter(), "split");
+		QueueChannel replyChannel = new QueueChannel();
+		splitter.setOutputChannel(replyChannel);
+		splitter.handleMessage(new GenericMessage<String>("foo"));
+		assertNull(replyChannel.receive(0));
+	}
+
 	@Test
 	public void headerForObjectReturnValues() throws Exception {
 		GenericMessage<String> message = new GenericMessage<String>("foo.bar");
@@ -16,7 +16,9 @@
 
 package org.springframework.integration.store;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -62,6 +64,21 @@ public class MessageGroupQueueTests {
 		assertEquals(0, queue.size());
 	}
 
+	@Test
+	public void testDrainToWithMaximum() throws Exception {
+		MessageGroupQueue queue = new MessageGroupQueue(new SimpleMessageStore(), "FOO");
+		for (int i = 0; i < 5; i++) {
+			queue.put(new GenericMessage<Integer>(i));
+		}
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		assertEquals(3, queue.drainTo(messages, 3));
+		assertEquals(3, messages.size());
+		assertEquals(2, queue.size());
+		assertEquals(2, queue.drainTo(messages, 3));
+		assertEquals(5, messages.size());
+		assertEquals(4, messages.get(4).getPayload());
+	}
+
 	@Test
 	public void testCapacityAfterExpiry() throws Exception {
 		SimpleMessageStore messageGroupStore = new SimpleMessageStore();
@@ -23,13 +23,15 @@ public class SimpleMessageGroupTests {
 
 	private SimpleMessageGroup group = new SimpleMessageGroup(Collections.<Message<?>> emptyList(), key);
 
+	private MessageGroup sequenceAwareGroup;
+
 	@SuppressWarnings("unchecked")
 	public void prepareForSequenceAwareMessageGroup() throws Exception{
-		Class<SimpleMessageGroup> clazz =
-				(Class<SimpleMessageGroup>)Class.forName("org.springframework.integration.aggregator.AbstractCorrelatingMessageHandler$SequenceAwareMessageGroup");
-		Constructor<SimpleMessageGroup> ctr = clazz.getDeclaredConstructor(MessageGroup.class);
+		Class<MessageGroup> clazz =
+				(Class<MessageGroup>)Class.forName("org.springframework.integration.aggregator.SequenceAwareMessageGroup");
+		Constructor<MessageGroup> ctr = clazz.getDeclaredConstructor(MessageGroup.class);
 		ctr.setAccessible(true);
-		group = ctr.newInstance(group);
+		sequenceAwareGroup = ctr.newInstance(group);
 	}
 
 	@Test
@@ -37,10 +39,14 @@ public class SimpleMessageGroupTests {
 		this.prepareForSequenceAwareMessageGroup();
 		final Message<?> message1 = MessageBuilder.withPayload("test").setSequenceNumber(1).build();
 		final Message<?> message2 = MessageBuilder.fromMessage(message1).setSequenceNumber(1).build();
-		assertThat(group.canAdd(message1), is(true));
+		assertThat(sequenceAwareGroup.canAdd(message1), is(true));
 		group.add(message1);
 		group.add(message2);
-		assertThat(group.canAdd(message1), is(false));
+		assertThat(sequenceAwareGroup.canAdd(message1), is(false));
+		group.remove(message1);
+		assertThat(sequenceAwareGroup.canAdd(message1), is(false));
+		group.remove(message2);
+		assertThat(sequenceAwareGroup.canAdd(message1), is(true));
 	}
 
 	@Test
@@ -48,9 +54,23 @@ public class SimpleMessageGroupTests {
 		this.prepareForSequenceAwareMessageGroup();
 		final Message<?> message1 = MessageBuilder.withPayload("test").build();
 		final Message<?> message2 = MessageBuilder.fromMessage(message1).build();
-		assertThat(group.canAdd(message1), is(true));
+		assertThat(sequenceAwareGroup.canAdd(message1), is(true));
+		group.add(message1);
+		group.add(message2);
+		assertThat(sequenceAwareGroup.canAdd(message1), is(true));
+	}
+
+	@Test
+	public void shouldIndexSequenceNumbers() {
+		final Message<?> message1 = MessageBuilder.withPayload("test").setSequenceNumber(1).build();
+		final Message<?> message2 = MessageBuilder.withPayload("test").setSequenceNumber(2).build();
 		group.add(message1);
 		group.add(message2);
-		assertThat(group.canAdd(message1), is(true));
+		assertThat(group.containsSequence(1), is(true));
+		assertThat(group.containsSequence(3), is(false));
+		assertThat(group.poll(), is((Object) message1));
+		assertThat(group.containsSequence(1), is(false));
+		group.clear();
+		assertThat(group.containsSequence(2), is(false));
 	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,16 +19,22 @@ package org.springframework.integration.store;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.scheduling.TimingWheelTaskScheduler;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.test.util.ReflectionTestUtils;
 
@@ -108,11 +114,35 @@ public class SimpleMessageStoreTests {
 	@Test
 	public void shouldCopyMessageGroup() throws Exception {
 		SimpleMessageStore store = new SimpleMessageStore();
+		store.setCopyOnGet(true);
 		Message<String> testMessage1 = MessageBuilder.withPayload("foo").build();
 		store.addMessageToGroup("bar", testMessage1);
 		assertNotSame(store.getMessageGroup("bar"), store.getMessageGroup("bar"));
 	}
 
+	@Test
+	public void shouldNotCopyMessageGroupByDefault() throws Exception {
+		SimpleMessageStore store = new SimpleMessageStore();
+		Message<String> testMessage1 = MessageBuilder.withPayload("foo").build();
+		store.addMessageToGroup("bar", testMessage1);
+		assertSame(store.getMessageGroup("bar"), store.getMessageGroup("bar"));
+	}
+
+	@Test
+	public void shouldPollMessagesInOrder() throws Exception {
+		SimpleMessageStore store = new SimpleMessageStore();
+		Message<String> testMessage1 = MessageBuilder.withPayload("foo").build();
+		Message<String> testMessage2 = MessageBuilder.withPayload("bar").build();
+		store.addMessageToGroup("bar", testMessage1);
+		store.addMessageToGroup("bar", testMessage2);
+		assertEquals(2, store.messageGroupSize("bar"));
+		assertSame(testMessage1, store.pollMessageFromGroup("bar"));
+		assertSame(testMessage2, store.pollMessageFromGroup("bar"));
+		assertNull(store.pollMessageFromGroup("bar"));
+		assertNull(store.pollMessageFromGroup("baz"));
+		assertEquals(0, store.messageGroupSize("bar"));
+	}
+
 	@Test
 	public void shouldRegisterCallbacks() throws Exception {
 		SimpleMessageStore store = new SimpleMessageStore();
@@ -145,4 +175,67 @@ public class SimpleMessageStoreTests {
 
 	}
 
+	@Test
+	public void shouldExpireMessageGroupAfterGroupTimeout() throws Exception {
+		TimingWheelTaskScheduler taskScheduler = new TimingWheelTaskScheduler();
+		SimpleMessageStore store = new SimpleMessageStore();
+		store.setTaskScheduler(taskScheduler);
+		store.setGroupTimeout(100);
+		store.afterPropertiesSet();
+		final List<Object> expired = new ArrayList<Object>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		store.registerMessageGroupExpiryCallback(new MessageGroupCallback() {
+			public void execute(MessageGroupStore messageGroupStore, MessageGroup group) {
+				expired.add(group.getGroupId());
+				messageGroupStore.removeMessageGroup(group.getGroupId());
+				latch.countDown();
+			}
+		});
+		long start = System.currentTimeMillis();
+		store.addMessageToGroup("foo", MessageBuilder.withPayload("foo").build());
+		store.addMessageToGroup("bar", MessageBuilder.withPayload("bar").build());
+		assertEquals(2, taskScheduler.getScheduledTaskCount());
+		store.removeMessageGroup("bar");
+		assertEquals(1, taskScheduler.getScheduledTaskCount());
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertEquals("[foo]", expired.toString());
+		assertEquals(0, store.getMessageGroupCount());
+		taskScheduler.destroy();
+	}
+
+	@Test
+	public void shouldExpireIdleMessageGroupAfterLastModification() throws Exception {
+		TimingWheelTaskScheduler taskScheduler = new TimingWheelTaskScheduler();
+		SimpleMessageStore store = new SimpleMessageStore();
+		store.setTaskScheduler(taskScheduler);
+		store.setGroupTimeout(300);
+		store.setTimeoutOnIdle(true);
+		store.afterPropertiesSet();
+		final CountDownLatch latch = new CountDownLatch(1);
+		store.registerMessageGroupExpiryCallback(new MessageGroupCallback() {
+			public void execute(MessageGroupStore messageGroupStore, MessageGroup group) {
+				messageGroupStore.removeMessageGroup(group.getGroupId());
+				latch.countDown();
+			}
+		});
+		long start = System.currentTimeMillis();
+		store.addMessageToGroup("foo", MessageBuilder.withPayload("foo").build());
+		Thread.sleep(200);
+		store.addMessageToGroup("foo", MessageBuilder.withPayload("bar").build());
+		long lastModified = store.getMessageGroup("foo").getLastModified();
+		assertTrue(lastModified - start >= 200);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - lastModified >= 300);
+		assertEquals(0, store.getMessageGroupCount());
+		taskScheduler.destroy();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldRequireTaskSchedulerForGroupTimeout() {
+		SimpleMessageStore store = new SimpleMessageStore();
+		store.setGroupTimeout(100);
+		store.afterPropertiesSet();
+	}
+
 }
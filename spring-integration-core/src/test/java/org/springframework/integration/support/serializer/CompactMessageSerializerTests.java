@@ -0,0 +1,245 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.support.serializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageHeaders;
+import org.springframework.integration.message.ErrorMessage;
+import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 2.2
+ */
+public class CompactMessageSerializerTests {
+
+	private final CompactMessageSerializer serializer = new CompactMessageSerializer();
+
+
+	@Test
+	public void testRoundTripKeepsIdTimestampAndHeaders() throws Exception {
+		UUID correlationId = UUID.randomUUID();
+		Message<String> message = MessageBuilder.withPayload("foo")
+				.setCorrelationId(correlationId)
+				.setSequenceNumber(2)
+				.setSequenceSize(3)
+				.setExpirationDate(Long.MIN_VALUE)
+				.setHeader("string", "bar")
+				.setHeader("long", -1L)
+				.setHeader("boolean", true)
+				.setHeader("double", 1.5d)
+				.setHeader("float", 2.5f)
+				.setHeader("short", (short) 3)
+				.setHeader("byte", (byte) 4)
+				.setHeader("char", 'c')
+				.setHeader("bytes", new byte[] { 1, 2 })
+				.setHeader("date", new Date(42))
+				.setHeader("null", null)
+				.build();
+		Message<?> result = this.serializer.fromBytes(this.serializer.toBytes(message));
+		MessageHeaders headers = result.getHeaders();
+		assertEquals("foo", result.getPayload());
+		assertEquals(message.getHeaders().getId(), headers.getId());
+		assertEquals(message.getHeaders().getTimestamp(), headers.getTimestamp());
+		assertEquals(correlationId, headers.getCorrelationId());
+		assertEquals(Integer.valueOf(2), headers.getSequenceNumber());
+		assertEquals(Integer.valueOf(3), headers.getSequenceSize());
+		assertEquals(Long.valueOf(Long.MIN_VALUE), headers.getExpirationDate());
+		assertEquals("bar", headers.get("string"));
+		assertEquals(-1L, headers.get("long"));
+		assertEquals(true, headers.get("boolean"));
+		assertEquals(1.5d, headers.get("double"));
+		assertEquals(2.5f, headers.get("float"));
+		assertEquals((short) 3, headers.get("short"));
+		assertEquals((byte) 4, headers.get("byte"));
+		assertEquals('c', headers.get("char"));
+		assertArrayEquals(new byte[] { 1, 2 }, (byte[]) headers.get("bytes"));
+		assertEquals(new Date(42), headers.get("date"));
+		assertEquals(message.getHeaders().size(), headers.size());
+	}
+
+	@Test
+	public void testPayloadCodecs() throws Exception {
+		byte[] bytes = new byte[] { 1, 2, 3 };
+		assertArrayEquals(bytes, (byte[]) this.roundTrip(bytes));
+		assertEquals("\u00e9t\u00e9", this.roundTrip("\u00e9t\u00e9"));
+		assertEquals(Arrays.asList(1, 2), this.roundTrip(Arrays.asList(1, 2)));
+		CompactMessageSerializer jsonSerializer = new CompactMessageSerializer();
+		JsonPayloadCodec jsonCodec = new JsonPayloadCodec();
+		jsonCodec.setPayloadTypes(Bean.class);
+		jsonSerializer.setPayloadCodecs(Arrays.<PayloadCodec> asList(jsonCodec));
+		Bean bean = new Bean();
+		bean.setName("foo");
+		Message<?> result = jsonSerializer.fromBytes(jsonSerializer.toBytes(new GenericMessage<Bean>(bean)));
+		assertEquals("foo", ((Bean) result.getPayload()).getName());
+	}
+
+	@Test
+	public void testPayloadLoadedWithBeanClassLoader() throws Exception {
+		final List<String> loaded = new ArrayList<String>();
+		ClassLoader classLoader = new ClassLoader(this.getClass().getClassLoader()) {
+
+			@Override
+			public Class<?> loadClass(String name) throws ClassNotFoundException {
+				loaded.add(name);
+				return super.loadClass(name);
+			}
+		};
+		this.serializer.setBeanClassLoader(classLoader);
+		Bean bean = new Bean();
+		bean.setName("foo");
+		assertEquals("foo", ((Bean) this.roundTrip(bean)).getName());
+		assertTrue(loaded.contains(Bean.class.getName()));
+	}
+
+	@Test
+	public void testJsonCodecRequiresPayloadTypes() throws Exception {
+		JsonPayloadCodec jsonCodec = new JsonPayloadCodec();
+		assertFalse(jsonCodec.canEncode(new Bean()));
+		try {
+			jsonCodec.afterPropertiesSet();
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("'payloadTypes' must be set", e.getMessage());
+		}
+		CompactMessageSerializer jsonSerializer = new CompactMessageSerializer();
+		jsonSerializer.setPayloadCodecs(Arrays.<PayloadCodec> asList(jsonCodec));
+		// falls back to Java serialization
+		Message<?> result = jsonSerializer.fromBytes(jsonSerializer.toBytes(new GenericMessage<Object>(
+				Arrays.asList(1, 2))));
+		assertEquals(Arrays.asList(1, 2), result.getPayload());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateCodecIdRejected() {
+		this.serializer.setPayloadCodecs(Arrays.<PayloadCodec> asList(new StringPayloadCodec()));
+	}
+
+	@Test
+	public void testMessageWithoutIdAndTimestamp() throws Exception {
+		Message<String> message = new GenericMessage<String>("foo", null, MessageHeaders.ID_VALUE_NONE, -1L);
+		Message<?> result = this.serializer.fromBytes(this.serializer.toBytes(message));
+		assertNull(result.getHeaders().getId());
+		assertNull(result.getHeaders().getTimestamp());
+	}
+
+	@Test
+	public void testJavaSerializedMessagesStillRead() throws Exception {
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("bar", "baz").build();
+		byte[] bytes = new SerializingConverter().convert(message);
+		Message<?> result = this.serializer.fromBytes(bytes);
+		assertEquals(message.getHeaders().getId(), result.getHeaders().getId());
+		assertEquals("baz", result.getHeaders().get("bar"));
+	}
+
+	@Test
+	public void testErrorMessageUsesJavaSerialization() throws Exception {
+		ErrorMessage message = new ErrorMessage(new RuntimeException("foo"));
+		Message<?> result = this.serializer.fromBytes(this.serializer.toBytes(message));
+		assertTrue(result instanceof ErrorMessage);
+		assertEquals("foo", ((Throwable) result.getPayload()).getMessage());
+	}
+
+	@Test
+	public void testSmallerThanJavaSerialization() throws Exception {
+		Message<String> message = MessageBuilder.withPayload("foo").setCorrelationId("bar")
+				.setSequenceNumber(1).setSequenceSize(1).build();
+		int compact = this.serializer.toBytes(message).length;
+		int java = new SerializingConverter().convert(message).length;
+		assertTrue("Compact size " + compact + " not less than a quarter of " + java, compact * 4 < java);
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownVersionRejected() throws Exception {
+		this.serializer.fromBytes(new byte[] { 99 });
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestAgainstJavaSerialization() throws Exception {
+		Message<String> message = MessageBuilder.withPayload("Lorem ipsum dolor sit amet, consectetur adipiscing elit")
+				.setCorrelationId(UUID.randomUUID()).setSequenceNumber(1).setSequenceSize(10)
+				.setHeader("JdbcMessageStore.SAVED", true).setHeader("JdbcMessageStore.CREATED_DATE", 1L).build();
+		SerializingConverter javaSerializer = new SerializingConverter();
+		DeserializingConverter javaDeserializer = new DeserializingConverter();
+		int iterations = 200000;
+		for (int run = 0; run < 2; run++) {
+			StopWatch watch = new StopWatch();
+			watch.start("java");
+			int javaSize = 0;
+			for (int i = 0; i < iterations; i++) {
+				byte[] bytes = javaSerializer.convert(message);
+				javaSize = bytes.length;
+				javaDeserializer.convert(bytes);
+			}
+			watch.stop();
+			watch.start("compact");
+			int compactSize = 0;
+			for (int i = 0; i < iterations; i++) {
+				byte[] bytes = this.serializer.toBytes(message);
+				compactSize = bytes.length;
+				this.serializer.fromBytes(bytes);
+			}
+			watch.stop();
+			System.out.println("Size: java=" + javaSize + " bytes, compact=" + compactSize + " bytes");
+			System.out.println(watch.prettyPrint());
+		}
+	}
+
+	private Object roundTrip(Object payload) throws IOException {
+		return this.serializer.fromBytes(this.serializer.toBytes(new GenericMessage<Object>(payload))).getPayload();
+	}
+
+
+	public static class Bean implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+}
@@ -15,10 +15,15 @@
  */
 package org.springframework.integration.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.junit.Test;
 
@@ -181,4 +186,51 @@ public class DefaultLockRegistryTests {
 		assertSame(locks[3], moreLocks[3]);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testForConcurrencyLevel() {
+		assertEquals(256, DefaultLockRegistry.forConcurrencyLevel(1).getStripeCount());
+		assertEquals(256, DefaultLockRegistry.forConcurrencyLevel(4).getStripeCount());
+		assertEquals(512, DefaultLockRegistry.forConcurrencyLevel(5).getStripeCount());
+		assertEquals(4096, DefaultLockRegistry.forConcurrencyLevel(64).getStripeCount());
+		assertEquals(65536, DefaultLockRegistry.forConcurrencyLevel(Integer.MAX_VALUE).getStripeCount());
+		assertTrue(DefaultLockRegistry.forAvailableProcessors().getStripeCount() >= 256);
+	}
+
+	@Test
+	public void testContentionMetrics() throws Exception {
+		final DefaultLockRegistry registry = new DefaultLockRegistry(3);
+		final Lock lock = registry.obtain(1);
+		lock.lock();
+		lock.unlock();
+		assertTrue(registry.obtain(2).tryLock());
+		registry.obtain(2).unlock();
+		assertEquals(1, registry.getAcquisitionCount(1));
+		assertEquals(1, registry.getAcquisitionCount(2));
+		assertEquals(0, registry.getContendedAcquisitionCount());
+
+		final CountDownLatch locked = new CountDownLatch(1);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				// key 5 is hashed onto the same lock as key 1
+				Lock collision = registry.obtain(5);
+				collision.lock();
+				locked.countDown();
+				collision.unlock();
+			}
+		});
+		lock.lock();
+		thread.start();
+		while (!((ReentrantLock) lock).hasQueuedThreads()) {
+			Thread.sleep(1);
+		}
+		lock.unlock();
+		assertTrue(locked.await(10, TimeUnit.SECONDS));
+		thread.join();
+		assertEquals(3, registry.getAcquisitionCount(1));
+		assertEquals(1, registry.getContendedAcquisitionCount(1));
+		assertEquals(0, registry.getContendedAcquisitionCount(2));
+		assertEquals(4, registry.getAcquisitionCount());
+		assertEquals(1, registry.getContendedAcquisitionCount());
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 2.2
+ */
+public class PerKeyLockRegistryTests {
+
+	@Test
+	public void testLockIsDiscardedWhenUnlocked() {
+		PerKeyLockRegistry registry = new PerKeyLockRegistry();
+		Lock lock = registry.obtain("foo");
+		assertEquals(0, registry.getLockCount());
+		lock.lock();
+		lock.lock();
+		assertEquals(1, registry.getLockCount());
+		lock.unlock();
+		assertEquals(1, registry.getLockCount());
+		lock.unlock();
+		assertEquals(0, registry.getLockCount());
+		assertTrue(lock.tryLock());
+		lock.unlock();
+		assertEquals(0, registry.getLockCount());
+	}
+
+	@Test(expected = IllegalMonitorStateException.class)
+	public void testUnlockWithoutLock() {
+		new PerKeyLockRegistry().obtain("foo").unlock();
+	}
+
+	@Test
+	public void testDifferentKeysDoNotBlock() throws Exception {
+		final PerKeyLockRegistry registry = new PerKeyLockRegistry();
+		registry.obtain(0).lock();
+		final AtomicBoolean locked = new AtomicBoolean();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				// same hash code, different key
+				Lock lock = registry.obtain(256);
+				locked.set(lock.tryLock());
+				lock.unlock();
+			}
+		});
+		thread.start();
+		thread.join(10000);
+		assertTrue(locked.get());
+		assertEquals(1, registry.getLockCount());
+	}
+
+	@Test
+	public void testSameKeyBlocks() throws Exception {
+		final PerKeyLockRegistry registry = new PerKeyLockRegistry();
+		Lock lock = registry.obtain("foo");
+		lock.lock();
+		final AtomicBoolean locked = new AtomicBoolean(true);
+		final CountDownLatch latch = new CountDownLatch(1);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					locked.set(registry.obtain("foo").tryLock(10, TimeUnit.MILLISECONDS));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				latch.countDown();
+			}
+		});
+		thread.start();
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertFalse(locked.get());
+		assertEquals(1, registry.getContendedAcquisitionCount());
+		lock.unlock();
+		assertEquals(0, registry.getLockCount());
+	}
+
+	@Test
+	public void testMutualExclusion() throws Exception {
+		final PerKeyLockRegistry registry = new PerKeyLockRegistry();
+		final int threads = 8;
+		final int iterations = 5000;
+		final int[] counters = new int[4];
+		final AtomicInteger inCriticalSection = new AtomicInteger();
+		final AtomicBoolean overlap = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					for (int i = 0; i < iterations; i++) {
+						Lock lock = registry.obtain("key");
+						lock.lock();
+						try {
+							if (inCriticalSection.incrementAndGet() != 1) {
+								overlap.set(true);
+							}
+							counters[i % counters.length]++;
+							inCriticalSection.decrementAndGet();
+						}
+						finally {
+							lock.unlock();
+						}
+					}
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertFalse(overlap.get());
+		int total = 0;
+		for (int counter : counters) {
+			total += counter;
+		}
+		assertEquals(threads * iterations, total);
+		assertEquals(0, registry.getLockCount());
+	}
+
+	@Test
+	@Ignore
+	public void performanceTestAgainstDefaultLockRegistry() throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors() * 2;
+		int groupsPerThread = 20000;
+		for (int run = 0; run < 2; run++) {
+			DefaultLockRegistry defaultRegistry = new DefaultLockRegistry();
+			this.runPerformanceTest(defaultRegistry, threads, groupsPerThread);
+			System.out.println("  contended: " + defaultRegistry.getContendedAcquisitionCount() + " of "
+					+ defaultRegistry.getAcquisitionCount());
+			DefaultLockRegistry sizedRegistry = DefaultLockRegistry.forConcurrencyLevel(threads);
+			this.runPerformanceTest(sizedRegistry, threads, groupsPerThread);
+			System.out.println("  contended: " + sizedRegistry.getContendedAcquisitionCount() + " of "
+					+ sizedRegistry.getAcquisitionCount());
+			PerKeyLockRegistry perKeyRegistry = new PerKeyLockRegistry();
+			this.runPerformanceTest(perKeyRegistry, threads, groupsPerThread);
+			System.out.println("  contended: " + perKeyRegistry.getContendedAcquisitionCount());
+		}
+	}
+
+	/**
+	 * Each thread aggregates its own groups of 10 messages, so any contention is caused by
+	 * collisions between unrelated keys.
+	 */
+	private void runPerformanceTest(final LockRegistry registry, int threads, final int groupsPerThread)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					long work = 0;
+					for (int g = 0; g < groupsPerThread; g++) {
+						Object correlationKey = UUID.randomUUID();
+						for (int m = 0; m < 10; m++) {
+							Lock lock = registry.obtain(correlationKey);
+							lock.lock();
+							try {
+								for (int i = 0; i < 100; i++) {
+									work += i ^ m;
+								}
+							}
+							finally {
+								lock.unlock();
+							}
+						}
+					}
+					if (work == 42) {
+						System.out.println(work);
+					}
+					done.countDown();
+				}
+			});
+		}
+		StopWatch watch = new StopWatch();
+		watch.start();
+		start.countDown();
+		done.await();
+		watch.stop();
+		executor.shutdown();
+		System.out.println(registry.getClass().getSimpleName() + " (" + threads + " threads): "
+				+ watch.getTotalTimeMillis() + "ms");
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -31,8 +31,12 @@ public abstract class AbstractFileListFilter<F> implements FileListFilter<F> {
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Subclasses may override this method to evaluate the files as a
+     * batch, but must return the same result as invoking
+     * {@link #accept(Object)} for each file in turn.
      */
-    public final List<F> filterFiles(F[] files) {
+    public List<F> filterFiles(F[] files) {
         List<F> accepted = new ArrayList<F>();
         if (files != null) {
             for (F file : files) {
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.file.filters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.integration.store.MetadataStore;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link AcceptOnceFileListFilter} that also records the files it has
+ * accepted in a {@link MetadataStore}, so that they are not accepted again
+ * after a restart. A file is identified by its name, modified time and size;
+ * the store holds one entry per file name (the key is the prefix followed by
+ * the name), so a file that is replaced by a newer version is accepted again.
+ * <p/>
+ * The store is only consulted for files that are not remembered in memory,
+ * and is read outside of the filter's lock. Entries for accepted files are
+ * written to the store after each batch of files (or single file) has been
+ * filtered, also outside of the filter's lock.
+ *
+ * @param <F> the type of file entry
+ * @since 2.2
+ */
+public abstract class AbstractPersistentAcceptOnceFileListFilter<F> extends AcceptOnceFileListFilter<F> {
+
+	/**
+	 * The default number of files remembered in memory.
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private final MetadataStore store;
+
+	private final String prefix;
+
+	private final Map<String, String> pendingWrites = new LinkedHashMap<String, String>();
+
+
+	/**
+	 * Creates a filter that remembers up to {@link #DEFAULT_CAPACITY}
+	 * files in memory.
+	 * @param store the store in which accepted files are recorded.
+	 * @param prefix a prefix for the store keys, distinguishing this filter's
+	 * entries from others in the same store.
+	 */
+	public AbstractPersistentAcceptOnceFileListFilter(MetadataStore store, String prefix) {
+		this(store, prefix, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param store the store in which accepted files are recorded.
+	 * @param prefix a prefix for the store keys, distinguishing this filter's
+	 * entries from others in the same store.
+	 * @param maxCapacity the maximum number of files remembered in memory.
+	 */
+	public AbstractPersistentAcceptOnceFileListFilter(MetadataStore store, String prefix, int maxCapacity) {
+		super(maxCapacity);
+		Assert.notNull(store, "'store' must not be null");
+		Assert.notNull(prefix, "'prefix' must not be null");
+		this.store = store;
+		this.prefix = prefix;
+	}
+
+
+	@Override
+	protected Object getKey(F file) {
+		return this.getFilename(file) + ":" + this.getValue(file);
+	}
+
+	@Override
+	protected boolean acceptUnseen(F file) {
+		String key = this.prefix + this.getFilename(file);
+		String value = this.getValue(file);
+		if (value.equals(this.store.get(key))) {
+			return false;
+		}
+		synchronized (this.pendingWrites) {
+			if (value.equals(this.pendingWrites.get(key))) {
+				return false;
+			}
+			this.pendingWrites.put(key, value);
+		}
+		return true;
+	}
+
+	@Override
+	protected void afterFilter() {
+		this.flush();
+	}
+
+	/**
+	 * Writes the entries for files accepted since the last flush to the store.
+	 */
+	public void flush() {
+		Map<String, String> writes;
+		synchronized (this.pendingWrites) {
+			if (this.pendingWrites.isEmpty()) {
+				return;
+			}
+			writes = new LinkedHashMap<String, String>(this.pendingWrites);
+			this.pendingWrites.clear();
+		}
+		for (Entry<String, String> entry : writes.entrySet()) {
+			this.store.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private String getValue(F file) {
+		return this.getModified(file) + ":" + this.getSize(file);
+	}
+
+	/**
+	 * Subclasses must implement this method to extract the file's name.
+	 */
+	protected abstract String getFilename(F file);
+
+	/**
+	 * Subclasses must implement this method to extract the file's last
+	 * modified time.
+	 */
+	protected abstract long getModified(F file);
+
+	/**
+	 * Subclasses must implement this method to extract the file's size.
+	 */
+	protected abstract long getSize(F file);
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,14 +16,24 @@
 
 package org.springframework.integration.file.filters;
 
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
 
 /**
  * {@link FileListFilter} that passes files only one time. This can
  * conveniently be used to prevent duplication of files, as is done in
  * {@link org.springframework.integration.file.FileReadingMessageSource}.
  * <p/>
+ * The files seen are held in a hash-indexed, insertion-ordered set, so
+ * each check takes constant time; when the set is bounded, the oldest files
+ * fall out first. The filter's lock is only held while a file is checked
+ * and remembered. A listing passed to {@link #filterFiles(Object[])} is
+ * filtered as a single batch.
+ * <p/>
  * This implementation is thread safe.
  *
  * @author Iwein Fuld
@@ -32,7 +42,7 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class AcceptOnceFileListFilter<F> extends AbstractFileListFilter<F> {
 
-	private final Queue<F> seen;
+	private final Map<Object, Boolean> seen;
 
 	private final Object monitor = new Object();
 
@@ -44,29 +54,85 @@ public class AcceptOnceFileListFilter<F> extends AbstractFileListFilter<F> {
 	 *
 	 * @param maxCapacity the maximum number of Files to maintain in the 'seen' queue.
 	 */
-	public AcceptOnceFileListFilter(int maxCapacity) {
-		this.seen = new LinkedBlockingQueue<F>(maxCapacity);
+	public AcceptOnceFileListFilter(final int maxCapacity) {
+		Assert.isTrue(maxCapacity > 0, "'maxCapacity' must be > 0");
+		this.seen = new LinkedHashMap<Object, Boolean>() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Boolean> eldest) {
+				return this.size() > maxCapacity;
+			}
+
+		};
 	}
 
 	/**
 	 * Creates an AcceptOnceFileListFilter based on an unbounded queue.
 	 */
 	public AcceptOnceFileListFilter() {
-		this.seen = new LinkedBlockingQueue<F>();
+		this.seen = new LinkedHashMap<Object, Boolean>();
 	}
 
 
 	public boolean accept(F file) {
+		boolean accepted = this.doAccept(file);
+		this.afterFilter();
+		return accepted;
+	}
+
+	@Override
+	public List<F> filterFiles(F[] files) {
+		List<F> accepted = new ArrayList<F>();
+		if (files != null) {
+			for (F file : files) {
+				if (this.doAccept(file)) {
+					accepted.add(file);
+				}
+			}
+			this.afterFilter();
+		}
+		return accepted;
+	}
+
+	private boolean doAccept(F file) {
+		Object key = this.getKey(file);
 		synchronized (this.monitor) {
-			if (this.seen.contains(file)) {
+			if (this.seen.containsKey(key)) {
 				return false;
 			}
-			if (!this.seen.offer(file)) {
-				this.seen.poll();
-				this.seen.add(file);
-			}
-			return true;
+			this.seen.put(key, Boolean.TRUE);
 		}
+		return this.acceptUnseen(file);
+	}
+
+	/**
+	 * Returns the key by which a file is remembered; by default, the file itself.
+	 * @since 2.2
+	 */
+	protected Object getKey(F file) {
+		return file;
+	}
+
+	/**
+	 * Invoked, without holding the filter's lock, for a file that has not been
+	 * seen since it was last evicted (if ever). The file has already been
+	 * remembered, so it is not passed to this method again while it stays in
+	 * memory, whatever the result. By default, accepts the file.
+	 * @return true if the file should be accepted.
+	 * @since 2.2
+	 */
+	protected boolean acceptUnseen(F file) {
+		return true;
+	}
+
+	/**
+	 * Invoked, without holding the filter's lock, after each single file or
+	 * batch of files has been filtered. Does nothing by default.
+	 * @since 2.2
+	 */
+	protected void afterFilter() {
 	}
 
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.splitter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageHandlingException;
+import org.springframework.integration.splitter.AbstractMessageSplitter;
+import org.springframework.util.Assert;
+
+/**
+ * A splitter that emits one message for each line of a File payload. Lines
+ * are read as they are emitted, so the file's contents are never held in
+ * memory all at once. The file is closed when its last line has been read,
+ * or when sending a line fails.
+ * <p/>
+ * Since the number of lines is not known in advance, the messages carry a
+ * sequence size of 0, except for the last line's, which carries the number
+ * of lines. Payloads that are not Files are passed through as a single
+ * message.
+ *
+ * @since 2.2
+ */
+public class FileSplitter extends AbstractMessageSplitter {
+
+	private volatile Charset charset = Charset.defaultCharset();
+
+
+	/**
+	 * Set the charset name to use when reading the File.
+	 */
+	public void setCharset(String charset) {
+		Assert.notNull(charset, "charset must not be null");
+		Assert.isTrue(Charset.isSupported(charset), "Charset '" + charset + "' is not supported.");
+		this.charset = Charset.forName(charset);
+	}
+
+	@Override
+	protected Object splitMessage(Message<?> message) {
+		Object payload = message.getPayload();
+		if (!(payload instanceof File)) {
+			return payload;
+		}
+		BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream((File) payload), this.charset));
+		}
+		catch (IOException e) {
+			throw new MessageHandlingException(message, "failed to open file", e);
+		}
+		return new FileIterator(reader, message);
+	}
+
+
+	/**
+	 * Reads a line ahead of the one returned. Closed by the splitter once the
+	 * lines have been sent, or sending one of them has failed.
+	 */
+	private static class FileIterator implements Iterator<String>, Closeable {
+
+		private final BufferedReader reader;
+
+		private final Message<?> message;
+
+		private String line;
+
+		private boolean done;
+
+		private FileIterator(BufferedReader reader, Message<?> message) {
+			this.reader = reader;
+			this.message = message;
+		}
+
+		public boolean hasNext() {
+			if (this.line == null && !this.done) {
+				try {
+					this.line = this.reader.readLine();
+				}
+				catch (IOException e) {
+					this.close();
+					throw new MessageHandlingException(this.message, "failed to read file", e);
+				}
+				if (this.line == null) {
+					this.close();
+				}
+			}
+			return this.line != null;
+		}
+
+		public String next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String next = this.line;
+			this.line = null;
+			return next;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			this.done = true;
+			this.line = null;
+			try {
+				this.reader.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.MessagingException;
+
+/**
+ * A {@link DirectoryScanner} that uses a {@link WatchService} to detect
+ * changes, rather than listing the directory on each scan. The first scan
+ * lists the directory (and, if recursive, its subdirectories) and registers
+ * it with the watch service; subsequent scans return only the files created
+ * or modified since the previous scan. If the watch service reports that
+ * events have been lost, the directory is listed again.
+ * <p/>
+ * Only files are returned, not directories. Requires Java 7 or later.
+ *
+ * @since 2.2
+ */
+public class WatchServiceDirectoryScanner extends DefaultDirectoryScanner implements DisposableBean {
+
+	private final Log logger = LogFactory.getLog(this.getClass());
+
+	private final Object monitor = new Object();
+
+	private volatile boolean recursive = true;
+
+	private volatile WatchService watcher;
+
+	private volatile File directory;
+
+
+	/**
+	 * Whether to watch subdirectories (including those created later);
+	 * default true.
+	 * @param recursive true to watch subdirectories.
+	 */
+	public void setRecursive(boolean recursive) {
+		this.recursive = recursive;
+	}
+
+	@Override
+	protected File[] listEligibleFiles(File directory) {
+		Collection<File> files;
+		synchronized (this.monitor) {
+			try {
+				if (this.watcher == null || !directory.equals(this.directory)) {
+					this.closeWatcher();
+					this.watcher = FileSystems.getDefault().newWatchService();
+					this.directory = directory;
+					files = this.walkDirectory(directory.toPath());
+				}
+				else {
+					files = this.filesFromEvents();
+				}
+			}
+			catch (IOException e) {
+				this.closeWatcher();
+				throw new MessagingException("Failed to watch directory [" + directory + "]", e);
+			}
+		}
+		return files.toArray(new File[files.size()]);
+	}
+
+	/**
+	 * Returns the files in the directory, registering the directory (and
+	 * subdirectories, if recursive) with the watch service.
+	 */
+	private Set<File> walkDirectory(Path directory) throws IOException {
+		final Set<File> files = new LinkedHashSet<File>();
+		if (this.recursive) {
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					register(dir);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile()) {
+						files.add(file.toFile());
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+			});
+		}
+		else {
+			this.register(directory);
+			DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+			try {
+				for (Path file : stream) {
+					if (Files.isRegularFile(file)) {
+						files.add(file.toFile());
+					}
+				}
+			}
+			finally {
+				stream.close();
+			}
+		}
+		return files;
+	}
+
+	private void register(Path directory) throws IOException {
+		directory.register(this.watcher, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+	}
+
+	/**
+	 * Returns the files created or modified since the last scan.
+	 */
+	private Set<File> filesFromEvents() throws IOException {
+		Set<File> files = new LinkedHashSet<File>();
+		WatchKey key = this.watcher.poll();
+		while (key != null) {
+			Path parent = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Watch events lost; rescanning " + this.directory);
+					}
+					files.addAll(this.walkDirectory(this.directory.toPath()));
+					continue;
+				}
+				Path path = parent.resolve((Path) event.context());
+				if (Files.isDirectory(path)) {
+					if (this.recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+						// files may have been created before the directory was registered
+						files.addAll(this.walkDirectory(path));
+					}
+				}
+				else if (Files.isRegularFile(path)) {
+					files.add(path.toFile());
+				}
+			}
+			key.reset();
+			key = this.watcher.poll();
+		}
+		return files;
+	}
+
+	public void destroy() {
+		synchronized (this.monitor) {
+			this.closeWatcher();
+		}
+	}
+
+	private void closeWatcher() {
+		if (this.watcher != null) {
+			try {
+				this.watcher.close();
+			}
+			catch (IOException e) {
+				logger.warn("Failed to close WatchService", e);
+			}
+			this.watcher = null;
+		}
+	}
+
+}
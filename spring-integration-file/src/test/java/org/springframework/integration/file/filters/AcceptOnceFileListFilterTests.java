@@ -0,0 +1,184 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.file.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.store.SimpleMetadataStore;
+
+/**
+ * @since 2.2
+ */
+public class AcceptOnceFileListFilterTests {
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void testAcceptOnce() {
+		AcceptOnceFileListFilter<String> filter = new AcceptOnceFileListFilter<String>();
+		assertTrue(filter.accept("foo"));
+		assertFalse(filter.accept("foo"));
+		List<String> accepted = filter.filterFiles(new String[] {"foo", "bar", "baz", "bar"});
+		assertEquals(2, accepted.size());
+		assertEquals("bar", accepted.get(0));
+		assertEquals("baz", accepted.get(1));
+	}
+
+	@Test
+	public void testBoundedEvictsOldest() {
+		AcceptOnceFileListFilter<String> filter = new AcceptOnceFileListFilter<String>(2);
+		assertEquals(3, filter.filterFiles(new String[] {"foo", "bar", "baz"}).size());
+		// foo has been evicted
+		assertTrue(filter.accept("foo"));
+		assertFalse(filter.accept("baz"));
+		// bar was evicted by foo
+		assertTrue(filter.accept("bar"));
+	}
+
+	@Test
+	public void testLargeListing() {
+		String[] files = new String[200000];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = "file" + i;
+		}
+		AcceptOnceFileListFilter<String> filter = new AcceptOnceFileListFilter<String>();
+		assertEquals(files.length, filter.filterFiles(files).size());
+		assertEquals(0, filter.filterFiles(files).size());
+	}
+
+	@Test
+	public void testPersistentSurvivesRestart() throws Exception {
+		SimpleMetadataStore store = new SimpleMetadataStore();
+		File foo = this.createFile("foo", "foo");
+		File bar = this.createFile("bar", "bar");
+		FileSystemPersistentAcceptOnceFileListFilter filter =
+				new FileSystemPersistentAcceptOnceFileListFilter(store, "test:");
+		assertEquals(2, filter.filterFiles(new File[] {foo, bar}).size());
+		assertFalse(filter.accept(foo));
+		assertEquals(String.valueOf(foo.lastModified()) + ":3", store.get("test:" + foo.getAbsolutePath()));
+
+		// a new filter (e.g. after a restart) does not accept the files again
+		filter = new FileSystemPersistentAcceptOnceFileListFilter(store, "test:");
+		assertEquals(0, filter.filterFiles(new File[] {foo, bar}).size());
+
+		// unless they have changed
+		this.createFile("foo", "foo2");
+		assertTrue(filter.accept(foo));
+		assertFalse(filter.accept(foo));
+
+		// another prefix has its own entries
+		filter = new FileSystemPersistentAcceptOnceFileListFilter(store, "other:");
+		assertEquals(2, filter.filterFiles(new File[] {foo, bar}).size());
+	}
+
+	@Test
+	public void testPersistentWritesAfterBatch() throws Exception {
+		final List<String> keys = new ArrayList<String>();
+		SimpleMetadataStore store = new SimpleMetadataStore() {
+
+			@Override
+			public void put(String key, String value) {
+				keys.add(key);
+				super.put(key, value);
+			}
+
+		};
+		FileSystemPersistentAcceptOnceFileListFilter filter =
+				new FileSystemPersistentAcceptOnceFileListFilter(store, "test:", 1);
+		File foo = this.createFile("foo", "foo");
+		File bar = this.createFile("bar", "bar");
+		assertEquals(2, filter.filterFiles(new File[] {foo, bar}).size());
+		assertEquals(2, keys.size());
+		// evicted from memory, but found in the store
+		assertEquals(0, filter.filterFiles(new File[] {foo, bar}).size());
+		assertEquals(2, keys.size());
+	}
+
+	@Test
+	public void testPersistentStoreReadOutsideLock() throws Exception {
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		SimpleMetadataStore store = new SimpleMetadataStore() {
+
+			@Override
+			public String get(String key) {
+				if (key.endsWith("foo")) {
+					reading.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.get(key);
+			}
+
+		};
+		final FileSystemPersistentAcceptOnceFileListFilter filter =
+				new FileSystemPersistentAcceptOnceFileListFilter(store, "test:");
+		final File foo = this.createFile("foo", "foo");
+		final File bar = this.createFile("bar", "bar");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Future<Boolean> fooAccepted = executor.submit(new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				return filter.accept(foo);
+			}
+		});
+		assertTrue(reading.await(10, TimeUnit.SECONDS));
+		Future<Boolean> barAccepted = executor.submit(new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				return filter.accept(bar) && !filter.accept(foo);
+			}
+		});
+		try {
+			// not blocked by the slow read of foo's entry
+			assertTrue(barAccepted.get(5, TimeUnit.SECONDS));
+		}
+		finally {
+			release.countDown();
+		}
+		assertTrue(fooAccepted.get(10, TimeUnit.SECONDS));
+		executor.shutdown();
+	}
+
+	private File createFile(String name, String content) throws Exception {
+		File file = new File(this.temp.getRoot(), name);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes());
+		out.close();
+		return file;
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageHandler;
+import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.test.util.TestUtils;
+
+/**
+ * @since 2.2
+ */
+public class FileSplitterTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testLines() throws Exception {
+		File file = this.folder.newFile("lines.txt");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("foo\nbar\r\nbaz".getBytes("UTF-8"));
+		out.close();
+		FileSplitter splitter = new FileSplitter();
+		splitter.setCharset("UTF-8");
+		QueueChannel outputChannel = new QueueChannel();
+		splitter.setOutputChannel(outputChannel);
+		Message<File> message = new GenericMessage<File>(file);
+		splitter.handleMessage(message);
+		List<Message<?>> replies = outputChannel.clear();
+		assertEquals(3, replies.size());
+		String[] expected = new String[] { "foo", "bar", "baz" };
+		for (int i = 0; i < expected.length; i++) {
+			Message<?> reply = replies.get(i);
+			assertEquals(expected[i], reply.getPayload());
+			assertEquals(message.getHeaders().getId(), reply.getHeaders().getCorrelationId());
+			assertEquals(i + 1, reply.getHeaders().getSequenceNumber().intValue());
+			assertEquals(i < 2 ? 0 : 3, reply.getHeaders().getSequenceSize().intValue());
+		}
+	}
+
+	@Test
+	public void testFileClosedWhenSendFails() throws Exception {
+		File file = this.folder.newFile("lines.txt");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("foo\nbar\nbaz".getBytes("UTF-8"));
+		out.close();
+		final AtomicReference<Object> lines = new AtomicReference<Object>();
+		FileSplitter splitter = new FileSplitter() {
+			@Override
+			protected Object splitMessage(Message<?> message) {
+				Object result = super.splitMessage(message);
+				lines.set(result);
+				return result;
+			}
+		};
+		DirectChannel outputChannel = new DirectChannel();
+		outputChannel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> message) {
+				throw new MessageRejectedException(message, "intentional test failure");
+			}
+		});
+		splitter.setOutputChannel(outputChannel);
+		try {
+			splitter.handleMessage(new GenericMessage<File>(file));
+			fail("expected MessageRejectedException");
+		}
+		catch (MessageRejectedException e) {
+		}
+		BufferedReader reader = TestUtils.getPropertyValue(lines.get(), "reader", BufferedReader.class);
+		try {
+			reader.ready();
+			fail("expected the file to be closed");
+		}
+		catch (IOException e) {
+			assertEquals("Stream closed", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		File file = this.folder.newFile("empty.txt");
+		FileSplitter splitter = new FileSplitter();
+		QueueChannel outputChannel = new QueueChannel();
+		splitter.setOutputChannel(outputChannel);
+		splitter.handleMessage(new GenericMessage<File>(file));
+		assertNull(outputChannel.receive(0));
+	}
+
+}
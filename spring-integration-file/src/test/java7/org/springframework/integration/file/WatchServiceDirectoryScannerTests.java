@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.file.filters.AcceptAllFileListFilter;
+
+/**
+ * @since 2.2
+ */
+public class WatchServiceDirectoryScannerTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final WatchServiceDirectoryScanner scanner = new WatchServiceDirectoryScanner();
+
+	@After
+	public void tearDown() {
+		this.scanner.destroy();
+	}
+
+	@Test
+	public void testInitialScanThenEvents() throws Exception {
+		File top = this.folder.newFile("top");
+		File sub = this.folder.newFolder("sub");
+		File subFile = new File(sub, "subFile");
+		subFile.createNewFile();
+		List<File> files = this.scanner.listFiles(this.folder.getRoot());
+		assertEquals(2, files.size());
+		assertTrue(files.contains(top));
+		assertTrue(files.contains(subFile));
+		assertEquals(0, this.scanner.listFiles(this.folder.getRoot()).size());
+
+		File newTop = this.folder.newFile("newTop");
+		File newSubFile = new File(sub, "newSubFile");
+		newSubFile.createNewFile();
+		File newSub = new File(sub, "newSub");
+		newSub.mkdir();
+		File newSubSubFile = new File(newSub, "newSubSubFile");
+		newSubSubFile.createNewFile();
+		files = this.awaitFiles(3);
+		assertTrue(files.contains(newTop));
+		assertTrue(files.contains(newSubFile));
+		assertTrue(files.contains(newSubSubFile));
+	}
+
+	@Test
+	public void testNotRecursive() throws Exception {
+		this.scanner.setRecursive(false);
+		this.scanner.setFilter(new AcceptAllFileListFilter<File>());
+		File top = this.folder.newFile("top");
+		File sub = this.folder.newFolder("sub");
+		new File(sub, "subFile").createNewFile();
+		List<File> files = this.scanner.listFiles(this.folder.getRoot());
+		assertEquals(1, files.size());
+		assertEquals(top, files.get(0));
+
+		new File(sub, "newSubFile").createNewFile();
+		File newTop = this.folder.newFile("newTop");
+		files = this.awaitFiles(1);
+		assertEquals(newTop, files.get(0));
+	}
+
+	private List<File> awaitFiles(int count) throws Exception {
+		List<File> files = new ArrayList<File>();
+		int n = 0;
+		while (files.size() < count) {
+			files.addAll(this.scanner.listFiles(this.folder.getRoot()));
+			if (n++ > 200) {
+				fail("Expected " + count + " files, got " + files);
+			}
+			Thread.sleep(50);
+		}
+		return files;
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.ftp.filters;
+
+import org.apache.commons.net.ftp.FTPFile;
+
+import org.springframework.integration.file.filters.AbstractPersistentAcceptOnceFileListFilter;
+import org.springframework.integration.store.MetadataStore;
+
+/**
+ * Implementation of {@link AbstractPersistentAcceptOnceFileListFilter} for FTP.
+ *
+ * @since 2.2
+ */
+public class FtpPersistentAcceptOnceFileListFilter extends AbstractPersistentAcceptOnceFileListFilter<FTPFile> {
+
+	public FtpPersistentAcceptOnceFileListFilter(MetadataStore store, String prefix) {
+		super(store, prefix);
+	}
+
+	public FtpPersistentAcceptOnceFileListFilter(MetadataStore store, String prefix, int maxCapacity) {
+		super(store, prefix, maxCapacity);
+	}
+
+
+	@Override
+	protected String getFilename(FTPFile file) {
+		return file.getName();
+	}
+
+	@Override
+	protected long getModified(FTPFile file) {
+		return (file.getTimestamp() != null) ? file.getTimestamp().getTimeInMillis() : 0;
+	}
+
+	@Override
+	protected long getSize(FTPFile file) {
+		return file.getSize();
+	}
+
+}
@@ -74,6 +74,7 @@ public class HttpOutboundChannelAdapterParser extends AbstractOutboundChannelAda
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "charset");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "extract-payload");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "expected-response-type");
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "async-request-executor");
 		HttpAdapterParsingUtils.configureUriVariableExpressions(builder, element);
 		return builder.getBeanDefinition();
 	}
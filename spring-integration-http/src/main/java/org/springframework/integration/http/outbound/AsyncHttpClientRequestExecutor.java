@@ -0,0 +1,521 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.http.outbound;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.util.Assert;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Executes the requests of an {@link HttpRequestExecutingMessageHandler} on an Apache
+ * {@link HttpAsyncClient}, so that the calling thread is not blocked for the duration of the
+ * exchange. The client multiplexes all connections over a small number of I/O dispatcher
+ * threads, and completes each exchange on one of those threads. Unless a task executor is
+ * provided, the response is also converted, and the reply sent, on that thread, so the flow
+ * downstream must not block; a blocked dispatcher stalls every connection it serves.
+ * <p/>
+ * The number of requests in flight is limited; when the limit is reached, the calling thread
+ * blocks until a response arrives, so that a fast producer cannot queue requests without bound.
+ * <p/>
+ * By default, a client with a pool of connections is created when this executor is initialized,
+ * and shut down when it is destroyed; the number of connections to each host, and in total, can
+ * be limited. Alternatively, an existing client may be provided, in which case its lifecycle is
+ * left to the caller. Requests that find no free connection wait in the pool until one is released.
+ * <p/>
+ * Request bodies are written, and response bodies read, with the {@link HttpMessageConverter}s and
+ * the {@link ResponseErrorHandler} of the handler's RestTemplate.
+ *
+ * @since 2.2
+ */
+public class AsyncHttpClientRequestExecutor implements InitializingBean, DisposableBean {
+
+	private volatile HttpAsyncClient client;
+
+	private final boolean ownsClient;
+
+	private volatile int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+	private volatile int maxConnectionsPerHost = 20;
+
+	private volatile int maxConnectionsTotal = 200;
+
+	private volatile int connectTimeout = -1;
+
+	private volatile int readTimeout = -1;
+
+	private volatile int maxPendingRequests = 1000;
+
+	private volatile Semaphore pendingRequests;
+
+	private volatile Executor taskExecutor;
+
+
+	/**
+	 * Create an executor that creates its own pooling client when initialized.
+	 */
+	public AsyncHttpClientRequestExecutor() {
+		this.ownsClient = true;
+	}
+
+	/**
+	 * Create an executor that uses the provided client. The client is started, if necessary,
+	 * when this executor is initialized, but it is not shut down when this executor is destroyed.
+	 */
+	public AsyncHttpClientRequestExecutor(HttpAsyncClient client) {
+		Assert.notNull(client, "client must not be null");
+		this.client = client;
+		this.ownsClient = false;
+	}
+
+
+	/**
+	 * Set the number of I/O dispatcher threads. Default is the number of available processors.
+	 */
+	public void setIoThreadCount(int ioThreadCount) {
+		Assert.isTrue(ioThreadCount > 0, "'ioThreadCount' must be greater than 0");
+		this.ioThreadCount = ioThreadCount;
+	}
+
+	/**
+	 * Set the maximum number of connections to each host (route). Default is 20.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		Assert.isTrue(maxConnectionsPerHost > 0, "'maxConnectionsPerHost' must be greater than 0");
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set the maximum number of connections in the pool. Default is 200.
+	 */
+	public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+		Assert.isTrue(maxConnectionsTotal > 0, "'maxConnectionsTotal' must be greater than 0");
+		this.maxConnectionsTotal = maxConnectionsTotal;
+	}
+
+	/**
+	 * Set the connect timeout in milliseconds; 0 means no timeout. By default, the
+	 * client's default is used.
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Set the socket read timeout in milliseconds; 0 means no timeout. By default, the
+	 * client's default is used.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Set the maximum number of requests in flight, including those waiting for a connection.
+	 * When it is reached, the calling thread blocks until a response arrives. Default is 1000.
+	 */
+	public void setMaxPendingRequests(int maxPendingRequests) {
+		Assert.isTrue(maxPendingRequests > 0, "'maxPendingRequests' must be greater than 0");
+		this.maxPendingRequests = maxPendingRequests;
+	}
+
+	/**
+	 * Set an executor to convert each response, and send the reply or the failure, instead of
+	 * the I/O dispatcher thread that completed the exchange. If the executor rejects the task,
+	 * the failure is sent on the dispatcher thread.
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		this.pendingRequests = new Semaphore(this.maxPendingRequests);
+		if (this.ownsClient) {
+			IOReactorConfig config = new IOReactorConfig();
+			config.setIoThreadCount(this.ioThreadCount);
+			PoolingClientAsyncConnectionManager connectionManager =
+					new PoolingClientAsyncConnectionManager(new DefaultConnectingIOReactor(config));
+			connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerHost);
+			connectionManager.setMaxTotal(this.maxConnectionsTotal);
+			this.client = new DefaultHttpAsyncClient(connectionManager);
+		}
+		if (this.connectTimeout >= 0) {
+			HttpConnectionParams.setConnectionTimeout(this.client.getParams(), this.connectTimeout);
+		}
+		if (this.readTimeout >= 0) {
+			HttpConnectionParams.setSoTimeout(this.client.getParams(), this.readTimeout);
+		}
+		if (this.client.getStatus() == IOReactorStatus.INACTIVE) {
+			this.client.start();
+		}
+	}
+
+	public void destroy() throws Exception {
+		if (this.ownsClient && this.client != null) {
+			this.client.shutdown();
+		}
+	}
+
+	/**
+	 * Send the request and return as soon as it is in flight; the callback is invoked on an I/O
+	 * dispatcher thread, or by the task executor, when the response has been received and
+	 * converted, or when the exchange fails. Blocks while the maximum number of requests is
+	 * in flight.
+	 * @param uri the expanded request URI
+	 * @param method the HTTP method
+	 * @param requestEntity the request headers and (optional) body
+	 * @param responseType the type to which the response body is converted; if null, only
+	 * the status and headers are returned
+	 * @param messageConverters the converters used to write the request and read the response
+	 * @param errorHandler decides whether the response is an error, and handles it
+	 * @param callback receives the response or the failure
+	 */
+	void execute(URI uri, HttpMethod method, HttpEntity<?> requestEntity, Class<?> responseType,
+			List<HttpMessageConverter<?>> messageConverters, ResponseErrorHandler errorHandler,
+			ResponseCallback callback) throws IOException {
+
+		Semaphore pendingRequests = this.pendingRequests;
+		Assert.state(this.client != null && pendingRequests != null, "executor has not been initialized");
+		HttpRequestBase request = this.createRequest(method, uri);
+		BufferedOutputMessage outputMessage = new BufferedOutputMessage();
+		if (responseType != null) {
+			setAcceptHeader(responseType, messageConverters, outputMessage.getHeaders());
+		}
+		writeRequestEntity(requestEntity, messageConverters, outputMessage);
+		for (Map.Entry<String, List<String>> entry : outputMessage.getHeaders().entrySet()) {
+			if (!"Content-Length".equalsIgnoreCase(entry.getKey())
+					&& !"Transfer-Encoding".equalsIgnoreCase(entry.getKey())) {
+				for (String value : entry.getValue()) {
+					request.addHeader(entry.getKey(), value);
+				}
+			}
+		}
+		if (outputMessage.hasBody()) {
+			Assert.isInstanceOf(HttpEntityEnclosingRequestBase.class, request,
+					"a request body cannot be sent with HTTP method " + method);
+			((HttpEntityEnclosingRequestBase) request).setEntity(new ByteArrayEntity(outputMessage.toByteArray()));
+		}
+		try {
+			pendingRequests.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a pending request to complete");
+		}
+		try {
+			this.client.execute(request, new ResponseConvertingCallback(responseType, messageConverters,
+					errorHandler, callback, pendingRequests, this.taskExecutor));
+		}
+		catch (RuntimeException e) {
+			pendingRequests.release();
+			throw e;
+		}
+	}
+
+	private HttpRequestBase createRequest(HttpMethod method, URI uri) {
+		switch (method) {
+			case GET:
+				return new HttpGet(uri);
+			case POST:
+				return new HttpPost(uri);
+			case PUT:
+				return new HttpPut(uri);
+			case DELETE:
+				return new HttpDelete(uri);
+			case HEAD:
+				return new HttpHead(uri);
+			case OPTIONS:
+				return new HttpOptions(uri);
+			case TRACE:
+				return new HttpTrace(uri);
+			default:
+				throw new IllegalArgumentException("Invalid HTTP method: " + method);
+		}
+	}
+
+	/**
+	 * Sets the Accept header from the media types that the converters can read into the
+	 * response type, as the RestTemplate does.
+	 */
+	private static void setAcceptHeader(Class<?> responseType, List<HttpMessageConverter<?>> messageConverters,
+			HttpHeaders headers) {
+		List<MediaType> acceptableMediaTypes = new ArrayList<MediaType>();
+		for (HttpMessageConverter<?> converter : messageConverters) {
+			if (converter.canRead(responseType, null)) {
+				for (MediaType supportedMediaType : converter.getSupportedMediaTypes()) {
+					if (supportedMediaType.getCharSet() != null) {
+						supportedMediaType = new MediaType(supportedMediaType.getType(), supportedMediaType.getSubtype());
+					}
+					if (!acceptableMediaTypes.contains(supportedMediaType)) {
+						acceptableMediaTypes.add(supportedMediaType);
+					}
+				}
+			}
+		}
+		if (!acceptableMediaTypes.isEmpty()) {
+			MediaType.sortBySpecificity(acceptableMediaTypes);
+			headers.setAccept(acceptableMediaTypes);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void writeRequestEntity(HttpEntity<?> requestEntity, List<HttpMessageConverter<?>> messageConverters,
+			BufferedOutputMessage outputMessage) throws IOException {
+		outputMessage.getHeaders().putAll(requestEntity.getHeaders());
+		Object body = requestEntity.getBody();
+		if (body == null) {
+			return;
+		}
+		MediaType contentType = requestEntity.getHeaders().getContentType();
+		for (HttpMessageConverter converter : messageConverters) {
+			if (converter.canWrite(body.getClass(), contentType)) {
+				converter.write(body, contentType, outputMessage);
+				return;
+			}
+		}
+		throw new RestClientException("Could not write request: no suitable HttpMessageConverter found for request type ["
+				+ body.getClass().getName() + "] and content type [" + contentType + "]");
+	}
+
+
+	/**
+	 * Receives the outcome of an exchange started by
+	 * {@link AsyncHttpClientRequestExecutor#execute}.
+	 */
+	interface ResponseCallback {
+
+		void onResponse(ResponseEntity<?> response);
+
+		void onFailure(Throwable t);
+
+	}
+
+
+	private static class ResponseConvertingCallback implements FutureCallback<HttpResponse> {
+
+		private final Class<?> responseType;
+
+		private final List<HttpMessageConverter<?>> messageConverters;
+
+		private final ResponseErrorHandler errorHandler;
+
+		private final ResponseCallback callback;
+
+		private final Semaphore pendingRequests;
+
+		private final Executor taskExecutor;
+
+		ResponseConvertingCallback(Class<?> responseType, List<HttpMessageConverter<?>> messageConverters,
+				ResponseErrorHandler errorHandler, ResponseCallback callback, Semaphore pendingRequests,
+				Executor taskExecutor) {
+			this.responseType = responseType;
+			this.messageConverters = messageConverters;
+			this.errorHandler = errorHandler;
+			this.callback = callback;
+			this.pendingRequests = pendingRequests;
+			this.taskExecutor = taskExecutor;
+		}
+
+		public void completed(final HttpResponse httpResponse) {
+			this.dispatch(new Runnable() {
+				public void run() {
+					convertResponse(httpResponse);
+				}
+			});
+		}
+
+		public void failed(final Exception ex) {
+			this.dispatch(new Runnable() {
+				public void run() {
+					callback.onFailure(ex);
+				}
+			});
+		}
+
+		public void cancelled() {
+			this.dispatch(new Runnable() {
+				public void run() {
+					callback.onFailure(new RestClientException("HTTP request was cancelled"));
+				}
+			});
+		}
+
+		private void dispatch(Runnable task) {
+			this.pendingRequests.release();
+			if (this.taskExecutor == null) {
+				task.run();
+				return;
+			}
+			try {
+				this.taskExecutor.execute(task);
+			}
+			catch (RejectedExecutionException e) {
+				this.callback.onFailure(e);
+			}
+		}
+
+		private void convertResponse(HttpResponse httpResponse) {
+			ResponseEntity<?> responseEntity;
+			ClientHttpResponse response = null;
+			try {
+				response = new BufferedClientHttpResponse(httpResponse);
+				if (this.errorHandler.hasError(response)) {
+					this.errorHandler.handleError(response);
+				}
+				responseEntity = this.toResponseEntity(response);
+			}
+			catch (Throwable t) {
+				this.callback.onFailure(t);
+				return;
+			}
+			finally {
+				if (response != null) {
+					response.close();
+				}
+			}
+			this.callback.onResponse(responseEntity);
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private ResponseEntity<?> toResponseEntity(ClientHttpResponse response) throws IOException {
+			if (this.responseType != null) {
+				Object body = new HttpMessageConverterExtractor(this.responseType, this.messageConverters)
+						.extractData(response);
+				return new ResponseEntity<Object>(body, response.getHeaders(), response.getStatusCode());
+			}
+			return new ResponseEntity<Object>(response.getHeaders(), response.getStatusCode());
+		}
+	}
+
+
+	private static class BufferedOutputMessage implements HttpOutputMessage {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		private boolean bodyWritten;
+
+		public HttpHeaders getHeaders() {
+			return this.headers;
+		}
+
+		public OutputStream getBody() throws IOException {
+			this.bodyWritten = true;
+			return this.body;
+		}
+
+		boolean hasBody() {
+			return this.bodyWritten;
+		}
+
+		byte[] toByteArray() {
+			return this.body.toByteArray();
+		}
+	}
+
+
+	/**
+	 * Adapts a response whose entity has already been read into memory by the client.
+	 */
+	private static class BufferedClientHttpResponse implements ClientHttpResponse {
+
+		private final HttpResponse response;
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		private final byte[] body;
+
+		BufferedClientHttpResponse(HttpResponse response) throws IOException {
+			this.response = response;
+			for (Header header : response.getAllHeaders()) {
+				this.headers.add(header.getName(), header.getValue());
+			}
+			this.body = (response.getEntity() != null) ? EntityUtils.toByteArray(response.getEntity()) : new byte[0];
+		}
+
+		public HttpStatus getStatusCode() throws IOException {
+			return HttpStatus.valueOf(this.getRawStatusCode());
+		}
+
+		public int getRawStatusCode() throws IOException {
+			return this.response.getStatusLine().getStatusCode();
+		}
+
+		public String getStatusText() throws IOException {
+			return this.response.getStatusLine().getReasonPhrase();
+		}
+
+		public HttpHeaders getHeaders() {
+			return this.headers;
+		}
+
+		public InputStream getBody() throws IOException {
+			return new ByteArrayInputStream(this.body);
+		}
+
+		public void close() {
+		}
+	}
+
+}
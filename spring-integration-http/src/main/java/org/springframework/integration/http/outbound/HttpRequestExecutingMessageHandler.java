@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -46,6 +46,7 @@ import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.channel.MessagePublishingErrorHandler;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.http.converter.SerializingHttpMessageConverter;
@@ -59,6 +60,8 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
 
 /**
  * A {@link MessageHandler} implementation that executes HTTP requests by delegating
@@ -69,6 +72,9 @@ import org.springframework.web.client.RestTemplate;
  * When there is a response body, the {@link HttpStatus} enum instance will instead be
  * copied to the MessageHeaders of the reply. In both cases, the response headers will
  * be mapped to the reply Message's headers by this handler's {@link HeaderMapper} instance.
+ * <p/>
+ * If an {@link AsyncHttpClientRequestExecutor} is provided, requests are sent without blocking
+ * the calling thread, and the reply Message (if any) is sent when the response arrives.
  *
  * @author Mark Fisher
  * @author Oleg Zhurakousky
@@ -87,6 +93,21 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 
 	private volatile Expression httpMethodExpression = new LiteralExpression(HttpMethod.POST.name());
 
+	/**
+	 * The method when it is not an expression that must be evaluated for each message.
+	 */
+	private volatile HttpMethod httpMethod = HttpMethod.POST;
+
+	/**
+	 * The parsed URI when it is not an expression that must be evaluated for each
+	 * message; only used for asynchronous requests.
+	 */
+	private final UriComponents uriComponents;
+
+	private volatile AsyncHttpClientRequestExecutor asyncRequestExecutor;
+
+	private final MessagePublishingErrorHandler asyncErrorHandler = new MessagePublishingErrorHandler();
+
 	private volatile boolean expectReply = true;
 
 	private volatile Class<?> expectedResponseType;
@@ -148,6 +169,9 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 		this.restTemplate = (restTemplate == null ? new RestTemplate() : restTemplate);
 		this.restTemplate.getMessageConverters().add(0, new SerializingHttpMessageConverter());
 		this.uriExpression = uriExpression;
+		this.uriComponents = (uriExpression instanceof LiteralExpression
+				&& StringUtils.hasText(uriExpression.getExpressionString())) ?
+						UriComponentsBuilder.fromUriString(uriExpression.getExpressionString()).build() : null;
 		StandardEvaluationContext sec = new StandardEvaluationContext();
 		sec.addPropertyAccessor(new MapAccessor());
 		this.evaluationContext = sec;
@@ -161,6 +185,8 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 	public void setHttpMethodExpression(Expression httpMethodExpression) {
 		Assert.notNull(httpMethodExpression, "'httpMethodExpression' must not be null");
 		this.httpMethodExpression = httpMethodExpression;
+		this.httpMethod = (httpMethodExpression instanceof LiteralExpression) ?
+				HttpMethod.valueOf(httpMethodExpression.getExpressionString()) : null;
 	}
 
 	/**
@@ -168,6 +194,7 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 	 */
 	public void setHttpMethod(HttpMethod httpMethod) {
 		this.httpMethodExpression = new LiteralExpression(httpMethod.name());
+		this.httpMethod = httpMethod;
 	}
 
 	/**
@@ -261,12 +288,29 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 		this.transferCookies = transferCookies;
 	}
 
+	/**
+	 * Set an {@link AsyncHttpClientRequestExecutor} to send requests without blocking the
+	 * calling thread. The reply Message is then sent to the output channel (or the request's
+	 * reply channel) when the response has been received: by the executor's task executor, if it
+	 * has one, or else on one of its I/O threads, where the flow downstream must not block.
+	 * A failure is sent as an ErrorMessage to the request's error channel header or, if there is
+	 * none, to the 'errorChannel' bean; if neither is available, it is logged. Since no reply is
+	 * returned to the calling thread, 'requiresReply' must not be set in this mode.
+	 */
+	public void setAsyncRequestExecutor(AsyncHttpClientRequestExecutor asyncRequestExecutor) {
+		this.asyncRequestExecutor = asyncRequestExecutor;
+	}
+
 	@Override
 	public void onInit() {
 		super.onInit();
+		Assert.state(this.asyncRequestExecutor == null || !this.isRequiresReply(),
+				"'requiresReply' cannot be set when an 'asyncRequestExecutor' is provided, since the reply is not "
+						+ "produced on the calling thread");
 		BeanFactory beanFactory = this.getBeanFactory();
 		if (beanFactory != null) {
 			this.evaluationContext.setBeanResolver(new BeanFactoryResolver(beanFactory));
+			this.asyncErrorHandler.setBeanFactory(beanFactory);
 		}
 		ConversionService conversionService = this.getConversionService();
 		if (conversionService != null) {
@@ -276,7 +320,8 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 
 	@Override
 	protected Object handleRequestMessage(Message<?> requestMessage) {
-		String uri = this.uriExpression.getValue(this.evaluationContext, requestMessage, String.class);
+		String uri = (this.uriComponents != null) ? this.uriExpression.getExpressionString()
+				: this.uriExpression.getValue(this.evaluationContext, requestMessage, String.class);
 		Assert.notNull(uri, "URI Expression evaluation cannot result in null");
 		try {
 			Map<String, Object> uriVariables = new HashMap<String, Object>();
@@ -295,27 +340,17 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 			}
 
 			HttpEntity<?> httpRequest = this.generateHttpRequest(requestMessage, httpMethod);
-			ResponseEntity<?> httpResponse = this.restTemplate.exchange(uri, httpMethod, httpRequest, this.expectedResponseType, uriVariables);
-			if (this.expectReply) {
-				HttpHeaders httpHeaders = httpResponse.getHeaders();
-				Map<String, Object> headers = this.headerMapper.toHeaders(httpHeaders);
-				if (this.transferCookies) {
-					this.doConvertSetCookie(headers);
-				}
-				if (httpResponse.hasBody()) {
-					Object responseBody = httpResponse.getBody();
-					MessageBuilder<?> replyBuilder = (responseBody instanceof Message<?>) ?
-							MessageBuilder.fromMessage((Message<?>) responseBody) : MessageBuilder.withPayload(responseBody);
-					replyBuilder.setHeader(org.springframework.integration.http.HttpHeaders.STATUS_CODE, httpResponse.getStatusCode());
-					return replyBuilder.copyHeaders(headers).build();
-				}
-				else {
-					return MessageBuilder.withPayload(httpResponse.getStatusCode()).
-							copyHeaders(headers).setHeader(org.springframework.integration.http.HttpHeaders.STATUS_CODE, httpResponse.getStatusCode()).
-							build();
-				}
+			if (this.asyncRequestExecutor != null) {
+				UriComponents uriComponents = (this.uriComponents != null) ? this.uriComponents
+						: UriComponentsBuilder.fromUriString(uri).build();
+				URI expandedUri = uriComponents.expand(uriVariables).encode().toUri();
+				this.asyncRequestExecutor.execute(expandedUri, httpMethod, httpRequest, this.expectedResponseType,
+						this.restTemplate.getMessageConverters(), this.restTemplate.getErrorHandler(),
+						new AsyncReplyCallback(requestMessage, uri));
+				return null;
 			}
-			return null;
+			ResponseEntity<?> httpResponse = this.restTemplate.exchange(uri, httpMethod, httpRequest, this.expectedResponseType, uriVariables);
+			return this.expectReply ? this.createReply(httpResponse) : null;
 		}
 		catch (MessagingException e) {
 			throw e;
@@ -325,6 +360,26 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 		}
 	}
 
+	private Message<?> createReply(ResponseEntity<?> httpResponse) {
+		HttpHeaders httpHeaders = httpResponse.getHeaders();
+		Map<String, Object> headers = this.headerMapper.toHeaders(httpHeaders);
+		if (this.transferCookies) {
+			this.doConvertSetCookie(headers);
+		}
+		if (httpResponse.hasBody()) {
+			Object responseBody = httpResponse.getBody();
+			MessageBuilder<?> replyBuilder = (responseBody instanceof Message<?>) ?
+					MessageBuilder.fromMessage((Message<?>) responseBody) : MessageBuilder.withPayload(responseBody);
+			replyBuilder.setHeader(org.springframework.integration.http.HttpHeaders.STATUS_CODE, httpResponse.getStatusCode());
+			return replyBuilder.copyHeaders(headers).build();
+		}
+		else {
+			return MessageBuilder.withPayload(httpResponse.getStatusCode()).
+					copyHeaders(headers).setHeader(org.springframework.integration.http.HttpHeaders.STATUS_CODE, httpResponse.getStatusCode()).
+					build();
+		}
+	}
+
 	/**
 	 * Convert Set-Cookie to Cookie
 	 */
@@ -485,9 +540,53 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
 	}
 
 	private HttpMethod determineHttpMethod(Message<?> requestMessage) {
+		if (this.httpMethod != null) {
+			return this.httpMethod;
+		}
 		String strHttpMethod = httpMethodExpression.getValue(this.evaluationContext, requestMessage, String.class);
 		Assert.isTrue(StringUtils.hasText(strHttpMethod) && !Arrays.asList(HttpMethod.values()).contains(strHttpMethod),
 				"The 'httpMethodExpression' returned an invalid HTTP Method value: " + strHttpMethod);
 		return HttpMethod.valueOf(strHttpMethod);
 	}
+
+
+	/**
+	 * Sends the reply, or publishes the failure, of an asynchronous request.
+	 */
+	private class AsyncReplyCallback implements AsyncHttpClientRequestExecutor.ResponseCallback {
+
+		private final Message<?> requestMessage;
+
+		private final String uri;
+
+		AsyncReplyCallback(Message<?> requestMessage, String uri) {
+			this.requestMessage = requestMessage;
+			this.uri = uri;
+		}
+
+		public void onResponse(ResponseEntity<?> response) {
+			if (!expectReply) {
+				return;
+			}
+			try {
+				handleAsyncResult(createReply(response), this.requestMessage.getHeaders());
+			}
+			catch (Exception e) {
+				this.onFailure(e);
+			}
+		}
+
+		public void onFailure(Throwable t) {
+			MessagingException exception = (t instanceof MessagingException) ? (MessagingException) t
+					: new MessageHandlingException(this.requestMessage,
+							"HTTP request execution failed for URI [" + this.uri + "]", t);
+			try {
+				asyncErrorHandler.handleError(exception);
+			}
+			catch (Exception e) {
+				logger.error("Failed to publish the failure of an asynchronous HTTP request", exception);
+			}
+		}
+	}
+
 }
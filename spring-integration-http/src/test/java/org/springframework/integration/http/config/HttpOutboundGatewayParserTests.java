@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.integration.http.config;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -62,6 +63,9 @@ public class HttpOutboundGatewayParserTests {
 	@Autowired @Qualifier("withUrlExpression")
 	private AbstractEndpoint withUrlExpressionEndpoint;
 
+	@Autowired @Qualifier("withAsyncRequestExecutor")
+	private AbstractEndpoint withAsyncRequestExecutorEndpoint;
+
 	@Autowired
 	private ApplicationContext applicationContext;
 
@@ -159,6 +163,14 @@ public class HttpOutboundGatewayParserTests {
 		assertEquals(false, handlerAccessor.getPropertyValue("transferCookies"));
 	}
 
+	@Test
+	public void withAsyncRequestExecutor() {
+		HttpRequestExecutingMessageHandler handler = (HttpRequestExecutingMessageHandler) new DirectFieldAccessor(
+				this.withAsyncRequestExecutorEndpoint).getPropertyValue("handler");
+		assertSame(this.applicationContext.getBean("asyncRequestExecutor"),
+				TestUtils.getPropertyValue(handler, "asyncRequestExecutor"));
+	}
+
 
 	public static class StubErrorHandler implements ResponseErrorHandler {
 
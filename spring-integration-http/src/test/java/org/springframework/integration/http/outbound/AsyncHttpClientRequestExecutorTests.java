@@ -0,0 +1,295 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.http.outbound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageHandlingException;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageHandler;
+import org.springframework.integration.http.HttpHeaders;
+import org.springframework.integration.message.ErrorMessage;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.client.HttpServerErrorException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @since 2.2
+ */
+public class AsyncHttpClientRequestExecutorTests {
+
+	private static final int REQUEST_COUNT = 2000;
+
+	private HttpServer server;
+
+	private String url;
+
+	private AsyncHttpClientRequestExecutor executor;
+
+	@Before
+	public void setup() throws Exception {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), REQUEST_COUNT);
+		// no executor: the exchanges are handled on the server's single dispatcher thread
+		this.server.start();
+		this.url = "http://localhost:" + this.server.getAddress().getPort();
+		this.executor = new AsyncHttpClientRequestExecutor();
+		this.executor.setIoThreadCount(2);
+		this.executor.setMaxConnectionsPerHost(REQUEST_COUNT);
+		this.executor.setMaxConnectionsTotal(REQUEST_COUNT);
+		this.executor.setMaxPendingRequests(REQUEST_COUNT);
+		this.executor.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.executor.destroy();
+		this.server.stop(0);
+	}
+
+	@Test
+	public void thousandsOfRequestsInFlightOnAFewThreads() throws Exception {
+		final CountDownLatch allArrived = new CountDownLatch(REQUEST_COUNT);
+		final Queue<HttpExchange> heldExchanges = new ConcurrentLinkedQueue<HttpExchange>();
+		// the server holds every request until all of them are in flight
+		this.server.createContext("/echo", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				heldExchanges.add(exchange);
+				allArrived.countDown();
+			}
+		});
+		HttpRequestExecutingMessageHandler handler = new HttpRequestExecutingMessageHandler(this.url + "/echo");
+		handler.setExpectedResponseType(String.class);
+		handler.setAsyncRequestExecutor(this.executor);
+		QueueChannel replies = new QueueChannel();
+		handler.setOutputChannel(replies);
+		handler.afterPropertiesSet();
+
+		int threadsBefore = Thread.activeCount();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < REQUEST_COUNT; i++) {
+			handler.handleMessage(MessageBuilder.withPayload("request" + i).setHeader("index", i).build());
+		}
+		long sendTime = System.currentTimeMillis() - start;
+		assertTrue("only " + (REQUEST_COUNT - allArrived.getCount()) + " requests arrived",
+				allArrived.await(60, TimeUnit.SECONDS));
+		int threadsInFlight = Thread.activeCount();
+		assertTrue("sending took " + sendTime + "ms", sendTime < 30000);
+		assertEquals(0, replies.getQueueSize());
+		assertTrue("thread count grew from " + threadsBefore + " to " + threadsInFlight,
+				threadsInFlight - threadsBefore < 10);
+
+		HttpExchange exchange;
+		while ((exchange = heldExchanges.poll()) != null) {
+			byte[] body = FileCopyUtils.copyToByteArray(exchange.getRequestBody());
+			exchange.getResponseHeaders().add("Content-Type", "text/plain");
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+
+		Set<Integer> indexes = new HashSet<Integer>();
+		for (int i = 0; i < REQUEST_COUNT; i++) {
+			Message<?> reply = replies.receive(30000);
+			assertNotNull("missing reply after " + i, reply);
+			Integer index = reply.getHeaders().get("index", Integer.class);
+			assertEquals("request" + index, reply.getPayload());
+			assertEquals(HttpStatus.OK, reply.getHeaders().get(HttpHeaders.STATUS_CODE));
+			indexes.add(index);
+		}
+		assertEquals(REQUEST_COUNT, indexes.size());
+	}
+
+	@Test
+	public void failureSentToErrorChannel() throws Exception {
+		this.server.createContext("/error", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				FileCopyUtils.copyToByteArray(in);
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+			}
+		});
+		HttpRequestExecutingMessageHandler handler = new HttpRequestExecutingMessageHandler(this.url + "/error");
+		handler.setHttpMethod(HttpMethod.GET);
+		handler.setAsyncRequestExecutor(this.executor);
+		QueueChannel replies = new QueueChannel();
+		handler.setOutputChannel(replies);
+		handler.afterPropertiesSet();
+
+		QueueChannel errors = new QueueChannel();
+		Message<?> request = MessageBuilder.withPayload("foo").setErrorChannel(errors).build();
+		handler.handleMessage(request);
+
+		Message<?> error = errors.receive(10000);
+		assertNotNull(error);
+		assertTrue(error instanceof ErrorMessage);
+		MessageHandlingException exception = (MessageHandlingException) error.getPayload();
+		assertSame(request, exception.getFailedMessage());
+		assertTrue(exception.getCause() instanceof HttpServerErrorException);
+		assertEquals(0, replies.getQueueSize());
+	}
+
+	@Test
+	public void uriVariablesExpanded() throws Exception {
+		final Queue<String> paths = new ConcurrentLinkedQueue<String>();
+		this.server.createContext("/vars", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				paths.add(exchange.getRequestURI().getRawPath());
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		});
+		HttpRequestExecutingMessageHandler handler = new HttpRequestExecutingMessageHandler(this.url + "/vars/{name}");
+		handler.setUriVariableExpressions(Collections.<String, Expression>singletonMap("name",
+				new SpelExpressionParser().parseExpression("payload")));
+		handler.setHttpMethod(HttpMethod.GET);
+		handler.setAsyncRequestExecutor(this.executor);
+		QueueChannel replies = new QueueChannel();
+		handler.setOutputChannel(replies);
+		handler.afterPropertiesSet();
+
+		handler.handleMessage(MessageBuilder.withPayload("a b").build());
+		Message<?> reply = replies.receive(10000);
+		assertNotNull(reply);
+		assertEquals(HttpStatus.NO_CONTENT, reply.getPayload());
+		assertEquals("/vars/a%20b", paths.poll());
+	}
+
+	@Test
+	public void pendingRequestsBounded() throws Exception {
+		final Queue<HttpExchange> heldExchanges = new ConcurrentLinkedQueue<HttpExchange>();
+		final CountDownLatch twoArrived = new CountDownLatch(2);
+		this.server.createContext("/held", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				heldExchanges.add(exchange);
+				twoArrived.countDown();
+			}
+		});
+		AsyncHttpClientRequestExecutor executor = new AsyncHttpClientRequestExecutor();
+		executor.setMaxPendingRequests(2);
+		executor.afterPropertiesSet();
+		try {
+			final HttpRequestExecutingMessageHandler handler = new HttpRequestExecutingMessageHandler(this.url
+					+ "/held");
+			handler.setHttpMethod(HttpMethod.GET);
+			handler.setAsyncRequestExecutor(executor);
+			QueueChannel replies = new QueueChannel();
+			handler.setOutputChannel(replies);
+			handler.afterPropertiesSet();
+			handler.handleMessage(MessageBuilder.withPayload("foo").build());
+			handler.handleMessage(MessageBuilder.withPayload("foo").build());
+			assertTrue(twoArrived.await(10, TimeUnit.SECONDS));
+			final CountDownLatch thirdSent = new CountDownLatch(1);
+			new Thread(new Runnable() {
+				public void run() {
+					handler.handleMessage(MessageBuilder.withPayload("foo").build());
+					thirdSent.countDown();
+				}
+			}).start();
+			assertFalse(thirdSent.await(500, TimeUnit.MILLISECONDS));
+			HttpExchange exchange = heldExchanges.poll();
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+			assertTrue(thirdSent.await(10, TimeUnit.SECONDS));
+			assertNotNull(replies.receive(10000));
+		}
+		finally {
+			HttpExchange exchange;
+			while ((exchange = heldExchanges.poll()) != null) {
+				exchange.close();
+			}
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void repliesSentOnTaskExecutor() throws Exception {
+		this.server.createContext("/empty", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		});
+		AsyncHttpClientRequestExecutor executor = new AsyncHttpClientRequestExecutor();
+		executor.setTaskExecutor(new SimpleAsyncTaskExecutor("reply-"));
+		executor.afterPropertiesSet();
+		try {
+			HttpRequestExecutingMessageHandler handler = new HttpRequestExecutingMessageHandler(this.url + "/empty");
+			handler.setHttpMethod(HttpMethod.GET);
+			handler.setAsyncRequestExecutor(executor);
+			final AtomicReference<String> replyThread = new AtomicReference<String>();
+			final CountDownLatch latch = new CountDownLatch(1);
+			DirectChannel replies = new DirectChannel();
+			replies.subscribe(new MessageHandler() {
+				public void handleMessage(Message<?> message) {
+					replyThread.set(Thread.currentThread().getName());
+					latch.countDown();
+				}
+			});
+			handler.setOutputChannel(replies);
+			handler.afterPropertiesSet();
+			handler.handleMessage(MessageBuilder.withPayload("foo").build());
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertTrue(replyThread.get(), replyThread.get().startsWith("reply-"));
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void requiresReplyRejected() throws Exception {
+		HttpRequestExecutingMessageHandler handler = new HttpRequestExecutingMessageHandler(this.url + "/echo");
+		handler.setAsyncRequestExecutor(this.executor);
+		handler.setRequiresReply(true);
+		handler.afterPropertiesSet();
+	}
+
+}
@@ -121,6 +121,14 @@ public abstract class IpAdapterParserUtils {
 
 	public static final String BACKLOG = "backlog";
 
+	public static final String CORRELATION_STRATEGY = "correlation-strategy";
+
+	public static final String MAX_IN_FLIGHT = "max-in-flight";
+
+	public static final String SELECTOR_COUNT = "selector-count";
+
+	public static final String WORKER_POOL_SIZE = "worker-pool-size";
+
 	private IpAdapterParserUtils() {}
 
 	/**
@@ -96,6 +96,10 @@ public class TcpConnectionFactoryFactoryBean extends AbstractFactoryBean<Abstrac
 
 	private volatile boolean usingDirectBuffers;
 
+	private volatile int selectorCount;
+
+	private volatile int workerPoolSize;
+
 	private volatile String beanName;
 
 	private volatile boolean applySequence;
@@ -123,6 +127,12 @@ public class TcpConnectionFactoryFactoryBean extends AbstractFactoryBean<Abstrac
 				this.setServerAttributes(connectionFactory);
 				connectionFactory.setUsingDirectBuffers(this.usingDirectBuffers);
 				connectionFactory.setTcpNioConnectionSupport(this.obtainNioConnectionSupport());
+				if (this.selectorCount > 0) {
+					connectionFactory.setSelectorCount(this.selectorCount);
+				}
+				if (this.workerPoolSize > 0) {
+					connectionFactory.setWorkerPoolSize(this.workerPoolSize);
+				}
 				this.connectionFactory = connectionFactory;
 			} else {
 				TcpNioClientConnectionFactory connectionFactory = new TcpNioClientConnectionFactory(
@@ -302,6 +312,22 @@ public class TcpConnectionFactoryFactoryBean extends AbstractFactoryBean<Abstrac
 		this.usingDirectBuffers = usingDirectBuffers;
 	}
 
+	/**
+	 * @param selectorCount
+	 * @see org.springframework.integration.ip.tcp.connection.TcpNioServerConnectionFactory#setSelectorCount(int)
+	 */
+	public void setSelectorCount(int selectorCount) {
+		this.selectorCount = selectorCount;
+	}
+
+	/**
+	 * @param workerPoolSize
+	 * @see org.springframework.integration.ip.tcp.connection.TcpNioServerConnectionFactory#setWorkerPoolSize(int)
+	 */
+	public void setWorkerPoolSize(int workerPoolSize) {
+		this.workerPoolSize = workerPoolSize;
+	}
+
 	/**
 	 * @param taskExecutor
 	 * @see org.springframework.integration.ip.tcp.connection.AbstractConnectionFactory#setTaskExecutor(java.util.concurrent.Executor)
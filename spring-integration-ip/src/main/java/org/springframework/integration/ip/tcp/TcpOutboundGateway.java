@@ -1,5 +1,5 @@
 /*
- * Copyright 2001-2011 the original author or authors.
+ * Copyright 2001-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,9 @@
 
 package org.springframework.integration.ip.tcp;
 
-import java.util.Map;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -27,6 +28,7 @@ import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.MessageTimeoutException;
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.aggregator.CorrelationStrategy;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.ip.IpHeaders;
 import org.springframework.integration.ip.tcp.connection.AbstractClientConnectionFactory;
@@ -40,8 +42,14 @@ import org.springframework.util.Assert;
  * TCP outbound gateway that uses a client connection factory. If the factory is configured
  * for single-use connections, each request is sent on a new connection; if the factory does not use
  * single use connections, each request is blocked until the previous response is received
- * (or times out). Asynchronous requests/responses over the same connection are not
- * supported - use a pair of outbound/inbound adapters for that use case.
+ * (or times out).
+ * <p/>
+ * If a {@link CorrelationStrategy} is provided, replies are correlated to their requests
+ * by the key it extracts from each request and reply (for example from a field of the
+ * framed payload), and up to {@link #setMaxInFlight(int) maxInFlight} requests may be
+ * outstanding on a shared connection at the same time. The server may then return replies
+ * in any order. Each request waits for its own reply for up to the reply timeout; a reply
+ * arriving after that is logged and discarded.
  * <p/>
  * {@link SmartLifecycle} methods delegate to the underlying {@link AbstractConnectionFactory}
  *
@@ -53,9 +61,13 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 
 	private volatile AbstractConnectionFactory connectionFactory;
 
-	private Map<String, AsyncReply> pendingReplies = new ConcurrentHashMap<String, AsyncReply>();
+	private final ConcurrentMap<Object, AsyncReply> pendingReplies = new ConcurrentHashMap<Object, AsyncReply>();
+
+	private final Semaphore semaphore = new Semaphore(1, true);
 
-	private Semaphore semaphore = new Semaphore(1, true);
+	private volatile Semaphore inFlightSemaphore = new Semaphore(1, true);
+
+	private volatile CorrelationStrategy correlationStrategy;
 
 	private volatile long replyTimeout = 10000;
 
@@ -79,16 +91,46 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 		this.replyTimeout = replyTimeout;
 	}
 
+	/**
+	 * Provide a {@link CorrelationStrategy} to extract a correlation key from both
+	 * requests and replies. When set, replies are matched to requests by this key rather
+	 * than by connection, allowing several requests to be in flight on a shared connection.
+	 * The key must be unique among the requests outstanding on a connection.
+	 * @param correlationStrategy the correlationStrategy to set
+	 * @since 2.2
+	 * @see #setMaxInFlight(int)
+	 */
+	public void setCorrelationStrategy(CorrelationStrategy correlationStrategy) {
+		this.correlationStrategy = correlationStrategy;
+	}
+
+	/**
+	 * The maximum number of requests that may await a reply at the same time when
+	 * a {@link CorrelationStrategy} is provided; further requests block for up to the
+	 * request timeout until a slot is free. Default 1. Ignored when no correlation
+	 * strategy is set, in which case only one request is outstanding on a shared
+	 * connection.
+	 * @param maxInFlight the maxInFlight to set
+	 * @since 2.2
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		Assert.isTrue(maxInFlight > 0, "'maxInFlight' must be greater than 0");
+		this.inFlightSemaphore = new Semaphore(maxInFlight, true);
+	}
+
 	@Override
 	protected Object handleRequestMessage(Message<?> requestMessage) {
 		Assert.notNull(connectionFactory, this.getClass().getName() +
 				" requires a client connection factory");
+		Semaphore semaphore = this.correlationStrategy == null ? this.semaphore : this.inFlightSemaphore;
 		boolean haveSemaphore = false;
+		Object pendingKey = null;
+		AsyncReply reply = null;
 		try {
 			boolean singleUseConnection = this.connectionFactory.isSingleUse();
 			if (!singleUseConnection) {
 				logger.debug("trying semaphore");
-				if (!this.semaphore.tryAcquire(this.requestTimeout, TimeUnit.MILLISECONDS)) {
+				if (!semaphore.tryAcquire(this.requestTimeout, TimeUnit.MILLISECONDS)) {
 					throw new MessageTimeoutException(requestMessage, "Timed out waiting for connection");
 				}
 				haveSemaphore = true;
@@ -97,13 +139,31 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 				}
 			}
 			TcpConnection connection = this.connectionFactory.getConnection();
-			AsyncReply reply = new AsyncReply();
-			pendingReplies.put(connection.getConnectionId(), reply);
+			reply = new AsyncReply(connection.getConnectionId());
+			if (this.correlationStrategy == null) {
+				pendingKey = connection.getConnectionId();
+				pendingReplies.put(pendingKey, reply);
+			}
+			else {
+				Object correlationKey = this.correlationStrategy.getCorrelationKey(requestMessage);
+				if (correlationKey == null) {
+					throw new MessagingException(requestMessage, "Cannot correlate request - no correlation key");
+				}
+				pendingKey = new PendingKey(connection.getConnectionId(), correlationKey);
+				if (pendingReplies.putIfAbsent(pendingKey, reply) != null) {
+					pendingKey = null;
+					throw new MessagingException(requestMessage, "Cannot send request - a request with correlation key '"
+							+ correlationKey + "' is already pending on connection " + connection.getConnectionId());
+				}
+			}
 			if (logger.isDebugEnabled()) {
-				logger.debug("Added " + connection.getConnectionId());
+				logger.debug("Added " + pendingKey);
 			}
 			connection.send(requestMessage);
 			Message<?> replyMessage = reply.getReply();
+			if (reply.isConnectionClosed()) {
+				throw new MessagingException(requestMessage, "Connection closed before a response was received");
+			}
 			if (replyMessage == null) {
 				throw new MessageTimeoutException(requestMessage, "Timed out waiting for response");
 			}
@@ -120,8 +180,11 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 			throw new MessagingException("Failed to send or receive", e);
 		}
 		finally {
+			if (pendingKey instanceof PendingKey) {
+				pendingReplies.remove(pendingKey, reply);
+			}
 			if (haveSemaphore) {
-				this.semaphore.release();
+				semaphore.release();
 				if (logger.isDebugEnabled()) {
 					logger.debug("released semaphore");
 				}
@@ -135,7 +198,18 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 			logger.error("Cannot correlate response - no connection id");
 			return false;
 		}
-		AsyncReply reply = pendingReplies.get(connectionId);
+		AsyncReply reply;
+		if (this.correlationStrategy == null) {
+			reply = pendingReplies.get(connectionId);
+		}
+		else {
+			Object correlationKey = this.correlationStrategy.getCorrelationKey(message);
+			if (correlationKey == null) {
+				logger.error("Cannot correlate response - no correlation key");
+				return false;
+			}
+			reply = pendingReplies.remove(new PendingKey(connectionId, correlationKey));
+		}
 		if (reply == null) {
 			logger.error("Cannot correlate response - no pending reply");
 			return false;
@@ -153,11 +227,26 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 	}
 
 	public void addNewConnection(TcpConnection connection) {
-		// do nothing - no asynchronous multiplexing supported
+		// do nothing
 	}
 
+	/**
+	 * When replies are correlated, releases any requests still waiting for a reply
+	 * on the closed connection, rather than leaving them to time out.
+	 */
 	public void removeDeadConnection(TcpConnection connection) {
-		// do nothing - no asynchronous multiplexing supported
+		if (this.correlationStrategy == null) {
+			return;
+		}
+		String connectionId = connection.getConnectionId();
+		Iterator<AsyncReply> iterator = this.pendingReplies.values().iterator();
+		while (iterator.hasNext()) {
+			AsyncReply reply = iterator.next();
+			if (reply.connectionId.equals(connectionId)) {
+				iterator.remove();
+				reply.connectionClosed();
+			}
+		}
 	}
 
 	/**
@@ -220,10 +309,15 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 
 		private final CountDownLatch latch;
 
+		private final String connectionId;
+
 		private volatile Message<?> reply;
 
-		public AsyncReply() {
+		private volatile boolean connectionClosed;
+
+		public AsyncReply(String connectionId) {
 			this.latch = new CountDownLatch(1);
+			this.connectionId = connectionId;
 		}
 
 		/**
@@ -247,6 +341,55 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 			this.reply = reply;
 			this.latch.countDown();
 		}
+
+		public void connectionClosed() {
+			this.connectionClosed = true;
+			this.latch.countDown();
+		}
+
+		public boolean isConnectionClosed() {
+			return this.connectionClosed;
+		}
+	}
+
+	/**
+	 * Key for a pending reply when replies are correlated; a correlation key
+	 * only needs to be unique on its connection.
+	 *
+	 * @since 2.2
+	 */
+	private static class PendingKey {
+
+		private final String connectionId;
+
+		private final Object correlationKey;
+
+		public PendingKey(String connectionId, Object correlationKey) {
+			this.connectionId = connectionId;
+			this.correlationKey = correlationKey;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof PendingKey)) {
+				return false;
+			}
+			PendingKey other = (PendingKey) obj;
+			return this.connectionId.equals(other.connectionId) && this.correlationKey.equals(other.correlationKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.connectionId.hashCode() + this.correlationKey.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return this.connectionId + ":" + this.correlationKey;
+		}
 	}
 
 }
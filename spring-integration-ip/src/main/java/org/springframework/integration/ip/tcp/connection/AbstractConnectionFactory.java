@@ -452,6 +452,15 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 		}
 	}
 
+	/**
+	 * Returns the executor used to read from NIO connections when data
+	 * is available; by default, the task executor.
+	 * @since 2.2
+	 */
+	protected Executor getReadTaskExecutor() {
+		return this.taskExecutor;
+	}
+
 	/**
 	 * Stops the server.
 	 */
@@ -539,13 +548,14 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 			this.nextCheckForClosedNioConnections = now + this.nioHarvestInterval;
 			Iterator<Entry<SocketChannel, TcpNioConnection>> it = connections.entrySet().iterator();
 			while (it.hasNext()) {
-				SocketChannel channel = it.next().getKey();
+				Entry<SocketChannel, TcpNioConnection> entry = it.next();
+				SocketChannel channel = entry.getKey();
 				if (!channel.isOpen()) {
 					logger.debug("Removing closed channel");
 					it.remove();
 				}
 				else if (soTimeout > 0) {
-					TcpNioConnection connection = connections.get(channel);
+					TcpNioConnection connection = entry.getValue();
 					if (now - connection.getLastRead() > this.soTimeout) {
 						logger.warn("Timing out TcpNioConnection " +
 									this.port + " : " +
@@ -578,7 +588,7 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 						final TcpNioConnection connection;
 						connection = (TcpNioConnection) key.attachment();
 						connection.setLastRead(System.currentTimeMillis());
-						this.taskExecutor.execute(new Runnable() {
+						this.getReadTaskExecutor().execute(new Runnable() {
 							public void run() {
 								try {
 									connection.readPacket();
@@ -594,8 +604,9 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 								}
 								if (key.channel().isOpen()) {
 									key.interestOps(SelectionKey.OP_READ);
-									selector.wakeup();
 								}
+								// also wakes the selector to remove a closed channel
+								selector.wakeup();
 							}});
 					}
 					else if (key.isAcceptable()) {
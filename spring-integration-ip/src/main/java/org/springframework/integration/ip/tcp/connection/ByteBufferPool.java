@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.connection;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of read buffers shared by the connections of an NIO connection
+ * factory. A connection borrows a buffer while it reads, and returns it
+ * as soon as the buffer holds no partial message, so idle connections do
+ * not hold a buffer. Buffers of another size (e.g. grown to hold a large
+ * message) are not pooled.
+ *
+ * @since 2.2
+ */
+class ByteBufferPool {
+
+	static final int DEFAULT_BUFFER_SIZE = 60 * 1024;
+
+	static final int DEFAULT_MAX_POOLED = 32;
+
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	private final int bufferSize;
+
+	private final int maxPooled;
+
+	ByteBufferPool() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+	}
+
+	/**
+	 * @param bufferSize the capacity of each buffer.
+	 * @param maxPooled the maximum number of idle buffers to retain.
+	 */
+	ByteBufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Returns a cleared buffer from the pool, or a new one if the pool is empty.
+	 */
+	ByteBuffer acquire(boolean direct) {
+		ByteBuffer buffer = this.buffers.poll();
+		if (buffer != null) {
+			this.pooled.decrementAndGet();
+			if (buffer.isDirect() == direct) {
+				return buffer;
+			}
+		}
+		return direct ? ByteBuffer.allocateDirect(this.bufferSize) : ByteBuffer.allocate(this.bufferSize);
+	}
+
+	void release(ByteBuffer buffer) {
+		if (buffer.capacity() != this.bufferSize) {
+			return;
+		}
+		if (this.pooled.incrementAndGet() > this.maxPooled) {
+			this.pooled.decrementAndGet();
+			return;
+		}
+		buffer.clear();
+		this.buffers.offer(buffer);
+	}
+
+	/**
+	 * @return the number of idle buffers in the pool.
+	 */
+	int size() {
+		return this.pooled.get();
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2001-2011 the original author or authors.
+ * Copyright 2001-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,12 +16,15 @@
 
 package org.springframework.integration.ip.tcp.connection;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 
 import org.springframework.core.serializer.Serializer;
 import org.springframework.core.serializer.Deserializer;
 import org.springframework.integration.Message;
+import org.springframework.integration.ip.tcp.serializer.ScratchBufferedInputStream;
 import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
 
 /**
@@ -36,6 +39,8 @@ public class TcpNetConnection extends AbstractTcpConnection {
 	private final Socket socket; 
 	
 	private boolean noReadErrorOnClose;
+
+	private volatile InputStream inputStream;
 	
 	/**
 	 * Constructs a TcpNetConnection for the socket.
@@ -56,6 +61,13 @@ public class TcpNetConnection extends AbstractTcpConnection {
 		try {
 			this.socket.close();
 		} catch (Exception e) {}
+		InputStream inputStream = this.inputStream;
+		if (inputStream != null) {
+			// releases the buffers
+			try {
+				inputStream.close();
+			} catch (Exception e) {}
+		}
 		super.close();
 	}
 
@@ -71,7 +83,21 @@ public class TcpNetConnection extends AbstractTcpConnection {
 	}
 
 	public Object getPayload() throws Exception {
-		return this.getDeserializer().deserialize(this.socket.getInputStream());
+		return this.getDeserializer().deserialize(this.inputStream());
+	}
+
+	/**
+	 * Returns the socket's input stream, buffered so that deserializers
+	 * can read it in chunks, and locate delimiters using mark/reset,
+	 * without a system call per read. The stream also holds the buffer
+	 * in which the byte array deserializers assemble this connection's
+	 * messages.
+	 */
+	private InputStream inputStream() throws IOException {
+		if (this.inputStream == null) {
+			this.inputStream = new ScratchBufferedInputStream(this.socket.getInputStream());
+		}
+		return this.inputStream;
 	}
 
 	public int getPort() {
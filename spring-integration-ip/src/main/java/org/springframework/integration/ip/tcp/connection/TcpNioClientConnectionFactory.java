@@ -53,6 +53,8 @@ public class TcpNioClientConnectionFactory extends
 	private final BlockingQueue<SocketChannel> newChannels = new LinkedBlockingQueue<SocketChannel>();
 
 	private volatile TcpNioConnectionSupport tcpNioConnectionSupport = new DefaultTcpNioConnectionSupport();
+
+	private final ByteBufferPool bufferPool = new ByteBufferPool();
 	
 	/**
 	 * Creates a TcpNioClientConnectionFactory for connections to the host and port.
@@ -92,6 +94,7 @@ public class TcpNioClientConnectionFactory extends
 		TcpNioConnection connection = this.tcpNioConnectionSupport.createNewConnection(
 				socketChannel, false, this.isLookupHost());
 		connection.setUsingDirectBuffers(this.usingDirectBuffers);
+		connection.setBufferPool(this.bufferPool);
 		connection.setTaskExecutor(this.getTaskExecutor());
 		TcpConnection wrappedConnection = wrapConnection(connection);
 		initializeConnection(wrappedConnection, socketChannel.socket());
@@ -26,20 +26,29 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.ip.tcp.serializer.ByteBufferDeserializer;
 import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
 import org.springframework.util.Assert;
 
 /**
  * A TcpConnection that uses and underlying {@link SocketChannel}.
+ * <p/>
+ * If the deserializer is a {@link ByteBufferDeserializer}, messages are assembled
+ * directly from the buffer the socket is read into, and passed to the listener
+ * on the reading thread. Otherwise, the data is written to a pipe which is read
+ * by the deserializer on a separate thread.
  *
  * @author Gary Russell
  * @since 2.0
@@ -73,6 +82,20 @@ public class TcpNioConnection extends AbstractTcpConnection {
 
 	private volatile long pipeTimeout = DEFAULT_PIPE_TIMEOUT;
 
+	private volatile ByteBufferPool bufferPool;
+
+	private volatile ByteBuffer frameBuffer;
+
+	private volatile boolean framingTransformedData;
+
+	private final Queue<Object> decodedPayloads = new LinkedList<Object>();
+
+	private volatile Deserializer<?> checkedDeserializer;
+
+	private volatile boolean framingBuffers;
+
+	private volatile int scanned;
+
 	/**
 	 * Constructs a TcpNetConnection for the SocketChannel.
 	 * @param socketChannel the socketChannel
@@ -82,8 +105,6 @@ public class TcpNioConnection extends AbstractTcpConnection {
 	public TcpNioConnection(SocketChannel socketChannel, boolean server, boolean lookupHost) throws Exception {
 		super(socketChannel.socket(), server, lookupHost);
 		this.socketChannel = socketChannel;
-		this.pipedInputStream = new PipedInputStream();
-		this.pipedOutputStream = new PipedOutputStream(this.pipedInputStream);
 		this.channelOutputStream = new ChannelOutputStream();
 	}
 
@@ -122,6 +143,9 @@ public class TcpNioConnection extends AbstractTcpConnection {
 	}
 
 	public Object getPayload() throws Exception {
+		if (this.isFramingBuffers()) {
+			return this.decodedPayloads.poll();
+		}
 		return this.getDeserializer().deserialize(pipedInputStream);
 	}
 
@@ -205,7 +229,7 @@ public class TcpNioConnection extends AbstractTcpConnection {
 	}
 
 	private boolean dataAvailable() throws IOException {
-		return this.pipedInputStream.available() > 0 || writingToPipe;
+		return (this.pipedInputStream != null && this.pipedInputStream.available() > 0) || writingToPipe;
 	}
 
 	/**
@@ -270,7 +294,15 @@ public class TcpNioConnection extends AbstractTcpConnection {
 
 	private void doRead() throws Exception {
 		if (this.rawBuffer == null) {
-			this.rawBuffer = allocate(maxMessageSize);
+			this.rawBuffer = this.acquireBuffer();
+		}
+		if (this.isFramingBuffers()) {
+			doReadFrames();
+			return;
+		}
+		if (this.pipedInputStream == null) {
+			this.pipedInputStream = new PipedInputStream();
+			this.pipedOutputStream = new PipedOutputStream(this.pipedInputStream);
 		}
 
 		this.writingToPipe = true;
@@ -320,13 +352,177 @@ public class TcpNioConnection extends AbstractTcpConnection {
 				throw new MessagingException("Timed out writing to pipe, probably due to insufficient threads in " +
 						"a fixed thread pool; consider increasing this task executor pool size");
 			}
+			this.releaseRawBufferIfEmpty();
 		} finally {
 			this.writingToPipe = false;
 		}
 	}
 
+	/**
+	 * Reads from the socket into the raw buffer and assembles any complete
+	 * messages directly from the buffered data, then passes them to the listener
+	 * on this thread. A partial message remains in the buffer until the rest of it
+	 * has been read.
+	 */
+	private void doReadFrames() throws Exception {
+		int len = this.socketChannel.read(this.rawBuffer);
+		if (len < 0) {
+			this.endOfStream();
+			return;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Read " + len + " into raw buffer");
+		}
+		this.rawBuffer.flip();
+		this.sendToPipe(this.rawBuffer);
+		this.releaseRawBufferIfEmpty();
+		this.dispatchDecodedPayloads();
+	}
+
+	/**
+	 * Assembles the complete messages in the buffer and queues their payloads
+	 * for {@link #getPayload()}; the buffer is compacted to retain any partial
+	 * message. The buffer is the raw buffer, unless a subclass has transformed
+	 * (e.g. decrypted) the data, in which case the data is accumulated in a
+	 * separate buffer.
+	 */
+	private void frame(ByteBuffer data) throws IOException {
+		ByteBuffer buffer = data;
+		if (data != this.rawBuffer) {
+			this.framingTransformedData = true;
+			this.frameBuffer = this.append(this.frameBuffer, data);
+			buffer = this.frameBuffer;
+			buffer.flip();
+		}
+		ByteBufferDeserializer<?> deserializer = (ByteBufferDeserializer<?>) this.getDeserializer();
+		while (buffer.hasRemaining()) {
+			Object payload = deserializer.deserialize(buffer, this.scanned);
+			if (payload == null) {
+				// the partial frame stays at the start of the buffer; don't scan it again
+				this.scanned = buffer.remaining();
+				break;
+			}
+			this.scanned = 0;
+			this.decodedPayloads.add(payload);
+		}
+		buffer.compact();
+		if (buffer == this.rawBuffer) {
+			if (!buffer.hasRemaining()) {
+				// a partial message fills the buffer; the deserializer limits the message size
+				this.rawBuffer = this.grow(buffer, buffer.capacity() * 2);
+			}
+		}
+		else if (buffer.position() == 0) {
+			this.releaseBuffer(buffer);
+			this.frameBuffer = null;
+		}
+	}
+
+	private void endOfStream() throws Exception {
+		ByteBuffer buffer = this.framingTransformedData ? this.frameBuffer : this.rawBuffer;
+		try {
+			if (buffer != null) {
+				buffer.flip();
+				Object payload = ((ByteBufferDeserializer<?>) this.getDeserializer()).deserializeFinal(buffer);
+				if (payload != null) {
+					this.decodedPayloads.add(payload);
+				}
+				buffer.clear();
+			}
+			this.dispatchDecodedPayloads();
+		}
+		finally {
+			this.closeConnection();
+		}
+	}
+
+	private void dispatchDecodedPayloads() {
+		if (this.getListener() == null && !this.isSingleUse()) {
+			this.decodedPayloads.clear();
+			return;
+		}
+		while (!this.decodedPayloads.isEmpty()) {
+			Message<?> message;
+			try {
+				message = this.getMapper().toMessage(this);
+			}
+			catch (Exception e) {
+				logger.error("Read exception " + this.getConnectionId(), e);
+				this.decodedPayloads.clear();
+				this.closeConnection();
+				return;
+			}
+			if (message != null) {
+				sendToChannel(message);
+			}
+		}
+	}
+
+	private ByteBuffer append(ByteBuffer buffer, ByteBuffer data) {
+		if (buffer == null) {
+			buffer = this.acquireBuffer();
+		}
+		if (buffer.remaining() < data.remaining()) {
+			buffer = this.grow(buffer, Math.max(buffer.capacity() * 2, buffer.position() + data.remaining()));
+		}
+		buffer.put(data);
+		return buffer;
+	}
+
+	private ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		ByteBuffer newBuffer = this.allocate(capacity);
+		buffer.flip();
+		newBuffer.put(buffer);
+		this.releaseBuffer(buffer);
+		return newBuffer;
+	}
+
+	private ByteBuffer acquireBuffer() {
+		if (this.bufferPool != null) {
+			return this.bufferPool.acquire(this.usingDirectBuffers);
+		}
+		return this.allocate(this.maxMessageSize);
+	}
+
+	private void releaseBuffer(ByteBuffer buffer) {
+		if (this.bufferPool != null) {
+			this.bufferPool.release(buffer);
+		}
+	}
+
+	/**
+	 * When the buffers are pooled, returns the raw buffer to the pool unless
+	 * it holds a partial message (or SSL packet).
+	 */
+	private void releaseRawBufferIfEmpty() {
+		if (this.bufferPool != null && this.rawBuffer != null && this.rawBuffer.position() == 0) {
+			this.releaseBuffer(this.rawBuffer);
+			this.rawBuffer = null;
+		}
+	}
+
+	private boolean isFramingBuffers() {
+		Deserializer<?> deserializer = this.getDeserializer();
+		if (deserializer != this.checkedDeserializer) {
+			this.framingBuffers = deserializer instanceof ByteBufferDeserializer;
+			this.scanned = 0;
+			this.checkedDeserializer = deserializer;
+		}
+		return this.framingBuffers;
+	}
+
+	/**
+	 * Passes the data in the buffer on for assembly into messages; the data is
+	 * written to the pipe, or, when the deserializer is a {@link ByteBufferDeserializer},
+	 * assembled directly from the buffer. Subclasses that transform the data (e.g.
+	 * decryption) override this method and invoke it with the transformed data.
+	 */
 	protected void sendToPipe(ByteBuffer rawBuffer) throws IOException {
 		Assert.notNull(rawBuffer, "rawBuffer cannot be null");
+		if (this.isFramingBuffers()) {
+			this.frame(rawBuffer);
+			return;
+		}
 		if (logger.isTraceEnabled()) {
 			logger.trace("Sending " + rawBuffer.limit() + " to pipe");
 		}
@@ -393,6 +589,15 @@ public class TcpNioConnection extends AbstractTcpConnection {
 		this.usingDirectBuffers = usingDirectBuffers;
 	}
 
+	/**
+	 * Set the pool from which read buffers are borrowed; if not set, the
+	 * connection allocates its own buffer.
+	 * @param bufferPool
+	 */
+	void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
 	protected boolean isUsingDirectBuffers() {
 		return usingDirectBuffers;
 	}
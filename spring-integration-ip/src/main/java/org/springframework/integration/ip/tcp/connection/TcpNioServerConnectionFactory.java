@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,17 +27,32 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.integration.ip.tcp.connection.support.DefaultTcpNioConnectionSupport;
 import org.springframework.integration.ip.tcp.connection.support.TcpNioConnectionSupport;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 
-/**
 /**
  * Implements a server connection factory that produces {@link TcpNioConnection}s using
  * a {@link ServerSocketChannel}. Must have a {@link TcpListener} registered.
+ * <p/>
+ * One selector accepts new connections, which are distributed across a number of
+ * I/O selectors (by default, one per processor), each running on its own dedicated
+ * thread, so a task executor, if provided, cannot starve them.
+ * When data is available, the read, and the dispatch of any messages assembled,
+ * is performed on a bounded pool of worker threads; if a task executor is
+ * provided, it is used instead.
  * @author Gary Russell
  * @since 2.0
  *
@@ -48,12 +63,26 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 
 	private volatile boolean usingDirectBuffers;
 
-	private final Map<SocketChannel, TcpNioConnection> channelMap = new HashMap<SocketChannel, TcpNioConnection>();
-
 	private volatile Selector selector;
 
+	private volatile int selectorCount = Runtime.getRuntime().availableProcessors();
+
+	private volatile int workerPoolSize = Runtime.getRuntime().availableProcessors() * 2;
+
+	private volatile IoSelector[] ioSelectors;
+
+	private final AtomicInteger nextIoSelector = new AtomicInteger();
+
+	private volatile boolean taskExecutorProvided;
+
+	private volatile ExecutorService workerExecutor;
+
+	private volatile ExecutorService selectorExecutor;
+
 	private volatile TcpNioConnectionSupport tcpNioConnectionSupport = new DefaultTcpNioConnectionSupport();
 
+	private final ByteBufferPool bufferPool = new ByteBufferPool();
+
 	/**
 	 * Listens for incoming connections on the port.
 	 * @param port The port.
@@ -92,6 +121,7 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 			}
 			final Selector selector = Selector.open();
 			this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+			this.startIoSelectors();
 			this.setListening(true);
 			this.selector = selector;
 			doSelect(this.serverChannel, selector);
@@ -106,14 +136,26 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 		}
 	}
 
+	private void startIoSelectors() throws IOException {
+		if (!this.taskExecutorProvided) {
+			this.workerExecutor = Executors.newFixedThreadPool(this.workerPoolSize);
+		}
+		IoSelector[] ioSelectors = new IoSelector[this.selectorCount];
+		for (int i = 0; i < ioSelectors.length; i++) {
+			ioSelectors[i] = new IoSelector(Selector.open());
+		}
+		this.ioSelectors = ioSelectors;
+		ExecutorService selectorExecutor = Executors.newFixedThreadPool(ioSelectors.length,
+				new CustomizableThreadFactory("tcp-nio-selector-"));
+		this.selectorExecutor = selectorExecutor;
+		for (IoSelector ioSelector : ioSelectors) {
+			selectorExecutor.execute(ioSelector);
+		}
+	}
+
 	/**
-	 * Listens for incoming connections and for notifications that a connected
-	 * socket is ready for reading.
-	 * Accepts incoming connections, registers the new socket with the
-	 * selector for reading.
-	 * When a socket is ready for reading, unregisters the read interest and
-	 * schedules a call to doRead which reads all available data. When the read
-	 * is complete, the socket is again registered for read interest.
+	 * Listens for incoming connections and registers each new socket with
+	 * one of the I/O selectors, in turn, for reading.
 	 * @param server
 	 * @param selector
 	 * @throws IOException
@@ -132,7 +174,9 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 					logger.debug("CancelledKeyException during Selector.select()");
 				}
 			}
-			this.processNioSelections(selectionCount, selector, server, this.channelMap);
+			// the connections belong to the I/O selectors
+			this.processNioSelections(selectionCount, selector, server,
+					Collections.<SocketChannel, TcpNioConnection>emptyMap());
 		}
 	}
 
@@ -157,8 +201,9 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 		}
 		connection.setTaskExecutor(this.getTaskExecutor());
 		connection.setLastRead(now);
-		channelMap.put(channel, connection);
-		channel.register(selector, SelectionKey.OP_READ, connection);
+		IoSelector[] ioSelectors = this.ioSelectors;
+		ioSelectors[Math.abs(this.nextIoSelector.getAndIncrement() % ioSelectors.length)]
+				.register(channel, connection);
 	}
 
 	private TcpNioConnection createTcpNioConnection(SocketChannel socketChannel) {
@@ -167,6 +212,7 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 					.createNewConnection(socketChannel, true,
 							this.isLookupHost());
 			connection.setUsingDirectBuffers(this.usingDirectBuffers);
+			connection.setBufferPool(this.bufferPool);
 			TcpConnection wrappedConnection = wrapConnection(connection);
 			this.initializeConnection(wrappedConnection, socketChannel.socket());
 			return connection;
@@ -181,6 +227,12 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 		if (this.selector != null) {
 			this.selector.wakeup();
 		}
+		IoSelector[] ioSelectors = this.ioSelectors;
+		if (ioSelectors != null) {
+			for (IoSelector ioSelector : ioSelectors) {
+				ioSelector.selector.wakeup();
+			}
+		}
 		if (this.serverChannel == null) {
 			return;
 		}
@@ -190,6 +242,60 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 		this.serverChannel = null;
 	}
 
+	@Override
+	public void stop() {
+		super.stop();
+		ExecutorService workerExecutor = this.workerExecutor;
+		if (workerExecutor != null) {
+			workerExecutor.shutdown();
+			this.workerExecutor = null;
+		}
+		ExecutorService selectorExecutor = this.selectorExecutor;
+		if (selectorExecutor != null) {
+			selectorExecutor.shutdown();
+			this.selectorExecutor = null;
+		}
+	}
+
+	@Override
+	public void setTaskExecutor(Executor taskExecutor) {
+		super.setTaskExecutor(taskExecutor);
+		this.taskExecutorProvided = taskExecutor != null;
+	}
+
+	/**
+	 * Returns the worker pool, unless a task executor was provided.
+	 */
+	@Override
+	protected Executor getReadTaskExecutor() {
+		ExecutorService workerExecutor = this.workerExecutor;
+		return workerExecutor != null ? workerExecutor : super.getReadTaskExecutor();
+	}
+
+	/**
+	 * The number of selectors used to wait for data on the connections;
+	 * default, the number of processors. Each selector runs on a dedicated
+	 * thread, not on the task executor.
+	 * @param selectorCount the selector count.
+	 * @since 2.2
+	 */
+	public void setSelectorCount(int selectorCount) {
+		Assert.isTrue(selectorCount > 0, "'selectorCount' must be > 0");
+		this.selectorCount = selectorCount;
+	}
+
+	/**
+	 * The number of worker threads used to read data and dispatch messages,
+	 * when no task executor is provided; default, twice the number of
+	 * processors.
+	 * @param workerPoolSize the worker pool size.
+	 * @since 2.2
+	 */
+	public void setWorkerPoolSize(int workerPoolSize) {
+		Assert.isTrue(workerPoolSize > 0, "'workerPoolSize' must be > 0");
+		this.workerPoolSize = workerPoolSize;
+	}
+
 	public void setUsingDirectBuffers(boolean usingDirectBuffers) {
 		this.usingDirectBuffers = usingDirectBuffers;
 	}
@@ -214,10 +320,95 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 	}
 
 	/**
-	 * @return the connections
+	 * @return a snapshot of the connections of all the I/O selectors
 	 */
 	protected Map<SocketChannel, TcpNioConnection> getConnections() {
-		return channelMap;
+		Map<SocketChannel, TcpNioConnection> connections = new HashMap<SocketChannel, TcpNioConnection>();
+		IoSelector[] ioSelectors = this.ioSelectors;
+		if (ioSelectors != null) {
+			for (IoSelector ioSelector : ioSelectors) {
+				connections.putAll(ioSelector.connections);
+			}
+		}
+		return connections;
+	}
+
+	/**
+	 * Waits for data on the connections registered with it, and
+	 * times out and removes only those connections; new connections
+	 * are queued for registration by the selector's own thread, since
+	 * registering a channel blocks while the selector is selecting.
+	 */
+	private class IoSelector implements Runnable {
+
+		private final Selector selector;
+
+		private final Map<SocketChannel, TcpNioConnection> connections =
+				new ConcurrentHashMap<SocketChannel, TcpNioConnection>();
+
+		private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+
+		private IoSelector(Selector selector) {
+			this.selector = selector;
+		}
+
+		private void register(SocketChannel channel, TcpNioConnection connection) {
+			this.connections.put(channel, connection);
+			this.pending.add(channel);
+			this.selector.wakeup();
+		}
+
+		public void run() {
+			try {
+				while (isActive()) {
+					try {
+						this.registerPending();
+						int soTimeout = getSoTimeout();
+						int selectionCount = 0;
+						try {
+							selectionCount = this.selector.select(soTimeout < 0 ? 0 : soTimeout);
+						}
+						catch (CancelledKeyException cke) {
+							if (logger.isDebugEnabled()) {
+								logger.debug("CancelledKeyException during Selector.select()");
+							}
+						}
+						processNioSelections(selectionCount, this.selector, null, this.connections);
+					}
+					catch (RuntimeException e) {
+						logger.error("Error on I/O selector", e);
+					}
+				}
+			}
+			catch (IOException e) {
+				if (isActive()) {
+					logger.error("Error on I/O selector", e);
+				}
+			}
+			finally {
+				try {
+					this.selector.close();
+				}
+				catch (IOException e) {}
+			}
+		}
+
+		private void registerPending() {
+			SocketChannel channel;
+			while ((channel = this.pending.poll()) != null) {
+				TcpNioConnection connection = this.connections.get(channel);
+				if (connection == null) {
+					continue;
+				}
+				try {
+					channel.register(this.selector, SelectionKey.OP_READ, connection);
+				}
+				catch (ClosedChannelException e) {
+					logger.debug("Channel closed before registration");
+				}
+			}
+		}
+
 	}
 
 }
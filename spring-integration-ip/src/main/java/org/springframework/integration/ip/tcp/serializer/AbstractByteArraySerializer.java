@@ -17,6 +17,8 @@
 package org.springframework.integration.ip.tcp.serializer;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,6 +59,100 @@ public abstract class AbstractByteArraySerializer implements
 		this.maxMessageSize = maxMessageSize;
 	}
 
+	/**
+	 * End of stream handling for subclasses that implement
+	 * {@link ByteBufferDeserializer}: a stream closed between frames yields no
+	 * object; one closed in the middle of a frame is an error.
+	 * @since 2.2
+	 */
+	public byte[] deserializeFinal(ByteBuffer buffer) throws IOException {
+		if (buffer.hasRemaining()) {
+			logger.debug("Socket closed during message assembly");
+			throw new IOException("Socket closed during message assembly");
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a buffer of at least {@link #getMaxMessageSize()} bytes in which
+	 * to assemble a message read from the stream. If the stream is a
+	 * {@link ScratchBufferedInputStream}, the buffer is the one it holds for its
+	 * connection, and is reused for the connection's subsequent messages, so its
+	 * contents must be copied (e.g. with {@link #copyToSizedArray(byte[], int)})
+	 * before returning from deserialize; otherwise, a new buffer is allocated.
+	 * @param inputStream The stream the message is read from.
+	 * @return The buffer.
+	 * @since 2.2
+	 */
+	protected byte[] getScratchBuffer(InputStream inputStream) {
+		if (inputStream instanceof ScratchBufferedInputStream) {
+			return ((ScratchBufferedInputStream) inputStream).getScratchBuffer(this.maxMessageSize);
+		}
+		return new byte[this.maxMessageSize];
+	}
+
+	/**
+	 * Copies the first size bytes of the buffer to a new array.
+	 * @since 2.2
+	 */
+	protected byte[] copyToSizedArray(byte[] buffer, int size) {
+		byte[] assembledData = new byte[size];
+		System.arraycopy(buffer, 0, assembledData, 0, size);
+		return assembledData;
+	}
+
+	/**
+	 * Reads the data up to and including a delimiter into the buffer, reading
+	 * from the stream in chunks rather than a byte at a time. The stream must
+	 * support mark/reset; any data read beyond the delimiter is left in the
+	 * stream for the next message.
+	 * @param inputStream The stream.
+	 * @param buffer The buffer, of at least {@link #getMaxMessageSize()} bytes.
+	 * @param delimiter The delimiter sequence (1 or 2 bytes).
+	 * @return The number of bytes of the message, including the delimiter;
+	 * 0 if the delimiter was not found within the max message size, or -1
+	 * if the stream was closed before any data was read.
+	 * @throws IOException if the stream was closed after data was read, or
+	 * the delimiter was not found before the max message size.
+	 * @since 2.2
+	 */
+	protected int readToDelimiter(InputStream inputStream, byte[] buffer, byte[] delimiter)
+			throws IOException {
+		int last = delimiter.length - 1;
+		inputStream.mark(this.maxMessageSize);
+		int n = 0;
+		while (n < this.maxMessageSize) {
+			int len = inputStream.read(buffer, n, this.maxMessageSize - n);
+			if (len < 0) {
+				if (n == 0) {
+					return -1;
+				}
+				checkClosure(len);
+			}
+			int from = Math.max(n, last);
+			n += len;
+			for (int i = from; i < n; i++) {
+				if (buffer[i] == delimiter[last] && (last == 0 || buffer[i - 1] == delimiter[0])) {
+					inputStream.reset();
+					skipFully(inputStream, i + 1);
+					return i + 1;
+				}
+			}
+		}
+		return 0;
+	}
+
+	private void skipFully(InputStream inputStream, int length) throws IOException {
+		int skipped = 0;
+		while (skipped < length) {
+			long len = inputStream.skip(length - skipped);
+			if (len <= 0) {
+				throw new IOException("Failed to skip data already read");
+			}
+			skipped += len;
+		}
+	}
+
 	protected void checkClosure(int bite) throws IOException {
 		if (bite < 0) {
 			logger.debug("Socket closed during message assembly");				
@@ -19,16 +19,18 @@ package org.springframework.integration.ip.tcp.serializer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Reads data in an InputStream to a byte[]; data must be terminated by \r\n
  * (not included in resulting byte[]).
  * Writes a byte[] to an OutputStream and adds \r\n.
+ * Also assembles frames directly from a ByteBuffer for NIO connections.
  *
  * @author Gary Russell
  * @since 2.0
  */
-public class ByteArrayCrLfSerializer extends AbstractByteArraySerializer {
+public class ByteArrayCrLfSerializer extends AbstractByteArraySerializer implements ByteBufferDeserializer<byte[]> {
 
 	private static final byte[] CRLF = "\r\n".getBytes();
 
@@ -36,15 +38,27 @@ public class ByteArrayCrLfSerializer extends AbstractByteArraySerializer {
 	 * Reads the data in the inputstream to a byte[]. Data must be terminated
 	 * by CRLF (\r\n). Throws a {@link SoftEndOfStreamException} if the stream
 	 * is closed immediately after the \r\n (i.e. no data is in the process of
-	 * being read).
+	 * being read). If the stream supports mark/reset, the data is read
+	 * in chunks rather than a byte at a time.
 	 */
 	public byte[] deserialize(InputStream inputStream) throws IOException {
-		byte[] buffer = new byte[this.maxMessageSize];
+		byte[] buffer = this.getScratchBuffer(inputStream);
 		int n = 0;
 		int bite;
 		if (logger.isDebugEnabled()) {
 			logger.debug("Available to read:" + inputStream.available());
 		}
+		if (inputStream.markSupported()) {
+			n = this.readToDelimiter(inputStream, buffer, CRLF);
+			if (n < 0) {
+				throw new SoftEndOfStreamException("Stream closed between payloads");
+			}
+			if (n == 0) {
+				throw new IOException("CRLF not found before max message length: "
+						+ this.maxMessageSize);
+			}
+			return this.copyToSizedArray(buffer, n - 2);
+		}
 		while (true) {
 			bite = inputStream.read();
 //			logger.debug("Read:" + (char) bite);
@@ -61,9 +75,35 @@ public class ByteArrayCrLfSerializer extends AbstractByteArraySerializer {
 						+ this.maxMessageSize);
 			}
 		};
-		byte[] assembledData = new byte[n-1];
-		System.arraycopy(buffer, 0, assembledData, 0, n-1);
-		return assembledData;
+		return this.copyToSizedArray(buffer, n - 1);
+	}
+
+	/**
+	 * Returns the data before the first CRLF (\r\n) in the buffer, or null if
+	 * the buffer does not yet contain a CRLF. The search resumes at the last
+	 * byte already scanned, in case it is the CR.
+	 */
+	public byte[] deserialize(ByteBuffer buffer, int scanned) throws IOException {
+		int start = buffer.position();
+		int limit = buffer.limit();
+		for (int i = start + Math.max(1, scanned); i < limit; i++) {
+			if (buffer.get(i) == '\n' && buffer.get(i - 1) == '\r') {
+				checkLength(i - start);
+				byte[] assembledData = new byte[i - start - 1];
+				buffer.get(assembledData);
+				buffer.position(i + 1);
+				return assembledData;
+			}
+		}
+		checkLength(limit - start);
+		return null;
+	}
+
+	private void checkLength(int length) throws IOException {
+		if (length >= this.maxMessageSize) {
+			throw new IOException("CRLF not found before max message length: "
+					+ this.maxMessageSize);
+		}
 	}
 
 	/**
@@ -36,13 +36,13 @@ import org.apache.commons.logging.LogFactory;
  * negative values will be rejected.
  * Other options are an unsigned byte, and unsigned short.
  * 
- * For other header formats, override {@link #readHeader(InputStream)} and
- * {@link #writeHeader(OutputStream, int)}.
+ * For other header formats, override {@link #readHeader(InputStream)},
+ * {@link #readHeader(ByteBuffer)} and {@link #writeHeader(OutputStream, int)}.
  * 
  * @author Gary Russell
  * @since 2.0
  */
-public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer {
+public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer implements ByteBufferDeserializer<byte[]> {
 	
 	
 	/**
@@ -107,6 +107,29 @@ public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer
 		return messagePart;
 	}
 
+	/**
+	 * Returns the data following the header at the buffer's position, or null
+	 * if the buffer does not yet contain the whole header and data.
+	 */
+	public byte[] deserialize(ByteBuffer buffer, int scanned) throws IOException {
+		int start = buffer.position();
+		if (buffer.remaining() < this.headerSize) {
+			return null;
+		}
+		int messageLength = this.readHeader(buffer);
+		if (messageLength > this.maxMessageSize) {
+			throw new IOException("Message length " + messageLength +
+					" exceeds max message length: " + this.maxMessageSize);
+		}
+		if (buffer.remaining() < this.headerSize + messageLength) {
+			return null;
+		}
+		byte[] messagePart = new byte[messageLength];
+		buffer.position(start + this.headerSize);
+		buffer.get(messagePart);
+		return messagePart;
+	}
+
 	/**
 	 * Writes the byte[] to the output stream, preceded by a 4 byte
 	 * length in network byte order (big endian).
@@ -184,36 +207,62 @@ public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer
 	}
 
 	/**
-	 * Reads the header and returns the length of the data part.
-	 * @param inputStream
+	 * Returns the length of the data part from the header at the buffer's
+	 * position, without changing the position. The buffer contains at least
+	 * the header size bytes.
+	 * @param buffer
 	 * @return The length of the data part
-	 * @throws IOException, {@link SoftEndOfStreamException} if socket closes
-	 * before any length data read.
+	 * @since 2.2
 	 */
-	protected int readHeader(InputStream inputStream) throws IOException {
-		byte[] lengthPart = new byte[this.headerSize];
-		int status = read(inputStream, lengthPart, true);
-		if (status < 0) {
-			throw new SoftEndOfStreamException("Stream closed between payloads");
-		}
+	protected int readHeader(ByteBuffer buffer) {
+		int start = buffer.position();
 		int messageLength;
 		switch (this.headerSize) {
 		case HEADER_SIZE_INT:
-			messageLength = ByteBuffer.wrap(lengthPart).getInt();
+			messageLength = buffer.getInt(start);
 			if (messageLength < 0) {
 				throw new IllegalArgumentException("Length header:"
-						+ messageLength 
+						+ messageLength
 						+ " is negative");
 			}
 			break;
 		case HEADER_SIZE_UNSIGNED_BYTE:
-			messageLength = ByteBuffer.wrap(lengthPart).get() & 0xff;
+			messageLength = buffer.get(start) & 0xff;
 			break;
 		case HEADER_SIZE_UNSIGNED_SHORT:
-			messageLength = ByteBuffer.wrap(lengthPart).getShort() & 0xffff;
+			messageLength = buffer.getShort(start) & 0xffff;
 			break;
 		default:
-			throw new IllegalArgumentException("Bad header size:" + headerSize);			
+			throw new IllegalArgumentException("Bad header size:" + headerSize);
+		}
+		return messageLength;
+	}
+
+	/**
+	 * Reads the header and returns the length of the data part. The header
+	 * is assembled in network byte order as it is read, so no buffer is
+	 * allocated for it.
+	 * @param inputStream
+	 * @return The length of the data part
+	 * @throws IOException, {@link SoftEndOfStreamException} if socket closes
+	 * before any length data read.
+	 */
+	protected int readHeader(InputStream inputStream) throws IOException {
+		int messageLength = 0;
+		for (int i = 0; i < this.headerSize; i++) {
+			int bite = inputStream.read();
+			if (bite < 0 && i == 0) {
+				throw new SoftEndOfStreamException("Stream closed between payloads");
+			}
+			if (bite < 0) {
+				throw new IOException("Stream closed after " + i + " of " + this.headerSize);
+			}
+			messageLength = (messageLength << 8) | bite;
+		}
+		if (messageLength < 0) {
+			throw new IllegalArgumentException("Length header:"
+					+ messageLength 
+					+ " is negative");
 		}
 		return messageLength;
 	}
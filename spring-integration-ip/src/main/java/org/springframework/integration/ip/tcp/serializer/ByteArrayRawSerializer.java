@@ -18,6 +18,7 @@ package org.springframework.integration.ip.tcp.serializer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A byte array (de)serializer that does nothing with the payload; sends it raw.
@@ -32,7 +33,7 @@ import java.io.OutputStream;
  * @since 2.0.3
  *
  */
-public class ByteArrayRawSerializer extends AbstractByteArraySerializer {
+public class ByteArrayRawSerializer extends AbstractByteArraySerializer implements ByteBufferDeserializer<byte[]> {
 
 	public void serialize(byte[] bytes, OutputStream outputStream)
 			throws IOException {
@@ -41,28 +42,50 @@ public class ByteArrayRawSerializer extends AbstractByteArraySerializer {
 	}
 
 	public byte[] deserialize(InputStream inputStream) throws IOException {
-		byte[] buffer = new byte[this.maxMessageSize];
+		byte[] buffer = this.getScratchBuffer(inputStream);
 		int n = 0;
-		int bite = 0;
+		int len = 0;
 		if (logger.isDebugEnabled()) {
 			logger.debug("Available to read:" + inputStream.available());
 		}
-		while (bite >= 0) {
-			bite = inputStream.read();
-			if (bite < 0) {
+		while (len >= 0) {
+			len = inputStream.read(buffer, n, this.maxMessageSize - n);
+			if (len < 0) {
 				if (n == 0) {
 					throw new SoftEndOfStreamException("Stream closed between payloads");
 				}
 				break;
 			}
-			buffer[n++] = (byte) bite;
+			n += len;
 			if (n >= this.maxMessageSize) {
 				throw new IOException("Socket was not closed before max message length: "
 						+ this.maxMessageSize);
 			}
 		};
-		byte[] assembledData = new byte[n];
-		System.arraycopy(buffer, 0, assembledData, 0, n);
+		return this.copyToSizedArray(buffer, n);
+	}
+
+	/**
+	 * Always returns null - the message is only complete when the socket is closed.
+	 */
+	public byte[] deserialize(ByteBuffer buffer, int scanned) throws IOException {
+		if (buffer.remaining() >= this.maxMessageSize) {
+			throw new IOException("Socket was not closed before max message length: "
+					+ this.maxMessageSize);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns all the data received before the socket was closed.
+	 */
+	@Override
+	public byte[] deserializeFinal(ByteBuffer buffer) throws IOException {
+		if (!buffer.hasRemaining()) {
+			return null;
+		}
+		byte[] assembledData = new byte[buffer.remaining()];
+		buffer.get(assembledData);
 		return assembledData;
 	}
 
@@ -19,6 +19,7 @@ package org.springframework.integration.ip.tcp.serializer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.springframework.integration.mapping.MessageMappingException;
 
@@ -26,23 +27,26 @@ import org.springframework.integration.mapping.MessageMappingException;
  * Reads data in an InputStream to a byte[]; data must be prefixed by &lt;stx&gt; and
  * terminated by &lt;etx&gt; (not included in resulting byte[]). 
  * Writes a byte[] to an OutputStream prefixed by &lt;stx&gt; terminated by &lt;etx&gt;
+ * Also assembles frames directly from a ByteBuffer for NIO connections.
  * 
  * @author Gary Russell
  * @since 2.0
  */
-public class ByteArrayStxEtxSerializer extends AbstractByteArraySerializer {
+public class ByteArrayStxEtxSerializer extends AbstractByteArraySerializer implements ByteBufferDeserializer<byte[]> {
 
 	public static final int STX = 0x02;
 	
 	public static final int ETX = 0x03;
 
+	private static final byte[] ETX_DELIMITER = new byte[] { ETX };
+
 	/**
 	 * Reads the data in the inputstream to a byte[]. Data must be prefixed 
 	 * with an ASCII STX character, and terminated with an ASCII ETX character.
 	 * Throws a {@link SoftEndOfStreamException} if the stream
 	 * is closed immediately before the STX (i.e. no data is in the process of
-	 * being read). 
-	 *  
+	 * being read). If the stream supports mark/reset, the data is read
+	 * in chunks rather than a byte at a time.
 	 */
 	public byte[] deserialize(InputStream inputStream) throws IOException {
 		int bite = inputStream.read();
@@ -52,8 +56,17 @@ public class ByteArrayStxEtxSerializer extends AbstractByteArraySerializer {
 		if (bite != STX) {
 			throw new MessageMappingException("Expected STX to begin message");
 		}
-		byte[] buffer = new byte[this.maxMessageSize];
+		byte[] buffer = this.getScratchBuffer(inputStream);
 		int n = 0;
+		if (inputStream.markSupported()) {
+			n = this.readToDelimiter(inputStream, buffer, ETX_DELIMITER);
+			checkClosure(n);
+			if (n == 0) {
+				throw new IOException("ETX not found before max message length: "
+						+ this.maxMessageSize);
+			}
+			return this.copyToSizedArray(buffer, n - 1);
+		}
 		while ((bite = inputStream.read()) != ETX) {
 			checkClosure(bite);
 			buffer[n++] = (byte) bite;
@@ -62,9 +75,42 @@ public class ByteArrayStxEtxSerializer extends AbstractByteArraySerializer {
 						+ this.maxMessageSize);
 			}
 		}
-		byte[] assembledData = new byte[n];
-		System.arraycopy(buffer, 0, assembledData, 0, n);
-		return assembledData;
+		return this.copyToSizedArray(buffer, n);
+	}
+
+	/**
+	 * Returns the data between the STX at the buffer's position and the
+	 * following ETX, or null if the buffer does not yet contain the ETX. The
+	 * search resumes after the bytes already scanned.
+	 */
+	public byte[] deserialize(ByteBuffer buffer, int scanned) throws IOException {
+		int start = buffer.position();
+		int limit = buffer.limit();
+		if (start == limit) {
+			return null;
+		}
+		if (buffer.get(start) != STX) {
+			throw new MessageMappingException("Expected STX to begin message");
+		}
+		for (int i = start + Math.max(1, scanned); i < limit; i++) {
+			if (buffer.get(i) == ETX) {
+				checkLength(i - start - 1);
+				byte[] assembledData = new byte[i - start - 1];
+				buffer.position(start + 1);
+				buffer.get(assembledData);
+				buffer.position(i + 1);
+				return assembledData;
+			}
+		}
+		checkLength(limit - start - 1);
+		return null;
+	}
+
+	private void checkLength(int length) throws IOException {
+		if (length >= this.maxMessageSize) {
+			throw new IOException("ETX not found before max message length: "
+					+ this.maxMessageSize);
+		}
 	}
 
 	/**
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.serializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A deserializer that assembles objects directly from the data in a
+ * {@link ByteBuffer}, rather than reading from an InputStream. NIO connections
+ * use this to frame messages straight out of the buffer the socket was read
+ * into, when their deserializer implements it.
+ * <p/>
+ * Implementing this interface is an explicit opt-in: an NIO connection frames
+ * from its buffers whenever its deserializer is an instance of it. The standard
+ * byte array deserializers implement it, so a subclass of one of them that
+ * changes the framing by overriding a method reading from an InputStream, such
+ * as {@code readHeader(InputStream)}, must also override the corresponding
+ * ByteBuffer method, such as {@code readHeader(ByteBuffer)}.
+ * <p/>
+ * Implementations must be stateless, since one instance is shared by all the
+ * connections of a connection factory; any partial frame stays in the buffer
+ * and is presented again once more data has been read, together with the
+ * number of its bytes that have already been examined.
+ *
+ * @since 2.2
+ */
+public interface ByteBufferDeserializer<T> {
+
+	/**
+	 * Assemble an object from the data between the buffer's position and
+	 * limit. If a complete frame is present, the buffer's position is advanced
+	 * past it (including any delimiters) and the object is returned. Otherwise,
+	 * the position is left unchanged and null is returned; the data up to the
+	 * limit is then considered examined, and when the frame is presented again,
+	 * with more data, its length is passed as {@code scanned}, so that a search
+	 * for a delimiter can resume where it stopped instead of rescanning the frame.
+	 * @param buffer The buffer, with the start of a frame at its position.
+	 * @param scanned The number of bytes after the position that a previous
+	 * invocation examined before returning null; 0 for a new frame.
+	 * @return The object, or null if the buffer does not contain a complete frame.
+	 * @throws IOException if the data is invalid, or the frame exceeds the
+	 * maximum message size.
+	 */
+	T deserialize(ByteBuffer buffer, int scanned) throws IOException;
+
+	/**
+	 * Invoked when the stream is closed, with any data that has not yet
+	 * been assembled into an object.
+	 * @param buffer The remaining data; may have no remaining bytes.
+	 * @return The final object, or null if there is none.
+	 * @throws IOException if the stream was closed in the middle of a frame.
+	 */
+	T deserializeFinal(ByteBuffer buffer) throws IOException;
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.serializer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link BufferedInputStream} that also holds the buffer in which the byte
+ * array deserializers assemble the messages read from it. A connection wraps
+ * its socket's stream in one, so the buffer belongs to the connection, is
+ * reused for each of its messages, and is released when the connection closes
+ * the stream. Deserializers reading other streams allocate a buffer for each
+ * message.
+ *
+ * @since 2.2
+ */
+public class ScratchBufferedInputStream extends BufferedInputStream {
+
+	private volatile byte[] scratchBuffer;
+
+	public ScratchBufferedInputStream(InputStream in) {
+		super(in);
+	}
+
+	/**
+	 * Returns the scratch buffer, allocating it if it is smaller than the size.
+	 */
+	byte[] getScratchBuffer(int size) {
+		byte[] buffer = this.scratchBuffer;
+		if (buffer == null || buffer.length < size) {
+			buffer = new byte[size];
+			this.scratchBuffer = buffer;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Releases the scratch buffer and closes the stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.scratchBuffer = null;
+		super.close();
+	}
+
+}
@@ -26,6 +26,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,6 +38,7 @@ import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.MessageChannel;
+import org.springframework.integration.aggregator.CorrelationStrategy;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
@@ -120,6 +122,9 @@ public class ParserUnitTests {
 	@Autowired
 	EventDrivenConsumer outGateway;
 
+	@Autowired
+	CorrelationStrategy correlationStrategy;
+
 	@Autowired
 	@Qualifier(value="externalTE")
 	TaskExecutor taskExecutor;
@@ -389,6 +394,8 @@ public class ParserUnitTests {
 		assertEquals(24, dfa.getPropertyValue("order"));
 		assertFalse(tcpOutboundGateway.isAutoStartup());
 		assertEquals(127, tcpOutboundGateway.getPhase());
+		assertSame(correlationStrategy, dfa.getPropertyValue("correlationStrategy"));
+		assertEquals(8, ((Semaphore) dfa.getPropertyValue("inFlightSemaphore")).availablePermits());
 	}
 
 	@Test
@@ -428,6 +435,8 @@ public class ParserUnitTests {
 		assertSame(taskExecutor, dfa.getPropertyValue("taskExecutor"));
 		assertEquals(123, dfa.getPropertyValue("backlog"));
 		assertEquals(true, dfa.getPropertyValue("usingDirectBuffers"));
+		assertEquals(3, dfa.getPropertyValue("selectorCount"));
+		assertEquals(7, dfa.getPropertyValue("workerPoolSize"));
 		assertNotNull(dfa.getPropertyValue("interceptorFactoryChain"));
 	}
 
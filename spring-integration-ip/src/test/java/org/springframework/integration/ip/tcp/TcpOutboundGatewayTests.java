@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,31 +16,44 @@
 
 package org.springframework.integration.ip.tcp;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ServerSocketFactory;
 
+import org.junit.Ignore;
 import org.junit.Test;
+import org.springframework.beans.DirectFieldAccessor;
 import org.springframework.core.serializer.DefaultDeserializer;
 import org.springframework.core.serializer.DefaultSerializer;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageTimeoutException;
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.aggregator.ExpressionEvaluatingCorrelationStrategy;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.ip.tcp.connection.AbstractConnectionFactory;
 import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
@@ -238,5 +251,252 @@ public class TcpOutboundGatewayTests {
 		done.set(true);
 	}
 
+	@Test
+	public void testCorrelatedRepliesOutOfOrder() throws Exception {
+		final int port = SocketTestUtils.findAvailableServerSocket();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicBoolean done = new AtomicBoolean();
+		final int count = 10;
+		Executors.newSingleThreadExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port, 10);
+					latch.countDown();
+					Socket socket = server.accept();
+					while (true) {
+						// reply to each batch of requests in reverse order
+						List<String> requests = new ArrayList<String>();
+						for (int i = 0; i < count; i++) {
+							requests.add((String) new ObjectInputStream(socket.getInputStream()).readObject());
+						}
+						Collections.reverse(requests);
+						for (String request : requests) {
+							new ObjectOutputStream(socket.getOutputStream()).writeObject(request.replace("Test", "Reply"));
+						}
+					}
+				} catch (Exception e) {
+					if (!done.get()) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+		AbstractConnectionFactory ccf = new TcpNetClientConnectionFactory("localhost", port);
+		ccf.setSerializer(new DefaultSerializer());
+		ccf.setDeserializer(new DefaultDeserializer());
+		ccf.setSoTimeout(10000);
+		ccf.setSingleUse(false);
+		ccf.start();
+		assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+		final TcpOutboundGateway gateway = createCorrelatingGateway(ccf, count);
+		Map<String, Future<Message<?>>> results = sendConcurrently(gateway, count, 0);
+		for (Map.Entry<String, Future<Message<?>>> entry : results.entrySet()) {
+			assertEquals(entry.getKey().replace("Test", "Reply"), entry.getValue().get(10, TimeUnit.SECONDS).getPayload());
+		}
+		assertEquals(0, ((Map<?, ?>) new DirectFieldAccessor(gateway).getPropertyValue("pendingReplies")).size());
+		done.set(true);
+		ccf.stop();
+	}
+
+	@Test
+	public void testCorrelatedTimeoutIsPerRequest() throws Exception {
+		final int port = SocketTestUtils.findAvailableServerSocket();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicBoolean done = new AtomicBoolean();
+		Executors.newSingleThreadExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port, 10);
+					latch.countDown();
+					Socket socket = server.accept();
+					while (true) {
+						// never reply to odd requests
+						String request = (String) new ObjectInputStream(socket.getInputStream()).readObject();
+						if (Integer.parseInt(request.substring(0, request.indexOf(':'))) % 2 == 0) {
+							new ObjectOutputStream(socket.getOutputStream()).writeObject(request.replace("Test", "Reply"));
+						}
+					}
+				} catch (Exception e) {
+					if (!done.get()) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+		AbstractConnectionFactory ccf = new TcpNetClientConnectionFactory("localhost", port);
+		ccf.setSerializer(new DefaultSerializer());
+		ccf.setDeserializer(new DefaultDeserializer());
+		ccf.setSoTimeout(10000);
+		ccf.setSingleUse(false);
+		ccf.start();
+		assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+		final TcpOutboundGateway gateway = createCorrelatingGateway(ccf, 4);
+		gateway.setReplyTimeout(500);
+		Map<String, Future<Message<?>>> results = sendConcurrently(gateway, 4, 0);
+		int timeouts = 0;
+		for (Map.Entry<String, Future<Message<?>>> entry : results.entrySet()) {
+			try {
+				assertEquals(entry.getKey().replace("Test", "Reply"), entry.getValue().get(10, TimeUnit.SECONDS).getPayload());
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof MessageTimeoutException);
+				timeouts++;
+			}
+		}
+		assertEquals(2, timeouts);
+		assertEquals(0, ((Map<?, ?>) new DirectFieldAccessor(gateway).getPropertyValue("pendingReplies")).size());
+		done.set(true);
+		ccf.stop();
+	}
+
+	@Test
+	public void testCorrelatedRequestsFailWhenConnectionCloses() throws Exception {
+		final int port = SocketTestUtils.findAvailableServerSocket();
+		final CountDownLatch latch = new CountDownLatch(1);
+		Executors.newSingleThreadExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port, 10);
+					latch.countDown();
+					Socket socket = server.accept();
+					for (int i = 0; i < 2; i++) {
+						new ObjectInputStream(socket.getInputStream()).readObject();
+					}
+					socket.close();
+					server.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		AbstractConnectionFactory ccf = new TcpNetClientConnectionFactory("localhost", port);
+		ccf.setSerializer(new DefaultSerializer());
+		ccf.setDeserializer(new DefaultDeserializer());
+		ccf.setSoTimeout(10000);
+		ccf.setSingleUse(false);
+		ccf.start();
+		assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+		final TcpOutboundGateway gateway = createCorrelatingGateway(ccf, 2);
+		gateway.setReplyTimeout(60000);
+		Map<String, Future<Message<?>>> results = sendConcurrently(gateway, 2, 0);
+		for (Future<Message<?>> result : results.values()) {
+			try {
+				result.get(10, TimeUnit.SECONDS);
+				fail("Expected ExecutionException");
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof MessagingException);
+				assertTrue(e.getCause().getMessage().startsWith("Connection closed"));
+			}
+		}
+		ccf.stop();
+	}
+
+	/**
+	 * Compares one request at a time with 32 requests in flight on a single
+	 * shared connection, against a server that replies after a simulated latency.
+	 */
+	@Test
+	@Ignore
+	public void benchmarkCorrelatedMultiplex() throws Exception {
+		for (int latency : new int[] {1, 10}) {
+			int requests = 10000 / latency;
+			long sequential = runBenchmark(latency, requests, 1);
+			long multiplexed = runBenchmark(latency, requests, 32);
+			System.out.println(requests + " requests with " + latency + "ms latency: one in flight " + sequential
+					+ "ms, 32 in flight " + multiplexed + "ms (" + (sequential / Math.max(1, multiplexed)) + "x)");
+		}
+	}
+
+	private long runBenchmark(final int latency, int requests, int inFlight) throws Exception {
+		final int port = SocketTestUtils.findAvailableServerSocket();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicBoolean done = new AtomicBoolean();
+		final ScheduledExecutorService replier = Executors.newScheduledThreadPool(4);
+		Executors.newSingleThreadExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port, 10);
+					latch.countDown();
+					Socket socket = server.accept();
+					socket.setTcpNoDelay(true);
+					server.close();
+					final OutputStream outputStream = socket.getOutputStream();
+					while (true) {
+						final String request = (String) new ObjectInputStream(socket.getInputStream()).readObject();
+						replier.schedule(new Runnable() {
+							public void run() {
+								try {
+									synchronized (outputStream) {
+										new ObjectOutputStream(outputStream).writeObject(request.replace("Test", "Reply"));
+									}
+								}
+								catch (Exception e) {
+									if (!done.get()) {
+										e.printStackTrace();
+									}
+								}
+							}
+						}, latency, TimeUnit.MILLISECONDS);
+					}
+				} catch (Exception e) {
+					if (!done.get()) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+		AbstractConnectionFactory ccf = new TcpNetClientConnectionFactory("localhost", port);
+		ccf.setSerializer(new DefaultSerializer());
+		ccf.setDeserializer(new DefaultDeserializer());
+		ccf.setSoTimeout(60000);
+		ccf.setSingleUse(false);
+		ccf.setSoTcpNoDelay(true);
+		ccf.start();
+		assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+		TcpOutboundGateway gateway = createCorrelatingGateway(ccf, inFlight);
+		long start = System.currentTimeMillis();
+		Map<String, Future<Message<?>>> results = sendConcurrently(gateway, requests, inFlight);
+		for (Future<Message<?>> result : results.values()) {
+			assertNotNull(result.get(60, TimeUnit.SECONDS));
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		done.set(true);
+		ccf.stop();
+		replier.shutdown();
+		return elapsed;
+	}
+
+	private TcpOutboundGateway createCorrelatingGateway(AbstractConnectionFactory ccf, int maxInFlight) {
+		TcpOutboundGateway gateway = new TcpOutboundGateway();
+		gateway.setConnectionFactory(ccf);
+		gateway.setCorrelationStrategy(new ExpressionEvaluatingCorrelationStrategy(
+				"payload.substring(0, payload.indexOf(':'))"));
+		gateway.setMaxInFlight(maxInFlight);
+		gateway.setRequiresReply(true);
+		gateway.setOutputChannel(new QueueChannel());
+		return gateway;
+	}
+
+	/**
+	 * Sends 'count' requests "n:Test" on 'threads' threads (one per request if 0),
+	 * returning the replies keyed by request payload.
+	 */
+	private Map<String, Future<Message<?>>> sendConcurrently(final TcpOutboundGateway gateway, int count,
+			int threads) {
+		ExecutorService executor = threads > 0 ? Executors.newFixedThreadPool(threads)
+				: Executors.newFixedThreadPool(count);
+		Map<String, Future<Message<?>>> results = new LinkedHashMap<String, Future<Message<?>>>();
+		for (int i = 0; i < count; i++) {
+			final String payload = i + ":Test";
+			results.put(payload, executor.submit(new Callable<Message<?>>() {
+				public Message<?> call() throws Exception {
+					return (Message<?>) gateway.handleRequestMessage(MessageBuilder.withPayload(payload).build());
+				}
+			}));
+		}
+		executor.shutdown();
+		return results;
+	}
 
 }
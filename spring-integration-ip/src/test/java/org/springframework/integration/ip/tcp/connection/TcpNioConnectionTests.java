@@ -17,6 +17,8 @@
 package org.springframework.integration.ip.tcp.connection;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doAnswer;
@@ -25,9 +27,11 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
@@ -36,6 +40,8 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -49,13 +55,16 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ServerSocketFactory;
+import javax.net.SocketFactory;
 
+import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.springframework.integration.Message;
 import org.springframework.integration.ip.tcp.serializer.ByteArrayCrLfSerializer;
+import org.springframework.integration.ip.tcp.serializer.ByteArrayLengthHeaderSerializer;
 import org.springframework.integration.ip.util.SocketTestUtils;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.test.util.TestUtils;
@@ -347,6 +356,285 @@ public class TcpNioConnectionTests {
 		assertTrue(messageLatch.await(10, TimeUnit.SECONDS));
 	}
 
+	@Test
+	public void testFramesAcrossReads() throws Exception {
+		SocketChannel channel = mock(SocketChannel.class);
+		Socket socket = mock(Socket.class);
+		Mockito.when(channel.socket()).thenReturn(socket);
+		final List<String> chunks = new ArrayList<String>();
+		chunks.add("foo\r\nba");
+		chunks.add("r\r");
+		chunks.add("\nbaz\r\n");
+		doAnswer(new Answer<Integer>() {
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				if (chunks.isEmpty()) {
+					return -1;
+				}
+				ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+				byte[] bytes = chunks.remove(0).getBytes();
+				buffer.put(bytes);
+				return bytes.length;
+			}
+		}).when(channel).read(Mockito.any(ByteBuffer.class));
+		final TcpNioConnection connection = new TcpNioConnection(channel, false, false);
+		final List<Object> payloads = new ArrayList<Object>();
+		connection.registerListener(new TcpListener() {
+			public boolean onMessage(Message<?> message) {
+				payloads.add(new String((byte[]) message.getPayload()));
+				return false;
+			}
+		});
+		connection.setMapper(new TcpMessageMapper());
+		final List<Integer> scans = new ArrayList<Integer>();
+		connection.setDeserializer(new ByteArrayCrLfSerializer() {
+
+			@Override
+			public byte[] deserialize(ByteBuffer buffer, int scanned) throws IOException {
+				scans.add(scanned);
+				return super.deserialize(buffer, scanned);
+			}
+		});
+		ByteBufferPool pool = new ByteBufferPool();
+		connection.setBufferPool(pool);
+		final Method doRead = ReflectionUtils.findMethod(TcpNioConnection.class, "doRead");
+		ReflectionUtils.makeAccessible(doRead);
+		doRead.invoke(connection);
+		assertEquals(1, payloads.size());
+		assertEquals(0, pool.size());
+		doRead.invoke(connection);
+		assertEquals(1, payloads.size());
+		doRead.invoke(connection);
+		assertEquals(3, payloads.size());
+		assertEquals("foo", payloads.get(0));
+		assertEquals("bar", payloads.get(1));
+		assertEquals("baz", payloads.get(2));
+		// a partial frame is not scanned again when more data arrives
+		assertEquals(Arrays.asList(0, 0, 2, 4, 0), scans);
+		assertEquals(1, pool.size());
+		assertNull(TestUtils.getPropertyValue(connection, "rawBuffer"));
+		// no pipe or assembler thread is needed when framing buffers
+		assertNull(TestUtils.getPropertyValue(connection, "pipedInputStream"));
+		assertNull(TestUtils.getPropertyValue(connection, "taskExecutor"));
+		doRead.invoke(connection);
+		assertEquals(3, payloads.size());
+	}
+
+	/**
+	 * A subclass that changes the header overrides both readHeader methods; the
+	 * connection frames from its buffers, since the deserializer is a ByteBufferDeserializer.
+	 */
+	@Test
+	public void testHeaderOverrideUsedForBuffers() throws Exception {
+		SocketChannel channel = mock(SocketChannel.class);
+		Socket socket = mock(Socket.class);
+		Mockito.when(channel.socket()).thenReturn(socket);
+		// the header counts its own 4 bytes
+		final List<byte[]> chunks = new ArrayList<byte[]>();
+		ByteBuffer frame = ByteBuffer.allocate(7);
+		frame.putInt(7);
+		frame.put("foo".getBytes());
+		chunks.add(frame.array());
+		doAnswer(new Answer<Integer>() {
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				if (chunks.isEmpty()) {
+					return -1;
+				}
+				ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+				byte[] bytes = chunks.remove(0);
+				buffer.put(bytes);
+				return bytes.length;
+			}
+		}).when(channel).read(Mockito.any(ByteBuffer.class));
+		TcpNioConnection connection = new TcpNioConnection(channel, false, false);
+		final List<Object> payloads = Collections.synchronizedList(new ArrayList<Object>());
+		final CountDownLatch latch = new CountDownLatch(1);
+		connection.registerListener(new TcpListener() {
+			public boolean onMessage(Message<?> message) {
+				payloads.add(new String((byte[]) message.getPayload()));
+				latch.countDown();
+				return false;
+			}
+		});
+		connection.setMapper(new TcpMessageMapper());
+		connection.setDeserializer(new ByteArrayLengthHeaderSerializer() {
+
+			@Override
+			protected int readHeader(InputStream inputStream) throws IOException {
+				return super.readHeader(inputStream) - 4;
+			}
+
+			@Override
+			protected int readHeader(ByteBuffer buffer) {
+				return super.readHeader(buffer) - 4;
+			}
+
+			@Override
+			protected void writeHeader(OutputStream outputStream, int length) throws IOException {
+				super.writeHeader(outputStream, length + 4);
+			}
+		});
+		connection.setBufferPool(new ByteBufferPool());
+		ExecutorService executor = Executors.newCachedThreadPool();
+		connection.setTaskExecutor(executor);
+		Method doRead = ReflectionUtils.findMethod(TcpNioConnection.class, "doRead");
+		ReflectionUtils.makeAccessible(doRead);
+		doRead.invoke(connection);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals("foo", payloads.get(0));
+		assertNull(TestUtils.getPropertyValue(connection, "pipedInputStream"));
+		connection.close();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConnectionsSpreadAcrossSelectors() throws Exception {
+		int port = SocketTestUtils.findAvailableServerSocket();
+		TcpNioServerConnectionFactory factory = new TcpNioServerConnectionFactory(port);
+		factory.setSelectorCount(2);
+		factory.setWorkerPoolSize(2);
+		final List<String> threadNames = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch latch = new CountDownLatch(4);
+		factory.registerListener(new TcpListener() {
+			public boolean onMessage(Message<?> message) {
+				threadNames.add(Thread.currentThread().getName());
+				latch.countDown();
+				return false;
+			}
+		});
+		factory.start();
+		SocketTestUtils.waitListening(factory);
+		List<Socket> sockets = new ArrayList<Socket>();
+		for (int i = 0; i < 4; i++) {
+			Socket socket = SocketFactory.getDefault().createSocket("localhost", port);
+			socket.getOutputStream().write("foo\r\n".getBytes());
+			sockets.add(socket);
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Object[] ioSelectors = (Object[]) TestUtils.getPropertyValue(factory, "ioSelectors");
+		assertEquals(2, ioSelectors.length);
+		for (Object ioSelector : ioSelectors) {
+			assertEquals(2, ((Selector) TestUtils.getPropertyValue(ioSelector, "selector")).keys().size());
+			assertEquals(2, ((Map<?, ?>) TestUtils.getPropertyValue(ioSelector, "connections")).size());
+		}
+		assertEquals(4, factory.getConnections().size());
+		// messages are dispatched on the bounded worker pool
+		assertTrue(new HashSet<String>(threadNames).size() <= 2);
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		// each selector removes its own connections once they are closed
+		int n = 0;
+		while (factory.getConnections().size() > 0 && n++ < 100) {
+			Thread.sleep(100);
+		}
+		assertEquals(0, factory.getConnections().size());
+		factory.stop();
+	}
+
+	@Test
+	public void testSelectorsNotStarvedBySmallTaskExecutor() throws Exception {
+		int port = SocketTestUtils.findAvailableServerSocket();
+		TcpNioServerConnectionFactory factory = new TcpNioServerConnectionFactory(port);
+		factory.setSelectorCount(4);
+		// one thread for the acceptor, one for reads
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		factory.setTaskExecutor(executor);
+		final CountDownLatch latch = new CountDownLatch(4);
+		factory.registerListener(new TcpListener() {
+			public boolean onMessage(Message<?> message) {
+				latch.countDown();
+				return false;
+			}
+		});
+		factory.start();
+		SocketTestUtils.waitListening(factory);
+		List<Socket> sockets = new ArrayList<Socket>();
+		for (int i = 0; i < 4; i++) {
+			Socket socket = SocketFactory.getDefault().createSocket("localhost", port);
+			socket.getOutputStream().write("foo\r\n".getBytes());
+			sockets.add(socket);
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		factory.stop();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Measures the message throughput of a server with a large number of
+	 * concurrent loopback connections. Requires a file descriptor limit of
+	 * more than twice the number of connections.
+	 */
+	@Test
+	@Ignore
+	public void benchmarkManyConnections() throws Exception {
+		int connections = 10000;
+		int messagesPerConnection = 20;
+		for (int i = 0; i < 2; i++) {
+			runManyConnectionsBenchmark(1, connections, messagesPerConnection);
+			runManyConnectionsBenchmark(Runtime.getRuntime().availableProcessors(), connections,
+					messagesPerConnection);
+		}
+	}
+
+	private void runManyConnectionsBenchmark(int selectorCount, int connections, int messagesPerConnection)
+			throws Exception {
+		int port = SocketTestUtils.findAvailableServerSocket();
+		TcpNioServerConnectionFactory factory = new TcpNioServerConnectionFactory(port);
+		factory.setSelectorCount(selectorCount);
+		factory.setBacklog(1000);
+		final CountDownLatch latch = new CountDownLatch(connections * messagesPerConnection);
+		factory.registerListener(new TcpListener() {
+			public boolean onMessage(Message<?> message) {
+				latch.countDown();
+				return false;
+			}
+		});
+		factory.start();
+		SocketTestUtils.waitListening(factory);
+		final List<SocketChannel> channels = new ArrayList<SocketChannel>();
+		for (int i = 0; i < connections; i++) {
+			channels.add(SocketChannel.open(new InetSocketAddress("localhost", port)));
+		}
+		final byte[] message = "0123456789012345678901234567890123456789012345678901234567890\r\n".getBytes();
+		int senders = 4;
+		ExecutorService exec = Executors.newFixedThreadPool(senders);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < senders; i++) {
+			final int sender = i;
+			final int senderCount = senders;
+			final int count = messagesPerConnection;
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						for (int n = 0; n < count; n++) {
+							for (int c = sender; c < channels.size(); c += senderCount) {
+								ByteBuffer buffer = ByteBuffer.wrap(message);
+								while (buffer.hasRemaining()) {
+									channels.get(c).write(buffer);
+								}
+							}
+						}
+					}
+					catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+		assertTrue(latch.await(300, TimeUnit.SECONDS));
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(connections + " connections, " + selectorCount + " selector(s): "
+				+ (connections * messagesPerConnection * 1000L / elapsed) + " messages/s");
+		exec.shutdown();
+		for (SocketChannel channel : channels) {
+			channel.close();
+		}
+		factory.stop();
+	}
+
 	private void readFully(InputStream is, byte[] buff) throws IOException {
 		for (int i = 0; i < buff.length; i++) {
 			buff[i] = (byte) is.read();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,18 +17,32 @@
 package org.springframework.integration.ip.tcp.serializer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import javax.net.ServerSocketFactory;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 import org.springframework.core.serializer.DefaultDeserializer;
 import org.springframework.integration.ip.util.SocketTestUtils;
+import org.springframework.integration.mapping.MessageMappingException;
+import org.springframework.integration.test.util.TestUtils;
 
 /**
  * @author Gary Russell
@@ -228,4 +242,313 @@ public class DeserializationTests {
 		server.close();
 	}
 
+	@Test
+	public void testBufferCrLf() throws Exception {
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		ByteBuffer buffer = ByteBuffer.wrap("foo\r\nbar\r\nba".getBytes());
+		assertEquals("foo", new String(serializer.deserialize(buffer, 0)));
+		assertEquals("bar", new String(serializer.deserialize(buffer, 0)));
+		assertNull(serializer.deserialize(buffer, 0));
+		assertEquals(10, buffer.position());
+		try {
+			serializer.deserializeFinal(buffer);
+			fail("Expected exception");
+		}
+		catch (IOException e) {
+			assertEquals("Socket closed during message assembly", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testBufferCrLfSplitDelimiter() throws Exception {
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		buffer.put("foo\r".getBytes());
+		buffer.flip();
+		assertNull(serializer.deserialize(buffer, 0));
+		int scanned = buffer.remaining();
+		buffer.compact();
+		buffer.put("\n".getBytes());
+		buffer.flip();
+		// resumes at the CR
+		assertEquals("foo", new String(serializer.deserialize(buffer, scanned)));
+		assertFalse(buffer.hasRemaining());
+		assertNull(serializer.deserializeFinal(buffer));
+	}
+
+	@Test
+	public void testBufferStxEtx() throws Exception {
+		ByteArrayStxEtxSerializer serializer = new ByteArrayStxEtxSerializer();
+		ByteBuffer buffer = ByteBuffer.wrap("\u0002foo\u0003\u0002bar\u0003\u0002b".getBytes());
+		assertEquals("foo", new String(serializer.deserialize(buffer, 0)));
+		assertEquals("bar", new String(serializer.deserialize(buffer, 0)));
+		assertNull(serializer.deserialize(buffer, 0));
+		assertEquals(10, buffer.position());
+		buffer = ByteBuffer.allocate(16);
+		buffer.put("\u0002fo".getBytes());
+		buffer.flip();
+		assertNull(serializer.deserialize(buffer, 0));
+		int scanned = buffer.remaining();
+		buffer.compact();
+		buffer.put("o\u0003".getBytes());
+		buffer.flip();
+		assertEquals("foo", new String(serializer.deserialize(buffer, scanned)));
+		buffer = ByteBuffer.wrap("foo".getBytes());
+		try {
+			serializer.deserialize(buffer, 0);
+			fail("Expected exception");
+		}
+		catch (MessageMappingException e) {
+			assertEquals("Expected STX to begin message", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testBufferLengthHeader() throws Exception {
+		for (int headerSize : new int[] {ByteArrayLengthHeaderSerializer.HEADER_SIZE_INT,
+				ByteArrayLengthHeaderSerializer.HEADER_SIZE_UNSIGNED_SHORT,
+				ByteArrayLengthHeaderSerializer.HEADER_SIZE_UNSIGNED_BYTE}) {
+			ByteArrayLengthHeaderSerializer serializer = new ByteArrayLengthHeaderSerializer(headerSize);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			serializer.serialize("foo".getBytes(), out);
+			serializer.serialize("barbaz".getBytes(), out);
+			byte[] bytes = out.toByteArray();
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, headerSize + 2);
+			assertNull(serializer.deserialize(buffer, 0));
+			assertEquals(0, buffer.position());
+			buffer.limit(bytes.length - 1);
+			assertEquals("foo", new String(serializer.deserialize(buffer, 0)));
+			assertNull(serializer.deserialize(buffer, 0));
+			buffer.limit(bytes.length);
+			assertEquals("barbaz", new String(serializer.deserialize(buffer, 0)));
+			assertFalse(buffer.hasRemaining());
+		}
+	}
+
+	@Test
+	public void testBufferLengthOverflow() throws Exception {
+		ByteArrayLengthHeaderSerializer serializer = new ByteArrayLengthHeaderSerializer();
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.putInt(2049);
+		buffer.flip();
+		try {
+			serializer.deserialize(buffer, 0);
+			fail("Expected message length exceeded exception");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Message length"));
+		}
+	}
+
+	@Test
+	public void testBufferCrLfOverflow() throws Exception {
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		serializer.setMaxMessageSize(1024);
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		try {
+			serializer.deserialize(buffer, 0);
+			fail("Expected message length exceeded exception");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("CRLF not found"));
+		}
+	}
+
+	@Test
+	public void testBufferRaw() throws Exception {
+		ByteArrayRawSerializer serializer = new ByteArrayRawSerializer();
+		ByteBuffer buffer = ByteBuffer.wrap("foo\r\nbar".getBytes());
+		assertNull(serializer.deserialize(buffer, 0));
+		assertEquals("foo\r\nbar", new String(serializer.deserializeFinal(buffer)));
+		assertNull(serializer.deserializeFinal(buffer));
+	}
+
+	@Test
+	public void testReadCrLfBuffered() throws Exception {
+		int port = SocketTestUtils.findAvailableServerSocket();
+		ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port);
+		server.setSoTimeout(10000);
+		SocketTestUtils.testSendCrLf(port, null);
+		Socket socket = server.accept();
+		socket.setSoTimeout(5000);
+		InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		byte[] out = serializer.deserialize(inputStream);
+		assertEquals("Data", SocketTestUtils.TEST_STRING + SocketTestUtils.TEST_STRING,
+								 new String(out));
+		out = serializer.deserialize(inputStream);
+		assertEquals("Data", SocketTestUtils.TEST_STRING + SocketTestUtils.TEST_STRING,
+				 new String(out));
+		server.close();
+	}
+
+	@Test
+	public void testReadStxEtxBuffered() throws Exception {
+		int port = SocketTestUtils.findAvailableServerSocket();
+		ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port);
+		server.setSoTimeout(10000);
+		SocketTestUtils.testSendStxEtx(port, null);
+		Socket socket = server.accept();
+		socket.setSoTimeout(5000);
+		InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+		ByteArrayStxEtxSerializer serializer = new ByteArrayStxEtxSerializer();
+		byte[] out = serializer.deserialize(inputStream);
+		assertEquals("Data", SocketTestUtils.TEST_STRING + SocketTestUtils.TEST_STRING,
+								 new String(out));
+		out = serializer.deserialize(inputStream);
+		assertEquals("Data", SocketTestUtils.TEST_STRING + SocketTestUtils.TEST_STRING,
+				 new String(out));
+		server.close();
+	}
+
+	@Test
+	public void testReadCrLfOverflowBuffered() throws Exception {
+		int port = SocketTestUtils.findAvailableServerSocket();
+		ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port);
+		server.setSoTimeout(10000);
+		SocketTestUtils.testSendCrLfOverflow(port);
+		Socket socket = server.accept();
+		socket.setSoTimeout(5000);
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		serializer.setMaxMessageSize(1024);
+		try {
+			serializer.deserialize(new BufferedInputStream(socket.getInputStream()));
+			fail("Expected message length exceeded exception");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("CRLF not found"));
+		}
+		server.close();
+	}
+
+	@Test
+	public void testStreamFramesInOneChunk() throws Exception {
+		ByteArrayCrLfSerializer crLf = new ByteArrayCrLfSerializer();
+		InputStream inputStream = new ByteArrayInputStream("foo\r\n\r\nbar\r\n".getBytes());
+		assertEquals("foo", new String(crLf.deserialize(inputStream)));
+		assertEquals("", new String(crLf.deserialize(inputStream)));
+		assertEquals("bar", new String(crLf.deserialize(inputStream)));
+		try {
+			crLf.deserialize(inputStream);
+			fail("Expected SoftEndOfStreamException");
+		}
+		catch (SoftEndOfStreamException e) {
+		}
+		ByteArrayStxEtxSerializer stxEtx = new ByteArrayStxEtxSerializer();
+		inputStream = new ByteArrayInputStream("\u0002foo\u0003\u0002bar\u0003\u0002ba".getBytes());
+		assertEquals("foo", new String(stxEtx.deserialize(inputStream)));
+		assertEquals("bar", new String(stxEtx.deserialize(inputStream)));
+		try {
+			stxEtx.deserialize(inputStream);
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			assertEquals("Socket closed during message assembly", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testScratchBufferHeldByStream() throws Exception {
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		ScratchBufferedInputStream inputStream = new ScratchBufferedInputStream(
+				new ByteArrayInputStream("foo\r\nbar\r\n".getBytes()));
+		assertEquals("foo", new String(serializer.deserialize(inputStream)));
+		Object scratchBuffer = TestUtils.getPropertyValue(inputStream, "scratchBuffer");
+		assertEquals(serializer.getMaxMessageSize(), ((byte[]) scratchBuffer).length);
+		assertEquals("bar", new String(serializer.deserialize(inputStream)));
+		assertSame(scratchBuffer, TestUtils.getPropertyValue(inputStream, "scratchBuffer"));
+		inputStream.close();
+		assertNull(TestUtils.getPropertyValue(inputStream, "scratchBuffer"));
+	}
+
+	@Test
+	public void testStreamMaxMessageSize() throws Exception {
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		serializer.setMaxMessageSize(5);
+		InputStream inputStream = new ByteArrayInputStream("abc\r\nabcd\r\n".getBytes());
+		assertEquals("abc", new String(serializer.deserialize(inputStream)));
+		try {
+			serializer.deserialize(inputStream);
+			fail("Expected message length exceeded exception");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("CRLF not found"));
+		}
+		// the same limits apply when reading a byte at a time
+		inputStream = new NoMarkInputStream(new ByteArrayInputStream("abc\r\nabcd\r\n".getBytes()));
+		assertEquals("abc", new String(serializer.deserialize(inputStream)));
+		try {
+			serializer.deserialize(inputStream);
+			fail("Expected message length exceeded exception");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("CRLF not found"));
+		}
+	}
+
+	/**
+	 * Compares reading from a buffered, markable stream (such as the one used
+	 * by TcpNetConnection) with one that does not support mark, for each framing.
+	 */
+	@Test
+	@Ignore
+	public void benchmarkFramings() throws Exception {
+		int[] sizes = new int[] {64, 1024, 64 * 1024};
+		AbstractByteArraySerializer[] serializers = new AbstractByteArraySerializer[] {
+				new ByteArrayCrLfSerializer(), new ByteArrayStxEtxSerializer(),
+				new ByteArrayLengthHeaderSerializer(), new ByteArrayRawSerializer() };
+		for (AbstractByteArraySerializer serializer : serializers) {
+			for (int size : sizes) {
+				serializer.setMaxMessageSize(size + 2);
+				byte[] payload = new byte[size];
+				Arrays.fill(payload, (byte) 'x');
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				int count = serializer instanceof ByteArrayRawSerializer ? 1 : Math.max(1, 8 * 1024 * 1024 / size);
+				for (int i = 0; i < count; i++) {
+					serializer.serialize(payload, out);
+				}
+				byte[] data = out.toByteArray();
+				for (int i = 0; i < 5; i++) {
+					runBenchmark(serializer, data, count, true, i == 4);
+					runBenchmark(serializer, data, count, false, i == 4);
+				}
+			}
+		}
+	}
+
+	private void runBenchmark(AbstractByteArraySerializer serializer, byte[] data, int count,
+			boolean buffered, boolean report) throws IOException {
+		int iterations = serializer instanceof ByteArrayRawSerializer ? 2000 : 1;
+		long start = System.nanoTime();
+		for (int n = 0; n < iterations; n++) {
+			InputStream inputStream = new ScratchBufferedInputStream(new ByteArrayInputStream(data));
+			if (!buffered) {
+				inputStream = new NoMarkInputStream(inputStream);
+			}
+			for (int i = 0; i < count; i++) {
+				serializer.deserialize(inputStream);
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if (report) {
+			System.out.println(serializer.getClass().getSimpleName() + " " + (serializer.getMaxMessageSize() - 2)
+					+ " bytes, " + (buffered ? "mark supported" : "mark not supported") + ": "
+					+ (elapsed / (count * iterations)) + "ns/message, "
+					+ (data.length * iterations * 1000L / elapsed) + "MB/s");
+		}
+	}
+
+	private static class NoMarkInputStream extends FilterInputStream {
+
+		public NoMarkInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -32,6 +32,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.integration.ip.AbstractInternetProtocolReceivingChannelAdapter;
+import org.springframework.integration.ip.tcp.connection.AbstractServerConnectionFactory;
 
 /**
  * TCP/IP Test utilities.
@@ -385,6 +386,16 @@ public class SocketTestUtils {
 		}
 		
 	}
+
+	public static void waitListening(AbstractServerConnectionFactory serverConnectionFactory) throws Exception {
+		int n = 0;
+		while (!serverConnectionFactory.isListening()) {
+			Thread.sleep(100);
+			if (n++ > 100) {
+				throw new Exception("Connection factory failed to listen");
+			}
+		}
+	}
 	
 
 
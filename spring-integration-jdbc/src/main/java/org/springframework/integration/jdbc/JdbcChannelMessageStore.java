@@ -0,0 +1,536 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.integration.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.integration.Message;
+import org.springframework.integration.jdbc.channel.ChannelMessageStoreQueryProvider;
+import org.springframework.integration.store.AbstractMessageGroupStore;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.util.UUIDConverter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcAccessor;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A message group store for the {@link org.springframework.integration.store.MessageGroupQueue} of a persistent
+ * {@link org.springframework.integration.channel.QueueChannel}, using a relational database via JDBC. Unlike the
+ * {@link JdbcMessageStore}, which keeps Messages and groups in separate tables, each Message is a single row of the
+ * <code>INT_CHANNEL_MESSAGE</code> table, ordered by a sequence column and indexed on (group, region, sequence).
+ * Polling a Message selects the first row of the group with the query of the configured
+ * {@link ChannelMessageStoreQueryProvider} and deletes it, in one transaction. On databases that support
+ * <code>SKIP LOCKED</code> the selected row stays locked until that transaction ends, so that pollers on several
+ * threads or nodes dequeue different Messages in parallel; where two pollers still select the same Message, only the
+ * one that deletes it returns it, and the other selects again. If the poll runs in a transaction already (such as that
+ * of a transactional poller on the same {@link DataSource}), it joins it, and the Message is only removed when that
+ * transaction commits.
+ * <p>
+ * SQL scripts to create the table are packaged with those of the {@link JdbcMessageStore} as
+ * <code>org/springframework/integration/jdbc/schema-*.sql</code>. The store does not support the group operations
+ * that aggregators need, such as completing or expiring a group.
+ *
+ * @since 2.2
+ */
+@ManagedResource
+public class JdbcChannelMessageStore extends AbstractMessageGroupStore implements InitializingBean {
+
+	private static final Log logger = LogFactory.getLog(JdbcChannelMessageStore.class);
+
+	/**
+	 * Default value for the table prefix property.
+	 */
+	public static final String DEFAULT_TABLE_PREFIX = "INT_";
+
+	private static final String CREATE_MESSAGE = "INSERT into %PREFIX%CHANNEL_MESSAGE" +
+			"(MESSAGE_ID, GROUP_KEY, REGION, MESSAGE_SEQUENCE, CREATED_DATE, MESSAGE_BYTES) values (?, ?, ?, ?, ?, ?)";
+
+	private static final String DELETE_MESSAGE = "DELETE from %PREFIX%CHANNEL_MESSAGE " +
+			"where MESSAGE_ID = ? and GROUP_KEY = ? and REGION = ?";
+
+	private static final String DELETE_GROUP = "DELETE from %PREFIX%CHANNEL_MESSAGE where GROUP_KEY = ? and REGION = ?";
+
+	private static final String COUNT_MESSAGES_IN_GROUP = "SELECT COUNT(MESSAGE_ID) from %PREFIX%CHANNEL_MESSAGE " +
+			"where GROUP_KEY = ? and REGION = ?";
+
+	private static final String COUNT_ALL_MESSAGES = "SELECT COUNT(MESSAGE_ID) from %PREFIX%CHANNEL_MESSAGE where REGION = ?";
+
+	private static final String COUNT_GROUPS = "SELECT COUNT(DISTINCT GROUP_KEY) from %PREFIX%CHANNEL_MESSAGE where REGION = ?";
+
+	private static final String LIST_MESSAGES_IN_GROUP = ChannelMessageStoreQueryProvider.SELECT_COMMON;
+
+	private volatile String region = "DEFAULT";
+
+	private volatile String tablePrefix = DEFAULT_TABLE_PREFIX;
+
+	private volatile JdbcOperations jdbcTemplate;
+
+	private volatile ChannelMessageStoreQueryProvider queryProvider;
+
+	private volatile PlatformTransactionManager transactionManager;
+
+	private volatile TransactionTemplate transactionTemplate;
+
+	private volatile DeserializingConverter deserializer;
+
+	private volatile SerializingConverter serializer;
+
+	private volatile LobHandler lobHandler = new DefaultLobHandler();
+
+	private final MessageMapper mapper = new MessageMapper();
+
+	private final AtomicLong lastSequence = new AtomicLong();
+
+	/**
+	 * Convenient constructor for configuration use.
+	 */
+	public JdbcChannelMessageStore() {
+		deserializer = new DeserializingConverter();
+		serializer = new SerializingConverter();
+	}
+
+	/**
+	 * Create a store with all mandatory properties but the query provider.
+	 *
+	 * @param dataSource a {@link DataSource}
+	 */
+	public JdbcChannelMessageStore(DataSource dataSource) {
+		this();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	/**
+	 * Public setter for the table prefix property. This will be prefixed to all the table names before queries are
+	 * executed. Defaults to {@link #DEFAULT_TABLE_PREFIX}.
+	 *
+	 * @param tablePrefix the tablePrefix to set
+	 */
+	public void setTablePrefix(String tablePrefix) {
+		this.tablePrefix = tablePrefix;
+	}
+
+	/**
+	 * A unique grouping identifier for all messages persisted with this store. Using multiple regions allows the store
+	 * to be partitioned (if necessary) for different purposes. Defaults to <code>DEFAULT</code>.
+	 *
+	 * @param region the region name to set
+	 */
+	public void setRegion(String region) {
+		Assert.hasText(region, "'region' must not be empty");
+		this.region = region;
+	}
+
+	/**
+	 * The JDBC {@link DataSource} to use when interacting with the database. Either this property can be set or the
+	 * {@link #setJdbcTemplate(JdbcOperations) jdbcTemplate}.
+	 *
+	 * @param dataSource a {@link DataSource}
+	 */
+	public void setDataSource(DataSource dataSource) {
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	/**
+	 * The {@link JdbcOperations} to use when interacting with the database. Either this property can be set or the
+	 * {@link #setDataSource(DataSource) dataSource}.
+	 *
+	 * @param jdbcTemplate a {@link JdbcOperations}
+	 */
+	public void setJdbcTemplate(JdbcOperations jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * The {@link ChannelMessageStoreQueryProvider} for the target database, e.g. a
+	 * {@link org.springframework.integration.jdbc.channel.PostgresChannelMessageStoreQueryProvider}. Required.
+	 *
+	 * @param queryProvider the query provider
+	 */
+	public void setQueryProvider(ChannelMessageStoreQueryProvider queryProvider) {
+		this.queryProvider = queryProvider;
+	}
+
+	/**
+	 * The {@link PlatformTransactionManager} of the transaction in which a Message is selected and deleted when it is
+	 * polled. Defaults to a {@link DataSourceTransactionManager} for the data source of the {@link JdbcTemplate}; it
+	 * must be provided if the {@link #setJdbcTemplate(JdbcOperations) jdbcTemplate} is not a {@link JdbcTemplate}.
+	 *
+	 * @param transactionManager the transaction manager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+		this.transactionTemplate = null;
+	}
+
+	/**
+	 * Override the {@link LobHandler} that is used to create and unpack large objects in SQL queries. The default is
+	 * fine for almost all platforms, but some Oracle drivers require a native implementation.
+	 *
+	 * @param lobHandler a {@link LobHandler}
+	 */
+	public void setLobHandler(LobHandler lobHandler) {
+		this.lobHandler = lobHandler;
+	}
+
+	/**
+	 * A converter for serializing messages to byte arrays for storage.
+	 *
+	 * @param serializer the serializer to set
+	 */
+	@SuppressWarnings("unchecked")
+	public void setSerializer(Serializer<? super Message<?>> serializer) {
+		this.serializer = new SerializingConverter((Serializer<Object>) serializer);
+	}
+
+	/**
+	 * A converter for deserializing byte arrays to messages.
+	 *
+	 * @param deserializer the deserializer to set
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void setDeserializer(Deserializer<? extends Message<?>> deserializer) {
+		this.deserializer = new DeserializingConverter((Deserializer) deserializer);
+	}
+
+	/**
+	 * Check mandatory properties (data source and query provider).
+	 *
+	 * @throws Exception
+	 */
+	public void afterPropertiesSet() throws Exception {
+		Assert.state(jdbcTemplate != null, "A DataSource or JdbcTemplate must be provided");
+		Assert.state(queryProvider != null, "A ChannelMessageStoreQueryProvider must be provided");
+		this.getTransactionTemplate();
+	}
+
+	public MessageGroup addMessageToGroup(Object groupId, final Message<?> message) {
+		final String groupKey = getKey(groupId);
+		final String messageId = getKey(message.getHeaders().getId());
+		final long sequence = this.nextSequence();
+		final byte[] messageBytes = serializer.convert(message);
+
+		jdbcTemplate.update(getQuery(CREATE_MESSAGE), new PreparedStatementSetter() {
+			public void setValues(PreparedStatement ps) throws SQLException {
+				if (logger.isDebugEnabled()){
+					logger.debug("Inserting message with id key=" + messageId + " into group with key=" + groupKey);
+				}
+				ps.setString(1, messageId);
+				ps.setString(2, groupKey);
+				ps.setString(3, region);
+				ps.setLong(4, sequence);
+				ps.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+				lobHandler.getLobCreator().setBlobAsBytes(ps, 6, messageBytes);
+			}
+		});
+		return new ChannelMessageGroup(groupId, groupKey);
+	}
+
+	/**
+	 * Selects and deletes the first Message of the group in one transaction, so that a row locked by the query of the
+	 * {@link ChannelMessageStoreQueryProvider} stays locked until it is deleted. If the Message was deleted by another
+	 * poller in the meantime, the next one is selected in a new transaction, so that no row lock is held while waiting
+	 * for another.
+	 */
+	public Message<?> pollMessageFromGroup(Object groupId) {
+		PollCallback callback = new PollCallback(getKey(groupId));
+		Message<?> message;
+		do {
+			message = this.getTransactionTemplate().execute(callback);
+		}
+		while (callback.polledConcurrently);
+		return message;
+	}
+
+	public MessageGroup removeMessageFromGroup(Object groupId, Message<?> messageToRemove) {
+		String groupKey = getKey(groupId);
+		this.doRemoveMessage(groupKey, messageToRemove);
+		return new ChannelMessageGroup(groupId, groupKey);
+	}
+
+	public void removeMessageGroup(Object groupId) {
+		jdbcTemplate.update(getQuery(DELETE_GROUP), getKey(groupId), region);
+	}
+
+	/**
+	 * Returns a view of the group that counts and reads its Messages when it is asked for them.
+	 */
+	public MessageGroup getMessageGroup(Object groupId) {
+		return new ChannelMessageGroup(groupId, getKey(groupId));
+	}
+
+	@ManagedAttribute
+	public int messageGroupSize(Object groupId) {
+		return jdbcTemplate.queryForInt(getQuery(COUNT_MESSAGES_IN_GROUP), getKey(groupId), region);
+	}
+
+	@Override
+	@ManagedAttribute
+	public int getMessageCountForAllMessageGroups() {
+		return jdbcTemplate.queryForInt(getQuery(COUNT_ALL_MESSAGES), region);
+	}
+
+	@Override
+	@ManagedAttribute
+	public int getMessageGroupCount() {
+		return jdbcTemplate.queryForInt(getQuery(COUNT_GROUPS), region);
+	}
+
+	/**
+	 * Not supported; the ids of the groups in this store cannot be recovered from their keys.
+	 */
+	public Iterator<MessageGroup> iterator() {
+		throw new UnsupportedOperationException("Iterating the groups of a channel message store is not supported");
+	}
+
+	/**
+	 * Not supported; the groups of this store are channels, which are never complete.
+	 */
+	public void completeGroup(Object groupId) {
+		throw new UnsupportedOperationException("Completing a group is not supported by a channel message store");
+	}
+
+	/**
+	 * Not supported; the groups of this store are channels, which are not resequenced.
+	 */
+	public void setLastReleasedSequenceNumberForGroup(Object groupId, int sequenceNumber) {
+		throw new UnsupportedOperationException("Sequence numbers are not supported by a channel message store");
+	}
+
+	/**
+	 * Replace patterns in the input to produce a valid SQL query. This implementation replaces the table prefix.
+	 *
+	 * @param base the SQL query to be transformed
+	 * @return a transformed query with replacements
+	 */
+	protected String getQuery(String base) {
+		return StringUtils.replace(base, "%PREFIX%", tablePrefix);
+	}
+
+	/**
+	 * Selects the first Message of the group with the query of the {@link ChannelMessageStoreQueryProvider}, fetching
+	 * only one row so that a locking query does not lock any others.
+	 *
+	 * @param groupKey String representation of message group ID
+	 * @return could be null if query produced no Messages
+	 */
+	protected Message<?> doPollForMessage(final String groupKey) {
+		final String query = getQuery(queryProvider.getPollFromGroupQuery());
+		return jdbcTemplate.query(new PreparedStatementCreator() {
+			public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+				PreparedStatement ps = con.prepareStatement(query);
+				ps.setMaxRows(1);
+				ps.setFetchSize(1);
+				ps.setString(1, groupKey);
+				ps.setString(2, region);
+				return ps;
+			}
+		}, new ResultSetExtractor<Message<?>>() {
+			public Message<?> extractData(ResultSet rs) throws SQLException {
+				return rs.next() ? mapper.mapRow(rs, 0) : null;
+			}
+		});
+	}
+
+	private int doRemoveMessage(final String groupKey, Message<?> message) {
+		final String messageId = getKey(message.getHeaders().getId());
+		return jdbcTemplate.update(getQuery(DELETE_MESSAGE), new PreparedStatementSetter() {
+			public void setValues(PreparedStatement ps) throws SQLException {
+				if (logger.isDebugEnabled()){
+					logger.debug("Removing message with id key=" + messageId + " from group with key=" + groupKey);
+				}
+				ps.setString(1, messageId);
+				ps.setString(2, groupKey);
+				ps.setString(3, region);
+			}
+		});
+	}
+
+	private TransactionTemplate getTransactionTemplate() {
+		TransactionTemplate transactionTemplate = this.transactionTemplate;
+		if (transactionTemplate == null) {
+			PlatformTransactionManager transactionManager = this.transactionManager;
+			if (transactionManager == null) {
+				Assert.state(jdbcTemplate instanceof JdbcAccessor,
+						"A PlatformTransactionManager must be provided when the JdbcOperations is not a JdbcTemplate");
+				transactionManager = new DataSourceTransactionManager(((JdbcAccessor) jdbcTemplate).getDataSource());
+			}
+			transactionTemplate = new TransactionTemplate(transactionManager);
+			this.transactionTemplate = transactionTemplate;
+		}
+		return transactionTemplate;
+	}
+
+	/**
+	 * Returns a sequence that is at least one more than the last one returned, based on the current time in
+	 * microseconds, so that Messages keep their order within this store and roughly across stores on several nodes.
+	 */
+	private long nextSequence() {
+		long now = System.currentTimeMillis() * 1000;
+		while (true) {
+			long last = this.lastSequence.get();
+			long next = Math.max(now, last + 1);
+			if (this.lastSequence.compareAndSet(last, next)) {
+				return next;
+			}
+		}
+	}
+
+	private String getKey(Object input) {
+		return input == null ? null : UUIDConverter.getUUID(input).toString();
+	}
+
+	/**
+	 * Selects the first Message of a group and deletes it; if another poller deleted it first, returns null and
+	 * records that the poll must be retried.
+	 */
+	private class PollCallback implements TransactionCallback<Message<?>> {
+
+		private final String groupKey;
+
+		private boolean polledConcurrently;
+
+		PollCallback(String groupKey) {
+			this.groupKey = groupKey;
+		}
+
+		public Message<?> doInTransaction(TransactionStatus status) {
+			this.polledConcurrently = false;
+			Message<?> message = doPollForMessage(this.groupKey);
+			if (message != null && doRemoveMessage(this.groupKey, message) == 0) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Message with id=" + message.getHeaders().getId() + " was polled concurrently; retrying");
+				}
+				this.polledConcurrently = true;
+				return null;
+			}
+			return message;
+		}
+	}
+
+	/**
+	 * Convenience class to be used to unpack a message from a result set row.
+	 */
+	private class MessageMapper implements RowMapper<Message<?>> {
+
+		public Message<?> mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return (Message<?>) deserializer.convert(lobHandler.getBlobAsBytes(rs, "MESSAGE_BYTES"));
+		}
+	}
+
+	/**
+	 * A {@link MessageGroup} view of a channel that queries the store whenever it is asked for its size or Messages.
+	 * Channel groups are never complete and do not track when they were created or modified.
+	 */
+	private class ChannelMessageGroup implements MessageGroup {
+
+		private final Object groupId;
+
+		private final String groupKey;
+
+		ChannelMessageGroup(Object groupId, String groupKey) {
+			this.groupId = groupId;
+			this.groupKey = groupKey;
+		}
+
+		public boolean canAdd(Message<?> message) {
+			return true;
+		}
+
+		public Collection<Message<?>> getMessages() {
+			List<Message<?>> messages = jdbcTemplate.query(getQuery(LIST_MESSAGES_IN_GROUP),
+					new Object[] { this.groupKey, region }, mapper);
+			return Collections.unmodifiableList(messages);
+		}
+
+		public Object getGroupId() {
+			return this.groupId;
+		}
+
+		public int getLastReleasedMessageSequenceNumber() {
+			return 0;
+		}
+
+		public boolean isComplete() {
+			return false;
+		}
+
+		public void complete() {
+			throw new UnsupportedOperationException("Completing a group is not supported by a channel message store");
+		}
+
+		public int getSequenceSize() {
+			return 0;
+		}
+
+		public int size() {
+			return jdbcTemplate.queryForInt(getQuery(COUNT_MESSAGES_IN_GROUP), this.groupKey, region);
+		}
+
+		public Message<?> getOne() {
+			return jdbcTemplate.query(getQuery(LIST_MESSAGES_IN_GROUP), new Object[] { this.groupKey, region },
+					new ResultSetExtractor<Message<?>>() {
+						public Message<?> extractData(ResultSet rs) throws SQLException {
+							return rs.next() ? mapper.mapRow(rs, 0) : null;
+						}
+					});
+		}
+
+		public long getTimestamp() {
+			return 0;
+		}
+
+		public long getLastModified() {
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return "ChannelMessageGroup{groupId=" + this.groupId + '}';
+		}
+	}
+}
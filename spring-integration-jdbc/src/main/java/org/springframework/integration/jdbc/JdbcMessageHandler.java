@@ -13,6 +13,7 @@
 
 package org.springframework.integration.jdbc;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,7 @@ import org.springframework.integration.Message;
 import org.springframework.integration.MessageDeliveryException;
 import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.core.BatchMessageHandler;
 import org.springframework.integration.handler.AbstractMessageHandler;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -44,11 +46,14 @@ import org.springframework.util.LinkedCaseInsensitiveMap;
  *
  * N.B. do not use quotes to escape the header keys. The default SQL parameter source (from Spring JDBC) can also handle
  * headers with dotted names (e.g. <code>business.id</code>)
+ * <p>
+ * When the handler is polled with a batch size greater than 1, each batch of messages is written with a single JDBC
+ * batch update, unless generated keys are requested.
  *
  * @author Dave Syer
  * @since 2.0
  */
-public class JdbcMessageHandler extends AbstractMessageHandler {
+public class JdbcMessageHandler extends AbstractMessageHandler implements BatchMessageHandler {
 
 	private final NamedParameterJdbcOperations jdbcOperations;
 
@@ -109,11 +114,39 @@ public class JdbcMessageHandler extends AbstractMessageHandler {
 		}
 	}
 
-	protected List<? extends Map<String, Object>> executeUpdateQuery(Object obj, boolean keysGenerated) {
-		SqlParameterSource updateParameterSource = new MapSqlParameterSource();
-		if (this.sqlParameterSourceFactory != null) {
-			updateParameterSource = this.sqlParameterSourceFactory.createParameterSource(obj);
+	/**
+	 * Executes the update as a single batch with one set of parameters per message. Each message is logged and, if
+	 * tracking is enabled, has this handler added to its history, as in {@link #handleMessage(Message)}. If generated
+	 * keys are requested the messages are handled one at a time instead.
+	 */
+	public void handleMessages(List<Message<?>> messages) {
+		if (this.keysGenerated) {
+			for (Message<?> message : messages) {
+				this.handleMessage(message);
+			}
+			return;
+		}
+		if (messages.isEmpty()) {
+			return;
+		}
+		SqlParameterSource[] updateParameterSources = new SqlParameterSource[messages.size()];
+		for (int i = 0; i < updateParameterSources.length; i++) {
+			updateParameterSources[i] = this.createParameterSource(this.prepareMessage(messages.get(i)));
+		}
+		try {
+			int[] updated = this.jdbcOperations.batchUpdate(this.updateSql, updateParameterSources);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Batch update of " + messages.size() + " messages, update counts: " + Arrays.toString(updated));
+			}
+		}
+		catch (RuntimeException e) {
+			throw new MessageHandlingException(messages.get(0), "error occurred in batch update of " + messages.size()
+					+ " messages in [" + this + "]", e);
 		}
+	}
+
+	protected List<? extends Map<String, Object>> executeUpdateQuery(Object obj, boolean keysGenerated) {
+		SqlParameterSource updateParameterSource = this.createParameterSource(obj);
 		if (keysGenerated) {
 			KeyHolder keyHolder = new GeneratedKeyHolder();
 			this.jdbcOperations.update(this.updateSql, updateParameterSource,
@@ -129,4 +162,11 @@ public class JdbcMessageHandler extends AbstractMessageHandler {
 
 	}
 
+	private SqlParameterSource createParameterSource(Object obj) {
+		if (this.sqlParameterSourceFactory != null) {
+			return this.sqlParameterSourceFactory.createParameterSource(obj);
+		}
+		return new MapSqlParameterSource();
+	}
+
 }
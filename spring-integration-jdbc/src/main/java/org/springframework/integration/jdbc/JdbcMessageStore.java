@@ -19,11 +19,14 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
@@ -45,6 +48,7 @@ import org.springframework.integration.store.MessageStore;
 import org.springframework.integration.store.SimpleMessageGroup;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.util.UUIDConverter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
@@ -110,9 +114,12 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 	private static final String GET_GROUP_INFO = "SELECT COMPLETE, LAST_RELEASED_SEQUENCE, CREATED_DATE, UPDATED_DATE" +
 												 " from %PREFIX%MESSAGE_GROUP where GROUP_KEY = ?";
 
-	private static final String GET_MESSAGE = "SELECT MESSAGE_ID, CREATED_DATE, MESSAGE_BYTES from %PREFIX%MESSAGE where MESSAGE_ID=? and REGION=?";
+	private static final String GET_GROUP_INFO_WITH_SIZE = "SELECT COMPLETE, LAST_RELEASED_SEQUENCE, CREATED_DATE, UPDATED_DATE, " +
+			"(SELECT COUNT(MESSAGE_ID) from %PREFIX%MESSAGE where MESSAGE_ID in " +
+				"(SELECT MESSAGE_ID from %PREFIX%GROUP_TO_MESSAGE where GROUP_KEY = ?) and REGION = ?) as MESSAGE_COUNT " +
+			"from %PREFIX%MESSAGE_GROUP where GROUP_KEY = ?";
 
-	private static final String GET_GROUP_CREATED_DATE = "SELECT CREATED_DATE from %PREFIX%MESSAGE_GROUP where GROUP_KEY=? and REGION=?";
+	private static final String GET_MESSAGE = "SELECT MESSAGE_ID, CREATED_DATE, MESSAGE_BYTES from %PREFIX%MESSAGE where MESSAGE_ID=? and REGION=?";
 
 	private static final String GET_MESSAGE_COUNT = "SELECT COUNT(MESSAGE_ID) from %PREFIX%MESSAGE where REGION=?";
 
@@ -164,6 +171,10 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 
 	private volatile MessageMapper mapper = new MessageMapper();
 
+	private volatile boolean lazyLoadMessageGroups;
+
+	private final AtomicLong lastCreatedDate = new AtomicLong();
+
 	/**
 	 * Convenient constructor for configuration use.
 	 */
@@ -252,6 +263,20 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 		this.deserializer = new DeserializingConverter((Deserializer) deserializer);
 	}
 
+	/**
+	 * Set to true to return {@link MessageGroup}s that load their Messages from the database only when they are
+	 * accessed, rather than all at once. {@link #getMessageGroup(Object)} then reads the group's row and the number
+	 * of its Messages with a single query, and {@link #addMessageToGroup(Object, Message)} does not read the group
+	 * at all, so that adding a Message to a group no longer costs time proportional to the size of the group.
+	 * The Messages are read when {@link MessageGroup#getMessages()} is first called, e.g. when the group is
+	 * released, and are not refreshed afterwards. Default false.
+	 *
+	 * @param lazyLoadMessageGroups true to load the Messages of a group lazily
+	 */
+	public void setLazyLoadMessageGroups(boolean lazyLoadMessageGroups) {
+		this.lazyLoadMessageGroups = lazyLoadMessageGroups;
+	}
+
 	/**
 	 * Check mandatory properties (data source and incrementer).
 	 *
@@ -287,7 +312,7 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 		return list.get(0);
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@SuppressWarnings("unchecked")
 	public <T> Message<T> addMessage(final Message<T> message) {
 		if (message.getHeaders().containsKey(SAVED_KEY)) {
 			Message<T> saved = (Message<T>) getMessage(message.getHeaders().getId());
@@ -298,13 +323,8 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 			}
 		}
 
-		final long createdDate = System.currentTimeMillis();
-		Message<T> result = MessageBuilder.fromMessage(message).setHeader(SAVED_KEY, Boolean.TRUE)
-				.setHeader(CREATED_DATE_KEY, new Long(createdDate)).build();
-
-		Map innerMap = (Map) new DirectFieldAccessor(result.getHeaders()).getPropertyValue("headers");
-		// using reflection to set ID since it is immutable through MessageHeaders
-		innerMap.put(MessageHeaders.ID, message.getHeaders().get(MessageHeaders.ID));
+		final Timestamp createdDate = this.nextCreatedDate();
+		Message<T> result = this.prepareForStorage(message, createdDate.getTime());
 
 		final String messageId = getKey(result.getHeaders().getId());
 		final byte[] messageBytes = serializer.convert(result);
@@ -316,7 +336,7 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 				}
 				ps.setString(1, messageId);
 				ps.setString(2, region);
-				ps.setTimestamp(3, new Timestamp(createdDate));
+				ps.setTimestamp(3, createdDate);
 				lobHandler.getLobCreator().setBlobAsBytes(ps, 4, messageBytes);
 			}
 		});
@@ -324,41 +344,54 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 	}
 
 	public MessageGroup addMessageToGroup(Object groupId, Message<?> message) {
-		final String groupKey = getKey(groupId);
-		final String messageId = getKey(message.getHeaders().getId());
-		boolean groupNotExist = jdbcTemplate.queryForInt(this.getQuery(GROUP_EXISTS), groupKey) < 1;
-
-		final Timestamp updatedDate = new Timestamp(System.currentTimeMillis());
-
-		final Timestamp createdDate = groupNotExist ?
-				updatedDate :
-			    jdbcTemplate.queryForObject(getQuery(GET_GROUP_CREATED_DATE), new Object[] { groupKey, region}, Timestamp.class);
+		return this.addMessagesToGroup(groupId, Collections.<Message<?>> singletonList(message));
+	}
 
-		if (groupNotExist){
-			try {
-				this.doCreateMessageGroup(groupKey, createdDate);
-			} catch (DuplicateKeyException e) {
-				logger.warn("Lost race to create group; attempting update instead", e);
-				this.doUpdateMessageGroup(groupKey, updatedDate);
+	/**
+	 * Add several Messages to a group at once. The Messages and their membership of the group are each inserted
+	 * with a single JDBC batch, rather than with a round trip per Message.
+	 *
+	 * @param groupId the group to add the Messages to
+	 * @param messages the Messages to add, in order
+	 * @return the group after the Messages have been added
+	 */
+	public MessageGroup addMessagesToGroup(Object groupId, Collection<? extends Message<?>> messages) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		Assert.notNull(messages, "'messages' must not be null");
+		final String groupKey = getKey(groupId);
+		this.doCreateOrUpdateMessageGroup(groupKey, new Timestamp(System.currentTimeMillis()));
+
+		final List<String> messageIds = new ArrayList<String>(messages.size());
+		List<Message<?>> unsavedMessages = new ArrayList<Message<?>>(messages.size());
+		for (Message<?> message : messages) {
+			messageIds.add(getKey(message.getHeaders().getId()));
+			if (message.getHeaders().containsKey(SAVED_KEY)) {
+				// may have been stored already, e.g. by a JDBC backed channel
+				this.addMessage(message);
+			}
+			else {
+				unsavedMessages.add(message);
 			}
 		}
-		else {
-			this.doUpdateMessageGroup(groupKey, updatedDate);
-		}
-
-		this.addMessage(message);
+		this.doCreateMessages(unsavedMessages);
 
-		jdbcTemplate.update(getQuery(CREATE_GROUP_TO_MESSAGE), new PreparedStatementSetter() {
-			public void setValues(PreparedStatement ps) throws SQLException {
+		jdbcTemplate.batchUpdate(getQuery(CREATE_GROUP_TO_MESSAGE), new BatchPreparedStatementSetter() {
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
 				if (logger.isDebugEnabled()){
-					logger.debug("Inserting message with id key=" + messageId + " and created date=" + createdDate);
+					logger.debug("Inserting message with id key=" + messageIds.get(i) + " into group with key=" + groupKey);
 				}
 				ps.setString(1, groupKey);
-				ps.setString(2, messageId);
+				ps.setString(2, messageIds.get(i));
+			}
+
+			public int getBatchSize() {
+				return messageIds.size();
 			}
 		});
+		if (this.lazyLoadMessageGroups) {
+			return new LazyMessageGroup(groupId, groupKey);
+		}
 		return getMessageGroup(groupId);
-
 	}
 
 	@Override
@@ -381,6 +414,13 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 
 	public MessageGroup getMessageGroup(Object groupId) {
 		String key = getKey(groupId);
+		if (this.lazyLoadMessageGroups) {
+			LazyMessageGroup messageGroup = new LazyMessageGroup(groupId, key);
+			if (messageGroup.size() == 0) {
+				return new SimpleMessageGroup(groupId);
+			}
+			return messageGroup;
+		}
 		final AtomicReference<Date> createDate = new AtomicReference<Date>();
 		final AtomicReference<Date> updateDate = new AtomicReference<Date>();
 		final AtomicReference<Boolean> completeFlag = new AtomicReference<Boolean>();
@@ -572,8 +612,20 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 		});
 	}
 
-	private void doUpdateMessageGroup(final String groupKey, final Timestamp updatedDate){
-		jdbcTemplate.update(getQuery(UPDATE_MESSAGE_GROUP), new PreparedStatementSetter() {
+	private void doCreateOrUpdateMessageGroup(String groupKey, Timestamp updatedDate) {
+		if (this.doUpdateMessageGroup(groupKey, updatedDate) == 0) {
+			try {
+				this.doCreateMessageGroup(groupKey, updatedDate);
+			}
+			catch (DuplicateKeyException e) {
+				logger.warn("Lost race to create group; attempting update instead", e);
+				this.doUpdateMessageGroup(groupKey, updatedDate);
+			}
+		}
+	}
+
+	private int doUpdateMessageGroup(final String groupKey, final Timestamp updatedDate){
+		return jdbcTemplate.update(getQuery(UPDATE_MESSAGE_GROUP), new PreparedStatementSetter() {
 			public void setValues(PreparedStatement ps) throws SQLException {
 				if (logger.isDebugEnabled()){
 					logger.debug("Updating message group with id key=" + groupKey + " and updated date=" + updatedDate);
@@ -585,6 +637,68 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 		});
 	}
 
+	/**
+	 * Inserts the given Messages with a single batch.
+	 */
+	private void doCreateMessages(List<Message<?>> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+		final List<String> messageIds = new ArrayList<String>(messages.size());
+		final List<Timestamp> createdDates = new ArrayList<Timestamp>(messages.size());
+		final List<byte[]> messageBytes = new ArrayList<byte[]>(messages.size());
+		for (Message<?> message : messages) {
+			Timestamp createdDate = this.nextCreatedDate();
+			Message<?> result = this.prepareForStorage(message, createdDate.getTime());
+			messageIds.add(getKey(result.getHeaders().getId()));
+			createdDates.add(createdDate);
+			messageBytes.add(serializer.convert(result));
+		}
+		jdbcTemplate.batchUpdate(getQuery(CREATE_MESSAGE), new BatchPreparedStatementSetter() {
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				if (logger.isDebugEnabled()){
+					logger.debug("Inserting message with id key=" + messageIds.get(i));
+				}
+				ps.setString(1, messageIds.get(i));
+				ps.setString(2, region);
+				ps.setTimestamp(3, createdDates.get(i));
+				lobHandler.getLobCreator().setBlobAsBytes(ps, 4, messageBytes.get(i));
+			}
+
+			public int getBatchSize() {
+				return messageIds.size();
+			}
+		});
+	}
+
+	/**
+	 * Returns a created date that is at least a microsecond later than the last one returned, so that Messages
+	 * stored by this store in the same millisecond keep their order on databases with sub-millisecond timestamps.
+	 */
+	private Timestamp nextCreatedDate() {
+		long now = System.currentTimeMillis() * 1000;
+		while (true) {
+			long last = this.lastCreatedDate.get();
+			long next = Math.max(now, last + 1);
+			if (this.lastCreatedDate.compareAndSet(last, next)) {
+				Timestamp createdDate = new Timestamp(next / 1000);
+				createdDate.setNanos((int) (next % 1000000) * 1000);
+				return createdDate;
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private <T> Message<T> prepareForStorage(Message<T> message, long createdDate) {
+		Message<T> result = MessageBuilder.fromMessage(message).setHeader(SAVED_KEY, Boolean.TRUE)
+				.setHeader(CREATED_DATE_KEY, new Long(createdDate)).build();
+
+		Map innerMap = (Map) new DirectFieldAccessor(result.getHeaders()).getPropertyValue("headers");
+		// using reflection to set ID since it is immutable through MessageHeaders
+		innerMap.put(MessageHeaders.ID, message.getHeaders().get(MessageHeaders.ID));
+		return result;
+	}
+
 	private void updateMessageGroup(final String groupId){
 		jdbcTemplate.update(getQuery(UPDATE_GROUP), new PreparedStatementSetter() {
 			public void setValues(PreparedStatement ps) throws SQLException {
@@ -631,4 +745,141 @@ public class JdbcMessageStore extends AbstractMessageGroupStore implements Messa
 			return message;
 		}
 	}
+
+	/**
+	 * A {@link MessageGroup} that reads the group's row and the number of its Messages on first use, and the
+	 * Messages themselves only when they are requested.
+	 */
+	private class LazyMessageGroup implements MessageGroup {
+
+		private final Object groupId;
+
+		private final String groupKey;
+
+		private volatile boolean loaded;
+
+		private volatile long timestamp;
+
+		private volatile long lastModified;
+
+		private volatile boolean complete;
+
+		private volatile int lastReleasedSequenceNumber;
+
+		private volatile int size;
+
+		private volatile List<Message<?>> messages;
+
+		LazyMessageGroup(Object groupId, String groupKey) {
+			this.groupId = groupId;
+			this.groupKey = groupKey;
+		}
+
+		public boolean canAdd(Message<?> message) {
+			return true;
+		}
+
+		public Collection<Message<?>> getMessages() {
+			return Collections.unmodifiableList(this.loadMessages());
+		}
+
+		public Object getGroupId() {
+			return this.groupId;
+		}
+
+		public int getLastReleasedMessageSequenceNumber() {
+			this.load();
+			return this.lastReleasedSequenceNumber;
+		}
+
+		public boolean isComplete() {
+			this.load();
+			return this.complete;
+		}
+
+		public void complete() {
+			this.load();
+			this.complete = true;
+		}
+
+		/**
+		 * Returns the first non-zero sequence size of the members, as a {@code SimpleMessageGroup} does; only a
+		 * lazily produced sequence, whose messages but the last have a size of 0, causes the Messages to be loaded.
+		 */
+		public int getSequenceSize() {
+			if (this.size() == 0) {
+				return 0;
+			}
+			Message<?> one = this.getOne();
+			int sequenceSize = (one != null) ? one.getHeaders().getSequenceSize() : 0;
+			if (sequenceSize != 0) {
+				return sequenceSize;
+			}
+			for (Message<?> message : this.loadMessages()) {
+				sequenceSize = message.getHeaders().getSequenceSize();
+				if (sequenceSize != 0) {
+					return sequenceSize;
+				}
+			}
+			return 0;
+		}
+
+		public int size() {
+			List<Message<?>> messages = this.messages;
+			if (messages != null) {
+				return messages.size();
+			}
+			this.load();
+			return this.size;
+		}
+
+		public Message<?> getOne() {
+			List<Message<?>> messages = this.messages;
+			if (messages != null) {
+				return messages.isEmpty() ? null : messages.get(0);
+			}
+			return doPollForMessage(this.groupKey);
+		}
+
+		public long getTimestamp() {
+			this.load();
+			return this.timestamp;
+		}
+
+		public long getLastModified() {
+			this.load();
+			return this.lastModified;
+		}
+
+		private synchronized void load() {
+			if (this.loaded) {
+				return;
+			}
+			jdbcTemplate.query(getQuery(GET_GROUP_INFO_WITH_SIZE), new Object[] { this.groupKey, region, this.groupKey },
+					new RowCallbackHandler() {
+						public void processRow(ResultSet rs) throws SQLException {
+							timestamp = rs.getTimestamp("CREATED_DATE").getTime();
+							Timestamp updatedDate = rs.getTimestamp("UPDATED_DATE");
+							lastModified = (updatedDate != null) ? updatedDate.getTime() : 0;
+							complete = rs.getInt("COMPLETE") > 0;
+							lastReleasedSequenceNumber = rs.getInt("LAST_RELEASED_SEQUENCE");
+							size = rs.getInt("MESSAGE_COUNT");
+						}
+					});
+			this.loaded = true;
+		}
+
+		private synchronized List<Message<?>> loadMessages() {
+			if (this.messages == null) {
+				this.messages = jdbcTemplate.query(getQuery(LIST_MESSAGES_BY_GROUP_KEY),
+						new Object[] { this.groupKey, region }, mapper);
+			}
+			return this.messages;
+		}
+
+		@Override
+		public String toString() {
+			return "LazyMessageGroup{groupId=" + this.groupId + ", loaded=" + (this.messages != null) + '}';
+		}
+	}
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.jdbc.channel;
+
+/**
+ * Strategy for the database specific query that the
+ * {@link org.springframework.integration.jdbc.JdbcChannelMessageStore} uses to
+ * select the next Message of a channel. The query takes the group key and the
+ * region as its two parameters and must return the MESSAGE_ID and MESSAGE_BYTES
+ * columns of the oldest Messages first. Where the database supports it, the query
+ * should lock the selected row and skip rows that are already locked, so that
+ * concurrent pollers select different Messages instead of waiting for each other.
+ *
+ * @since 2.2
+ *
+ */
+public interface ChannelMessageStoreQueryProvider {
+
+	String SELECT_COMMON = "SELECT MESSAGE_ID, MESSAGE_BYTES from %PREFIX%CHANNEL_MESSAGE " +
+			"where GROUP_KEY = ? and REGION = ? order by MESSAGE_SEQUENCE";
+
+	/**
+	 * @return the query used to select the next Message of a group, which may
+	 * contain the %PREFIX% placeholder for the table prefix.
+	 */
+	String getPollFromGroupQuery();
+
+}
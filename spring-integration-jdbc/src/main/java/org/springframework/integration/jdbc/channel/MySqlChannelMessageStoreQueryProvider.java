@@ -0,0 +1,32 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.jdbc.channel;
+
+/**
+ * {@link ChannelMessageStoreQueryProvider} for MySQL 8 and later, which
+ * locks the selected row with <code>FOR UPDATE SKIP LOCKED</code>. The table must
+ * use the InnoDB engine.
+ *
+ * @since 2.2
+ *
+ */
+public class MySqlChannelMessageStoreQueryProvider implements ChannelMessageStoreQueryProvider {
+
+	public String getPollFromGroupQuery() {
+		return SELECT_COMMON + " LIMIT 1 FOR UPDATE SKIP LOCKED";
+	}
+
+}
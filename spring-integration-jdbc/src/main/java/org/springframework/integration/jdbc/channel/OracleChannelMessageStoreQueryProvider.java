@@ -0,0 +1,33 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.integration.jdbc.channel;
+
+/**
+ * {@link ChannelMessageStoreQueryProvider} for Oracle, which locks the
+ * selected row with <code>FOR UPDATE SKIP LOCKED</code>. Oracle does not allow
+ * a row limit together with <code>FOR UPDATE</code>; rows are locked as they are
+ * fetched, and the store only fetches the first one.
+ *
+ * @since 2.2
+ *
+ */
+public class OracleChannelMessageStoreQueryProvider implements ChannelMessageStoreQueryProvider {
+
+	public String getPollFromGroupQuery() {
+		return SELECT_COMMON + " FOR UPDATE SKIP LOCKED";
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides the database specific queries used by the JdbcChannelMessageStore.
+ */
+package org.springframework.integration.jdbc.channel;
@@ -4,3 +4,5 @@ DROP TABLE  INT_MESSAGE ;
 DROP TABLE  INT_MESSAGE_GROUP ;
 DROP TABLE  INT_GROUP_TO_MESSAGE ;
 DROP INDEX  INT_MESSAGE_IX1 ;
+DROP TABLE  INT_CHANNEL_MESSAGE ;
+DROP INDEX  INT_CHANNEL_MSG_IX1 ;
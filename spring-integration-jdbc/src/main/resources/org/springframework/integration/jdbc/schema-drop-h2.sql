@@ -4,3 +4,5 @@ DROP TABLE  INT_MESSAGE IF EXISTS;
 DROP TABLE  INT_MESSAGE_GROUP IF EXISTS;
 DROP TABLE  INT_GROUP_TO_MESSAGE IF EXISTS;
 DROP INDEX  INT_MESSAGE_IX1 IF EXISTS;
+DROP TABLE  INT_CHANNEL_MESSAGE IF EXISTS;
+DROP INDEX  INT_CHANNEL_MSG_IX1 IF EXISTS;
@@ -4,3 +4,5 @@ DROP TABLE IF EXISTS INT_MESSAGE ;
 DROP TABLE IF EXISTS INT_MESSAGE_GROUP ;
 DROP TABLE IF EXISTS INT_GROUP_TO_MESSAGE ;
 DROP INDEX IF EXISTS INT_MESSAGE_IX1 ;
+DROP TABLE IF EXISTS INT_CHANNEL_MESSAGE ;
+DROP INDEX IF EXISTS INT_CHANNEL_MSG_IX1 ;
@@ -23,4 +23,16 @@ CREATE TABLE INT_MESSAGE_GROUP  (
 	LAST_RELEASED_SEQUENCE BIGINT,
 	CREATED_DATE TIMESTAMP NOT NULL,
 	UPDATED_DATE TIMESTAMP DEFAULT NULL
-);
\ No newline at end of file
+);
+
+CREATE TABLE INT_CHANNEL_MESSAGE  (
+	MESSAGE_ID CHAR(36) NOT NULL,
+	GROUP_KEY CHAR(36) NOT NULL,
+	REGION VARCHAR(100) NOT NULL,
+	MESSAGE_SEQUENCE BIGINT NOT NULL,
+	CREATED_DATE TIMESTAMP NOT NULL,
+	MESSAGE_BYTES LONGVARBINARY,
+	constraint CHANNEL_MESSAGE_PK primary key (REGION, GROUP_KEY, MESSAGE_ID)
+);
+
+CREATE INDEX INT_CHANNEL_MSG_IX1 ON INT_CHANNEL_MESSAGE (GROUP_KEY, REGION, MESSAGE_SEQUENCE);
\ No newline at end of file
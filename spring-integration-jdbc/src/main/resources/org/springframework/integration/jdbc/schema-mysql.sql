@@ -23,4 +23,16 @@ CREATE TABLE INT_MESSAGE_GROUP  (
 	LAST_RELEASED_SEQUENCE BIGINT,
 	CREATED_DATE DATETIME NOT NULL,
 	UPDATED_DATE DATETIME DEFAULT NULL
-) ENGINE=InnoDB;
\ No newline at end of file
+) ENGINE=InnoDB;
+
+CREATE TABLE INT_CHANNEL_MESSAGE  (
+	MESSAGE_ID CHAR(36) NOT NULL,
+	GROUP_KEY CHAR(36) NOT NULL,
+	REGION VARCHAR(100) NOT NULL,
+	MESSAGE_SEQUENCE BIGINT NOT NULL,
+	CREATED_DATE DATETIME NOT NULL,
+	MESSAGE_BYTES BLOB,
+	constraint CHANNEL_MESSAGE_PK primary key (REGION, GROUP_KEY, MESSAGE_ID)
+) ENGINE=InnoDB;
+
+CREATE INDEX INT_CHANNEL_MSG_IX1 ON INT_CHANNEL_MESSAGE (GROUP_KEY, REGION, MESSAGE_SEQUENCE) ENGINE=InnoDB;
\ No newline at end of file
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.jdbc;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.jdbc.channel.DerbyChannelMessageStoreQueryProvider;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupQueue;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 2.2
+ */
+@ContextConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+public class JdbcChannelMessageStoreTests {
+
+	private static final Log logger = LogFactory.getLog(JdbcChannelMessageStoreTests.class);
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private JdbcChannelMessageStore messageStore;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@After
+	public void tearDown() {
+		messageStore.removeMessageGroup("foo");
+		messageStore.removeMessageGroup("bar");
+	}
+
+	@Test
+	public void testAddAndPollInOrder() {
+		for (int i = 0; i < 10; i++) {
+			messageStore.addMessageToGroup("foo", MessageBuilder.withPayload(i).build());
+		}
+		messageStore.addMessageToGroup("bar", MessageBuilder.withPayload("bar").build());
+		assertEquals(10, messageStore.messageGroupSize("foo"));
+		assertEquals(11, messageStore.getMessageCountForAllMessageGroups());
+		assertEquals(2, messageStore.getMessageGroupCount());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, messageStore.pollMessageFromGroup("foo").getPayload());
+		}
+		assertNull(messageStore.pollMessageFromGroup("foo"));
+		assertEquals("bar", messageStore.pollMessageFromGroup("bar").getPayload());
+	}
+
+	@Test
+	public void testPolledMessageKeepsItsHeaders() {
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("bar", "baz").build();
+		messageStore.addMessageToGroup("foo", message);
+		Message<?> polled = messageStore.pollMessageFromGroup("foo");
+		assertEquals(message.getHeaders().getId(), polled.getHeaders().getId());
+		assertEquals("baz", polled.getHeaders().get("bar"));
+	}
+
+	@Test
+	public void testMessageGroupView() {
+		MessageGroup group = messageStore.getMessageGroup("foo");
+		assertEquals(0, group.size());
+		assertNull(group.getOne());
+		messageStore.addMessageToGroup("foo", MessageBuilder.withPayload("x").build());
+		Message<String> y = MessageBuilder.withPayload("y").build();
+		group = messageStore.addMessageToGroup("foo", y);
+		assertEquals(2, group.size());
+		assertFalse(group.isComplete());
+		assertEquals("x", group.getOne().getPayload());
+		Iterator<Message<?>> messages = group.getMessages().iterator();
+		assertEquals("x", messages.next().getPayload());
+		assertEquals("y", messages.next().getPayload());
+		assertFalse(messages.hasNext());
+		group = messageStore.removeMessageFromGroup("foo", y);
+		assertEquals(1, group.size());
+		messageStore.removeMessageGroup("foo");
+		assertEquals(0, group.size());
+	}
+
+	@Test
+	public void testRegionsAreSeparate() {
+		JdbcChannelMessageStore otherStore = new JdbcChannelMessageStore(dataSource);
+		otherStore.setQueryProvider(new DerbyChannelMessageStoreQueryProvider());
+		otherStore.setRegion("OTHER");
+		messageStore.addMessageToGroup("foo", MessageBuilder.withPayload("foo").build());
+		assertEquals(0, otherStore.messageGroupSize("foo"));
+		assertNull(otherStore.pollMessageFromGroup("foo"));
+		assertEquals(1, messageStore.messageGroupSize("foo"));
+	}
+
+	@Test
+	public void testWithMessageGroupQueue() throws Exception {
+		MessageGroupQueue queue = new MessageGroupQueue(messageStore, "foo");
+		queue.offer(MessageBuilder.withPayload("foo").build());
+		queue.offer(MessageBuilder.withPayload("bar").build());
+		assertEquals(2, queue.size());
+		assertEquals("foo", queue.peek().getPayload());
+		assertEquals("foo", queue.poll(100, TimeUnit.MILLISECONDS).getPayload());
+		assertEquals("bar", queue.poll().getPayload());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testConcurrentPollersReceiveEachMessageOnce() throws Exception {
+		final int producers = 2;
+		final int pollers = 4;
+		final int messagesPerProducer = 500;
+		final int total = producers * messagesPerProducer;
+		final Set<UUID> received = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+		final AtomicInteger duplicates = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch done = new CountDownLatch(producers + pollers);
+		ExecutorService executor = Executors.newFixedThreadPool(producers + pollers);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < producers; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						for (int j = 0; j < messagesPerProducer; j++) {
+							messageStore.addMessageToGroup("foo", MessageBuilder.withPayload(j).build());
+						}
+					}
+					catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		for (int i = 0; i < pollers; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						while (received.size() < total && failure.get() == null) {
+							Message<?> message = messageStore.pollMessageFromGroup("foo");
+							if (message == null) {
+								Thread.sleep(1);
+							}
+							else if (!received.add(message.getHeaders().getId())) {
+								duplicates.incrementAndGet();
+							}
+						}
+					}
+					catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		assertTrue("Timed out with " + received.size() + " of " + total + " messages polled",
+				done.await(60, TimeUnit.SECONDS));
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		executor.shutdown();
+		assertNull("Unexpected failure: " + failure.get(), failure.get());
+		logger.info(total + " messages sent and polled by " + pollers + " pollers in " + elapsed + "ms ("
+				+ (total * 1000 / elapsed) + " messages/s)");
+		assertEquals(0, duplicates.get());
+		assertEquals(total, received.size());
+		assertEquals(0, messageStore.messageGroupSize("foo"));
+	}
+
+	@Test
+	public void testPollRolledBackWithEnclosingTransaction() {
+		messageStore.addMessageToGroup("foo", MessageBuilder.withPayload("foo").build());
+		final QueueChannel channel = new QueueChannel(new MessageGroupQueue(messageStore, "foo"));
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				assertEquals("foo", channel.receive(0).getPayload());
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(1, messageStore.messageGroupSize("foo"));
+		assertEquals("foo", channel.receive(0).getPayload());
+		assertEquals(0, messageStore.messageGroupSize("foo"));
+	}
+
+	/**
+	 * Two channels on the same group stand for the same channel on two nodes; their
+	 * receivers only share the store, and not the lock of a single MessageGroupQueue.
+	 */
+	@Test
+	public void testConcurrentChannelsReceiveEachMessageOnce() throws Exception {
+		final int total = 500;
+		final int receiversPerChannel = 2;
+		final QueueChannel[] channels = new QueueChannel[] {
+				new QueueChannel(new MessageGroupQueue(messageStore, "foo")),
+				new QueueChannel(new MessageGroupQueue(messageStore, "foo")) };
+		for (int i = 0; i < total; i++) {
+			channels[i % 2].send(MessageBuilder.withPayload(i).build());
+		}
+		final Set<UUID> received = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+		final AtomicInteger duplicates = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch done = new CountDownLatch(channels.length * receiversPerChannel);
+		ExecutorService executor = Executors.newFixedThreadPool(channels.length * receiversPerChannel);
+		for (final QueueChannel channel : channels) {
+			for (int i = 0; i < receiversPerChannel; i++) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							Message<?> message;
+							while ((message = channel.receive(0)) != null) {
+								if (!received.add(message.getHeaders().getId())) {
+									duplicates.incrementAndGet();
+								}
+							}
+						}
+						catch (Throwable e) {
+							failure.compareAndSet(null, e);
+						}
+						finally {
+							done.countDown();
+						}
+					}
+				});
+			}
+		}
+		assertTrue("Timed out with " + received.size() + " of " + total + " messages received",
+				done.await(60, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertNull("Unexpected failure: " + failure.get(), failure.get());
+		assertEquals(0, duplicates.get());
+		assertEquals(total, received.size());
+		assertEquals(0, messageStore.messageGroupSize("foo"));
+	}
+
+}
@@ -17,16 +17,21 @@
 package org.springframework.integration.jdbc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.integration.Message;
+import org.springframework.integration.history.MessageHistory;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
@@ -96,4 +101,44 @@ public class JdbcMessageHandlerIntegrationTests {
 		assertEquals("Wrong name", "foo", map.get("NAME"));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testBatchInsert() {
+		JdbcMessageHandler handler = new JdbcMessageHandler(jdbcTemplate, "insert into foos (id, status, name) values (:headers[business.id], 0, :payload)");
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		for (int i = 0; i < 3; i++) {
+			messages.add(MessageBuilder.withPayload("foo" + i).setHeader("business.id", "FOO" + i).build());
+		}
+		handler.handleMessages(messages);
+		assertEquals(3, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM FOOS"));
+		Map<String, Object> map = jdbcTemplate.queryForMap("SELECT * FROM FOOS WHERE ID=?", "FOO2");
+		assertEquals("Wrong name", "foo2", map.get("NAME"));
+	}
+
+	@Test
+	public void testBatchInsertTracksEachMessage() {
+		JdbcMessageHandler handler = new JdbcMessageHandler(jdbcTemplate, "insert into foos (id, status, name) values (:headers[business.id], 0, :payload)");
+		handler.setBeanName("batchHandler");
+		handler.setShouldTrack(true);
+		final List<Object> handled = new ArrayList<Object>();
+		handler.setSqlParameterSourceFactory(new BeanPropertySqlParameterSourceFactory() {
+			@Override
+			public SqlParameterSource createParameterSource(Object input) {
+				handled.add(input);
+				return super.createParameterSource(input);
+			}
+		});
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		for (int i = 0; i < 3; i++) {
+			messages.add(MessageBuilder.withPayload("foo" + i).setHeader("business.id", "FOO" + i).build());
+		}
+		handler.handleMessages(messages);
+		assertEquals(3, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM FOOS"));
+		assertEquals(3, handled.size());
+		for (Object message : handled) {
+			MessageHistory history = MessageHistory.read((Message<?>) message);
+			assertNotNull(history);
+			assertEquals("batchHandler", history.get(0).getProperty("name"));
+		}
+	}
+
+}
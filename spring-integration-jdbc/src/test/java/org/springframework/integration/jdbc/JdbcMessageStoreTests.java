@@ -21,6 +21,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 
@@ -34,18 +37,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
 import org.springframework.integration.Message;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.DefaultAggregatingMessageGroupProcessor;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.history.MessageHistory;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.store.MessageGroup;
 import org.springframework.integration.store.MessageGroupCallback;
 import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.support.serializer.CompactMessageSerializer;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
@@ -143,6 +151,22 @@ public class JdbcMessageStoreTests {
 		assertEquals("foo", result.getPayload());
 	}
 
+	@Test
+	@Transactional
+	public void testCompactSerializerReadsJavaSerializedMessages() throws Exception {
+		Message<String> javaSerialized = messageStore.addMessage(MessageBuilder.withPayload("foo").build());
+		CompactMessageSerializer serializer = new CompactMessageSerializer();
+		messageStore.setSerializer(serializer);
+		messageStore.setDeserializer(serializer);
+		Message<String> message = MessageBuilder.withPayload("bar").setHeader("baz", 1).build();
+		Message<String> saved = messageStore.addMessage(message);
+		Message<?> result = messageStore.getMessage(saved.getHeaders().getId());
+		assertThat(saved, sameExceptIgnorableHeaders(result));
+		assertEquals(1, result.getHeaders().get("baz"));
+		assertEquals(Boolean.TRUE, result.getHeaders().get(JdbcMessageStore.SAVED_KEY));
+		assertEquals("foo", messageStore.getMessage(javaSerialized.getHeaders().getId()).getPayload());
+	}
+
 	@Test
 	@Transactional
 	public void testAddAndGetWithDifferentRegion() throws Exception {
@@ -216,6 +240,73 @@ public class JdbcMessageStoreTests {
 		assertTrue("Timestamp too early: " + group.getTimestamp() + "<" + now, group.getTimestamp() >= now);
 	}
 
+	@Test
+	@Transactional
+	public void testAddAndGetMessageGroupLazily() throws Exception {
+		messageStore.setLazyLoadMessageGroups(true);
+		String groupId = "X";
+		long now = System.currentTimeMillis();
+		messageStore.addMessageToGroup(groupId, MessageBuilder.withPayload("foo").setCorrelationId(groupId)
+				.setSequenceSize(3).build());
+		messageStore.addMessageToGroup(groupId, MessageBuilder.withPayload("bar").setCorrelationId(groupId).build());
+		MessageGroup group = messageStore.addMessageToGroup(groupId, MessageBuilder.withPayload("baz")
+				.setCorrelationId(groupId).build());
+		assertEquals(3, group.size());
+		assertEquals(3, group.getSequenceSize());
+		assertFalse(group.isComplete());
+		assertTrue("Timestamp too early: " + group.getTimestamp() + "<" + now, group.getTimestamp() >= now);
+		messageStore.completeGroup(groupId);
+		messageStore.setLastReleasedSequenceNumberForGroup(groupId, 2);
+		group = messageStore.getMessageGroup(groupId);
+		assertTrue(group.isComplete());
+		assertEquals(2, group.getLastReleasedMessageSequenceNumber());
+		assertEquals("foo", group.getOne().getPayload());
+		Iterator<Message<?>> messages = group.getMessages().iterator();
+		assertEquals("foo", messages.next().getPayload());
+		assertEquals("bar", messages.next().getPayload());
+		assertEquals("baz", messages.next().getPayload());
+		assertFalse(messages.hasNext());
+		assertEquals(0, messageStore.getMessageGroup("Y").size());
+	}
+
+	@Test
+	@Transactional
+	public void testAggregateLazySequenceInLazyGroup() throws Exception {
+		messageStore.setLazyLoadMessageGroups(true);
+		AggregatingMessageHandler handler = new AggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor(),
+				messageStore);
+		QueueChannel output = new QueueChannel();
+		handler.setOutputChannel(output);
+		// a lazy split only gives the last message its sequence size
+		for (int i = 1; i <= 3; i++) {
+			handler.handleMessage(MessageBuilder.withPayload("foo" + i).setCorrelationId("X")
+					.setSequenceNumber(i).setSequenceSize(i == 3 ? 3 : 0).build());
+		}
+		Message<?> result = output.receive(0);
+		assertNotNull(result);
+		assertEquals(3, ((List<?>) result.getPayload()).size());
+	}
+
+	@Test
+	@Transactional
+	public void testAddMessagesToGroup() throws Exception {
+		String groupId = "X";
+		Message<String> saved = messageStore.addMessage(MessageBuilder.withPayload("saved").build());
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		messages.add(saved);
+		for (int i = 0; i < 100; i++) {
+			messages.add(MessageBuilder.withPayload("" + i).setCorrelationId(groupId).build());
+		}
+		MessageGroup group = messageStore.addMessagesToGroup(groupId, messages);
+		assertEquals(101, group.size());
+		assertEquals(101, messageStore.getMessageCount());
+		assertEquals("saved", messageStore.pollMessageFromGroup(groupId).getPayload());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("" + i, messageStore.pollMessageFromGroup(groupId).getPayload());
+		}
+		assertEquals(0, messageStore.getMessageGroup(groupId).size());
+	}
+
 	@Test
 	@Transactional
 	public void testAddAndRemoveMessageFromMessageGroup() throws Exception {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,21 +16,30 @@
 
 package org.springframework.integration.jms;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
+import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
 import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
 import javax.jms.TemporaryQueue;
 import javax.jms.TemporaryTopic;
 import javax.jms.Topic;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.expression.Expression;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
@@ -56,7 +65,7 @@ import org.springframework.util.Assert;
  * @author Juergen Hoeller
  * @author Oleg Zhurakousky
  */
-public class JmsOutboundGateway extends AbstractReplyProducingMessageHandler {
+public class JmsOutboundGateway extends AbstractReplyProducingMessageHandler implements DisposableBean {
 
 	private volatile Destination requestDestination;
 
@@ -96,6 +105,14 @@ public class JmsOutboundGateway extends AbstractReplyProducingMessageHandler {
 
 	private volatile boolean extractReplyPayload = true;
 
+	private volatile boolean useReplyListener;
+
+	private volatile int replyListenerConcurrency = 1;
+
+	private volatile ReplyListener replyListener;
+
+	private final Object replyListenerMonitor = new Object();
+
 	private volatile boolean initialized;
 
 	private final Object initializationMonitor = new Object();
@@ -304,6 +321,38 @@ public class JmsOutboundGateway extends AbstractReplyProducingMessageHandler {
 		this.extractReplyPayload = extractReplyPayload;
 	}
 
+	/**
+	 * Specify whether replies should be received by a long-lived listener, rather than by
+	 * a consumer created for each request. The listener is started when the first request
+	 * is sent, and consumes from the reply destination (or, if none is configured, a single
+	 * {@link TemporaryQueue}); each reply is handed to the waiting request thread by its
+	 * correlation id. Replies that arrive after the 'receiveTimeout' are discarded.
+	 * <p>
+	 * If the 'correlationKey' is set, the gateway generates the correlation id; otherwise
+	 * replies are correlated by the request's JMSMessageID. Since a shared reply destination
+	 * may receive replies for other clients, it should not be shared with other gateways
+	 * unless a 'correlationKey' is used. If a CachingConnectionFactory is used, its
+	 * consumer caching should be disabled.
+	 * <p>
+	 * If the listener's Connection fails, the listener is closed and a new one is started
+	 * for the next request; requests waiting for a reply at that time will time out.
+	 * <p>
+	 * Default is 'false'.
+	 */
+	public void setUseReplyListener(boolean useReplyListener) {
+		this.useReplyListener = useReplyListener;
+	}
+
+	/**
+	 * Specify the number of consumers (each with its own Session) used by the reply listener
+	 * to receive replies concurrently. Ignored when the reply destination is a Topic, for
+	 * which a single consumer is used. The default is 1.
+	 */
+	public void setReplyListenerConcurrency(int replyListenerConcurrency) {
+		Assert.isTrue(replyListenerConcurrency > 0, "'replyListenerConcurrency' must be greater than 0");
+		this.replyListenerConcurrency = replyListenerConcurrency;
+	}
+
 	/**
 	 * Specify the Spring Integration reply channel. If this property is not
 	 * set the gateway will check for a 'replyChannel' header on the request.
@@ -412,31 +461,22 @@ public class JmsOutboundGateway extends AbstractReplyProducingMessageHandler {
 	}
 
 	private javax.jms.Message sendAndReceive(Message<?> requestMessage) throws JMSException {
+		if (this.useReplyListener) {
+			return this.sendAndReceiveWithReplyListener(requestMessage);
+		}
 		Connection connection = this.createConnection();
 		Session session = null;
 		Destination replyTo = null;
 		try {
 			session = this.createSession(connection);
-
-			// convert to JMS Message
-			Object objectToSend = requestMessage;
-			if (this.extractRequestPayload) {
-				objectToSend = requestMessage.getPayload();
-			}
-			javax.jms.Message jmsRequest = this.messageConverter.toMessage(objectToSend, session);
-
-			// map headers
-			headerMapper.fromHeaders(requestMessage.getHeaders(), jmsRequest);
+			javax.jms.Message jmsRequest = this.createJmsRequest(requestMessage, session);
 
 			// TODO: support a JmsReplyTo header in the SI Message?
 			replyTo = this.getReplyDestination(session);
 			jmsRequest.setJMSReplyTo(replyTo);
 			connection.start();
 
-			Integer priority = requestMessage.getHeaders().getPriority();
-			if (priority == null) {
-				priority = this.priority;
-			}
+			int priority = this.getPriority(requestMessage);
 			javax.jms.Message replyMessage = null;
 			Destination requestDestination = this.getRequestDestination(requestMessage, session);
 			if (this.correlationKey != null) {
@@ -457,6 +497,112 @@ public class JmsOutboundGateway extends AbstractReplyProducingMessageHandler {
 		}
 	}
 
+	/**
+	 * Sends the request Message with the reply listener's destination as its JMSReplyTo, then
+	 * waits for the listener to hand over the reply with a matching correlation id.
+	 */
+	private javax.jms.Message sendAndReceiveWithReplyListener(Message<?> requestMessage) throws JMSException {
+		ReplyListener replyListener = this.getReplyListener();
+		Connection connection = this.createConnection();
+		Session session = null;
+		MessageProducer messageProducer = null;
+		String correlationId = null;
+		try {
+			session = this.createSession(connection);
+			javax.jms.Message jmsRequest = this.createJmsRequest(requestMessage, session);
+			jmsRequest.setJMSReplyTo(replyListener.getDestination());
+			ReplyHolder replyHolder = null;
+			if (this.correlationKey != null) {
+				correlationId = UUID.randomUUID().toString();
+				if (this.correlationKey.equals("JMSCorrelationID")) {
+					jmsRequest.setJMSCorrelationID(correlationId);
+				}
+				else {
+					jmsRequest.setStringProperty(this.correlationKey, correlationId);
+				}
+				replyHolder = replyListener.register(correlationId);
+			}
+			messageProducer = session.createProducer(this.getRequestDestination(requestMessage, session));
+			this.sendRequestMessage(jmsRequest, messageProducer, this.getPriority(requestMessage));
+			if (correlationId == null) {
+				// the reply may already have arrived; if so, register() returns it
+				correlationId = jmsRequest.getJMSMessageID();
+				replyHolder = replyListener.register(correlationId);
+			}
+			return replyHolder.await(this.receiveTimeout);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessageHandlingException(requestMessage, "interrupted while waiting for JMS reply", e);
+		}
+		finally {
+			if (correlationId != null) {
+				replyListener.remove(correlationId);
+			}
+			JmsUtils.closeMessageProducer(messageProducer);
+			JmsUtils.closeSession(session);
+			ConnectionFactoryUtils.releaseConnection(connection, this.connectionFactory, true);
+		}
+	}
+
+	private javax.jms.Message createJmsRequest(Message<?> requestMessage, Session session) throws JMSException {
+		// convert to JMS Message
+		Object objectToSend = requestMessage;
+		if (this.extractRequestPayload) {
+			objectToSend = requestMessage.getPayload();
+		}
+		javax.jms.Message jmsRequest = this.messageConverter.toMessage(objectToSend, session);
+
+		// map headers
+		headerMapper.fromHeaders(requestMessage.getHeaders(), jmsRequest);
+		return jmsRequest;
+	}
+
+	private int getPriority(Message<?> requestMessage) {
+		Integer priority = requestMessage.getHeaders().getPriority();
+		return (priority != null) ? priority : this.priority;
+	}
+
+	private ReplyListener getReplyListener() throws JMSException {
+		ReplyListener replyListener = this.replyListener;
+		if (replyListener == null) {
+			synchronized (this.replyListenerMonitor) {
+				replyListener = this.replyListener;
+				if (replyListener == null) {
+					replyListener = new ReplyListener();
+					this.replyListener = replyListener;
+				}
+			}
+		}
+		return replyListener;
+	}
+
+	/**
+	 * Discards a reply listener whose Connection has failed, so that the next request
+	 * starts a new one.
+	 */
+	private void replyListenerFailed(ReplyListener replyListener) {
+		synchronized (this.replyListenerMonitor) {
+			if (this.replyListener != replyListener) {
+				return;
+			}
+			this.replyListener = null;
+		}
+		replyListener.stop();
+	}
+
+	/**
+	 * Stops the reply listener, if it was started.
+	 */
+	public void destroy() {
+		synchronized (this.replyListenerMonitor) {
+			if (this.replyListener != null) {
+				this.replyListener.stop();
+				this.replyListener = null;
+			}
+		}
+	}
+
 	/**
 	 * Creates the MessageConsumer before sending the request Message since we are generating our own correlationId value for the MessageSelector.
 	 */
@@ -580,4 +726,192 @@ public class JmsOutboundGateway extends AbstractReplyProducingMessageHandler {
 		return connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
 	}
 
+
+	/**
+	 * Consumes replies on a dedicated Connection and hands each one to the request
+	 * thread waiting for its correlation id. If the Connection fails, the listener
+	 * is discarded.
+	 */
+	private class ReplyListener implements MessageListener, ExceptionListener {
+
+		private final ConcurrentMap<String, ReplyHolder> replyHolders = new ConcurrentHashMap<String, ReplyHolder>();
+
+		private final List<Session> sessions = new ArrayList<Session>();
+
+		private final List<MessageConsumer> consumers = new ArrayList<MessageConsumer>();
+
+		private final Connection connection;
+
+		private final long purgeInterval;
+
+		private volatile Destination destination;
+
+		private volatile long lastPurge = System.currentTimeMillis();
+
+		private ReplyListener() throws JMSException {
+			this.connection = createConnection();
+			this.purgeInterval = Math.max(receiveTimeout, 5000);
+			try {
+				this.registerExceptionListener();
+				Session session = createSession(this.connection);
+				this.sessions.add(session);
+				this.destination = getReplyDestination(session);
+				int concurrency = (this.destination instanceof Topic) ? 1 : replyListenerConcurrency;
+				for (int i = 0; i < concurrency; i++) {
+					if (i > 0) {
+						session = createSession(this.connection);
+						this.sessions.add(session);
+					}
+					MessageConsumer consumer = session.createConsumer(this.destination);
+					consumer.setMessageListener(this);
+					this.consumers.add(consumer);
+				}
+				this.connection.start();
+			}
+			catch (JMSException e) {
+				this.stop();
+				throw e;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("started reply listener on " + this.destination);
+			}
+		}
+
+		private void registerExceptionListener() {
+			try {
+				this.connection.setExceptionListener(this);
+			}
+			catch (JMSException e) {
+				// e.g. a shared Connection that does not accept an ExceptionListener
+				logger.warn("unable to register an ExceptionListener; "
+						+ "the reply listener will not be recovered after a connection failure", e);
+			}
+		}
+
+		private Destination getDestination() {
+			return this.destination;
+		}
+
+		/**
+		 * Returns the holder for the given correlation id, creating it if the reply has not
+		 * yet arrived.
+		 */
+		private ReplyHolder register(String correlationId) {
+			ReplyHolder replyHolder = new ReplyHolder();
+			ReplyHolder existing = this.replyHolders.putIfAbsent(correlationId, replyHolder);
+			if (existing != null) {
+				replyHolder = existing;
+			}
+			replyHolder.claimed = true;
+			return replyHolder;
+		}
+
+		private void remove(String correlationId) {
+			this.replyHolders.remove(correlationId);
+		}
+
+		public void onMessage(javax.jms.Message reply) {
+			try {
+				String correlationId = (correlationKey == null || correlationKey.equals("JMSCorrelationID"))
+						? reply.getJMSCorrelationID() : reply.getStringProperty(correlationKey);
+				ReplyHolder replyHolder = null;
+				if (correlationId != null) {
+					if (correlationKey == null) {
+						// correlated by message id, which the sender only knows once the request is sent
+						ReplyHolder newHolder = new ReplyHolder();
+						replyHolder = this.replyHolders.putIfAbsent(correlationId, newHolder);
+						if (replyHolder == null) {
+							replyHolder = newHolder;
+						}
+					}
+					else {
+						replyHolder = this.replyHolders.get(correlationId);
+					}
+				}
+				if (replyHolder == null || !replyHolder.setReply(reply)) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("discarding reply with no waiting request (late or duplicate): " + reply);
+					}
+				}
+			}
+			catch (JMSException e) {
+				logger.error("failed to process JMS reply", e);
+			}
+			this.purgeIfNecessary();
+		}
+
+		public void onException(JMSException e) {
+			logger.error("reply listener connection failed; a new listener will be started for the next request", e);
+			replyListenerFailed(this);
+		}
+
+		/**
+		 * Removes replies that arrived by message id, but were never claimed because their
+		 * request had already timed out.
+		 */
+		private void purgeIfNecessary() {
+			long now = System.currentTimeMillis();
+			if (now - this.lastPurge < this.purgeInterval) {
+				return;
+			}
+			this.lastPurge = now;
+			for (Map.Entry<String, ReplyHolder> entry : this.replyHolders.entrySet()) {
+				ReplyHolder replyHolder = entry.getValue();
+				if (!replyHolder.claimed && now - replyHolder.created > this.purgeInterval) {
+					if (this.replyHolders.remove(entry.getKey(), replyHolder) && logger.isDebugEnabled()) {
+						logger.debug("discarded late reply for correlation id " + entry.getKey());
+					}
+				}
+			}
+		}
+
+		private void stop() {
+			for (MessageConsumer consumer : this.consumers) {
+				JmsUtils.closeMessageConsumer(consumer);
+			}
+			for (Session session : this.sessions) {
+				JmsUtils.closeSession(session);
+			}
+			deleteDestinationIfTemporary(this.destination);
+			ConnectionFactoryUtils.releaseConnection(this.connection, connectionFactory, true);
+		}
+	}
+
+
+	private static class ReplyHolder {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		private final long created = System.currentTimeMillis();
+
+		private volatile boolean claimed;
+
+		private volatile javax.jms.Message reply;
+
+		/**
+		 * @return false if a reply has already been set.
+		 */
+		private synchronized boolean setReply(javax.jms.Message reply) {
+			if (this.reply != null) {
+				return false;
+			}
+			this.reply = reply;
+			this.latch.countDown();
+			return true;
+		}
+
+		/**
+		 * @return the reply, or null if the timeout elapsed first.
+		 */
+		private javax.jms.Message await(long timeout) throws InterruptedException {
+			if (timeout >= 0) {
+				this.latch.await(timeout, TimeUnit.MILLISECONDS);
+			}
+			else {
+				this.latch.await();
+			}
+			return this.reply;
+		}
+	}
+
 }
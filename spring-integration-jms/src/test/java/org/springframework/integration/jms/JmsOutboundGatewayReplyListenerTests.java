@@ -0,0 +1,303 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageTimeoutException;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.jms.connection.CachingConnectionFactory;
+
+/**
+ * @since 2.2
+ */
+public class JmsOutboundGatewayReplyListenerTests {
+
+	private static final Log logger = LogFactory.getLog(JmsOutboundGatewayReplyListenerTests.class);
+
+	private final ActiveMQQueue requestQueue = new ActiveMQQueue("replyListener.requests");
+
+	private final AtomicLong replyDelay = new AtomicLong();
+
+	private ActiveMQConnectionFactory amqConnectionFactory;
+
+	private CachingConnectionFactory connectionFactory;
+
+	private Connection responderConnection;
+
+	@Before
+	public void setUp() throws Exception {
+		this.amqConnectionFactory = new ActiveMQConnectionFactory("vm://localhost?broker.persistent=false");
+		this.connectionFactory = new CachingConnectionFactory(this.amqConnectionFactory);
+		this.connectionFactory.setCacheConsumers(false);
+		this.connectionFactory.setSessionCacheSize(10);
+		this.responderConnection = this.amqConnectionFactory.createConnection();
+		for (int i = 0; i < 4; i++) {
+			final Session session = this.responderConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			MessageConsumer consumer = session.createConsumer(this.requestQueue);
+			consumer.setMessageListener(new Responder(session));
+		}
+		this.responderConnection.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.responderConnection.close();
+		this.connectionFactory.destroy();
+	}
+
+	@Test
+	public void testMessageIdCorrelation() throws Exception {
+		JmsOutboundGateway gateway = this.createGateway(null, true);
+		this.assertRoundTrips(gateway, 20);
+		gateway.destroy();
+	}
+
+	@Test
+	public void testCorrelationKey() throws Exception {
+		JmsOutboundGateway gateway = this.createGateway("foo", true);
+		this.assertRoundTrips(gateway, 20);
+		gateway.destroy();
+	}
+
+	@Test
+	public void testJmsCorrelationIdKey() throws Exception {
+		JmsOutboundGateway gateway = this.createGateway("JMSCorrelationID", true);
+		this.assertRoundTrips(gateway, 20);
+		gateway.destroy();
+	}
+
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		final JmsOutboundGateway gateway = this.createGateway(null, true);
+		gateway.setReplyListenerConcurrency(3);
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(8);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						assertRoundTrips(gateway, 50);
+					}
+					catch (Throwable e) {
+						logger.error("round trip failed", e);
+						failures.incrementAndGet();
+					}
+					finally {
+						latch.countDown();
+					}
+				}
+			});
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertEquals(0, failures.get());
+		gateway.destroy();
+	}
+
+	@Test
+	public void testLateReplyDiscarded() throws Exception {
+		JmsOutboundGateway gateway = this.createGateway(null, true);
+		gateway.setReceiveTimeout(200);
+		this.replyDelay.set(600);
+		try {
+			gateway.handleMessage(new GenericMessage<String>("late"));
+			fail("Expected MessageTimeoutException");
+		}
+		catch (MessageTimeoutException e) {
+			// expected
+		}
+		this.replyDelay.set(0);
+		Thread.sleep(600);
+		// the late reply must not be delivered to the next request
+		gateway.setReceiveTimeout(5000);
+		this.assertRoundTrips(gateway, 1);
+		gateway.destroy();
+	}
+
+	@Test
+	public void testListenerRecreatedAfterConnectionFailure() throws Exception {
+		JmsOutboundGateway gateway = this.createGateway(null, true);
+		gateway.setConnectionFactory(this.amqConnectionFactory);
+		this.assertRoundTrips(gateway, 1);
+		Object failedListener = TestUtils.getPropertyValue(gateway, "replyListener");
+		ActiveMQConnection connection = TestUtils.getPropertyValue(failedListener, "connection",
+				ActiveMQConnection.class);
+		connection.onException(new IOException("simulated transport failure"));
+		int n = 0;
+		while (TestUtils.getPropertyValue(gateway, "replyListener") != null && n++ < 500) {
+			Thread.sleep(10);
+		}
+		assertNull(TestUtils.getPropertyValue(gateway, "replyListener"));
+		this.assertRoundTrips(gateway, 5);
+		Object newListener = TestUtils.getPropertyValue(gateway, "replyListener");
+		assertNotNull(newListener);
+		assertNotSame(failedListener, newListener);
+		gateway.destroy();
+	}
+
+	/**
+	 * Compares per-request temporary queues with the shared reply listener, using an
+	 * embedded broker and 4 requesting threads.
+	 */
+	@Test
+	@Ignore
+	public void benchmarkReplyListener() throws Exception {
+		int count = 10000;
+		this.runBenchmark("temporary queue per request", this.createGateway(null, false), count);
+		this.runBenchmark("correlation key per request", this.createGateway("foo", false), count);
+		JmsOutboundGateway gateway = this.createGateway(null, true);
+		this.runBenchmark("reply listener", gateway, count);
+		gateway.destroy();
+		gateway = this.createGateway(null, true);
+		gateway.setReplyListenerConcurrency(4);
+		this.runBenchmark("reply listener, 4 consumers", gateway, count);
+		gateway.destroy();
+	}
+
+	private void runBenchmark(String name, final JmsOutboundGateway gateway, int count) throws Exception {
+		final int threads = 4;
+		final int perThread = count / threads;
+		this.assertRoundTrips(gateway, 100);
+		final CountDownLatch latch = new CountDownLatch(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						assertRoundTrips(gateway, perThread);
+					}
+					catch (Throwable e) {
+						failures.incrementAndGet();
+					}
+					finally {
+						latch.countDown();
+					}
+				}
+			});
+		}
+		assertTrue(latch.await(300, TimeUnit.SECONDS));
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		executor.shutdown();
+		assertEquals(0, failures.get());
+		logger.warn(name + ": " + (threads * perThread) + " requests in " + elapsed + "ms ("
+				+ (threads * perThread * 1000L / elapsed) + "/s)");
+	}
+
+	private JmsOutboundGateway createGateway(String correlationKey, boolean useReplyListener) {
+		JmsOutboundGateway gateway = new JmsOutboundGateway();
+		gateway.setConnectionFactory(this.connectionFactory);
+		gateway.setRequestDestination(this.requestQueue);
+		gateway.setCorrelationKey(correlationKey);
+		gateway.setUseReplyListener(useReplyListener);
+		gateway.afterPropertiesSet();
+		return gateway;
+	}
+
+	private void assertRoundTrips(JmsOutboundGateway gateway, int count) {
+		QueueChannel replies = new QueueChannel();
+		for (int i = 0; i < count; i++) {
+			String payload = Thread.currentThread().getName() + ":" + i;
+			gateway.handleMessage(MessageBuilder.withPayload(payload).setReplyChannel(replies).build());
+			Message<?> reply = replies.receive(0);
+			assertNotNull(reply);
+			assertEquals(payload.toUpperCase(), reply.getPayload());
+		}
+		assertNull(replies.receive(0));
+	}
+
+
+	/**
+	 * Replies to JMSReplyTo with the upper-cased text, copying the correlation the same
+	 * way as the inbound gateway.
+	 */
+	private class Responder implements MessageListener {
+
+		private final Session session;
+
+		private Responder(Session session) {
+			this.session = session;
+		}
+
+		public void onMessage(javax.jms.Message request) {
+			try {
+				long delay = replyDelay.get();
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+				TextMessage reply = this.session.createTextMessage(((TextMessage) request).getText().toUpperCase());
+				if (request.getStringProperty("foo") != null) {
+					reply.setStringProperty("foo", request.getStringProperty("foo"));
+				}
+				else if (request.getJMSCorrelationID() != null) {
+					reply.setJMSCorrelationID(request.getJMSCorrelationID());
+				}
+				else {
+					reply.setJMSCorrelationID(request.getJMSMessageID());
+				}
+				MessageProducer producer = this.session.createProducer(request.getJMSReplyTo());
+				producer.send(reply);
+				producer.close();
+			}
+			catch (JMSException e) {
+				logger.error("failed to reply", e);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
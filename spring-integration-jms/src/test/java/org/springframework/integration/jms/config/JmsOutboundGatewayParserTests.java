@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2012 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -66,6 +66,19 @@ public class JmsOutboundGatewayParserTests {
 		assertEquals(DeliveryMode.PERSISTENT, deliveryMode);
 	}
 
+	@Test
+	public void testWithReplyListener(){
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+				"jmsOutboundGatewayWithReplyListener.xml", this.getClass());
+		EventDrivenConsumer endpoint = (EventDrivenConsumer) context.getBean("jmsGateway");
+		DirectFieldAccessor accessor = new DirectFieldAccessor(endpoint);
+		JmsOutboundGateway gateway = (JmsOutboundGateway) accessor.getPropertyValue("handler");
+		accessor = new DirectFieldAccessor(gateway);
+		assertTrue((Boolean) accessor.getPropertyValue("useReplyListener"));
+		assertEquals(3, accessor.getPropertyValue("replyListenerConcurrency"));
+		context.close();
+	}
+
 	@Test
 	public void testDefault(){
 		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
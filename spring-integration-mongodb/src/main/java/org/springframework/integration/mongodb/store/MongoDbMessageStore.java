@@ -17,6 +17,7 @@
 package org.springframework.integration.mongodb.store;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -26,6 +27,7 @@ import java.util.UUID;
 
 import org.springframework.beans.DirectFieldAccessor;
 import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.mapping.context.MappingContext;
@@ -33,6 +35,7 @@ import org.springframework.data.mongodb.MongoDbFactory;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.convert.CustomConversions;
 import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
 import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
@@ -51,7 +54,6 @@ import org.springframework.integration.store.SimpleMessageGroup;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import com.mongodb.BasicDBList;
@@ -66,13 +68,18 @@ import static org.springframework.integration.history.MessageHistory.TYPE_PROPER
 /**
  * An implementation of both the {@link MessageStore} and {@link MessageGroupStore}
  * strategies that relies upon MongoDB for persistence.
+ * <p/>
+ * On initialization, the store ensures an index on the Message id and a
+ * compound index on the group id and created date, so that a group's messages
+ * can be found, counted, polled in order and removed without a collection scan.
  * 
  * @author Mark Fisher
  * @author Oleg Zhurakousky
  * @author Sean Brandt
  * @since 2.1
  */
-public class MongoDbMessageStore extends AbstractMessageGroupStore implements MessageStore, BeanClassLoaderAware {
+public class MongoDbMessageStore extends AbstractMessageGroupStore
+		implements MessageStore, BeanClassLoaderAware, InitializingBean {
 
 	private final static String DEFAULT_COLLECTION_NAME = "messages";
 
@@ -90,6 +97,8 @@ public class MongoDbMessageStore extends AbstractMessageGroupStore implements Me
 
 	private final static String CREATED_DATE = "_createdDate";
 
+	private final static String MESSAGE_ID_KEY = "headers.id._value";
+
 
 	private final MongoTemplate template;
 
@@ -122,6 +131,17 @@ public class MongoDbMessageStore extends AbstractMessageGroupStore implements Me
 		this.classLoader = classLoader;
 	}
 
+	/**
+	 * Ensures the indexes used to look up Messages by id, and to find the
+	 * Messages of a group in the order they were added.
+	 */
+	public void afterPropertiesSet() {
+		this.template.indexOps(this.collectionName).ensureIndex(new Index(MESSAGE_ID_KEY, Order.ASCENDING));
+		this.template.indexOps(this.collectionName).ensureIndex(new Index()
+				.on(GROUP_ID_KEY, Order.ASCENDING)
+				.on(CREATED_DATE, Order.ASCENDING));
+	}
+
 	public <T> Message<T> addMessage(Message<T> message) {
 		Assert.notNull(message, "'message' must not be null");
 		this.template.insert(new MessageWrapper(message), this.collectionName);
@@ -147,22 +167,25 @@ public class MongoDbMessageStore extends AbstractMessageGroupStore implements Me
 
 	public MessageGroup getMessageGroup(Object groupId) {
 		Assert.notNull(groupId, "'groupId' must not be null");
-		List<MessageWrapper> messageWrappers = this.template.find(whereGroupIdIs(groupId), MessageWrapper.class, this.collectionName);
+		List<MessageWrapper> messageWrappers = this.template.find(whereGroupIdIsOrdered(groupId), MessageWrapper.class, this.collectionName);
 		List<Message<?>> messages = new ArrayList<Message<?>>();
+		MessageWrapper latest = null;
+		for (MessageWrapper messageWrapper : messageWrappers) {
+			messages.add(messageWrapper.getMessage());
+			// the group metadata is taken from the most recently updated document
+			if (latest == null || messageWrapper.get_Group_update_timestamp() > latest.get_Group_update_timestamp()) {
+				latest = messageWrapper;
+			}
+		}
 		long timestamp = 0;
 		long lastmodified = 0;
 		int lastReleasedSequenceNumber = 0;
 		boolean completeGroup = false;
-		if (messageWrappers.size() > 0){
-			MessageWrapper messageWrapper = messageWrappers.get(0);
-			timestamp = messageWrapper.get_Group_timestamp();
-			lastmodified = messageWrapper.get_Group_update_timestamp();
-			completeGroup = messageWrapper.get_Group_complete();
-			lastReleasedSequenceNumber = messageWrapper.get_LastReleasedSequenceNumber();
-		}
-
-		for (MessageWrapper messageWrapper : messageWrappers) {
-			messages.add(messageWrapper.getMessage());
+		if (latest != null){
+			timestamp = latest.get_Group_timestamp();
+			lastmodified = latest.get_Group_update_timestamp();
+			completeGroup = latest.get_Group_complete();
+			lastReleasedSequenceNumber = latest.get_LastReleasedSequenceNumber();
 		}
 
 		SimpleMessageGroup messageGroup = new SimpleMessageGroup(messages, groupId, timestamp, completeGroup);
@@ -210,22 +233,45 @@ public class MongoDbMessageStore extends AbstractMessageGroupStore implements Me
 	}
 
 	public void removeMessageGroup(Object groupId) {
-		List<MessageWrapper> messageWrappers = this.template.find(whereGroupIdIs(groupId), MessageWrapper.class, this.collectionName);
-		for (MessageWrapper messageWrapper : messageWrappers) {
-			this.removeMessageFromGroup(groupId, messageWrapper.getMessage());
-		}
+		Assert.notNull(groupId, "'groupId' must not be null");
+		this.template.remove(new Query(where(GROUP_ID_KEY).is(groupId)), this.collectionName);
 	}
 
+	/**
+	 * Iterates over the distinct group ids in the collection; each
+	 * {@link MessageGroup} is only loaded when the iterator reaches it.
+	 */
 	public Iterator<MessageGroup> iterator() {
-		List<MessageWrapper> groupedMessages = this.template.find(whereGroupIdExists(), MessageWrapper.class, this.collectionName);
-		Map<Object, MessageGroup> messageGroups = new HashMap<Object, MessageGroup>();
-		for (MessageWrapper groupedMessage : groupedMessages) {
-			Object groupId = groupedMessage.get_GroupId();
-			if (!messageGroups.containsKey(groupId)) {
-				messageGroups.put(groupId, this.getMessageGroup(groupId));
+		final Iterator<?> groupIds = this.distinctGroupIds().iterator();
+
+		return new Iterator<MessageGroup>() {
+
+			public boolean hasNext() {
+				return groupIds.hasNext();
 			}
-		}
-		return messageGroups.values().iterator();
+
+			public MessageGroup next() {
+				return getMessageGroup(groupIds.next());
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException("Cannot remove MessageGroup from this iterator.");
+			}
+		};
+	}
+
+	@Override
+	@ManagedAttribute
+	public int getMessageGroupCount() {
+		return this.distinctGroupIds().size();
+	}
+
+	@Override
+	@ManagedAttribute
+	public int getMessageCountForAllMessageGroups() {
+		long lCount = this.template.count(whereGroupIdExists(), this.collectionName);
+		Assert.isTrue(lCount <= Integer.MAX_VALUE, "Message count is out of Integer's range");
+		return (int) lCount;
 	}
 
 	public void completeGroup(Object groupId) {
@@ -244,15 +290,9 @@ public class MongoDbMessageStore extends AbstractMessageGroupStore implements Me
 
 	public Message<?> pollMessageFromGroup(Object groupId) {
 		Assert.notNull(groupId, "'groupId' must not be null");
-		List<MessageWrapper> messageWrappers = this.template.find(whereGroupIdIsOrdered(groupId), MessageWrapper.class, this.collectionName);
-		Message<?> message = null;
-
-		if (!CollectionUtils.isEmpty(messageWrappers)){
-			message = messageWrappers.get(0).getMessage();
-			this.removeMessageFromGroup(groupId, message);
-		}
+		MessageWrapper messageWrapper = this.template.findAndRemove(whereGroupIdIsOrdered(groupId), MessageWrapper.class, this.collectionName);
 		this.updateGroup(groupId);
-		return message;
+		return (messageWrapper != null) ? messageWrapper.getMessage() : null;
 	}
 
 	public int messageGroupSize(Object groupId) {
@@ -266,7 +306,7 @@ public class MongoDbMessageStore extends AbstractMessageGroupStore implements Me
 	 */
 
 	private static Query whereMessageIdIs(UUID id) {
-		return new Query(where("headers.id._value").is(id.toString()));
+		return new Query(where(MESSAGE_ID_KEY).is(id.toString()));
 	}
 
 	private static Query whereGroupIdIs(Object groupId) {
@@ -280,11 +320,15 @@ public class MongoDbMessageStore extends AbstractMessageGroupStore implements Me
 	}
 
 	private static Query whereGroupIdIsOrdered(Object groupId) {
-		Query q = new Query(where(GROUP_ID_KEY).is(groupId)).limit(1);
+		Query q = new Query(where(GROUP_ID_KEY).is(groupId));
 		q.sort().on(CREATED_DATE, Order.ASCENDING);
 		return q;
 	}
 
+	private Collection<?> distinctGroupIds() {
+		return this.template.getCollection(this.collectionName).distinct(GROUP_ID_KEY);
+	}
+
 	private void updateGroup(Object groupId) {
 		Update update = Update.update(GROUP_UPDATE_TIMESTAMP_KEY, System.currentTimeMillis());
 		Query q = whereGroupIdIs(groupId);
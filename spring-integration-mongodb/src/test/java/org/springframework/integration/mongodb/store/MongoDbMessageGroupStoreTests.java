@@ -15,14 +15,23 @@
  */
 package org.springframework.integration.mongodb.store;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.channel.DirectChannel;
@@ -35,6 +44,8 @@ import org.springframework.integration.store.MessageGroup;
 import org.springframework.integration.store.SimpleMessageGroup;
 import org.springframework.integration.support.MessageBuilder;
 
+import com.mongodb.DBObject;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -333,6 +344,89 @@ public class MongoDbMessageGroupStoreTests extends MongoDbAvailableTests {
 //	}
 
 
+	@Test
+	@MongoDbAvailable
+	public void testIndexesEnsuredOnInitialization() throws Exception{
+		MongoDbFactory mongoDbFactory = this.prepareMongoFactory();
+		MongoDbMessageStore store = new MongoDbMessageStore(mongoDbFactory);
+		store.afterPropertiesSet();
+
+		Set<List<String>> indexKeys = new HashSet<List<String>>();
+		for (DBObject indexInfo : new MongoTemplate(mongoDbFactory).getCollection("messages").getIndexInfo()) {
+			indexKeys.add(new ArrayList<String>(((DBObject) indexInfo.get("key")).keySet()));
+		}
+		assertTrue(indexKeys.contains(Arrays.asList("headers.id._value")));
+		assertTrue(indexKeys.contains(Arrays.asList("_groupId", "_createdDate")));
+	}
+
+	@Test
+	@MongoDbAvailable
+	public void testPollMessageFromGroupInOrder() throws Exception{
+		MongoDbFactory mongoDbFactory = this.prepareMongoFactory();
+		MongoDbMessageStore store = new MongoDbMessageStore(mongoDbFactory);
+		store.afterPropertiesSet();
+
+		for (String payload : new String[] {"A", "B", "C"}) {
+			store.addMessageToGroup(1, new GenericMessage<String>(payload));
+			Thread.sleep(10);
+		}
+		store.addMessageToGroup(2, new GenericMessage<String>("X"));
+
+		assertEquals("A", store.pollMessageFromGroup(1).getPayload());
+		assertEquals(2, store.messageGroupSize(1));
+		assertEquals("B", store.pollMessageFromGroup(1).getPayload());
+		assertEquals("C", store.pollMessageFromGroup(1).getPayload());
+		assertNull(store.pollMessageFromGroup(1));
+		assertEquals(1, store.messageGroupSize(2));
+	}
+
+	@Test
+	@MongoDbAvailable
+	public void testRemoveMessageGroupLeavesOtherGroups() throws Exception{
+		MongoDbFactory mongoDbFactory = this.prepareMongoFactory();
+		MongoDbMessageStore store = new MongoDbMessageStore(mongoDbFactory);
+		store.afterPropertiesSet();
+
+		store.addMessageToGroup(1, new GenericMessage<String>("A"));
+		store.addMessageToGroup(1, new GenericMessage<String>("B"));
+		store.addMessageToGroup(2, new GenericMessage<String>("C"));
+		store.addMessage(new GenericMessage<String>("D"));
+		assertEquals(2, store.getMessageGroupCount());
+		assertEquals(3, store.getMessageCountForAllMessageGroups());
+
+		store.removeMessageGroup(1);
+		assertEquals(0, store.getMessageGroup(1).size());
+		assertEquals(1, store.getMessageGroup(2).size());
+		assertEquals(1, store.getMessageGroupCount());
+		assertEquals(1, store.getMessageCountForAllMessageGroups());
+		assertEquals(2, store.getMessageCount());
+	}
+
+	@Test
+	@Ignore
+	@MongoDbAvailable
+	public void benchmarkPollFromLargeGroup() throws Exception{
+		for (int size : new int[] {100, 500, 2000}) {
+			MongoDbFactory mongoDbFactory = this.prepareMongoFactory();
+			MongoDbMessageStore store = new MongoDbMessageStore(mongoDbFactory);
+			store.afterPropertiesSet();
+			for (int i = 0; i < size; i++) {
+				store.addMessage(MessageBuilder.withPayload("foo").setCorrelationId(1).build());
+			}
+			// group documents are written directly, so that only polling is measured
+			MongoTemplate template = new MongoTemplate(mongoDbFactory);
+			template.updateMulti(new Query(), Update.update("_groupId", 1), "messages");
+			long start = System.currentTimeMillis();
+			int polled = 0;
+			while (store.pollMessageFromGroup(1) != null) {
+				polled++;
+			}
+			long elapsed = System.currentTimeMillis() - start;
+			assertEquals(size, polled);
+			System.out.println("Polled " + size + " messages in " + elapsed + "ms");
+		}
+	}
+
 	@Test
 	@MongoDbAvailable
 	public void testWithAggregatorWithShutdown() throws Exception{
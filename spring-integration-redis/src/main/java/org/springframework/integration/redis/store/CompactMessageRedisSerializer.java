@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2012 the original author or authors
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package org.springframework.integration.redis.store;
+
+import java.io.IOException;
+
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.integration.Message;
+import org.springframework.integration.support.serializer.CompactMessageSerializer;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link RedisSerializer} for the {@link RedisMessageStore} that writes Messages with a
+ * {@link CompactMessageSerializer}, and any other value with Java serialization. Values stored
+ * with the default {@link JdkSerializationRedisSerializer} are still read, so an existing store
+ * can be switched to this serializer.
+ *
+ * @since 2.2
+ */
+public class CompactMessageRedisSerializer implements RedisSerializer<Object> {
+
+	private final CompactMessageSerializer messageSerializer;
+
+	private final JdkSerializationRedisSerializer objectSerializer = new JdkSerializationRedisSerializer();
+
+	public CompactMessageRedisSerializer() {
+		this(new CompactMessageSerializer());
+	}
+
+	public CompactMessageRedisSerializer(CompactMessageSerializer messageSerializer) {
+		Assert.notNull(messageSerializer, "'messageSerializer' must not be null");
+		this.messageSerializer = messageSerializer;
+	}
+
+	public byte[] serialize(Object object) throws SerializationException {
+		if (!(object instanceof Message)) {
+			return this.objectSerializer.serialize(object);
+		}
+		try {
+			return this.messageSerializer.toBytes((Message<?>) object);
+		}
+		catch (IOException e) {
+			throw new SerializationException("Cannot serialize Message", e);
+		}
+	}
+
+	public Object deserialize(byte[] bytes) throws SerializationException {
+		if (bytes == null || bytes.length == 0 || bytes[0] != CompactMessageSerializer.FORMAT_VERSION) {
+			return this.objectSerializer.deserialize(bytes);
+		}
+		try {
+			return this.messageSerializer.fromBytes(bytes);
+		}
+		catch (IOException e) {
+			throw new SerializationException("Cannot deserialize Message", e);
+		}
+	}
+
+}
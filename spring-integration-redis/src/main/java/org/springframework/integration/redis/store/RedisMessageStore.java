@@ -1,5 +1,5 @@
 /*
- * Copyright 2007-2011 the original author or authors
+ * Copyright 2007-2012 the original author or authors
  *
  *     Licensed under the Apache License, Version 2.0 (the "License");
  *     you may not use this file except in compliance with the License.
@@ -16,31 +16,84 @@
 
 package org.springframework.integration.redis.store;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.DefaultSortParameters;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.core.BoundValueOperations;
+import org.springframework.data.redis.connection.SortParameters;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
-import org.springframework.integration.store.AbstractKeyValueMessageStore;
+import org.springframework.integration.Message;
+import org.springframework.integration.store.AbstractMessageGroupStore;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupMetadata;
 import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.MessageStore;
+import org.springframework.integration.store.SimpleMessageGroup;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.util.Assert;
 
 /**
  * Redis implementation of the key/value style {@link MessageStore} and {@link MessageGroupStore}
- * 
+ * <p/>
+ * Each Message is stored under its own key, and its id is added to a set of all message ids,
+ * so the store can be counted without scanning keys. A message group is a list of message ids
+ * plus a hash of its metadata (timestamps, completion and last released sequence number), and
+ * the ids of all groups are kept in a sorted set scored by their creation time, which is used
+ * for iteration and to find expiry candidates. Each update to a group is applied in a single
+ * MULTI/EXEC transaction and writes only the affected message, rather than rewriting the whole
+ * group, and the messages of a group are read with one SORT ... GET command.
+ * <p/>
+ * Groups written by earlier versions, which stored each group as a single serialized value,
+ * are not read by this layout; see {@link #migrateLegacyMessageGroups()}.
+ * <p/>
+ * Group ids are stored in the group index with Java serialization, so they must be Serializable.
+ *
  * @author Oleg Zhurakousky
  * @since 2.1
  */
-public class RedisMessageStore extends AbstractKeyValueMessageStore {
+public class RedisMessageStore extends AbstractMessageGroupStore implements MessageStore {
+
+	private static final String MESSAGE_KEY_PREFIX = "MESSAGE_";
+
+	private static final String MESSAGE_GROUP_KEY_PREFIX = "MESSAGE_GROUP_";
+
+	private static final String GROUP_METADATA_KEY_PREFIX = "GROUP_METADATA_";
+
+	private static final String TIMESTAMP = "timestamp";
+
+	private static final String LAST_MODIFIED = "lastModified";
+
+	private static final String COMPLETE = "complete";
+
+	private static final String LAST_RELEASED_SEQUENCE = "lastReleasedSequence";
+
+	private static final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+
+	private static final byte[] MESSAGE_IDS_KEY = stringSerializer.serialize("MESSAGE_IDS");
+
+	private static final byte[] MESSAGE_GROUPS_KEY = stringSerializer.serialize("MESSAGE_GROUPS");
+
+	private static final SortParameters GROUP_MESSAGES_SORT = new DefaultSortParameters(
+			stringSerializer.serialize("nosort"), null,
+			new byte[][] { stringSerializer.serialize(MESSAGE_KEY_PREFIX + "*") }, null, null);
 
 	private final RedisTemplate<Object, Object> redisTemplate;
 
+	private final JdkSerializationRedisSerializer groupIdSerializer = new JdkSerializationRedisSerializer();
+
 	public RedisMessageStore(RedisConnectionFactory connectionFactory) {
 		this.redisTemplate = new RedisTemplate<Object, Object>();
 		this.redisTemplate.setConnectionFactory(connectionFactory);
@@ -52,22 +105,375 @@ public class RedisMessageStore extends AbstractKeyValueMessageStore {
 		Assert.notNull(valueSerializer, "'valueSerializer' must not be null");
 		this.redisTemplate.setValueSerializer(valueSerializer);
 	}
-	
-	@Override
-	protected Object doRetrieve(Object id){
+
+	// MessageStore methods
+
+	public Message<?> getMessage(UUID id) {
 		Assert.notNull(id, "'id' must not be null");
-		BoundValueOperations<Object, Object> ops = redisTemplate.boundValueOps(id);
-		return ops.get();
+		final byte[] messageId = this.messageId(id);
+		return this.redisTemplate.execute(new RedisCallback<Message<?>>() {
+			public Message<?> doInRedis(RedisConnection connection) {
+				byte[] value = connection.get(messageKey(messageId));
+				return (value != null) ? deserializeMessage(value) : null;
+			}
+		});
 	}
 
+	@SuppressWarnings("unchecked")
+	public <T> Message<T> addMessage(Message<T> message) {
+		Assert.notNull(message, "'message' must not be null");
+		final byte[] id = this.messageId(message.getHeaders().getId());
+		final byte[] value = this.serializeMessage(message);
+		this.redisTemplate.execute(new RedisCallback<Object>() {
+			public Object doInRedis(RedisConnection connection) {
+				connection.multi();
+				connection.set(messageKey(id), value);
+				connection.sAdd(MESSAGE_IDS_KEY, id);
+				connection.exec();
+				return null;
+			}
+		});
+		return (Message<T>) this.getMessage(message.getHeaders().getId());
+	}
 
-	@Override
-	protected void doStore(Object id, Object objectToStore) {
+	public Message<?> removeMessage(UUID id) {
 		Assert.notNull(id, "'id' must not be null");
-		Assert.notNull(objectToStore, "'objectToStore' must not be null");
-		BoundValueOperations<Object, Object> ops = redisTemplate.boundValueOps(id);
+		final byte[] messageId = this.messageId(id);
+		return this.redisTemplate.execute(new RedisCallback<Message<?>>() {
+			public Message<?> doInRedis(RedisConnection connection) {
+				byte[] value = connection.get(messageKey(messageId));
+				if (value == null) {
+					return null;
+				}
+				connection.multi();
+				connection.del(messageKey(messageId));
+				connection.sRem(MESSAGE_IDS_KEY, messageId);
+				connection.exec();
+				return deserializeMessage(value);
+			}
+		});
+	}
+
+	@ManagedAttribute
+	public long getMessageCount() {
+		return this.redisTemplate.execute(new RedisCallback<Long>() {
+			public Long doInRedis(RedisConnection connection) {
+				return connection.sCard(MESSAGE_IDS_KEY);
+			}
+		});
+	}
+
+	// MessageGroupStore methods
+
+	public MessageGroup getMessageGroup(final Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		return this.redisTemplate.execute(new RedisCallback<MessageGroup>() {
+			public MessageGroup doInRedis(RedisConnection connection) {
+				return buildMessageGroup(connection, groupId);
+			}
+		});
+	}
+
+	/**
+	 * Add a Message to the group with the provided group ID.
+	 */
+	public MessageGroup addMessageToGroup(Object groupId, Message<?> message) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		Assert.notNull(message, "'message' must not be null");
+		final byte[] groupKey = this.groupKey(groupId);
+		final byte[] id = this.messageId(message.getHeaders().getId());
+		final byte[] value = this.serializeMessage(message);
+		this.redisTemplate.execute(new GroupUpdateCallback(groupId) {
+			@Override
+			protected void doUpdate(RedisConnection connection) {
+				connection.set(messageKey(id), value);
+				connection.sAdd(MESSAGE_IDS_KEY, id);
+				connection.rPush(groupKey, id);
+			}
+		});
+		return this.getMessageGroup(groupId);
+	}
+
+	/**
+	 * Remove a Message from the group with the provided group ID.
+	 */
+	public MessageGroup removeMessageFromGroup(Object groupId, Message<?> messageToRemove) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		Assert.notNull(messageToRemove, "'messageToRemove' must not be null");
+		final byte[] groupKey = this.groupKey(groupId);
+		final byte[] id = this.messageId(messageToRemove.getHeaders().getId());
+		this.redisTemplate.execute(new GroupUpdateCallback(groupId) {
+			@Override
+			protected void doUpdate(RedisConnection connection) {
+				connection.lRem(groupKey, 0, id);
+				connection.del(messageKey(id));
+				connection.sRem(MESSAGE_IDS_KEY, id);
+			}
+		});
+		return this.getMessageGroup(groupId);
+	}
+
+	public void completeGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		final byte[] metadataKey = this.metadataKey(groupId);
+		this.redisTemplate.execute(new GroupUpdateCallback(groupId) {
+			@Override
+			protected void doUpdate(RedisConnection connection) {
+				connection.hSet(metadataKey, stringSerializer.serialize(COMPLETE), stringSerializer.serialize("true"));
+			}
+		});
+	}
+
+	/**
+	 * Remove the MessageGroup with the provided group ID.
+	 */
+	public void removeMessageGroup(final Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		final byte[] groupKey = this.groupKey(groupId);
+		final byte[] metadataKey = this.metadataKey(groupId);
+		this.redisTemplate.execute(new RedisCallback<Object>() {
+			public Object doInRedis(RedisConnection connection) {
+				List<Object> results = null;
+				while (results == null) {
+					// a message added after the ids are read aborts the transaction, which is then retried
+					connection.watch(groupKey);
+					List<byte[]> ids = connection.lRange(groupKey, 0, -1);
+					byte[][] keys = new byte[ids.size() + 2][];
+					for (int i = 0; i < ids.size(); i++) {
+						keys[i] = messageKey(ids.get(i));
+					}
+					keys[ids.size()] = groupKey;
+					keys[ids.size() + 1] = metadataKey;
+					connection.multi();
+					connection.del(keys);
+					for (byte[] id : ids) {
+						connection.sRem(MESSAGE_IDS_KEY, id);
+					}
+					connection.zRem(MESSAGE_GROUPS_KEY, serializeGroupId(groupId));
+					results = connection.exec();
+				}
+				return null;
+			}
+		});
+	}
+
+	public void setLastReleasedSequenceNumberForGroup(Object groupId, final int sequenceNumber) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		final byte[] metadataKey = this.metadataKey(groupId);
+		this.redisTemplate.execute(new GroupUpdateCallback(groupId) {
+			@Override
+			protected void doUpdate(RedisConnection connection) {
+				connection.hSet(metadataKey, stringSerializer.serialize(LAST_RELEASED_SEQUENCE),
+						stringSerializer.serialize(String.valueOf(sequenceNumber)));
+			}
+		});
+	}
+
+	public Message<?> pollMessageFromGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		final byte[] groupKey = this.groupKey(groupId);
+		final byte[] metadataKey = this.metadataKey(groupId);
+		return this.redisTemplate.execute(new RedisCallback<Message<?>>() {
+			public Message<?> doInRedis(RedisConnection connection) {
+				while (true) {
+					// the head is only popped in the transaction that removes its message, which is retried
+					// if the group changes after the head is read
+					connection.watch(groupKey);
+					byte[] id = connection.lIndex(groupKey, 0);
+					if (id == null) {
+						connection.unwatch();
+						return null;
+					}
+					byte[] value = connection.get(messageKey(id));
+					connection.multi();
+					connection.lPop(groupKey);
+					connection.del(messageKey(id));
+					connection.sRem(MESSAGE_IDS_KEY, id);
+					connection.hSet(metadataKey, stringSerializer.serialize(LAST_MODIFIED),
+							stringSerializer.serialize(String.valueOf(System.currentTimeMillis())));
+					if (connection.exec() != null) {
+						return (value != null) ? deserializeMessage(value) : null;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Converts the message groups and messages written by earlier versions of this store, which kept
+	 * each group as a serialized {@link MessageGroupMetadata} under its group key, to the current layout,
+	 * and adds the ids of their individually stored messages to the message id index. Groups already in
+	 * the current layout are left unchanged, so this may be called more than once. It uses the KEYS
+	 * command, and should be called once when upgrading, before the store is used by any endpoint.
+	 * @return the number of groups that were converted.
+	 */
+	public int migrateLegacyMessageGroups() {
+		return this.redisTemplate.execute(new RedisCallback<Integer>() {
+			public Integer doInRedis(RedisConnection connection) {
+				int count = 0;
+				for (byte[] groupKey : connection.keys(stringSerializer.serialize(MESSAGE_GROUP_KEY_PREFIX + "*"))) {
+					if (DataType.STRING.equals(connection.type(groupKey))) {
+						Object value = redisTemplate.getValueSerializer().deserialize(connection.get(groupKey));
+						if (value instanceof MessageGroupMetadata) {
+							migrateLegacyMessageGroup(connection, groupKey, (MessageGroupMetadata) value);
+							count++;
+						}
+					}
+				}
+				for (byte[] key : connection.keys(stringSerializer.serialize(MESSAGE_KEY_PREFIX + "*"))) {
+					String id = stringSerializer.deserialize(key).substring(MESSAGE_KEY_PREFIX.length());
+					try {
+						UUID.fromString(id);
+					}
+					catch (IllegalArgumentException e) {
+						// not a message, e.g. a group or one of the indexes
+						continue;
+					}
+					connection.sAdd(MESSAGE_IDS_KEY, stringSerializer.serialize(id));
+				}
+				return count;
+			}
+		});
+	}
+
+	private void migrateLegacyMessageGroup(RedisConnection connection, byte[] groupKey, MessageGroupMetadata group) {
+		byte[] metadataKey = this.metadataKey(group.getGroupId());
+		connection.multi();
+		connection.del(groupKey);
+		Iterator<UUID> messageIds = group.messageIdIterator();
+		while (messageIds.hasNext()) {
+			byte[] id = this.messageId(messageIds.next());
+			connection.rPush(groupKey, id);
+			connection.sAdd(MESSAGE_IDS_KEY, id);
+		}
+		connection.hSet(metadataKey, stringSerializer.serialize(TIMESTAMP),
+				stringSerializer.serialize(String.valueOf(group.getTimestamp())));
+		if (group.getLastModified() > 0) {
+			connection.hSet(metadataKey, stringSerializer.serialize(LAST_MODIFIED),
+					stringSerializer.serialize(String.valueOf(group.getLastModified())));
+		}
+		connection.hSet(metadataKey, stringSerializer.serialize(COMPLETE),
+				stringSerializer.serialize(String.valueOf(group.isComplete())));
+		connection.hSet(metadataKey, stringSerializer.serialize(LAST_RELEASED_SEQUENCE),
+				stringSerializer.serialize(String.valueOf(group.getLastReleasedMessageSequenceNumber())));
+		connection.zAdd(MESSAGE_GROUPS_KEY, group.getTimestamp(), this.serializeGroupId(group.getGroupId()));
+		connection.exec();
+	}
+
+	public int messageGroupSize(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		final byte[] groupKey = this.groupKey(groupId);
+		return this.redisTemplate.execute(new RedisCallback<Long>() {
+			public Long doInRedis(RedisConnection connection) {
+				return connection.lLen(groupKey);
+			}
+		}).intValue();
+	}
+
+	public Iterator<MessageGroup> iterator() {
+		Set<byte[]> groupIds = this.redisTemplate.execute(new RedisCallback<Set<byte[]>>() {
+			public Set<byte[]> doInRedis(RedisConnection connection) {
+				return connection.zRange(MESSAGE_GROUPS_KEY, 0, -1);
+			}
+		});
+		return new MessageGroupIterator(this.deserializeGroupIds(groupIds).iterator());
+	}
+
+	/**
+	 * Expires the groups that are older than the timeout. Candidates are selected from the group
+	 * index by creation time, so only groups that may have expired are loaded; when timing out on
+	 * idle, each candidate is checked against its last modified time.
+	 */
+	@Override
+	public int expireMessageGroups(long timeout) {
+		int count = 0;
+		final long threshold = System.currentTimeMillis() - timeout;
+		Set<byte[]> candidates = this.redisTemplate.execute(new RedisCallback<Set<byte[]>>() {
+			public Set<byte[]> doInRedis(RedisConnection connection) {
+				return connection.zRangeByScore(MESSAGE_GROUPS_KEY, 0, threshold);
+			}
+		});
+		for (Object groupId : this.deserializeGroupIds(candidates)) {
+			MessageGroup group = this.getMessageGroup(groupId);
+			long timestamp = group.getTimestamp();
+			if (this.isTimeoutOnIdle() && group.getLastModified() > 0) {
+				timestamp = group.getLastModified();
+			}
+			if (timestamp <= threshold) {
+				count++;
+				this.expire(group);
+			}
+		}
+		return count;
+	}
+
+	@Override
+	@ManagedAttribute
+	public int getMessageGroupCount() {
+		return this.redisTemplate.execute(new RedisCallback<Long>() {
+			public Long doInRedis(RedisConnection connection) {
+				return connection.zCard(MESSAGE_GROUPS_KEY);
+			}
+		}).intValue();
+	}
+
+	/**
+	 * Sums the group sizes with one pipelined LLEN per group, without loading any messages.
+	 */
+	@Override
+	@ManagedAttribute
+	public int getMessageCountForAllMessageGroups() {
+		return this.redisTemplate.execute(new RedisCallback<Integer>() {
+			public Integer doInRedis(RedisConnection connection) {
+				List<Object> groupIds = deserializeGroupIds(connection.zRange(MESSAGE_GROUPS_KEY, 0, -1));
+				if (groupIds.isEmpty()) {
+					return 0;
+				}
+				connection.openPipeline();
+				for (Object groupId : groupIds) {
+					connection.lLen(groupKey(groupId));
+				}
+				int count = 0;
+				for (Object size : connection.closePipeline()) {
+					if (size instanceof Number) {
+						count += ((Number) size).intValue();
+					}
+				}
+				return count;
+			}
+		});
+	}
+
+	private MessageGroup buildMessageGroup(RedisConnection connection, Object groupId) {
+		Map<String, String> metadata = new HashMap<String, String>();
+		for (Map.Entry<byte[], byte[]> entry : connection.hGetAll(this.metadataKey(groupId)).entrySet()) {
+			metadata.put(stringSerializer.deserialize(entry.getKey()), stringSerializer.deserialize(entry.getValue()));
+		}
+		if (!metadata.containsKey(TIMESTAMP)) {
+			return new SimpleMessageGroup(groupId);
+		}
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		for (byte[] value : connection.sort(this.groupKey(groupId), GROUP_MESSAGES_SORT)) {
+			if (value != null) {
+				messages.add(this.deserializeMessage(value));
+			}
+		}
+		SimpleMessageGroup messageGroup = new SimpleMessageGroup(messages, groupId,
+				Long.parseLong(metadata.get(TIMESTAMP)), Boolean.parseBoolean(metadata.get(COMPLETE)));
+		if (metadata.containsKey(LAST_MODIFIED)) {
+			messageGroup.setLastModified(Long.parseLong(metadata.get(LAST_MODIFIED)));
+		}
+		if (metadata.containsKey(LAST_RELEASED_SEQUENCE)) {
+			messageGroup.setLastReleasedMessageSequenceNumber(Integer.parseInt(metadata.get(LAST_RELEASED_SEQUENCE)));
+		}
+		return messageGroup;
+	}
+
+	private byte[] serializeMessage(Message<?> message) {
 		try {
-			ops.set(objectToStore);
+			@SuppressWarnings("unchecked")
+			RedisSerializer<Object> serializer = (RedisSerializer<Object>) this.redisTemplate.getValueSerializer();
+			return serializer.serialize(message);
 		}
 		catch (SerializationException e) {
 			throw new IllegalArgumentException("If relying on the default RedisSerializer (JdkSerializationRedisSerializer) " +
@@ -76,22 +482,99 @@ public class RedisMessageStore extends AbstractKeyValueMessageStore {
 		}
 	}
 
+	private Message<?> deserializeMessage(byte[] value) {
+		Object message = this.redisTemplate.getValueSerializer().deserialize(value);
+		Assert.isInstanceOf(Message.class, message);
+		return (Message<?>) message;
+	}
 
-	@Override
-	protected Object doRemove(Object id) {
-		Assert.notNull(id, "'id' must not be null");
-		Object removedObject = this.doRetrieve(id);
-		if (removedObject != null){
-			redisTemplate.delete(id);
-		}	
-		return removedObject;
+	private byte[] serializeGroupId(Object groupId) {
+		return this.groupIdSerializer.serialize(groupId);
+	}
+
+	private List<Object> deserializeGroupIds(Set<byte[]> groupIds) {
+		List<Object> result = new ArrayList<Object>(groupIds.size());
+		for (byte[] groupId : groupIds) {
+			result.add(this.groupIdSerializer.deserialize(groupId));
+		}
+		return result;
+	}
+
+	private byte[] messageId(UUID id) {
+		return stringSerializer.serialize(id.toString());
 	}
 
+	private byte[] messageKey(byte[] messageId) {
+		return stringSerializer.serialize(MESSAGE_KEY_PREFIX + stringSerializer.deserialize(messageId));
+	}
 
-	@Override
-	protected Collection<?> doListKeys(String keyPattern) {
-		Assert.hasText(keyPattern, "'keyPattern' must not be empty");
-		Set<Object> keys = redisTemplate.keys(keyPattern);
-		return keys;
+	private byte[] groupKey(Object groupId) {
+		return stringSerializer.serialize(MESSAGE_GROUP_KEY_PREFIX + groupId);
 	}
+
+	private byte[] metadataKey(Object groupId) {
+		return stringSerializer.serialize(GROUP_METADATA_KEY_PREFIX + groupId);
+	}
+
+
+	/**
+	 * Applies an update to a group in a MULTI/EXEC transaction, together with the group's
+	 * last modified time; the first update of a group also records its creation time and
+	 * adds it to the group index. The metadata is watched, so that if the group is removed
+	 * or created concurrently, the transaction is retried.
+	 */
+	private abstract class GroupUpdateCallback implements RedisCallback<Object> {
+
+		private final Object groupId;
+
+		private GroupUpdateCallback(Object groupId) {
+			this.groupId = groupId;
+		}
+
+		public Object doInRedis(RedisConnection connection) {
+			byte[] metadataKey = metadataKey(this.groupId);
+			byte[] timestampField = stringSerializer.serialize(TIMESTAMP);
+			List<Object> results = null;
+			while (results == null) {
+				connection.watch(metadataKey);
+				boolean newGroup = connection.hGet(metadataKey, timestampField) == null;
+				long now = System.currentTimeMillis();
+				byte[] nowValue = stringSerializer.serialize(String.valueOf(now));
+				connection.multi();
+				this.doUpdate(connection);
+				connection.hSetNX(metadataKey, timestampField, nowValue);
+				connection.hSet(metadataKey, stringSerializer.serialize(LAST_MODIFIED), nowValue);
+				if (newGroup) {
+					connection.zAdd(MESSAGE_GROUPS_KEY, now, serializeGroupId(this.groupId));
+				}
+				results = connection.exec();
+			}
+			return null;
+		}
+
+		protected abstract void doUpdate(RedisConnection connection);
+	}
+
+
+	private class MessageGroupIterator implements Iterator<MessageGroup> {
+
+		private final Iterator<Object> idIterator;
+
+		private MessageGroupIterator(Iterator<Object> idIterator) {
+			this.idIterator = idIterator;
+		}
+
+		public boolean hasNext() {
+			return this.idIterator.hasNext();
+		}
+
+		public MessageGroup next() {
+			return getMessageGroup(this.idIterator.next());
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2007-2011 the original author or authors
+ * Copyright 2007-2012 the original author or authors
  *
  *     Licensed under the Apache License, Version 2.0 (the "License");
  *     you may not use this file except in compliance with the License.
@@ -16,20 +16,30 @@
 package org.springframework.integration.redis.store;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.AssertionFailedError;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.channel.DirectChannel;
@@ -39,6 +49,9 @@ import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.redis.rules.RedisAvailable;
 import org.springframework.integration.redis.rules.RedisAvailableTests;
 import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupCallback;
+import org.springframework.integration.store.MessageGroupMetadata;
+import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.SimpleMessageGroup;
 import org.springframework.integration.support.MessageBuilder;
 
@@ -54,6 +67,8 @@ import static org.junit.Assert.assertTrue;
  */
 public class RedisMessageGroupStoreTests extends RedisAvailableTests {
 
+	private static final Log logger = LogFactory.getLog(RedisMessageGroupStoreTests.class);
+
 	@Test
 	@RedisAvailable
 	public void testNonExistingEmptyMessageGroup() throws Exception{	
@@ -290,6 +305,206 @@ public class RedisMessageGroupStoreTests extends RedisAvailableTests {
 		assertEquals(2, counter);
 	}
 	
+	@Test
+	@RedisAvailable
+	public void testIteratorReturnsGroupsById() throws Exception{
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		RedisMessageStore store = new RedisMessageStore(jcf);
+		store.addMessageToGroup(1, new GenericMessage<String>("1"));
+		store.addMessageToGroup("foo", new GenericMessage<String>("2"));
+		store.addMessageToGroup("foo", new GenericMessage<String>("3"));
+
+		Set<Object> groupIds = new HashSet<Object>();
+		for (MessageGroup group : store) {
+			groupIds.add(group.getGroupId());
+			assertEquals("1".equals(group.getOne().getPayload()) ? 1 : 2, group.size());
+		}
+		assertEquals(2, groupIds.size());
+		assertTrue(groupIds.contains(1));
+		assertTrue(groupIds.contains("foo"));
+	}
+
+	@Test
+	@RedisAvailable
+	public void testCountsFromIndexes() throws Exception{
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		RedisMessageStore store = new RedisMessageStore(jcf);
+		assertEquals(0, store.getMessageGroupCount());
+		assertEquals(0, store.getMessageCountForAllMessageGroups());
+		store.addMessage(new GenericMessage<String>("1"));
+		store.addMessageToGroup(1, new GenericMessage<String>("2"));
+		store.addMessageToGroup(2, new GenericMessage<String>("3"));
+		store.addMessageToGroup(2, new GenericMessage<String>("4"));
+		assertEquals(4, store.getMessageCount());
+		assertEquals(2, store.getMessageGroupCount());
+		assertEquals(3, store.getMessageCountForAllMessageGroups());
+
+		assertEquals("3", store.pollMessageFromGroup(2).getPayload());
+		assertEquals(3, store.getMessageCount());
+		assertEquals(2, store.getMessageCountForAllMessageGroups());
+
+		store.removeMessageGroup(2);
+		assertEquals(2, store.getMessageCount());
+		assertEquals(1, store.getMessageGroupCount());
+		assertEquals(0, store.messageGroupSize(2));
+	}
+
+	@Test
+	@RedisAvailable
+	public void testPollMessageFromGroupInOrder() throws Exception{
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		RedisMessageStore store = new RedisMessageStore(jcf);
+		for (int i = 0; i < 5; i++) {
+			store.addMessageToGroup(1, new GenericMessage<Integer>(i));
+		}
+		assertEquals(5, store.messageGroupSize(1));
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, store.pollMessageFromGroup(1).getPayload());
+		}
+		assertNull(store.pollMessageFromGroup(1));
+		assertEquals(0, store.getMessageCount());
+	}
+
+	@Test
+	@RedisAvailable
+	public void testConcurrentPollsRemoveEachMessageOnce() throws Exception{
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		final RedisMessageStore store = new RedisMessageStore(jcf);
+		for (int i = 0; i < 200; i++) {
+			store.addMessageToGroup(1, new GenericMessage<Integer>(i));
+		}
+		final Set<Object> polled = Collections.synchronizedSet(new HashSet<Object>());
+		final List<Object> duplicates = Collections.synchronizedList(new ArrayList<Object>());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int i = 0; i < 4; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					Message<?> message;
+					while ((message = store.pollMessageFromGroup(1)) != null) {
+						if (!polled.add(message.getPayload())) {
+							duplicates.add(message.getPayload());
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(0, duplicates.size());
+		assertEquals(200, polled.size());
+		assertEquals(0, store.messageGroupSize(1));
+		assertEquals(0, store.getMessageCount());
+	}
+
+	@Test
+	@RedisAvailable
+	public void testExpireMessageGroups() throws Exception{
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		RedisMessageStore store = new RedisMessageStore(jcf);
+		final List<Object> expired = new ArrayList<Object>();
+		store.registerMessageGroupExpiryCallback(new MessageGroupCallback() {
+			public void execute(MessageGroupStore messageGroupStore, MessageGroup group) {
+				expired.add(group.getGroupId());
+				messageGroupStore.removeMessageGroup(group.getGroupId());
+			}
+		});
+		store.addMessageToGroup(1, new GenericMessage<String>("1"));
+		Thread.sleep(200);
+		store.addMessageToGroup(1, new GenericMessage<String>("2"));
+		store.addMessageToGroup(2, new GenericMessage<String>("3"));
+
+		assertEquals(0, store.expireMessageGroups(10000));
+		store.setTimeoutOnIdle(true);
+		assertEquals(0, store.expireMessageGroups(100));
+		store.setTimeoutOnIdle(false);
+		assertEquals(1, store.expireMessageGroups(100));
+		assertEquals(1, expired.get(0));
+		assertEquals(1, store.getMessageGroupCount());
+		assertEquals(1, store.expireMessageGroups(0));
+		assertEquals(2, expired.get(1));
+		assertEquals(0, store.getMessageCount());
+	}
+
+	@Test
+	@RedisAvailable
+	public void testMigrateLegacyMessageGroups() throws Exception{
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		// the layout written by earlier versions: each message and each group is a serialized value
+		RedisTemplate<Object, Object> template = new RedisTemplate<Object, Object>();
+		template.setConnectionFactory(jcf);
+		template.setKeySerializer(new StringRedisSerializer());
+		template.setValueSerializer(new JdkSerializationRedisSerializer());
+		template.afterPropertiesSet();
+		Message<?> message1 = new GenericMessage<String>("1");
+		Message<?> message2 = new GenericMessage<String>("2");
+		Message<?> single = new GenericMessage<String>("single");
+		SimpleMessageGroup legacyGroup = new SimpleMessageGroup("foo");
+		legacyGroup.add(message1);
+		legacyGroup.add(message2);
+		legacyGroup.setLastReleasedMessageSequenceNumber(3);
+		legacyGroup.setLastModified(legacyGroup.getTimestamp() + 10);
+		template.boundValueOps("MESSAGE_" + message1.getHeaders().getId()).set(message1);
+		template.boundValueOps("MESSAGE_" + message2.getHeaders().getId()).set(message2);
+		template.boundValueOps("MESSAGE_" + single.getHeaders().getId()).set(single);
+		template.boundValueOps("MESSAGE_GROUP_foo").set(new MessageGroupMetadata(legacyGroup));
+
+		RedisMessageStore store = new RedisMessageStore(jcf);
+		assertEquals(1, store.migrateLegacyMessageGroups());
+		assertEquals(0, store.migrateLegacyMessageGroups());
+
+		assertEquals(3, store.getMessageCount());
+		assertEquals(1, store.getMessageGroupCount());
+		MessageGroup group = store.getMessageGroup("foo");
+		assertEquals(2, group.size());
+		Iterator<Message<?>> messages = group.getMessages().iterator();
+		assertEquals("1", messages.next().getPayload());
+		assertEquals("2", messages.next().getPayload());
+		assertEquals(legacyGroup.getTimestamp(), group.getTimestamp());
+		assertEquals(legacyGroup.getTimestamp() + 10, group.getLastModified());
+		assertEquals(3, group.getLastReleasedMessageSequenceNumber());
+		assertEquals("foo", store.iterator().next().getGroupId());
+
+		store.addMessageToGroup("foo", new GenericMessage<String>("3"));
+		assertEquals(3, store.messageGroupSize("foo"));
+		store.removeMessageGroup("foo");
+		assertEquals(1, store.getMessageCount());
+		assertEquals(0, store.getMessageGroupCount());
+	}
+
+	/**
+	 * Adds messages to a single group (as an aggregator would before releasing it) and
+	 * reports the time taken and the bytes sent to the server.
+	 */
+	@Test
+	@RedisAvailable @Ignore
+	public void benchmarkAddToLargeGroup() throws Exception{
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		RedisMessageStore store = new RedisMessageStore(jcf);
+		RedisTemplate<Object, Object> template = new RedisTemplate<Object, Object>();
+		template.setConnectionFactory(jcf);
+		for (int size : new int[] { 100, 500, 2000 }) {
+			long bytesBefore = this.totalNetInputBytes(template);
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < size; i++) {
+				store.addMessageToGroup(size, new GenericMessage<Integer>(i));
+			}
+			long elapsed = Math.max(1, System.currentTimeMillis() - start);
+			long bytes = this.totalNetInputBytes(template) - bytesBefore;
+			logger.warn("Added " + size + " messages to a group in " + elapsed + "ms (" + (size * 1000L / elapsed)
+					+ "/s), " + (bytes / 1024) + "KB sent to the server");
+			store.removeMessageGroup(size);
+		}
+	}
+
+	private long totalNetInputBytes(RedisTemplate<Object, Object> template) {
+		Properties info = template.execute(new RedisCallback<Properties>() {
+			public Properties doInRedis(RedisConnection connection) {
+				return connection.info();
+			}
+		});
+		return Long.parseLong(info.getProperty("total_net_input_bytes").trim());
+	}
+
 	@Test
 	@RedisAvailable @Ignore
 	public void testConcurrentModifications() throws Exception{	
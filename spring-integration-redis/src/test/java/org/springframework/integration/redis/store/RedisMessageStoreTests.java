@@ -118,7 +118,29 @@ public class RedisMessageStoreTests extends RedisAvailableTests {
 		assertEquals("Hello Redis", retrievedMessage.getPayload());
 		assertNull(store.getMessage(stringMessage.getHeaders().getId()));
 	}
-	
+
+	@SuppressWarnings("unchecked")
+	@Test
+	@RedisAvailable
+	public void testAddAndGetMessageWithCompactSerializer(){
+		JedisConnectionFactory jcf = this.getConnectionFactoryForTest();
+		RedisMessageStore store = new RedisMessageStore(jcf);
+		Message<String> javaSerializedMessage = new GenericMessage<String>("Hello Java");
+		store.addMessage(javaSerializedMessage);
+		store.setValueSerializer(new CompactMessageRedisSerializer());
+		Message<String> stringMessage = new GenericMessage<String>("Hello Redis");
+		store.addMessage(stringMessage);
+		store.addMessageToGroup("foo", stringMessage);
+		Message<String> retrievedMessage = (Message<String>) store.getMessage(stringMessage.getHeaders().getId());
+		assertEquals("Hello Redis", retrievedMessage.getPayload());
+		assertEquals(stringMessage.getHeaders().getId(), retrievedMessage.getHeaders().getId());
+		assertEquals(1, store.getMessageGroup("foo").size());
+		retrievedMessage = (Message<String>) store.removeMessage(javaSerializedMessage.getHeaders().getId());
+		assertEquals("Hello Java", retrievedMessage.getPayload());
+		store.removeMessage(stringMessage.getHeaders().getId());
+		store.removeMessageGroup("foo");
+	}
+
 	@Test
 	@RedisAvailable
 	public void testWithMessageHistory() throws Exception{	